@@ -23,7 +23,7 @@ public class JsonBooleanFactory implements IJsonTypeFactory {
 					if(reader.getLastToken() == ReaderScannerBase.T_IDENT) {
 						value = Boolean.parseBoolean(reader.getCopied());				// true/false
 					} else if(reader.getLastToken() == ReaderScannerBase.T_NUMBER) {
-						value = Long.parseLong(reader.getCopied()) != 0;
+						value = reader.getLong() != 0;
 					} else
 						throw new JsonParseException(reader, this, "Expecting a boolean value but got " + reader.getTokenString());
 					reader.nextToken();
@@ -1,11 +1,14 @@
 package to.etc.json;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import to.etc.lexer.ReaderScannerBase;
-import to.etc.util.StringTool;
 import to.etc.util.WrappedException;
 
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
 import java.util.Map;
 
 public class JsonClassType<T> implements ITypeMapping {
@@ -13,6 +16,13 @@ public class JsonClassType<T> implements ITypeMapping {
 
 	private Map<String, PropertyMapping> m_map;
 
+	/** The properties in rendering order, so that rendering does not need an iterator. */
+	private PropertyMapping[] m_properties = new PropertyMapping[0];
+
+	/** The no-args constructor as a handle of type ()Object, created when the first instance is parsed. */
+	@Nullable
+	private volatile MethodHandle m_constructor;
+
 	public JsonClassType(@NonNull Class<T> rootClass) {
 		m_rootClass = rootClass;
 	}
@@ -23,13 +33,12 @@ public class JsonClassType<T> implements ITypeMapping {
 		w.nl();
 		w.inc();
 		int ct = 0;
-		for(PropertyMapping pm : m_map.values()) {
+		for(PropertyMapping pm : m_properties) {
 			Object value;
 			try {
-				value = pm.getGetter().invoke(instance);
+				value = pm.getValue(instance);
 			} catch(Exception x) {
-				Exception nx = WrappedException.unwrap(x);
-				throw new RuntimeException("JSON encode failed for " + pm.getName() + ": " + nx, nx);
+				throw new RuntimeException("JSON encode failed for " + pm.getName() + ": " + x, x);
 			}
 
 			if(null != value) {
@@ -48,12 +57,12 @@ public class JsonClassType<T> implements ITypeMapping {
 	@Override
 	public Object parse(@NonNull JsonReader reader) throws Exception {
 		if(reader.getLastToken() != '{') {
-			throw new JsonParseException(reader, this, "Expecting '{' but got " + reader.getLastToken());
+			throw new JsonParseException(reader, this, "Expecting '{' but got " + reader.getTokenString());
 		}
 		reader.nextToken();
 
 		//-- Create the instance.
-		T instance = m_rootClass.newInstance();
+		Object instance = newInstance();
 
 		for(;;) {
 			//-- 1. Expect key mappable to a property of this class.
@@ -63,13 +72,9 @@ public class JsonClassType<T> implements ITypeMapping {
 			if(token == '}')
 				break;
 
-			String name;
-			if(token == ReaderScannerBase.T_IDENT) {
-				name = reader.getCopied();
-			} else if(token == ReaderScannerBase.T_STRING) {
-				name = StringTool.strUnquote(reader.getCopied());
-			} else
-				throw new JsonParseException(reader, this, "Expecting a property name, got " + (char) token);
+			if(token != ReaderScannerBase.T_IDENT && token != ReaderScannerBase.T_STRING)
+				throw new JsonParseException(reader, this, "Expecting a property name, got " + reader.getTokenString());
+			String name = reader.getStringValue();
 
 			//-- Got a thingy. Must map to a class property.
 			PropertyMapping pm = m_map.get(name);
@@ -82,15 +87,18 @@ public class JsonClassType<T> implements ITypeMapping {
 				throw new JsonParseException(reader, this, "Missing ':' after property " + name);
 
 			reader.nextToken();										// Prepare for parser.
-			Object value = pm.getMapper().parse(reader);			// Parse property value
-			Method setter = pm.getSetter();
-			if(null != setter) {
-				try {
-					value = setter.invoke(instance, value);
-				} catch(Exception x) {
-					Exception nx = WrappedException.unwrap(x);
-					throw new RuntimeException("JSON decode failed for " + pm.getName() + " value " + value + ": " + nx, nx);
-				}
+			Object value;
+			if(reader.isNull()) {									// JSON null is the same for all types
+				value = null;
+				reader.nextToken();
+			} else
+				value = pm.getMapper().parse(reader);				// Parse property value
+			try {
+				pm.setValue(instance, value);
+			} catch(JsonParseException x) {
+				throw x;
+			} catch(Exception x) {
+				throw new RuntimeException("JSON decode failed for " + pm.getName() + " value " + value + ": " + x, x);
 			}
 
 			//--
@@ -105,7 +113,26 @@ public class JsonClassType<T> implements ITypeMapping {
 		return instance;
 	}
 
+	@NonNull
+	private Object newInstance() throws Exception {
+		MethodHandle mh = m_constructor;
+		if(null == mh) {
+			mh = MethodHandles.publicLookup().findConstructor(m_rootClass, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+			m_constructor = mh;
+		}
+		try {
+			return mh.invokeExact();
+		} catch(Exception x) {
+			throw x;
+		} catch(Error x) {
+			throw x;
+		} catch(Throwable x) {
+			throw new WrappedException(x);
+		}
+	}
+
 	public void setMap(@NonNull Map<String, PropertyMapping> res) {
-		m_map = res;
+		m_map = new HashMap<>(res);
+		m_properties = res.values().toArray(new PropertyMapping[0]);
 	}
 }
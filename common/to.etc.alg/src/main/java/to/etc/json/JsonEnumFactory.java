@@ -3,7 +3,6 @@ package to.etc.json;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import to.etc.lexer.ReaderScannerBase;
-import to.etc.util.StringTool;
 
 import java.lang.reflect.Type;
 
@@ -24,7 +23,7 @@ public class JsonEnumFactory implements IJsonTypeFactory {
 			public Object parse(@NonNull JsonReader reader) throws Exception {
 				if(reader.getLastToken() != ReaderScannerBase.T_STRING)
 					throw new JsonParseException(reader, this, "Expecting a string (enum " + typeClass.getName() + ") but got " + reader.getTokenString());
-				String val = StringTool.strUnquote(reader.getCopied());
+				String val = reader.getStringValue();
 				Class<Enum< ? >> enc = (Class<Enum< ? >>) typeClass;
 				reader.nextToken();
 				for(Enum< ? > ec : enc.getEnumConstants()) {
@@ -21,7 +21,7 @@ public class JsonIntFactory implements IJsonTypeFactory {
 				public Object parse(@NonNull JsonReader reader) throws Exception {
 					if(reader.getLastToken() != ReaderScannerBase.T_NUMBER)
 						throw new JsonParseException(reader, this, "Expecting an integer but got " + reader.getTokenString());
-					Integer res = Integer.decode(reader.getCopied());
+					Integer res = Integer.valueOf(reader.getInt());
 					reader.nextToken();
 					return res;
 				}
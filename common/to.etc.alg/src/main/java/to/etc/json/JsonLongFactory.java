@@ -21,7 +21,7 @@ public class JsonLongFactory implements IJsonTypeFactory {
 				public Object parse(@NonNull JsonReader reader) throws Exception {
 					if(reader.getLastToken() != ReaderScannerBase.T_NUMBER)
 						throw new JsonParseException(reader, this, "Expecting a long integer but got " + reader.getTokenString());
-					Long res = Long.decode(reader.getCopied());
+					Long res = Long.valueOf(reader.getLong());
 					reader.nextToken();
 					return res;
 				}
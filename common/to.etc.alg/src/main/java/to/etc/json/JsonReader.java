@@ -2,17 +2,81 @@ package to.etc.json;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
-import to.etc.lexer.ReaderTokenizerBase;
+import to.etc.lexer.ReaderScannerBase;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.lang.reflect.Type;
+import java.util.Arrays;
+
+/**
+ * Reads JSON from a Reader, one token at a time. The input is read in blocks into a char buffer,
+ * and every token is collected in a reused char buffer; a String is only created when one is asked
+ * for. Numbers can be parsed from the buffer directly with {@link #getInt()} and {@link #getLong()}.
+ *
+ * <p>The token types are the ones from {@link ReaderScannerBase}: strings, numbers, identifiers
+ * (true, false, null and unquoted property names), EOF, and all other characters as themselves.
+ * Strings can use single or double quotes; for strings {@link #getStringValue()} returns the value
+ * with its escapes decoded, while {@link #getCopied()} returns the characters between the quotes as they
+ * were written, like it did when this class extended {@link to.etc.lexer.ReaderTokenizerBase}. Javascript
+ * comments are skipped.</p>
+ *
+ * <p>This class used to extend {@link to.etc.lexer.ReaderTokenizerBase}; it now is a tokenizer of its own,
+ * so the options of that class (like setKeepQuotes() or setReturnWhitespace()) are no longer available.
+ * The token methods that the type mappings use (nextToken(), getLastToken(), getTokenString(), getCopied())
+ * remain.</p>
+ *
+ * Created on 19-10-26.
+ */
+public class JsonReader {
+	static private final int BUFFER_SIZE = 8192;
 
-public class JsonReader extends ReaderTokenizerBase {
 	@NonNull
 	final private JsonTypeRegistry m_registry;
 
-	public JsonReader(Object source, Reader r, @NonNull JsonTypeRegistry registry) {
-		super(source, r);
+	@NonNull
+	final private Object m_source;
+
+	@NonNull
+	final private Reader m_reader;
+
+	final private char[] m_buffer = new char[BUFFER_SIZE];
+
+	/** The read position and the #of valid chars in m_buffer. */
+	private int m_ix, m_len;
+
+	/** The #of chars before the buffer's start, to calculate the column. */
+	private long m_bufferOffset;
+
+	private int m_line = 1;
+
+	/** The offset in the input of the first character on the current line. */
+	private long m_lineStart;
+
+	private int m_tokenLine, m_tokenColumn;
+
+	private char[] m_token = new char[128];
+
+	private int m_tokenLength;
+
+	/** The token as a string, created when asked for. */
+	@Nullable
+	private String m_value;
+
+	/** The raw token text, created when asked for. */
+	@Nullable
+	private String m_copied;
+
+	/** The string token as written, only collected once the string turns out to contain an escape. */
+	private final StringBuilder m_raw = new StringBuilder();
+
+	private boolean m_hasRaw;
+
+	private int m_lastToken = ReaderScannerBase.T_EOF;
+
+	public JsonReader(@NonNull Object source, @NonNull Reader r, @NonNull JsonTypeRegistry registry) {
+		m_source = source;
+		m_reader = r;
 		m_registry = registry;
 	}
 
@@ -25,4 +89,363 @@ public class JsonReader extends ReaderTokenizerBase {
 		return (T) mapping.parse(this);
 	}
 
+	@NonNull
+	public Object getSource() {
+		return m_source;
+	}
+
+	public int getLastToken() {
+		return m_lastToken;
+	}
+
+	public int getTokenLine() {
+		return m_tokenLine;
+	}
+
+	public int getTokenColumn() {
+		return m_tokenColumn;
+	}
+
+	/**
+	 * The text of the last token as it was written: for a string the characters between the
+	 * quotes with the escapes undecoded, the digits of a number, the name of an identifier.
+	 */
+	@NonNull
+	public String getCopied() {
+		if(!m_hasRaw)
+			return getStringValue();
+		String s = m_copied;
+		if(null == s)
+			m_copied = s = m_raw.toString();
+		return s;
+	}
+
+	/**
+	 * The value of the last token: for a string the value with its escapes decoded, otherwise
+	 * the same as {@link #getCopied()}.
+	 */
+	@NonNull
+	public String getStringValue() {
+		String s = m_value;
+		if(null == s)
+			m_value = s = new String(m_token, 0, m_tokenLength);
+		return s;
+	}
+
+	/**
+	 * T if the last token is the identifier null.
+	 */
+	public boolean isNull() {
+		return m_lastToken == ReaderScannerBase.T_IDENT && m_tokenLength == 4 && m_token[0] == 'n' && m_token[1] == 'u' && m_token[2] == 'l' && m_token[3] == 'l';
+	}
+
+	/**
+	 * Parse the last token, which must be a number without fraction, as a long.
+	 */
+	public long getLong() {
+		if(m_lastToken != ReaderScannerBase.T_NUMBER)
+			throw new JsonParseException(this, null, "Expecting a number but got " + getTokenString());
+		int ix = 0;
+		boolean neg = false;
+		if(m_token[0] == '-') {
+			neg = true;
+			ix++;
+		}
+		if(ix >= m_tokenLength || m_tokenLength - ix > 18)
+			return Long.parseLong(getCopied());					// Let it handle the edge cases and the overflow
+		long v = 0;
+		while(ix < m_tokenLength) {
+			char c = m_token[ix++];
+			if(c < '0' || c > '9')
+				throw new JsonParseException(this, null, "Expecting an integer number but got " + getTokenString());
+			v = v * 10 + (c - '0');
+		}
+		return neg ? -v : v;
+	}
+
+	public int getInt() {
+		long v = getLong();
+		if(v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)
+			throw new JsonParseException(this, null, "The number " + v + " is too large for an int");
+		return (int) v;
+	}
+
+	@NonNull
+	public String getTokenString() {
+		switch(m_lastToken) {
+			default:
+				return "'" + (char) m_lastToken + "'";
+			case ReaderScannerBase.T_EOF:
+				return "<<eof>>";
+			case ReaderScannerBase.T_STRING:
+				return "string:" + getCopied();
+			case ReaderScannerBase.T_IDENT:
+				return "identifier:" + getCopied();
+			case ReaderScannerBase.T_NUMBER:
+				return "number:" + getCopied();
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Tokenizer.											*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * Read the next token, and return its type.
+	 */
+	public int nextToken() throws IOException {
+		return m_lastToken = scanToken();
+	}
+
+	private int scanToken() throws IOException {
+		m_tokenLength = 0;
+		m_value = null;
+		m_copied = null;
+		m_hasRaw = false;
+		for(;;) {
+			int c = la();
+			if(c == -1) {
+				startToken();
+				return ReaderScannerBase.T_EOF;
+			}
+			if(c == '\n') {
+				m_ix++;
+				m_line++;
+				m_lineStart = m_bufferOffset + m_ix;
+			} else if(c == ' ' || c == '\t' || c == '\r' || Character.isWhitespace(c)) {
+				m_ix++;
+			} else if(c == '/') {
+				skipComment();
+			} else
+				break;
+		}
+
+		startToken();
+		char c = m_buffer[m_ix];
+		switch(c) {
+			case '"':
+			case '\'':
+				m_ix++;
+				scanString(c);
+				return ReaderScannerBase.T_STRING;
+
+			case '-':
+			case '0':
+			case '1':
+			case '2':
+			case '3':
+			case '4':
+			case '5':
+			case '6':
+			case '7':
+			case '8':
+			case '9':
+				scanNumber();
+				return ReaderScannerBase.T_NUMBER;
+
+			default:
+				if(isIdStart(c)) {
+					scanIdentifier();
+					return ReaderScannerBase.T_IDENT;
+				}
+				m_ix++;
+				m_token[0] = c;
+				m_tokenLength = 1;
+				return c;
+		}
+	}
+
+	private void startToken() {
+		m_tokenLine = m_line;
+		m_tokenColumn = (int) (m_bufferOffset + m_ix - m_lineStart) + 1;
+	}
+
+	/**
+	 * Return the current character without accepting it, reading the next block when the buffer is empty.
+	 */
+	private int la() throws IOException {
+		if(m_ix < m_len)
+			return m_buffer[m_ix];
+		m_bufferOffset += m_len;
+		m_ix = 0;
+		m_len = 0;
+		int len;
+		do {
+			len = m_reader.read(m_buffer, 0, m_buffer.length);
+		} while(len == 0);
+		if(len < 0)
+			return -1;
+		m_len = len;
+		return m_buffer[0];
+	}
+
+	private void skipComment() throws IOException {
+		m_ix++;												// Past the 1st /
+		int c = la();
+		if(c == '/') {
+			for(;;) {
+				c = la();
+				if(c == -1 || c == '\n')
+					return;
+				m_ix++;
+			}
+		} else if(c == '*') {
+			m_ix++;
+			int lc = 0;
+			for(;;) {
+				c = la();
+				if(c == -1)
+					throw new JsonParseException(this, null, "Unexpected EOF in comment");
+				m_ix++;
+				if(c == '\n') {
+					m_line++;
+					m_lineStart = m_bufferOffset + m_ix;
+				} else if(c == '/' && lc == '*')
+					return;
+				lc = c;
+			}
+		}
+		throw new JsonParseException(this, null, "Unexpected character '/'");
+	}
+
+	private void append(char c) {
+		if(m_tokenLength >= m_token.length)
+			m_token = Arrays.copyOf(m_token, m_token.length * 2);
+		m_token[m_tokenLength++] = c;
+	}
+
+	private void append(char[] data, int off, int len) {
+		if(m_tokenLength + len > m_token.length)
+			m_token = Arrays.copyOf(m_token, Math.max(m_token.length * 2, m_tokenLength + len));
+		System.arraycopy(data, off, m_token, m_tokenLength, len);
+		m_tokenLength += len;
+	}
+
+	/**
+	 * Scan a string up to the quote character qc. Runs without escapes are copied as a block.
+	 */
+	private void scanString(char qc) throws IOException {
+		for(;;) {
+			if(la() == -1)
+				throw new JsonParseException(this, null, "Unexpected EOF in string started at line " + m_tokenLine + ":" + m_tokenColumn);
+
+			//-- Find the end of the run of plain characters in the buffer
+			int start = m_ix;
+			int end = m_len;
+			char[] buf = m_buffer;
+			int ix = start;
+			char c = 0;
+			while(ix < end) {
+				c = buf[ix];
+				if(c == qc || c == '\\' || c == '\n')
+					break;
+				ix++;
+			}
+			if(ix > start) {
+				append(buf, start, ix - start);
+				if(m_hasRaw)
+					m_raw.append(buf, start, ix - start);
+			}
+			m_ix = ix;
+			if(ix >= end)
+				continue;										// Buffer exhausted, read the next one
+
+			m_ix++;
+			if(c == qc)
+				return;
+			if(c == '\n')
+				throw new JsonParseException(this, null, "Unexpected newline in string started at line " + m_tokenLine + ":" + m_tokenColumn);
+			scanEscape();
+		}
+	}
+
+	private void scanEscape() throws IOException {
+		if(!m_hasRaw) {
+			//-- From here on the raw text differs from the value: start collecting it.
+			m_raw.setLength(0);
+			m_raw.append(m_token, 0, m_tokenLength);
+			m_hasRaw = true;
+		}
+		m_raw.append('\\');
+		int c = la();
+		if(c == -1)
+			throw new JsonParseException(this, null, "Unexpected EOF in string started at line " + m_tokenLine + ":" + m_tokenColumn);
+		m_ix++;
+		m_raw.append((char) c);
+		switch(c) {
+			default:
+				append((char) c);								// \" \' \\ \/ and everything else
+				return;
+
+			case 'b':
+				append('\b');
+				return;
+
+			case 'f':
+				append('\f');
+				return;
+
+			case 'n':
+				append('\n');
+				return;
+
+			case 'r':
+				append('\r');
+				return;
+
+			case 't':
+				append('\t');
+				return;
+
+			case 'u':
+				append((char) scanHex(4));
+				return;
+
+			case 'x':
+				append((char) scanHex(2));
+				return;
+		}
+	}
+
+	private int scanHex(int count) throws IOException {
+		int v = 0;
+		for(int i = 0; i < count; i++) {
+			int c = la();
+			int d = c == -1 ? -1 : Character.digit((char) c, 16);
+			if(d < 0)
+				throw new JsonParseException(this, null, "Bad hex escape in string started at line " + m_tokenLine + ":" + m_tokenColumn);
+			m_ix++;
+			m_raw.append((char) c);
+			v = (v << 4) | d;
+		}
+		return v;
+	}
+
+	private void scanNumber() throws IOException {
+		for(;;) {
+			int c = la();
+			if((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+				append((char) c);
+				m_ix++;
+			} else
+				return;
+		}
+	}
+
+	private void scanIdentifier() throws IOException {
+		for(;;) {
+			int c = la();
+			if(c == -1 || !isIdChar((char) c))
+				return;
+			append((char) c);
+			m_ix++;
+		}
+	}
+
+	static private boolean isIdStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$' || (c > 127 && Character.isLetter(c));
+	}
+
+	static private boolean isIdChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$' || (c > 127 && Character.isLetterOrDigit(c));
+	}
 }
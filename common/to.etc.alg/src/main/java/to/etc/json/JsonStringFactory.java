@@ -3,7 +3,6 @@ package to.etc.json;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import to.etc.lexer.ReaderScannerBase;
-import to.etc.util.StringTool;
 
 import java.lang.reflect.Type;
 
@@ -22,7 +21,7 @@ public class JsonStringFactory implements IJsonTypeFactory {
 				public Object parse(@NonNull JsonReader reader) throws Exception {
 					if(reader.getLastToken() != ReaderScannerBase.T_STRING)
 						throw new JsonParseException(reader, this, "Expecting a string but got " + reader.getTokenString());
-					String res = StringTool.strUnquote(reader.getCopied());
+					String res = reader.getStringValue();
 					reader.nextToken();
 					return res;
 				}
@@ -15,7 +15,17 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the mapping between a Java type and JSON. Mappings are created by the registered
+ * {@link IJsonTypeFactory} instances, or else by mapping the properties of a class.
+ *
+ * <p>Created mappings are cached, so that rendering and parsing takes no lock: mappings for a plain
+ * class are kept in a {@link ClassValue}, mappings for a generic type in a concurrent map. Registering
+ * a factory clears the caches. Creating a mapping is done under a lock, and a class mapping only
+ * becomes visible to other threads when it and all the mappings it refers to are complete.</p>
+ */
 public class JsonTypeRegistry {
 	static private class Entry {
 		final private int m_order;
@@ -38,7 +48,54 @@ public class JsonTypeRegistry {
 		}
 	}
 
-	private Map<Class< ? >, ITypeMapping> m_classMap = new HashMap<Class< ? >, ITypeMapping>();
+	/** Holds the mapping for a class once it is complete. */
+	static private final class MappingHolder {
+		@Nullable
+		volatile ITypeMapping m_mapping;
+	}
+
+	/** The key for a mapping of a generic type. */
+	static private final class TypeKey {
+		@NonNull
+		final private Class<?> m_class;
+
+		@NonNull
+		final private Type m_type;
+
+		TypeKey(@NonNull Class<?> clz, @NonNull Type type) {
+			m_class = clz;
+			m_type = type;
+		}
+
+		@Override public boolean equals(@Nullable Object o) {
+			if(this == o)
+				return true;
+			if(!(o instanceof TypeKey))
+				return false;
+			TypeKey k = (TypeKey) o;
+			return m_class == k.m_class && m_type.equals(k.m_type);
+		}
+
+		@Override public int hashCode() {
+			return m_class.hashCode() * 31 + m_type.hashCode();
+		}
+	}
+
+	@NonNull
+	private volatile ClassValue<MappingHolder> m_classCache = newClassCache();
+
+	@NonNull
+	private volatile Map<TypeKey, ITypeMapping> m_typeCache = new ConcurrentHashMap<>();
+
+	/** Class mappings that are being created, while the lock is held. */
+	private final Map<Class< ? >, ITypeMapping> m_classMap = new HashMap<Class< ? >, ITypeMapping>();
+
+	/** The depth of createMapping calls while creating mappings; when it returns to 0 the mappings in m_classMap are complete. */
+	private int m_createDepth;
+
+	/** The factories in order, replaced as a whole when a factory is registered. */
+	@NonNull
+	private volatile Entry[] m_factories = new Entry[0];
 
 	private Set<Entry> m_list = new TreeSet<Entry>(new Comparator<Entry>() {
 		@Override
@@ -63,13 +120,27 @@ public class JsonTypeRegistry {
 //		register(1000, new JsonFactory());
 	}
 
+	@NonNull
+	static private ClassValue<MappingHolder> newClassCache() {
+		return new ClassValue<MappingHolder>() {
+			@Override protected MappingHolder computeValue(Class<?> type) {
+				return new MappingHolder();
+			}
+		};
+	}
+
 	public synchronized void register(int order, @NonNull IJsonTypeFactory factory) {
 		m_list.add(new Entry(order, factory));
+		m_factories = m_list.toArray(new Entry[0]);
+
+		//-- Mappings created before may now be handled by the new factory.
+		m_classCache = newClassCache();
+		m_typeCache = new ConcurrentHashMap<>();
 	}
 
 	@Nullable
-	public synchronized ITypeMapping findFactory(@NonNull Class< ? > typeClass, @Nullable Type type) {
-		for(Entry e: m_list) {
+	public ITypeMapping findFactory(@NonNull Class< ? > typeClass, @Nullable Type type) {
+		for(Entry e: m_factories) {
 			ITypeMapping mapper = e.getFactory().createMapper(this, typeClass, type);
 			if(null != mapper)
 				return mapper;
@@ -79,8 +150,54 @@ public class JsonTypeRegistry {
 
 	static private Set<String> IGNORESET = new HashSet<String>(Arrays.asList("class"));
 
+	/**
+	 * Get the mapping for a class, or for the generic type when it is not null. This takes no lock
+	 * when the mapping was created before.
+	 */
+	@Nullable
+	public <T> ITypeMapping createMapping(@NonNull Class<T> clz, @Nullable Type type) {
+		if(null == type || type == clz) {
+			MappingHolder holder = m_classCache.get(clz);
+			ITypeMapping tm = holder.m_mapping;
+			if(null != tm)
+				return tm;
+			return createMappingLocked(clz, null);
+		}
+
+		ITypeMapping tm = m_typeCache.get(new TypeKey(clz, type));
+		if(null != tm)
+			return tm;
+		return createMappingLocked(clz, type);
+	}
+
+	/**
+	 * Create the mapping under the lock. The mappings only get cached by the outermost call, because
+	 * before that they can refer to class mappings that are not complete yet.
+	 */
 	@Nullable
-	public synchronized <T> ITypeMapping createMapping(@NonNull Class<T> clz, @Nullable Type type) {
+	private synchronized <T> ITypeMapping createMappingLocked(@NonNull Class<T> clz, @Nullable Type type) {
+		ITypeMapping tm = null;
+		m_createDepth++;
+		try {
+			tm = createMappingInner(clz, type);
+			return tm;
+		} finally {
+			if(--m_createDepth == 0) {
+				ClassValue<MappingHolder> classCache = m_classCache;
+				m_classMap.forEach((c, m) -> classCache.get(c).m_mapping = m);
+				m_classMap.clear();
+				if(null != tm) {
+					if(null == type)
+						classCache.get(clz).m_mapping = tm;
+					else
+						m_typeCache.put(new TypeKey(clz, type), tm);
+				}
+			}
+		}
+	}
+
+	@Nullable
+	private <T> ITypeMapping createMappingInner(@NonNull Class<T> clz, @Nullable Type type) {
 		ITypeMapping cm = m_classMap.get(clz);
 		if(null != cm)
 			return cm;
@@ -99,7 +216,7 @@ public class JsonTypeRegistry {
 		List<PropertyInfo> props = ClassUtil.calculateProperties(clz);
 		Map<String, PropertyMapping> res = new TreeMap<String, PropertyMapping>();
 		for(PropertyInfo pi : props) {
-			if(IGNORESET.contains(pi.getName()))
+			if(isIgnoredProperty(clz, pi))
 				continue;
 			PropertyMapping pm = createPropertyMapper(clz, pi);
 			if(null != pm)
@@ -109,6 +226,13 @@ public class JsonTypeRegistry {
 		return ct;
 	}
 
+	/**
+	 * Returns true if the property must not be rendered nor parsed. Override to hide more properties.
+	 */
+	protected boolean isIgnoredProperty(@NonNull Class<?> clz, @NonNull PropertyInfo pi) {
+		return IGNORESET.contains(pi.getName());
+	}
+
 	@Nullable
 	private <T> PropertyMapping createPropertyMapper(@NonNull Class<T> type, @NonNull PropertyInfo pi) {
 		try {
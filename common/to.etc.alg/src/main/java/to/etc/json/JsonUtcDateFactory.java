@@ -29,7 +29,7 @@ public class JsonUtcDateFactory implements IJsonTypeFactory {
 				public Object parse(@NonNull JsonReader reader) throws Exception {
 					if(reader.getLastToken() != ReaderScannerBase.T_NUMBER)
 						throw new JsonParseException(reader, this, "Expecting a number (UTC date) but got " + reader.getTokenString());
-					long val = Long.parseLong(reader.getCopied());
+					long val = reader.getLong();
 					reader.nextToken();
 					return new Date(val);
 				}
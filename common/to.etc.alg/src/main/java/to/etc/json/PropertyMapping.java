@@ -1,8 +1,19 @@
 package to.etc.json;
 
-import java.lang.reflect.*;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.util.WrappedException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
 
 public class PropertyMapping {
+	static private final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	static private final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
 	final private Method m_getter;
 
 	final private Method m_setter;
@@ -11,11 +22,38 @@ public class PropertyMapping {
 
 	final private ITypeMapping m_mapper;
 
+	/** The getter as a handle of type (Object)Object, so that it can be called without reflection. */
+	@Nullable
+	final private MethodHandle m_getterHandle;
+
+	/** The setter as a handle of type (Object, Object)void. */
+	@Nullable
+	final private MethodHandle m_setterHandle;
+
+	/** T when the setter takes a primitive, which cannot be set to null. */
+	final private boolean m_primitive;
+
 	public PropertyMapping(Method getter, Method setter, String name, ITypeMapping mapper) {
 		m_getter = getter;
 		m_setter = setter;
 		m_name = name;
 		m_mapper = mapper;
+		m_getterHandle = getter == null ? null : unreflect(getter, GETTER_TYPE);
+		m_setterHandle = setter == null ? null : unreflect(setter, SETTER_TYPE);
+		m_primitive = setter != null && setter.getParameterTypes()[0].isPrimitive();
+	}
+
+	/**
+	 * Create a handle for the method with a generic type. Methods that cannot be accessed from here get no
+	 * handle, and are called through reflection so that they fail with the same exception as before.
+	 */
+	@Nullable
+	static private MethodHandle unreflect(@NonNull Method m, @NonNull MethodType type) {
+		try {
+			return MethodHandles.publicLookup().unreflect(m).asType(type);
+		} catch(IllegalAccessException x) {
+			return null;
+		}
 	}
 
 	public String getName() {
@@ -33,4 +71,43 @@ public class PropertyMapping {
 	public ITypeMapping getMapper() {
 		return m_mapper;
 	}
+
+	@Nullable
+	public Object getValue(@NonNull Object instance) throws Exception {
+		MethodHandle mh = m_getterHandle;
+		try {
+			if(null != mh)
+				return mh.invokeExact(instance);
+			return m_getter.invoke(instance);
+		} catch(Exception x) {
+			throw WrappedException.unwrap(x);
+		} catch(Error x) {
+			throw x;
+		} catch(Throwable x) {
+			throw new WrappedException(x);
+		}
+	}
+
+	/**
+	 * Set the value, if the property has a setter. Properties without a setter are ignored. Setting
+	 * null on a primitive property throws a {@link JsonParseException}.
+	 */
+	public void setValue(@NonNull Object instance, @Nullable Object value) throws Exception {
+		if(null == value && m_primitive)
+			throw new JsonParseException("JSON null cannot be assigned to property '" + m_name + "' of " + m_setter.getDeclaringClass().getName()
+				+ ", because its type " + m_setter.getParameterTypes()[0].getName() + " is primitive");
+		MethodHandle mh = m_setterHandle;
+		try {
+			if(null != mh)
+				mh.invokeExact(instance, value);
+			else if(null != m_setter)
+				m_setter.invoke(instance, value);
+		} catch(Exception x) {
+			throw WrappedException.unwrap(x);
+		} catch(Error x) {
+			throw x;
+		} catch(Throwable x) {
+			throw new WrappedException(x);
+		}
+	}
 }
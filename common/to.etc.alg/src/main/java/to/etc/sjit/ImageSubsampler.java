@@ -27,6 +27,7 @@ package to.etc.sjit;
 import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -594,6 +595,246 @@ public class ImageSubsampler {
 		return resampleColRGB(worki, contrib, sw, sh, ow, oh);
 	}
 
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Parallel resampler on the raster data.				*/
+	/*--------------------------------------------------------------*/
+	/** The max #of destination pixels a single task calculates; larger strips are split over two tasks. */
+	static private final int STRIP_PIXELS = 16 * 1024;
+
+	/**
+	 * Resamples like {@link #resample(BufferedImage, ResamplerFilter, int, int)}, but works on the int[]
+	 * raster data only and calculates both passes in strips of lines on the fork/join pool. Images with
+	 * an alpha channel keep it: they are resampled premultiplied, so that transparent pixels do not bleed
+	 * their color into the result, and are returned as TYPE_INT_ARGB. Opaque images are returned as
+	 * TYPE_INT_RGB.
+	 */
+	static public BufferedImage resampleParallel(BufferedImage srci, ResamplerFilter f, int ow, int oh, ForkJoinPool pool) {
+		int sw = srci.getWidth();
+		int sh = srci.getHeight();
+		if(sw < 2 || sh < 2)
+			throw new IllegalArgumentException("Source is too small, you silly m/v");
+		if(ow < 2 || oh < 2)
+			throw new IllegalArgumentException("Destination is too small: " + ow + "x" + oh);
+
+		BufferedImage src = toIntRaster(srci);
+		boolean alpha = src.getType() == BufferedImage.TYPE_INT_ARGB_PRE;
+		Raster sras = src.getRaster();
+		SinglePixelPackedSampleModel ssm = (SinglePixelPackedSampleModel) sras.getSampleModel();
+		int[] spx = ((DataBufferInt) sras.getDataBuffer()).getData();
+
+		//-- Rows first, into a work buffer that is ow wide and sh high
+		int[] work = new int[ow * sh];
+		Contributions rc = new Contributions(getRowContrib(f, sw, ow), sw);
+		pool.invoke(new ResampleTask(false, spx, getBiOffset(sras, ssm, 0, 0), ssm.getScanlineStride(), work, 0, ow, rc, ow, alpha, true, 0, sh));
+
+		//-- Then the columns, from the work buffer into the result
+		BufferedImage dsti = new BufferedImage(ow, oh, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Raster dras = dsti.getRaster();
+		SinglePixelPackedSampleModel dsm = (SinglePixelPackedSampleModel) dras.getSampleModel();
+		int[] dpx = ((DataBufferInt) dras.getDataBuffer()).getData();
+		Contributions cc = new Contributions(getColContrib(f, sh, oh), sh);
+		pool.invoke(new ResampleTask(true, work, 0, ow, dpx, getBiOffset(dras, dsm, 0, 0), dsm.getScanlineStride(), cc, ow, alpha, false, 0, oh));
+		return dsti;
+	}
+
+	static public BufferedImage resampleParallel(BufferedImage srci, ResamplerFilter f, int ow, int oh) {
+		return resampleParallel(srci, f, ow, oh, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Returns the image as one whose raster is a single int[]: opaque images as TYPE_INT_RGB, others as TYPE_INT_ARGB_PRE.
+	 */
+	static private BufferedImage toIntRaster(BufferedImage src) {
+		int type = src.getType();
+		if(type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB_PRE)
+			return src;
+		BufferedImage bi = new BufferedImage(src.getWidth(), src.getHeight(), src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(src, 0, 0, null);
+		g.dispose();
+		return bi;
+	}
+
+	/**
+	 * The contributor lists flattened into arrays, so that the inner loops walk arrays instead of objects.
+	 * The weights for each destination pixel are normalized to add up to 1, so that flat areas keep their color.
+	 */
+	static private final class Contributions {
+		/** Per destination pixel the index of its first contributor; the entry after the last pixel holds the total. */
+		final int[] m_start;
+
+		final int[] m_pixel;
+
+		final float[] m_weight;
+
+		Contributions(ContribList[] list, int sourceSize) {
+			int count = 0;
+			for(ContribList cl : list)
+				count += cl.m_n;
+			m_start = new int[list.length + 1];
+			m_pixel = new int[count];
+			m_weight = new float[count];
+			int ix = 0;
+			for(int i = 0; i < list.length; i++) {
+				m_start[i] = ix;
+				ContribList cl = list[i];
+				float total = 0.0f;
+				for(int j = 0; j < cl.m_n; j++)
+					total += cl.m_ar[j].m_weight;
+				if(total == 0.0f)
+					total = 1.0f;
+				for(int j = 0; j < cl.m_n; j++) {
+					int px = cl.m_ar[j].m_pixel;
+					m_pixel[ix] = px < 0 ? 0 : px >= sourceSize ? sourceSize - 1 : px;
+					m_weight[ix++] = cl.m_ar[j].m_weight / total;
+				}
+			}
+			m_start[list.length] = ix;
+		}
+	}
+
+	/**
+	 * Resamples the lines [from, to&gt; of one pass, splitting itself when that is more than {@link #STRIP_PIXELS}
+	 * pixels. The row pass has a line per source row and filters along it; the column pass has a line per
+	 * destination row and filters the work buffer's rows into it, so both passes read memory sequentially.
+	 */
+	static private final class ResampleTask extends RecursiveAction {
+		private final boolean m_columns;
+
+		private final int[] m_src;
+
+		private final int m_srcOffset;
+
+		private final int m_srcStride;
+
+		private final int[] m_dst;
+
+		private final int m_dstOffset;
+
+		private final int m_dstStride;
+
+		private final Contributions m_contrib;
+
+		private final int m_width;
+
+		private final boolean m_alpha;
+
+		private final boolean m_premultiplied;
+
+		private final int m_from;
+
+		private final int m_to;
+
+		ResampleTask(boolean columns, int[] src, int srcOffset, int srcStride, int[] dst, int dstOffset, int dstStride, Contributions contrib, int width, boolean alpha, boolean premultiplied, int from, int to) {
+			m_columns = columns;
+			m_src = src;
+			m_srcOffset = srcOffset;
+			m_srcStride = srcStride;
+			m_dst = dst;
+			m_dstOffset = dstOffset;
+			m_dstStride = dstStride;
+			m_contrib = contrib;
+			m_width = width;
+			m_alpha = alpha;
+			m_premultiplied = premultiplied;
+			m_from = from;
+			m_to = to;
+		}
+
+		private ResampleTask split(int from, int to) {
+			return new ResampleTask(m_columns, m_src, m_srcOffset, m_srcStride, m_dst, m_dstOffset, m_dstStride, m_contrib, m_width, m_alpha, m_premultiplied, from, to);
+		}
+
+		@Override
+		protected void compute() {
+			if(m_to - m_from > 1 && (long) (m_to - m_from) * m_width > STRIP_PIXELS) {
+				int mid = (m_from + m_to) >>> 1;
+				invokeAll(split(m_from, mid), split(mid, m_to));
+				return;
+			}
+			for(int line = m_from; line < m_to; line++) {
+				if(m_columns)
+					resampleColumns(line);
+				else
+					resampleRow(line);
+			}
+		}
+
+		private void resampleRow(int y) {
+			int[] start = m_contrib.m_start;
+			int[] pixel = m_contrib.m_pixel;
+			float[] weight = m_contrib.m_weight;
+			int[] src = m_src;
+			int s = m_srcOffset + y * m_srcStride;
+			int d = m_dstOffset + y * m_dstStride;
+			for(int i = 0; i < m_width; i++) {
+				float a = 0.0f;
+				float r = 0.0f;
+				float g = 0.0f;
+				float b = 0.0f;
+				for(int k = start[i], e = start[i + 1]; k < e; k++) {
+					int argb = src[s + pixel[k]];
+					float w = weight[k];
+					a += w * (argb >>> 24);
+					r += w * ((argb >> 16) & 0xff);
+					g += w * ((argb >> 8) & 0xff);
+					b += w * (argb & 0xff);
+				}
+				m_dst[d++] = pack(a, r, g, b);
+			}
+		}
+
+		private void resampleColumns(int y) {
+			int[] pixel = m_contrib.m_pixel;
+			float[] weight = m_contrib.m_weight;
+			int[] src = m_src;
+			int ks = m_contrib.m_start[y];
+			int ke = m_contrib.m_start[y + 1];
+			int d = m_dstOffset + y * m_dstStride;
+			for(int x = 0; x < m_width; x++) {
+				float a = 0.0f;
+				float r = 0.0f;
+				float g = 0.0f;
+				float b = 0.0f;
+				for(int k = ks; k < ke; k++) {
+					int argb = src[m_srcOffset + pixel[k] * m_srcStride + x];
+					float w = weight[k];
+					a += w * (argb >>> 24);
+					r += w * ((argb >> 16) & 0xff);
+					g += w * ((argb >> 8) & 0xff);
+					b += w * (argb & 0xff);
+				}
+				m_dst[d++] = pack(a, r, g, b);
+			}
+		}
+
+		/**
+		 * Make a pixel from the filtered channels. Premultiplied colors cannot exceed their alpha.
+		 */
+		private int pack(float a, float r, float g, float b) {
+			if(!m_alpha)
+				return (clamp(r, 255) << 16) | (clamp(g, 255) << 8) | clamp(b, 255);
+			int ia = clamp(a, 255);
+			int ir = clamp(r, ia);
+			int ig = clamp(g, ia);
+			int ib = clamp(b, ia);
+			if(!m_premultiplied && ia != 0 && ia != 255) {
+				ir = (ir * 255 + ia / 2) / ia;
+				ig = (ig * 255 + ia / 2) / ia;
+				ib = (ib * 255 + ia / 2) / ia;
+			}
+			return (ia << 24) | (ir << 16) | (ig << 8) | ib;
+		}
+
+		static private int clamp(float v, int max) {
+			if(v <= 0.0f)
+				return 0;
+			int iv = (int) (v + 0.5f);
+			return iv > max ? max : iv;
+		}
+	}
+
 	/*--------------------------------------------------------------*/
 	/*	CODING:	Testing code.....									*/
 	/*--------------------------------------------------------------*/
@@ -721,6 +962,44 @@ public class ImageSubsampler {
 			resample(bi, filter, p.x, p.y);
 		t = System.currentTimeMillis() - t;
 		System.out.println(t + " millis");
+
+		//-- The same with the parallel resampler, for one image and for a page full of thumbnails at once
+		System.out.print("Performance of " + fn + " parallel-preload,");
+		resampleParallel(bi, filter, p.x, p.y);
+		resampleParallel(bi, filter, p.x, p.y);
+		System.gc();
+
+		System.out.print("measure,");
+		t = System.currentTimeMillis();
+		for(int i = 0; i < 10; i++)
+			resampleParallel(bi, filter, p.x, p.y);
+		t = System.currentTimeMillis() - t;
+		System.out.println(t + " millis");
+
+		System.out.print("Throughput of 60 images: serial ");
+		t = System.currentTimeMillis();
+		for(int i = 0; i < 60; i++)
+			resample(bi, filter, p.x, p.y);
+		t = System.currentTimeMillis() - t;
+		System.out.print(t + " millis, parallel ");
+		t = System.currentTimeMillis();
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				RecursiveAction[] all = new RecursiveAction[60];
+				for(int i = 0; i < all.length; i++) {
+					all[i] = new RecursiveAction() {
+						@Override
+						protected void compute() {
+							resampleParallel(bi, filter, p.x, p.y);
+						}
+					};
+				}
+				invokeAll(all);
+			}
+		});
+		t = System.currentTimeMillis() - t;
+		System.out.println(t + " millis");
 	}
 
 
@@ -735,7 +1014,7 @@ public class ImageSubsampler {
 		if(args.length != 4 && args.length != 2) {
 			System.out.println("Usage: ImageSubsampler <filename> <FilterClass> <maxwid> <maxhig>");
 			System.out.println("Filters I know of are: Bell, Box, Hermite, Lanczos3, Mitchell,");
-			System.out.println("Spline and Triangle. You can also specify ALL to get an output image for EACH filter..");
+			System.out.println("Spline and Triangle. You can also specify ALL to get an output image for EACH filter, or PERF to compare the speed of the serial and the parallel resampler.");
 			System.exit(10);
 		}
 
@@ -780,6 +1059,7 @@ public class ImageSubsampler {
 				pw.close();
 			} else if(args[1].equalsIgnoreCase("perf")) {
 				perfFilter(bi, "Bell", p);
+				perfFilter(bi, "Lanczos3", p);
 			} else {
 				saveWithFilter(bi, args[1], p);
 			}
@@ -1663,6 +1663,66 @@ public class StringTool {
 		}
 	}
 
+	/**
+	 * Writes the string as a strict JSON string literal, i.e. always double quoted and without
+	 * the \' escape that {@link #strToJavascriptString(Appendable, String, boolean)} uses and
+	 * that JSON.parse rejects.
+	 */
+	static public void strToJsonString(final Appendable w, final CharSequence cs) {
+		try {
+			int len = cs.length();
+			int ix = 0;
+			w.append('\"');
+			while(ix < len) {
+				//-- Collect a run
+				int runstart = ix;
+				char c = 0;
+				while(ix < len) {
+					c = cs.charAt(ix);
+					if(c < 32 || c == '\"' || c == '\\' || c == '\u2028' || c == '\u2029')
+						break;
+					ix++;
+				}
+				if(ix > runstart) {
+					w.append(cs, runstart, ix);
+					if(ix >= len)
+						break;
+				}
+				ix++;
+				switch(c){
+					default:
+						w.append("\\u"); // Unicode escape, also for the javascript line separators
+						w.append(StringTool.intToStr(c & 0xffff, 16, 4));
+						break;
+					case '\n':
+						w.append("\\n");
+						break;
+					case '\b':
+						w.append("\\b");
+						break;
+					case '\f':
+						w.append("\\f");
+						break;
+					case '\r':
+						w.append("\\r");
+						break;
+					case '\t':
+						w.append("\\t");
+						break;
+					case '\"':
+						w.append("\\\"");
+						break;
+					case '\\':
+						w.append("\\\\");
+						break;
+				}
+			}
+			w.append('\"');
+		} catch(IOException x) {
+			throw WrappedException.wrap(x);
+		}
+	}
+
 	/*--------------------------------------------------------------*/
 	/*	CODING:	Database field translation...						*/
 	/*--------------------------------------------------------------*/
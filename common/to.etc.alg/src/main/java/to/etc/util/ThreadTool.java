@@ -0,0 +1,31 @@
+package to.etc.util;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Thread helpers.
+ *
+ * Created on 19-10-26.
+ */
+final public class ThreadTool {
+	private ThreadTool() {
+	}
+
+	/**
+	 * Returns an executor that starts a new virtual thread for every task, or null if the JVM has
+	 * no virtual threads. The method is looked up because we compile for JVMs that do not have them.
+	 */
+	@Nullable
+	static public ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch(Exception x) {
+			return null;
+		}
+	}
+}
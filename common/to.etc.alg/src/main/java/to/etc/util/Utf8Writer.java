@@ -0,0 +1,218 @@
+package to.etc.util;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Writer that encodes to UTF-8 and writes the bytes to an OutputStream. The bytes are collected
+ * in a buffer that is taken from a pool, and that is returned to the pool when the writer is closed.
+ * Closing the writer flushes it but does not close the stream; use {@link #discard()} instead when
+ * the output failed, so that the unwritten part of the buffer is not written.
+ *
+ * <p>This is meant for writing large responses directly to a response stream, without first
+ * collecting them in a String.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class Utf8Writer extends Writer {
+	static private final int BUFFER_SIZE = 16384;
+
+	static private final int MAX_POOLED = 64;
+
+	static private final ConcurrentLinkedQueue<byte[]> m_pool = new ConcurrentLinkedQueue<>();
+
+	static private final AtomicInteger m_pooledCount = new AtomicInteger();
+
+	@NonNull
+	final private OutputStream m_os;
+
+	@Nullable
+	private byte[] m_buffer;
+
+	private int m_len;
+
+	/** The high surrogate of a pair whose low surrogate was not written yet. */
+	private char m_highSurrogate;
+
+	public Utf8Writer(@NonNull OutputStream os) {
+		m_os = os;
+		byte[] buffer = m_pool.poll();
+		if(null == buffer)
+			buffer = new byte[BUFFER_SIZE];
+		else
+			m_pooledCount.decrementAndGet();
+		m_buffer = buffer;
+	}
+
+	@NonNull
+	private byte[] buffer() throws IOException {
+		byte[] buffer = m_buffer;
+		if(null == buffer)
+			throw new IOException("The writer is closed");
+		return buffer;
+	}
+
+	private void flushBuffer() throws IOException {
+		if(m_len > 0) {
+			m_os.write(buffer(), 0, m_len);
+			m_len = 0;
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		byte[] buf = buffer();
+		if(c < 0x80 && m_highSurrogate == 0) {
+			if(m_len >= buf.length)
+				flushBuffer();
+			buf[m_len++] = (byte) c;
+			return;
+		}
+		encode((char) c);
+	}
+
+	@Override
+	public void write(@NonNull char[] cbuf, int off, int len) throws IOException {
+		byte[] buf = buffer();
+		int end = off + len;
+		while(off < end) {
+			//-- Copy the run of ASCII characters that fits in the buffer.
+			int ix = m_len;
+			int max = Math.min(end, off + buf.length - ix);
+			if(m_highSurrogate == 0) {
+				while(off < max) {
+					char c = cbuf[off];
+					if(c >= 0x80)
+						break;
+					buf[ix++] = (byte) c;
+					off++;
+				}
+			}
+			m_len = ix;
+			if(off >= end)
+				return;
+			if(off >= max)
+				flushBuffer();
+			else
+				encode(cbuf[off++]);
+		}
+	}
+
+	@Override
+	public void write(@NonNull String str, int off, int len) throws IOException {
+		byte[] buf = buffer();
+		int end = off + len;
+		while(off < end) {
+			int ix = m_len;
+			int max = Math.min(end, off + buf.length - ix);
+			if(m_highSurrogate == 0) {
+				while(off < max) {
+					char c = str.charAt(off);
+					if(c >= 0x80)
+						break;
+					buf[ix++] = (byte) c;
+					off++;
+				}
+			}
+			m_len = ix;
+			if(off >= end)
+				return;
+			if(off >= max)
+				flushBuffer();
+			else
+				encode(str.charAt(off++));
+		}
+	}
+
+	/**
+	 * Encode a single character, which can be part of a surrogate pair.
+	 */
+	private void encode(char c) throws IOException {
+		byte[] buf = buffer();
+		if(buf.length - m_len < 4)
+			flushBuffer();
+		char hs = m_highSurrogate;
+		if(hs != 0) {
+			m_highSurrogate = 0;
+			if(Character.isLowSurrogate(c)) {
+				int cp = Character.toCodePoint(hs, c);
+				buf[m_len++] = (byte) (0xf0 | (cp >> 18));
+				buf[m_len++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				buf[m_len++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				buf[m_len++] = (byte) (0x80 | (cp & 0x3f));
+				return;
+			}
+			buf[m_len++] = '?';								// Unpaired high surrogate
+			if(buf.length - m_len < 4)
+				flushBuffer();
+		}
+
+		if(c < 0x80) {
+			buf[m_len++] = (byte) c;
+		} else if(c < 0x800) {
+			buf[m_len++] = (byte) (0xc0 | (c >> 6));
+			buf[m_len++] = (byte) (0x80 | (c & 0x3f));
+		} else if(Character.isHighSurrogate(c)) {
+			m_highSurrogate = c;
+		} else if(Character.isLowSurrogate(c)) {
+			buf[m_len++] = '?';								// Unpaired low surrogate
+		} else {
+			buf[m_len++] = (byte) (0xe0 | (c >> 12));
+			buf[m_len++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			buf[m_len++] = (byte) (0x80 | (c & 0x3f));
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		m_os.flush();
+	}
+
+	/**
+	 * Flushes all data to the stream and returns the buffer to the pool. The stream is not closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(null == m_buffer)
+			return;
+		try {
+			if(m_highSurrogate != 0) {
+				m_highSurrogate = 0;
+				write('?');
+			}
+			flush();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Returns the buffer to the pool without writing what is still in it, for when the output
+	 * failed halfway. Data that was already flushed (every full buffer) has been written, of course.
+	 * This does nothing when the writer was closed already, so it can be called in a finally block
+	 * after {@link #close()}.
+	 */
+	public void discard() {
+		m_len = 0;
+		m_highSurrogate = 0;
+		release();
+	}
+
+	private void release() {
+		byte[] buffer = m_buffer;
+		if(null == buffer)
+			return;
+		m_buffer = null;
+		if(m_pooledCount.incrementAndGet() <= MAX_POOLED)
+			m_pool.add(buffer);
+		else
+			m_pooledCount.decrementAndGet();
+	}
+}
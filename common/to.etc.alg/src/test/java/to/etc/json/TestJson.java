@@ -5,6 +5,7 @@ import java.util.*;
 
 import org.junit.*;
 
+import to.etc.lexer.*;
 import to.etc.util.*;
 
 public class TestJson {
@@ -56,4 +57,82 @@ public class TestJson {
 
 
 	}
+
+	@Test
+	public void testNestedObjects() throws Exception {
+		String in = "{number1:1,next:{number1:2,list1:[{number1:4,string1:'in list'}],next:{number1:3,string1:\"deepest\"}}}";
+		JsonData1 data = JSON.decode(JsonData1.class, new StringReader(in));
+		Assert.assertEquals(1, data.getNumber1());
+		JsonData1 next = data.getNext();
+		Assert.assertEquals(2, next.getNumber1());
+		Assert.assertEquals(1, next.getList1().size());
+		Assert.assertEquals(4, next.getList1().get(0).getNumber1());
+		Assert.assertEquals("in list", next.getList1().get(0).getString1());
+		Assert.assertEquals(3, next.getNext().getNumber1());
+		Assert.assertEquals("deepest", next.getNext().getString1());
+		Assert.assertNull(next.getNext().getNext());
+	}
+
+	@Test
+	public void testEscapes() throws Exception {
+		String in = "{string1:'it\\'s \\\"quoted\\\"\\n\\ttab \\\\ slash \\/',string2:\"\\u00e9\\u20ac \\ud83d\\ude00 \u00e9\"}";
+		JsonData1 data = JSON.decode(JsonData1.class, new StringReader(in));
+		Assert.assertEquals("it's \"quoted\"\n\ttab \\ slash /", data.getString1());
+		Assert.assertEquals("\u00e9\u20ac \ud83d\ude00 \u00e9", data.getString2());
+
+		//-- Rendering and parsing again must give the same strings
+		StringWriter sw = new StringWriter();
+		JSON.render(sw, data);
+		JsonData1 copy = JSON.decode(JsonData1.class, new StringReader(sw.toString()));
+		Assert.assertEquals(data.getString1(), copy.getString1());
+		Assert.assertEquals(data.getString2(), copy.getString2());
+	}
+
+	@Test
+	public void testNumbers() throws Exception {
+		String in = "{ number1 : -2147483648 , number2:2147483647, long1:9223372036854775807, long2:-9223372036854775808, list2:[0,-1,3000000000]}";
+		JsonData1 data = JSON.decode(JsonData1.class, new StringReader(in));
+		Assert.assertEquals(Integer.MIN_VALUE, data.getNumber1());
+		Assert.assertEquals(Integer.MAX_VALUE, data.getNumber2());
+		Assert.assertEquals(Long.valueOf(Long.MAX_VALUE), data.getLong1());
+		Assert.assertEquals(Long.valueOf(Long.MIN_VALUE), data.getLong2());
+		Assert.assertEquals(Arrays.asList(Long.valueOf(0), Long.valueOf(-1), Long.valueOf(3000000000L)), data.getList2());
+	}
+
+	@Test
+	public void testNullToWrapper() throws Exception {
+		JsonData1 data = JSON.decode(JsonData1.class, new StringReader("{long1:null,string1:null,next:null}"));
+		Assert.assertNull(data.getLong1());
+		Assert.assertNull(data.getString1());
+		Assert.assertNull(data.getNext());
+	}
+
+	@Test
+	public void testNullToPrimitive() throws Exception {
+		try {
+			JSON.decode(JsonData1.class, new StringReader("{number1:null}"));
+			Assert.fail("null must not be accepted for an int property");
+		} catch(JsonParseException x) {
+			Assert.assertTrue(x.getMessage(), x.getMessage().contains("number1"));
+		}
+	}
+
+	@Test
+	public void testRawAndDecodedTokens() throws Exception {
+		JsonReader r = new JsonReader("test", new StringReader("'plain' \"a\\tb\\u0041\" ident 12"), new JsonTypeRegistry());
+		Assert.assertEquals(ReaderScannerBase.T_STRING, r.nextToken());
+		Assert.assertEquals("plain", r.getCopied());
+		Assert.assertEquals("plain", r.getStringValue());
+
+		//-- The raw token keeps the escapes as written
+		Assert.assertEquals(ReaderScannerBase.T_STRING, r.nextToken());
+		Assert.assertEquals("a\\tb\\u0041", r.getCopied());
+		Assert.assertEquals("a\tbA", r.getStringValue());
+
+		Assert.assertEquals(ReaderScannerBase.T_IDENT, r.nextToken());
+		Assert.assertEquals("ident", r.getCopied());
+		Assert.assertEquals("ident", r.getStringValue());
+		Assert.assertEquals(ReaderScannerBase.T_NUMBER, r.nextToken());
+		Assert.assertEquals("12", r.getCopied());
+	}
 }
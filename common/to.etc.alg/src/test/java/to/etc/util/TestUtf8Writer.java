@@ -0,0 +1,113 @@
+package to.etc.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Created on 19-10-26.
+ */
+public class TestUtf8Writer {
+	/** Text with 1, 2, 3 and 4 byte characters: a, e-acute, euro, and a smiley (a surrogate pair). */
+	static private final String MIXED = "aé€😀z";
+
+	static private final int BUFFER_SIZE = 16384;
+
+	static private String ascii(int len) {
+		StringBuilder sb = new StringBuilder(len);
+		for(int i = 0; i < len; i++)
+			sb.append((char) ('a' + i % 26));
+		return sb.toString();
+	}
+
+	static private byte[] writeString(String s) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(Utf8Writer w = new Utf8Writer(bos)) {
+			w.write(s);
+		}
+		return bos.toByteArray();
+	}
+
+	static private byte[] writeChars(String s) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(Utf8Writer w = new Utf8Writer(bos)) {
+			w.write(s.toCharArray(), 0, s.length());
+		}
+		return bos.toByteArray();
+	}
+
+	static private byte[] writeSingle(String s) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(Utf8Writer w = new Utf8Writer(bos)) {
+			for(int i = 0; i < s.length(); i++)
+				w.write(s.charAt(i));
+		}
+		return bos.toByteArray();
+	}
+
+	static private void check(String s) throws Exception {
+		byte[] expected = s.getBytes(StandardCharsets.UTF_8);
+		Assert.assertArrayEquals("write(String)", expected, writeString(s));
+		Assert.assertArrayEquals("write(char[])", expected, writeChars(s));
+		Assert.assertArrayEquals("write(int)", expected, writeSingle(s));
+	}
+
+	@Test
+	public void testMixed() throws Exception {
+		check(MIXED);
+		check(MIXED + MIXED + "plain ascii" + MIXED);
+	}
+
+	/**
+	 * Put every kind of character on and around the point where the buffer gets flushed.
+	 */
+	@Test
+	public void testBufferBoundaries() throws Exception {
+		for(int len = BUFFER_SIZE - 6; len <= BUFFER_SIZE + 2; len++) {
+			check(ascii(len) + MIXED + ascii(100));
+			check(ascii(len) + "😀😀" + ascii(len));
+		}
+		check(ascii(3 * BUFFER_SIZE + 7));
+	}
+
+	@Test
+	public void testSurrogatePairSplitOverWrites() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(Utf8Writer w = new Utf8Writer(bos)) {
+			w.write("x\ud83d");
+			w.write("\ude00y".toCharArray());
+		}
+		Assert.assertArrayEquals("x😀y".getBytes(StandardCharsets.UTF_8), bos.toByteArray());
+	}
+
+	@Test
+	public void testUnpairedSurrogates() throws Exception {
+		Assert.assertEquals("a?b", new String(writeString("a\ud83db"), StandardCharsets.UTF_8));
+		Assert.assertEquals("a?b", new String(writeString("a\ude00b"), StandardCharsets.UTF_8));
+		Assert.assertEquals("a?é", new String(writeChars("a\ud83dé"), StandardCharsets.UTF_8));
+		Assert.assertEquals("end?", new String(writeSingle("end\ud83d"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testDiscardWritesNothingBuffered() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Utf8Writer w = new Utf8Writer(bos);
+		w.write("{\"half\":");
+		w.discard();
+		Assert.assertEquals(0, bos.size());
+		w.close();										// No-op after discard
+		Assert.assertEquals(0, bos.size());
+	}
+
+	@Test
+	public void testDiscardAfterClose() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Utf8Writer w = new Utf8Writer(bos);
+		w.write(MIXED);
+		w.close();
+		w.discard();
+		Assert.assertArrayEquals(MIXED.getBytes(StandardCharsets.UTF_8), bos.toByteArray());
+	}
+}
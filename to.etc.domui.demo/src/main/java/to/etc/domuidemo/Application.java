@@ -47,6 +47,7 @@ public class Application extends DomApplication {
 		ImageCache.initialize(32 * 1024 * 1024, 5l * 1024 * 1024 * 1024, new File("/tmp/imagecache"));
 
 		setDefaultThemeFactory(SassThemeFactory.INSTANCE);
+		setServerPush(true);
 
 		//-- Append the default style sheet.
 		addHeaderContributor(HeaderContributor.loadStylesheet("css/demostyle.scss"), 1000);	// Add default stylesheet for the app
@@ -30,7 +30,7 @@ import org.slf4j.LoggerFactory;
 import to.etc.domui.annotations.AjaxHandler;
 import to.etc.domui.annotations.AjaxParam;
 import to.etc.domui.annotations.ResponseFormat;
-import to.etc.util.IndentWriter;
+import to.etc.util.DeveloperOptions;
 import to.etc.util.StringTool;
 import to.etc.webapp.ajax.renderer.JSONParser;
 import to.etc.webapp.ajax.renderer.StructuredWriter;
@@ -44,11 +44,11 @@ import to.etc.xml.XmlWriter;
 
 import java.io.Writer;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A generic class that allows for Java services (methods on a service class)
@@ -63,7 +63,7 @@ public class RpcCallHandler {
 	//	static private boolean[]		PARAMONE = {true};
 	//
 	/** Maps keys to resolved handler info thingies, for speed. */
-	private final Map<String, RpcClassDefinition> m_classDefMap = new HashMap<String, RpcClassDefinition>();
+	private final Map<String, RpcClassDefinition> m_classDefMap = new ConcurrentHashMap<String, RpcClassDefinition>();
 
 	private final XmlRegistry m_xmlRegistry = new XmlRegistry();
 
@@ -71,6 +71,9 @@ public class RpcCallHandler {
 
 	private ResponseFormat m_defaultFormat = ResponseFormat.XML;
 
+	/** When set, JSON responses are indented for debugging. */
+	private boolean m_prettyJson = DeveloperOptions.getBool("domui.prettyjson", false);
+
 	public RpcCallHandler() {}
 
 
@@ -92,27 +95,24 @@ public class RpcCallHandler {
 	}
 
 	private RpcClassDefinition getServiceClassDefinition(final String basename) throws Exception {
-		RpcClassDefinition hi = null;
-		synchronized(this) {
-			hi = m_classDefMap.get(basename);
-			if(hi != null)
-				return hi;
-
-			//-- Not cached yet. Get a ref
-			Class< ? > cl = findClass(basename);
-			if(cl == null)
-				throw new RpcException("Unknown class '" + basename + "'");
-
-			//-- Make sure this is annotated as a handler (security)
-			AjaxHandler am = cl.getAnnotation(AjaxHandler.class);
-			if(am == null)
-				throw new RpcException("The class '" + cl.getCanonicalName() + "' is not annotated as an @AjaxHandler");
-
-			hi = new RpcClassDefinition(cl);
-			m_classDefMap.put(basename, hi);
-			m_classDefMap.put(cl.getCanonicalName(), hi); // Register actual name too; if basename == actual this just replaces the earlier put
+		RpcClassDefinition hi = m_classDefMap.get(basename);
+		if(hi != null)
 			return hi;
-		}
+
+		//-- Not cached yet. Get a ref
+		Class< ? > cl = findClass(basename);
+		if(cl == null)
+			throw new RpcException("Unknown class '" + basename + "'");
+
+		//-- Make sure this is annotated as a handler (security)
+		AjaxHandler am = cl.getAnnotation(AjaxHandler.class);
+		if(am == null)
+			throw new RpcException("The class '" + cl.getCanonicalName() + "' is not annotated as an @AjaxHandler");
+
+		//-- Register by the actual name too, and make sure all names share one definition when other threads raced us.
+		hi = m_classDefMap.computeIfAbsent(cl.getCanonicalName(), k -> new RpcClassDefinition(cl));
+		RpcClassDefinition old = m_classDefMap.putIfAbsent(basename, hi);
+		return old == null ? hi : old;
 	}
 
 	/**
@@ -250,7 +250,8 @@ public class RpcCallHandler {
 
 	/**
 	 * This takes whatever source (either the request context or a JSON/XML parameter map) and
-	 * assigns parameters to the call, then issues the call. The result is returned.
+	 * assigns parameters to the call, then issues the call. The result is returned. How the
+	 * parameters are bound and the method is called is prepared once by the method definition.
 	 *
 	 * @param mi
 	 * @param handler
@@ -264,38 +265,17 @@ public class RpcCallHandler {
 		sb.append("SVC: call ");
 		sb.append(mi.toString());
 		try {
-			Class< ? >[] formals = mi.getMethod().getParameterTypes();
-			Object[] args = new Object[formals.length];
-			Annotation[][] argannar = mi.getMethod().getParameterAnnotations();
-			int oix = 0; // Output parametert output
-			int ix = 0; // Actual parameter
-			if(output != null) {
-				//-- The thingy is void and generates it's own output somehow
-				args[0] = output;
-				oix = 1; // Skip 1st parameter in assignment from input
-			}
-			while(oix < formals.length) {
-				AjaxParam apm = findAnnotation(argannar[oix], AjaxParam.class);
-				if(apm == null)
-					throw new RpcException("Parameter " + oix + " of method " + mi.getMethod() + " is missing an @AjaxParam annotation.");
-				args[oix] = papro.findParameterValue(formals[oix], argannar[oix], ix, apm);
-				if(args[oix] == IParameterProvider.NO_VALUE)
-					throw new RpcException("Parameter " + oix + " of method " + mi.getMethod() + " has no value.");
-				oix++;
-			}
-			result = mi.getMethod().invoke(handler, args);
+			result = mi.invoke(handler, papro, output);
 			sb.append(": okay, result=");
 			if(result == null)
 				sb.append("null");
 			else
 				sb.append(result.getClass().getName());
-		} catch(InvocationTargetException ix) {
-			Throwable x = ix.getCause();
+		} catch(RpcException x) {
+			Throwable cause = x.getCause() == null ? x : x.getCause();
 			sb.append(": exception ");
-			sb.append(x.toString());
-
-			//-- Create a service exception from this
-			throw new RpcException(x, x.getMessage());
+			sb.append(cause.toString());
+			throw x;
 		} finally {
 			ts = System.nanoTime() - ts;
 			sb.append(" (");
@@ -349,15 +329,14 @@ public class RpcCallHandler {
 	/*--------------------------------------------------------------*/
 
 	private void renderResponseObject(final Writer ow, final ResponseFormat rf, final Object result) throws Exception {
-		XmlWriter xw = new XmlWriter(ow);
 		switch(rf){
 			default:
-				XmlRenderer xr = new XmlRenderer(getXmlRegistry(), xw);
+				XmlRenderer xr = new XmlRenderer(getXmlRegistry(), new XmlWriter(ow));
 				xr.render(result);
 				break;
 
 			case JSON:
-				JSONRenderer jr = new JSONRenderer(getJSONRegistry(), xw, true);
+				JSONRenderer jr = new JSONRenderer(getJSONRegistry(), ow, true, m_prettyJson);
 				jr.render(result);
 				break;
 		}
@@ -383,7 +362,7 @@ public class RpcCallHandler {
 				default:
 					throw new RpcException("Unknown response format " + rf);
 				case JSON:
-					JSONRenderer jr = new JSONRenderer(getJSONRegistry(), new IndentWriter(ow), true);
+					JSONRenderer jr = new JSONRenderer(getJSONRegistry(), ow, true, m_prettyJson);
 					return (T) new JSONStructuredWriter(jr);
 				case XML:
 					XmlRenderer xr = new XmlRenderer(getXmlRegistry(), new XmlWriter(ow));
@@ -500,4 +479,15 @@ public class RpcCallHandler {
 	public JSONRegistry getJSONRegistry() {
 		return m_JSONRegistry;
 	}
+
+	public boolean isPrettyJson() {
+		return m_prettyJson;
+	}
+
+	/**
+	 * When set, JSON responses are indented. This is for debugging only: by default they are compact.
+	 */
+	public void setPrettyJson(boolean prettyJson) {
+		m_prettyJson = prettyJson;
+	}
 }
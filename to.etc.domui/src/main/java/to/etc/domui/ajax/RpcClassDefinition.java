@@ -25,13 +25,14 @@
 package to.etc.domui.ajax;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import to.etc.domui.annotations.*;
 
 public class RpcClassDefinition {
 	private final Class< ? > m_handlerClass;
 
-	private boolean m_initialized;
+	private volatile boolean m_initialized;
 
 	private Exception m_errorException;
 
@@ -39,13 +40,21 @@ public class RpcClassDefinition {
 
 	private ResponseFormat m_responseFormat;
 
-	private final Map<String, RpcMethodDefinition> m_methodMap = new HashMap<String, RpcMethodDefinition>();
+	private final Map<String, RpcMethodDefinition> m_methodMap = new ConcurrentHashMap<String, RpcMethodDefinition>();
 
 	public RpcClassDefinition(final Class< ? > cl) {
 		m_handlerClass = cl;
 	}
 
-	synchronized public void initialize() throws Exception {
+	public void initialize() throws Exception {
+		if(m_initialized)
+			return;
+		synchronized(this) {
+			initializeLocked();
+		}
+	}
+
+	private void initializeLocked() throws Exception {
 		if(m_errorException != null)
 			throw m_errorException;
 		if(m_initialized)
@@ -90,12 +99,8 @@ public class RpcClassDefinition {
 	/**
 	 *
 	 */
-	public synchronized RpcMethodDefinition getMethod(final String name) throws Exception {
-		RpcMethodDefinition mi = m_methodMap.get(name);
-		if(mi == null) {
-			mi = new RpcMethodDefinition(this, name);
-			m_methodMap.put(name, mi);
-		}
+	public RpcMethodDefinition getMethod(final String name) throws Exception {
+		RpcMethodDefinition mi = m_methodMap.computeIfAbsent(name, n -> new RpcMethodDefinition(this, n));
 		mi.initialize();
 		return mi;
 	}
@@ -24,12 +24,46 @@
  */
 package to.etc.domui.ajax;
 
+import java.lang.annotation.*;
+import java.lang.invoke.*;
 import java.lang.reflect.*;
 import java.util.*;
 
 import to.etc.domui.annotations.*;
 
+/**
+ * A callable method on a handler class. Initializing it creates the plan for calling it: a binder
+ * for every parameter that gets its value from the request, and a MethodHandle that takes the
+ * handler instance and the array of arguments.
+ */
 public class RpcMethodDefinition {
+	/**
+	 * Gets the value for one parameter from an {@link IParameterProvider}.
+	 */
+	static final private class ParameterBinder {
+		private final int m_index;
+
+		private final Class< ? > m_type;
+
+		private final Annotation[] m_annotations;
+
+		private final AjaxParam m_param;
+
+		ParameterBinder(final int index, final Class< ? > type, final Annotation[] annotations, final AjaxParam param) {
+			m_index = index;
+			m_type = type;
+			m_annotations = annotations;
+			m_param = param;
+		}
+
+		Object bind(final IParameterProvider pv, final Method m) throws Exception {
+			Object value = pv.findParameterValue(m_type, m_annotations, 0, m_param);
+			if(value == IParameterProvider.NO_VALUE)
+				throw new RpcException("Parameter " + m_index + " of method " + m + " has no value.");
+			return value;
+		}
+	}
+
 	private final RpcClassDefinition m_ServiceClassDefinition;
 
 	private Method m_method;
@@ -42,7 +76,13 @@ public class RpcMethodDefinition {
 
 	private boolean m_static;
 
-	private boolean m_initialized;
+	private volatile boolean m_initialized;
+
+	/** The binders for the parameters that come from the request; the output parameter, if present, has none. */
+	private ParameterBinder[] m_binders;
+
+	/** Invokes the method as (Object handler, Object[] args) returning Object; null when the method can only be called by reflection. */
+	private MethodHandle m_invoker;
 
 	private ResponseFormat m_responseFormat;
 
@@ -59,6 +99,14 @@ public class RpcMethodDefinition {
 	}
 
 	void initialize() throws Exception {
+		if(m_initialized)
+			return;
+		synchronized(this) {
+			initializeLocked();
+		}
+	}
+
+	private void initializeLocked() throws Exception {
 		if(m_exc != null)
 			throw m_exc;
 		if(m_initialized)
@@ -69,6 +117,9 @@ public class RpcMethodDefinition {
 				throw new RpcException(m_ServiceClassDefinition.getHandlerClass() + " does not have a method called '" + m_name + "'");
 			checkReturnMethod();
 			checkAnnotations(m_method);
+			m_binders = createBinders(m_method);
+			m_invoker = createInvoker(m_method);
+			m_initialized = true;
 		} catch(Exception x) {
 			m_exc = x;
 			throw x;
@@ -128,6 +179,71 @@ public class RpcMethodDefinition {
 			m_responseFormat = m_ServiceClassDefinition.getResponseFormat(); // Else default to class's spec
 	}
 
+	private ParameterBinder[] createBinders(final Method m) throws Exception {
+		Class< ? >[] formals = m.getParameterTypes();
+		Annotation[][] argannar = m.getParameterAnnotations();
+		int start = m_outputClass == null ? 0 : 1;					// An output parameter is not bound from the request
+		ParameterBinder[] res = new ParameterBinder[formals.length - start];
+		for(int i = start; i < formals.length; i++) {
+			AjaxParam apm = RpcCallHandler.findAnnotation(argannar[i], AjaxParam.class);
+			if(apm == null)
+				throw new RpcException("Parameter " + i + " of method " + m + " is missing an @AjaxParam annotation.");
+			res[i - start] = new ParameterBinder(i, formals[i], argannar[i], apm);
+		}
+		return res;
+	}
+
+	/**
+	 * Create a handle for calling the method as (Object handler, Object[] args). Returns null if the
+	 * method is not publicly accessible, in which case it is called by reflection.
+	 */
+	static private MethodHandle createInvoker(final Method m) {
+		MethodHandle mh;
+		try {
+			mh = MethodHandles.publicLookup().unreflect(m);
+		} catch(IllegalAccessException x) {
+			return null;
+		}
+		int count = m.getParameterCount();
+		if(Modifier.isStatic(m.getModifiers()))
+			mh = MethodHandles.dropArguments(mh, 0, Object.class);			// Ignore the null handler
+		mh = mh.asType(MethodType.genericMethodType(count + 1));
+		return mh.asSpreader(Object[].class, count);
+	}
+
+	/**
+	 * Call the method with the parameters from the provider. When the method has an output
+	 * parameter the output is passed as the first parameter.
+	 */
+	Object invoke(final Object handler, final IParameterProvider pv, final Object output) throws Exception {
+		ParameterBinder[] binders = m_binders;
+		Object[] args;
+		int ix = 0;
+		if(m_outputClass != null) {
+			args = new Object[binders.length + 1];
+			args[ix++] = output;
+		} else
+			args = new Object[binders.length];
+		for(ParameterBinder b : binders)
+			args[ix++] = b.bind(pv, m_method);
+
+		MethodHandle mh = m_invoker;
+		if(null == mh) {
+			try {
+				return m_method.invoke(handler, args);
+			} catch(InvocationTargetException x) {
+				Throwable cause = x.getCause();
+				throw new RpcException(cause, cause.getMessage());
+			}
+		}
+
+		try {
+			return (Object) mh.invokeExact(handler, args);
+		} catch(Throwable x) {
+			throw new RpcException(x, x.getMessage());
+		}
+	}
+
 	final public ResponseFormat getResponseFormat() {
 		return m_responseFormat;
 	}
@@ -24,14 +24,28 @@
  */
 package to.etc.domui.caches.filecache;
 
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.util.FileTool;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The file area cache used by the image code. This maintains the file cache and cleans it out every
@@ -39,10 +53,36 @@ import java.util.Map;
  * this file cache, and after use these need to be released. This ensures that no files are removed
  * that are currently in use.
  *
+ * <p>The cache keeps an in-memory index of all its files with their size, in least-recently-used order,
+ * so it always knows its size without looking at the file system. Every change to the index is appended
+ * to a journal file in the cache root, and at startup the index is rebuilt by reading that journal, after
+ * which the journal is rewritten compacted. Only when there is no journal yet the directory is walked once.</p>
+ *
+ * <p>Files are spread over a two-level directory tree of 256x256 directories by the hash of their key, so
+ * that no directory grows too large. When the cache exceeds its maximum size a background thread removes
+ * the least recently used files that are not in use, until the cache is at {@link #LOW_WATER} of its size.</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Nov 30, 2009
  */
 public class FileCache {
+	static private final String JOURNAL = "journal.log";
+
+	/** Evict down to this fraction of the max size, so that eviction does not run for every new file. */
+	static private final double LOW_WATER = 0.9;
+
+	/** The min. time between journaled uses of the same file. */
+	static private final long TOUCH_INTERVAL = 60 * 1000;
+
+	/** The interval in which the journal is flushed to disk. */
+	static private final long FLUSH_INTERVAL = 5 * 1000;
+
+	/** The reaper interval while the cache is too large, because the files that could be evicted were all in use. */
+	static private final long RETRY_INTERVAL = 500;
+
+	/** The max #of files deleted in one go while holding the lock. */
+	static private final int DELETE_BATCH = 100;
+
 	private File m_cacheRoot;
 
 	/** Max size in cached files (10GB default) */
@@ -52,10 +92,38 @@ public class FileCache {
 
 	private Map<String, FileCacheEntry> m_refMap = new HashMap<String, FileCacheEntry>();
 
+	/** All files in the cache by key, least recently used first. */
+	private final LinkedHashMap<String, IndexEntry> m_index = new LinkedHashMap<>(1024, 0.75f, true);
+
+	/** Directories known to exist, so that they need not be created again. */
+	private final Set<File> m_knownDirs = ConcurrentHashMap.newKeySet();
+
+	@Nullable
+	private Writer m_journal;
+
+	/** The #of lines in the journal; when this is much larger than the index the journal gets compacted. */
+	private int m_journalLines;
+
+	@Nullable
+	private Thread m_reaperThread;
+
 	private boolean m_reaperRunning;
 
+	private long m_evictions;
+
 	private String m_cacheRootPath;
 
+	static private final class IndexEntry {
+		long m_size;
+
+		long m_lastUsed;
+
+		IndexEntry(long size, long lastUsed) {
+			m_size = size;
+			m_lastUsed = lastUsed;
+		}
+	}
+
 	public FileCache(File cacheRoot, long maxFileSize) {
 		m_cacheRoot = cacheRoot.getAbsoluteFile();
 		m_maxFileSize = maxFileSize;
@@ -72,6 +140,49 @@ public class FileCache {
 		m_cacheRoot.mkdirs();
 		if(!m_cacheRoot.exists() || !m_cacheRoot.isDirectory())
 			throw new IOException(m_cacheRoot + ": file cache root cannot be created or is not a directory.");
+
+		synchronized(this) {
+			File jf = new File(m_cacheRoot, JOURNAL);
+			if(jf.exists())
+				readJournal(jf);
+			else
+				importDirectory();
+			compactJournal();
+		}
+
+		Thread t = m_reaperThread = new Thread(this::reaperLoop, "FileCache reaper");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Stop the background thread and write the journal.
+	 */
+	public void close() {
+		Thread t = m_reaperThread;
+		m_reaperThread = null;
+		if(null != t)
+			t.interrupt();
+		synchronized(this) {
+			Writer w = m_journal;
+			m_journal = null;
+			FileTool.closeAll(w);
+		}
+	}
+
+	/**
+	 * The directory that a key's file is in is determined by the key's hash.
+	 */
+	@NonNull
+	private File getCacheFile(@NonNull String rpath) {
+		int h = rpath.hashCode();
+		return new File(m_cacheRoot, hex(h >>> 24) + "/" + hex(h >>> 16) + "/" + rpath);
+	}
+
+	@NonNull
+	static private String hex(int v) {
+		String s = Integer.toHexString(v & 0xff);
+		return s.length() == 1 ? "0" + s : s;
 	}
 
 	/**
@@ -83,11 +194,15 @@ public class FileCache {
 		//-- Check path for validity: cannot start with /, cannot contain '..'.
 		if(rpath.contains(".."))
 			throw new IllegalStateException("Invalid path: cannot contain ..");
-		if(rpath.contains(":") || rpath.startsWith("/"))
+		if(rpath.contains(":") || rpath.startsWith("/") || rpath.contains("\t") || rpath.contains("\n"))
 			throw new IllegalStateException("Invalid path: cannot be absolute");
 
-		File f = new File(getCacheRoot(), rpath);
-		f.getParentFile().mkdirs();
+		File f = getCacheFile(rpath);
+		File dir = f.getParentFile();
+		if(!m_knownDirs.contains(dir)) {
+			dir.mkdirs();
+			m_knownDirs.add(dir);
+		}
 
 		//-- Allocate a FileRef for this.
 		synchronized(this) {
@@ -120,6 +235,10 @@ public class FileCache {
 		ce.m_useCount++;
 	}
 
+	/**
+	 * Decrement the use count. When the file is no longer in use its size is accounted in the index,
+	 * as it can only have been written while it was in use.
+	 */
 	synchronized void decUse(FileCacheEntry ce) {
 		if(ce.m_useCount <= 0)
 			throw new IllegalStateException("Internal: use count invalid");
@@ -128,130 +247,298 @@ public class FileCache {
 
 		//-- Discard this entry: usecount has reached 0.
 		//-- This entry is no longer in use.
-		m_refMap.remove(ce.getKey());
-
-		//-- Set 'last modified' for LRU cleaning pps
-		try {
-			if(ce.getFile().exists()) {
-				ce.getFile().setLastModified(System.currentTimeMillis());
+		String key = ce.getKey();
+		m_refMap.remove(key);
+
+		File f = ce.getFile();
+		IndexEntry ie = m_index.get(key);					// Also makes it the most recently used one
+		long now = System.currentTimeMillis();
+		if(!f.exists()) {
+			if(null != ie) {
+				m_index.remove(key);
+				m_currentFileSize -= ie.m_size;
+				journal("D\t" + key);
 			}
-		} catch(Exception x) {}
+			return;
+		}
+
+		long size = f.length();
+		if(null == ie) {
+			m_index.put(key, new IndexEntry(size, now));
+			m_currentFileSize += size;
+			journal("A\t" + size + "\t" + now + "\t" + key);
+		} else if(ie.m_size != size) {
+			m_currentFileSize += size - ie.m_size;
+			ie.m_size = size;
+			ie.m_lastUsed = now;
+			journal("A\t" + size + "\t" + now + "\t" + key);
+		} else if(now - ie.m_lastUsed > TOUCH_INTERVAL) {
+			ie.m_lastUsed = now;
+			journal("T\t" + now + "\t" + key);
+		}
+		if(m_currentFileSize > m_maxFileSize)
+			notifyAll();									// Wake the reaper
 	}
 
 	/*--------------------------------------------------------------*/
-	/*	CODING:	File cache reaper.									*/
+	/*	CODING:	The journal.										*/
 	/*--------------------------------------------------------------*/
-	static private final int MAX_ENTRIES = 5000;
+	/**
+	 * Rebuild the index from the journal. Every line is one of:
+	 * <ul>
+	 *	<li>A size lastused key: a file was added or changed size;</li>
+	 *	<li>T lastused key: a file was used;</li>
+	 *	<li>D key: a file was deleted.</li>
+	 * </ul>
+	 * A line that cannot be read, like one half-written when the server stopped, is skipped.
+	 */
+	private void readJournal(@NonNull File jf) throws IOException {
+		try(BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(jf), StandardCharsets.UTF_8), 65536)) {
+			String line;
+			while(null != (line = r.readLine())) {
+				String[] ar = line.split("\t", 4);
+				try {
+					switch(ar[0]) {
+						default:
+							break;
+
+						case "A":
+							if(ar.length == 4) {
+								IndexEntry old = m_index.put(ar[3], new IndexEntry(Long.parseLong(ar[1]), Long.parseLong(ar[2])));
+								m_currentFileSize += Long.parseLong(ar[1]) - (old == null ? 0 : old.m_size);
+							}
+							break;
+
+						case "T":
+							if(ar.length == 3) {
+								IndexEntry ie = m_index.get(ar[2]);
+								if(null != ie)
+									ie.m_lastUsed = Long.parseLong(ar[1]);
+							}
+							break;
+
+						case "D":
+							if(ar.length == 2) {
+								IndexEntry old = m_index.remove(ar[1]);
+								if(null != old)
+									m_currentFileSize -= old.m_size;
+							}
+							break;
+					}
+				} catch(NumberFormatException x) {
+					//-- Skip damaged line
+				}
+			}
+		}
+	}
 
 	/**
-	 * Called every once in a while to clean out the file cache. This walks the entire cache directory and determines
-	 * it's current size; it also collects the oldest files in that cache into a reap list. If the size of the
-	 * cache is above it's max size then files on the reap list are deleted until the cache reaches an allowed size.
+	 * Without a journal, walk the cache directory once to index the files in it. The older version of
+	 * the cache stored its files as retrieverKey/instanceKey-timestamp.data (or .meta) directly below the
+	 * root; those files are removed. Anything else that is not in the sharded layout is left alone, as
+	 * the cache root may be shared with other files.
 	 */
-	public void reaper() {
-		synchronized(this) { // Allow running only in one thread, not concurrently
-			if(m_reaperRunning)
-				return;
-			m_reaperRunning = true;
+	private void importDirectory() {
+		File[] far = m_cacheRoot.listFiles();
+		if(null == far)
+			return;
+		for(File f : far) {
+			if(isShard(f))
+				importShard(f, f.getName() + "/", 1);
+			else if(f.isDirectory())
+				removeLegacy(f);
 		}
+	}
 
-		try {
-			//-- Reap until size is ok
-			for(;;) {
-				reapOnce();
-				if(m_currentFileSize < m_maxFileSize)
-					return;
-			}
-		} catch(Exception x) {
-			System.out.println("FileCache: reaper got exception " + x);
-			x.printStackTrace();
-		} finally {
-			synchronized(this) {
-				m_reaperRunning = false;
+	private void importShard(@NonNull File dir, @NonNull String path, int level) {
+		File[] far = dir.listFiles();
+		if(null == far)
+			return;
+		for(File f : far) {
+			if(level < 2) {
+				if(isShard(f))
+					importShard(f, path + f.getName() + "/", level + 1);
+				else if(f.isDirectory())
+					removeLegacy(f);
+			} else {
+				importFiles(f, path, f.getName());
 			}
 		}
 	}
 
-	static private class ReapEntry {
-		public File m_file;
-
-		public String m_key;
+	/**
+	 * A shard directory is named by two lowercase hex digits.
+	 */
+	static private boolean isShard(@NonNull File f) {
+		String name = f.getName();
+		return f.isDirectory() && name.length() == 2 && Character.digit(name.charAt(0), 16) >= 0 && Character.digit(name.charAt(1), 16) >= 0
+			&& name.equals(name.toLowerCase());
+	}
 
-		public long m_modified;
+	static private boolean isLegacyFile(@NonNull File f) {
+		String name = f.getName();
+		return f.isFile() && (name.endsWith(".data") || name.endsWith(".meta"));
+	}
 
-		public ReapEntry(File file, String key, long modified) {
-			m_file = file;
-			m_key = key;
-			m_modified = modified;
+	/**
+	 * Remove the files of the old layout from a directory, and the directory itself if that leaves it empty.
+	 */
+	static private void removeLegacy(@NonNull File dir) {
+		File[] far = dir.listFiles();
+		if(null == far)
+			return;
+		for(File f : far) {
+			if(f.isDirectory())
+				removeLegacy(f);
+			else if(isLegacyFile(f))
+				f.delete();
 		}
-
-
+		String[] rest = dir.list();
+		if(null != rest && rest.length == 0)
+			dir.delete();
 	}
 
-	private void reapOnce() throws Exception {
-		List<ReapEntry> reaplist = new ArrayList<ReapEntry>(MAX_ENTRIES);
-		m_currentFileSize = 0;
-		StringBuilder sb = new StringBuilder(128);
-		appendReapList(m_cacheRoot, reaplist, sb);
-
-		int reapix = 0;
-		while(m_currentFileSize >= m_maxFileSize && reapix < reaplist.size()) { // Too big and files left?
-			ReapEntry re = reaplist.get(reapix++);
-			synchronized(this) {
-				if(!inuse(re.m_key)) {
-					m_currentFileSize -= re.m_file.length();
-					re.m_file.delete();
-				}
+	private void importFiles(@NonNull File f, @NonNull String shard, @NonNull String key) {
+		if(f.isDirectory()) {
+			File[] far = f.listFiles();
+			if(null != far) {
+				for(File c : far)
+					importFiles(c, shard, key + "/" + c.getName());
 			}
+			return;
+		}
+		if(!getCacheFile(key).equals(f)) {
+			//-- Not where this cache would put it: remove it only when it is a cache file.
+			if(isLegacyFile(f))
+				f.delete();
+			return;
 		}
+		long size = f.length();
+		m_index.put(key, new IndexEntry(size, f.lastModified()));
+		m_currentFileSize += size;
 	}
 
-	private void appendReapList(File dir, List<ReapEntry> reaplist, StringBuilder sb) {
-		int len = sb.length();
-		File[] far = dir.listFiles();
-		for(File f : far) {
-			sb.setLength(len);
-			if(len > 0)
-				sb.append('/');
-			sb.append(f.getName());
-
-			if(f.isDirectory()) {
-				appendReapList(f, reaplist, sb);
-			} else {
-				m_currentFileSize += f.length();
+	/**
+	 * Rewrite the journal with just the current index, in least-recently-used order, and continue
+	 * appending to that.
+	 */
+	private void compactJournal() throws IOException {
+		Writer old = m_journal;
+		m_journal = null;
+		FileTool.closeAll(old);
+
+		File jf = new File(m_cacheRoot, JOURNAL);
+		File tmp = new File(m_cacheRoot, JOURNAL + ".tmp");
+		try(Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8), 65536)) {
+			for(Map.Entry<String, IndexEntry> e : m_index.entrySet()) {
+				w.write("A\t" + e.getValue().m_size + "\t" + e.getValue().m_lastUsed + "\t" + e.getKey() + "\n");
+			}
+		}
+		Files.move(tmp.toPath(), jf.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		m_journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(jf, true), StandardCharsets.UTF_8), 65536);
+		m_journalLines = m_index.size();
+	}
 
-				String key = sb.toString();
-				if(!inuse(key)) { // race condition here is ok, will be fixed when actually deleting stuff
-					long lm = f.lastModified();
+	//@GuardedBy("this")
+	private void journal(@NonNull String line) {
+		Writer w = m_journal;
+		if(null == w)
+			return;
+		try {
+			w.write(line);
+			w.write('\n');
+			m_journalLines++;
+		} catch(IOException x) {
+			System.out.println("FileCache: cannot write journal: " + x);
+		}
+	}
 
-					if(reaplist.size() >= MAX_ENTRIES)
-						reaplist.remove(reaplist.size() - 1);
-					insertReapEntry(reaplist, new ReapEntry(f, sb.toString(), lm));
+	/*--------------------------------------------------------------*/
+	/*	CODING:	File cache reaper.									*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * The background thread: flushes the journal every once in a while, compacts it when it has
+	 * grown too large, and evicts files when the cache has grown too large.
+	 */
+	private void reaperLoop() {
+		while(m_reaperThread == Thread.currentThread()) {
+			try {
+				synchronized(this) {
+					wait(m_currentFileSize <= m_maxFileSize ? FLUSH_INTERVAL : RETRY_INTERVAL);
+					Writer w = m_journal;
+					if(null != w)
+						w.flush();
+					if(m_journalLines > 4 * m_index.size() + 10000)
+						compactJournal();
 				}
+				reaper();
+			} catch(InterruptedException x) {
+				return;
+			} catch(Exception x) {
+				System.out.println("FileCache: reaper got exception " + x);
+				x.printStackTrace();
 			}
 		}
 	}
 
-	final static private Comparator<ReapEntry> C_COMP = new Comparator<ReapEntry>() {
-		@Override
-		public int compare(ReapEntry o1, ReapEntry o2) {
-			long r = o2.m_modified - o1.m_modified;
-			if(r == 0)
-				return 0;
-			return r < 0 ? -1 : 1;
+	/**
+	 * Remove the least recently used files that are not in use until the cache is at its low water
+	 * mark. This normally runs on the background thread. Files are deleted in small batches, so that
+	 * the cache is never locked for long.
+	 */
+	public void reaper() {
+		synchronized(this) { // Allow running only in one thread, not concurrently
+			if(m_reaperRunning)
+				return;
+			m_reaperRunning = true;
 		}
-	};
 
-	private void insertReapEntry(List<ReapEntry> reaplist, ReapEntry reapentry) {
-		int ix = Collections.binarySearch(reaplist, reapentry, C_COMP);
-		if(ix < 0) {
-			ix = -(ix + 1);
+		try {
+			long lowWater = (long) (m_maxFileSize * LOW_WATER);
+			int count = 0;
+			long size = 0;
+			for(;;) {
+				synchronized(this) {
+					if(m_currentFileSize <= m_maxFileSize && count == 0)
+						return;
+					int batch = 0;
+					Iterator<Map.Entry<String, IndexEntry>> it = m_index.entrySet().iterator();
+					while(m_currentFileSize > lowWater && batch < DELETE_BATCH && it.hasNext()) {
+						Map.Entry<String, IndexEntry> e = it.next();
+						String key = e.getKey();
+						if(inuse(key))
+							continue;
+						it.remove();
+						m_currentFileSize -= e.getValue().m_size;
+						size += e.getValue().m_size;
+						getCacheFile(key).delete();
+						journal("D\t" + key);
+						batch++;
+					}
+					count += batch;
+					m_evictions += batch;
+					if(batch == 0 || m_currentFileSize <= lowWater)
+						break;
+				}
+			}
+			if(count > 0)
+				System.out.println("FileCache: reaped " + count + " files totalling " + size + " bytes");
+		} finally {
+			synchronized(this) {
+				m_reaperRunning = false;
+			}
 		}
-		reaplist.add(ix, reapentry);
 	}
 
-
 	public synchronized long getCurrentFileSize() {
 		return m_currentFileSize;
 	}
+
+	public synchronized int getFileCount() {
+		return m_index.size();
+	}
+
+	public synchronized long getEvictionCount() {
+		return m_evictions;
+	}
 }
@@ -33,16 +33,13 @@ import java.util.List;
  * This is an accounting record for a cache change in progress. While individual
  * images are manipulated the main cache structures must remain unlocked, but the
  * actual load of images on the cache (their cache size in bytes) is available
- * long after they are added to the cache. To accomodate we lock the cache twice:
- * at the start of an image retrieve to obtain/create the ImageRoot, and at the
- * end of ANY action to do all of the change accounting in the cache for the
- * items that changed. When the code executing the change returns the root
- * cache is again locked and the accounting changes are done quickly.
+ * long after they are added to the cache. To accomodate the changes are collected
+ * here, and at the end of ANY action the cache does all of the change accounting
+ * for the items that changed in one go.
  *
  * <h2>Locking strategy</h2>
  * This object itself is always used by <i>one</i> thread at a time; ownership passes
- * protected by locks that are not present on this object. While the data in this
- * object changes the ImageRoot object for which this data changes is locked.
+ * protected by locks that are not present on this object.
  *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Dec 8, 2009
@@ -108,7 +108,7 @@ final class CachedImageData extends CachedImageFragment {
 	//
 
 	boolean remove() {
-		m_cacheState = InstanceCacheState.DISCARD;
+		discard();
 		return getRoot().unregisterInstance(this);
 	}
 
@@ -42,18 +42,18 @@ class CachedImageFragment {
 	/** An unique string describing the permutation of the original that this contains. When "" (empty string) this is the ORIGINAL image. */
 	private final String m_permutation;
 
-	//	/** The versionLong of the source for this image at the time it was created. */
-	//	@GuardedBy("getRoot()")
-	//	private long m_sourceVersionLong;
+	/** The versionLong of the source for this image at the time it was created. */
+	private final long m_sourceVersionLong;
 
 	/**
-	 * The LRU pointers for the cache's LRU list. These are locked and maintained by the ImageCache itself; access to these is "verboten" from self.
+	 * The CLOCK reference bit: set every time the fragment is used, and cleared by the cache when it
+	 * passes the fragment while looking for fragments to evict. Only fragments that were not used since
+	 * the previous pass get evicted.
 	 */
-	//@GuardedBy("cache()")
-	CachedImageFragment m_lruPrev, m_lruNext;
+	volatile boolean m_referenced;
 
-	//@GuardedBy("cache()")
-	InstanceCacheState m_cacheState = InstanceCacheState.NONE;
+	//@GuardedBy("this")
+	private InstanceCacheState m_cacheState = InstanceCacheState.NONE;
 
 	/** The current actual memory size taken by this entry. */
 	//@GuardedBy("getRoot()")
@@ -65,7 +65,7 @@ class CachedImageFragment {
 	CachedImageFragment(final ImageRoot root, final String perm, long sourceVersionLong, int memorysize, FileCacheRef ref) {
 		m_imageRoot = root;
 		m_permutation = perm;
-		//		m_sourceVersionLong = sourceVersionLong;
+		m_sourceVersionLong = sourceVersionLong;
 		m_memoryCacheSize = memorysize;
 		m_fileRef = ref;
 	}
@@ -78,6 +78,33 @@ class CachedImageFragment {
 		return m_imageRoot;
 	}
 
+	final public long getSourceVersionLong() {
+		return m_sourceVersionLong;
+	}
+
+	/**
+	 * Mark the fragment as linked in the cache. Returns false if it already was linked, or discarded.
+	 */
+	synchronized boolean link() {
+		if(m_cacheState != InstanceCacheState.NONE)
+			return false;
+		m_cacheState = InstanceCacheState.LINKED;
+		return true;
+	}
+
+	/**
+	 * Mark the fragment as discarded. Returns true if it was linked, so that its cache load must be removed.
+	 */
+	synchronized boolean discard() {
+		InstanceCacheState old = m_cacheState;
+		m_cacheState = InstanceCacheState.DISCARD;
+		return old == InstanceCacheState.LINKED;
+	}
+
+	synchronized boolean isDiscarded() {
+		return m_cacheState == InstanceCacheState.DISCARD;
+	}
+
 	final public String getPermutation() {
 		return m_permutation;
 	}
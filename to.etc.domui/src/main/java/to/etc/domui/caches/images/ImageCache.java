@@ -36,9 +36,14 @@ import to.etc.domui.util.images.machines.ImageInfo;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This cache handles images and transformations of images.
@@ -86,12 +91,13 @@ import java.util.Map;
  * image or of an actual transformation process.</p>
  *
  * <h2>Multithreaded locking strategy</h2>
- * <p>We use a multi-level lock using the standard mechanism. The fast lock is the ImageCache instance itself; it protects the
- * registered factory list and the map from ImageKey to ImageRoot. It also handles LRU processing for the individual image
- * instances.</p>
- * <p>The 2nd level lock is a lock on ImageRoot which is locked for any access to whatever permutation of that image. This
- * second-level lock is a slow lock meaning that any time-consuming operation on any of the derivatives of the image will
- * keep this lock closed.
+ * <p>There is no cache-wide lock on the request path. The factories and the map from ImageKey to ImageRoot are concurrent
+ * maps. An ImageRoot is only locked while its lists of permutations are searched or changed, never while a permutation is
+ * generated. Instead every permutation being generated has a future in its root: concurrent requests for the same
+ * permutation wait for that one generation, while requests for other permutations of the same image run in parallel.</p>
+ * <p>Memory accounting uses a CLOCK instead of an LRU list. Using a fragment only sets its reference bit. Fragments are
+ * kept in a concurrent queue in the order they were added; when the cache exceeds its memory size one thread walks that
+ * queue, gives fragments whose bit is set a second chance by clearing it and moving them to the end, and evicts the others.
  * </p>
  *
  * <h2>Accessing image data</h2>
@@ -154,18 +160,39 @@ public class ImageCache {
 	/** The max. #bytes that this cache may use in memory; defaults to 32M */
 	private long m_maxMemorySize = 32 * 1024 * 1024;
 
-	private long m_currentMemorySize;
+	private final AtomicLong m_currentMemorySize = new AtomicLong();
 
 	/** The max. size in bytes that a result may be to be cacheable in memory (5MB default). Any stream larger will be cached on the file system. */
 	private int m_memoryFenceSize = 5 * 1024 * 1024;
 
 	/** The set of registered original image factories */
-	private Map<String, IImageRetriever> m_factoryMap = new HashMap<String, IImageRetriever>();
+	private final Map<String, IImageRetriever> m_factoryMap = new ConcurrentHashMap<>();
 
 	/** The map of keys to their image root */
-	private Map<ImageKey, ImageRoot> m_cacheMap = new HashMap<ImageKey, ImageRoot>();
+	private final ConcurrentHashMap<ImageKey, ImageRoot> m_cacheMap = new ConcurrentHashMap<>();
 
-	private CachedImageFragment m_lruFirst, m_lruLast;
+	/** The CLOCK: all linked fragments, oldest first. */
+	private final ConcurrentLinkedQueue<CachedImageFragment> m_clock = new ConcurrentLinkedQueue<>();
+
+	/** The #of fragments linked in the clock. */
+	private final AtomicLong m_linkedCount = new AtomicLong();
+
+	/** Taken by the one thread that evicts fragments; others skip eviction while it runs. */
+	private final ReentrantLock m_evictLock = new ReentrantLock();
+
+	private final LongAdder m_hits = new LongAdder();
+
+	private final LongAdder m_misses = new LongAdder();
+
+	private final LongAdder m_generations = new LongAdder();
+
+	private final LongAdder m_generationNanos = new LongAdder();
+
+	private final LongAccumulator m_maxGenerationNanos = new LongAccumulator(Math::max, 0);
+
+	private final LongAdder m_sharedGenerations = new LongAdder();
+
+	private final LongAdder m_evictions = new LongAdder();
 
 	//	/** File ID counters */
 	//	private int[] m_counters = new int[4];
@@ -189,10 +216,22 @@ public class ImageCache {
 	}
 
 	static public synchronized void initialize(long maxsize, long maxfilesize, File cacheDir) throws Exception {
+		shutdown();
 		m_instance = new ImageCache(maxsize, maxfilesize, cacheDir);
 		m_instance.init();
 	}
 
+	/**
+	 * Stop the cache, if it was initialized: this stops the file cache's background thread and writes its journal.
+	 */
+	static public synchronized void shutdown() {
+		ImageCache ic = m_instance;
+		if(null != ic) {
+			m_instance = null;
+			ic.m_fileCache.close();
+		}
+	}
+
 	private void init() throws Exception {
 		m_fileCache.initialize();
 		addRetriever(new FileImageRetriever());
@@ -202,13 +241,13 @@ public class ImageCache {
 	 * Add a new image factory.
 	 * @param r
 	 */
-	public synchronized void addRetriever(IImageRetriever r) {
+	public void addRetriever(IImageRetriever r) {
 		IImageRetriever old;
-		if(null != (old = m_factoryMap.put(r.getRetrieverKey(), r)))
+		if(null != (old = m_factoryMap.putIfAbsent(r.getRetrieverKey(), r)))
 			throw new IllegalStateException("Duplicate image factory key: " + r.getRetrieverKey() + " for " + r + " and " + old);
 	}
 
-	public synchronized IImageRetriever findRetriever(String key) {
+	public IImageRetriever findRetriever(String key) {
 		return m_factoryMap.get(key);
 	}
 
@@ -276,16 +315,13 @@ public class ImageCache {
 	 */
 	@NonNull
 	private ImageTask getImageTask(ImageKey key) throws Exception {
-		synchronized(this) {
-			ImageRoot r = m_cacheMap.get(key);
-			if(r == null) {
-				r = new ImageRoot(this, key);
-				m_cacheMap.put(key, r);
-				r.m_cacheUseCount = 1;
-			}
-			ImageTask task = new ImageTask(key, r);
-			return task;
-		}
+		ImageRoot r = m_cacheMap.compute(key, (k, root) -> {
+			if(root == null)
+				root = new ImageRoot(this, k);
+			root.m_activeTasks++;
+			return root;
+		});
+		return new ImageTask(key, r);
 	}
 
 	static void d(String s) {
@@ -308,9 +344,7 @@ public class ImageCache {
 	private Object executeTask(ImageKey key, ISpecTask t, Object args) throws Exception {
 		ImageTask it = getImageTask(key);
 		try {
-			synchronized(it.getRoot()) { // All of the task is executed with a locked root
-				return t.executeTask(it, args);
-			}
+			return t.executeTask(it, args);
 		} finally {
 			try {
 				it.close();
@@ -320,25 +354,62 @@ public class ImageCache {
 	}
 
 	private void updateCacheDetails(ImageTask it) {
-		synchronized(this) {
-			//-- Remove all fragments that were removed by this task and reduce the cacheload caused by them
-			for(CachedImageFragment cif : it.getDeletedFragmentList()) {
-				unlink(cif);
-				cif.getRoot().m_cacheUseCount--;
+		//-- Remove all fragments that were removed by this task and reduce the cacheload caused by them
+		for(CachedImageFragment cif : it.getDeletedFragmentList()) {
+			if(cif.discard()) {
+				m_clock.remove(cif);
+				unlinked(cif);
 			}
+			if(cif.getFileRef() != null)
+				cif.getFileRef().close();
+		}
 
-			//-- (re)link all new thingies in the cache.
-			for(CachedImageFragment cif : it.getUsedFragmentList()) {
-				registerAndLink(cif);
-			}
+		//-- (re)link all new thingies in the cache.
+		for(CachedImageFragment cif : it.getUsedFragmentList()) {
+			registerAndLink(cif);
+		}
 
-			//-- If at this point the cache root has zero uses- discard it.
-			if(it.getRoot().m_cacheUseCount == 0) {
-				m_cacheMap.remove(it.getRoot().getKey());
-			}
+		//-- The task is done with the root; discard it if it has no fragments left.
+		ImageRoot root = it.getRoot();
+		m_cacheMap.computeIfPresent(root.getKey(), (k, r) -> {
+			if(r == root)
+				r.m_activeTasks--;
+			return r.m_activeTasks == 0 && r.m_cacheUseCount.get() == 0 ? null : r;
+		});
+		evict();
+	}
+
+	/**
+	 * Account for a fragment that is no longer linked, and drop its root when that has no fragments left
+	 * and is not used by any task.
+	 */
+	private void unlinked(CachedImageFragment cif) {
+		m_currentMemorySize.addAndGet(-cif.getMemoryCacheSize());
+		m_linkedCount.decrementAndGet();
+		ImageRoot root = cif.getRoot();
+		if(root.m_cacheUseCount.decrementAndGet() == 0) {
+			m_cacheMap.computeIfPresent(root.getKey(), (k, r) -> r == root && r.m_activeTasks == 0 && r.m_cacheUseCount.get() == 0 ? null : r);
 		}
 	}
 
+	void hit() {
+		m_hits.increment();
+	}
+
+	void miss() {
+		m_misses.increment();
+	}
+
+	void generated(long nanos) {
+		m_generations.increment();
+		m_generationNanos.add(nanos);
+		m_maxGenerationNanos.accumulate(nanos);
+	}
+
+	void sharedGeneration() {
+		m_sharedGenerations.increment();
+	}
+
 	/*--------------------------------------------------------------*/
 	/*	CODING:	User accessable calls.								*/
 	/*--------------------------------------------------------------*/
@@ -440,50 +511,59 @@ public class ImageCache {
 	/*	CODING:	Administration.										*/
 	/*--------------------------------------------------------------*/
 	/**
-	 * Registers an instance. When called it is implied that initialization WORKED and that the
-	 * thingy contains a valid resource.
-	 * This must take care of the race conditions caused by the double-lock initialization.
+	 * Registers an instance as used. The first time this links it in the clock and adds its
+	 * cache load; after that this only sets its reference bit, which needs no lock at all.
 	 * @param ii
 	 */
 	private void registerAndLink(CachedImageFragment ii) {
-		//-- Atomically add in new cache load, and if it exceeds the maximum reap the thingies to remove.
-		List<CachedImageFragment> dellist = null;
-		synchronized(this) {
-			if(ii.m_cacheState != InstanceCacheState.NONE) // Already linked (cannot happen) or discarded (can happen if 2nd init works && race)
-				return;
-			link(ii); // Link as 1st
-			m_currentMemorySize += ii.getMemoryCacheSize(); // Add cache load, in bytes.
-			ii.m_cacheState = InstanceCacheState.LINKED; // Properly linked and accounted.
-
-			if(m_currentMemorySize <= m_maxMemorySize) // If we're not overdrawn...
-				return;
-
-			//-- Determine the oldest pages && discard 'm
-			dellist = new ArrayList<CachedImageFragment>();
-			int count = 0;
-			long size = 0;
-			while(m_lruLast != m_lruFirst && m_currentMemorySize > m_maxMemorySize) {
-				//-- Discard from all metadata
-				CachedImageFragment itd = m_lruLast;
-				unlink(itd); // Discard thingy from LRU chain;
-				dellist.add(itd);
-
-				m_currentMemorySize -= itd.getMemoryCacheSize(); // Reduce cache load with this-item's size;
-				size += itd.getMemoryCacheSize();
-				count++;
-
-				//-- Decrement the root's use count; if it becomes zero we'll discard this root.
-				ImageRoot ir = itd.getRoot();
-				if(ir.m_cacheUseCount > 0) { // Not already removed sometimes before?
-					if(--ir.m_cacheUseCount == 0) {
-						m_cacheMap.remove(ir.getKey()); // Drop from cache @ this point.
-					}
+		ii.m_referenced = true;
+		if(!ii.link()) // Already linked, or discarded (can happen if 2nd init works && race)
+			return;
+		ii.getRoot().m_cacheUseCount.incrementAndGet();
+		m_linkedCount.incrementAndGet();
+		m_currentMemorySize.addAndGet(ii.getMemoryCacheSize()); // Add cache load, in bytes.
+		m_clock.add(ii);
+	}
+
+	/**
+	 * When the cache uses more memory than allowed, walk the clock and evict fragments that were not
+	 * used since the previous walk passed them. Only one thread evicts at a time; when another one is
+	 * busy doing it this returns immediately.
+	 */
+	private void evict() {
+		if(m_currentMemorySize.get() <= m_maxMemorySize || !m_evictLock.tryLock())
+			return;
+		List<CachedImageFragment> dellist = new ArrayList<>();
+		long size = 0;
+		try {
+			//-- At most two passes: the first clears all reference bits, the second must find victims
+			long steps = 2 * m_linkedCount.get() + 1;
+			while(steps-- > 0 && m_currentMemorySize.get() > m_maxMemorySize && m_linkedCount.get() > 1) {
+				CachedImageFragment cif = m_clock.poll();
+				if(null == cif)
+					break;
+				if(cif.isDiscarded()) // Already removed and accounted for by a task
+					continue;
+				if(cif.m_referenced) {
+					cif.m_referenced = false; // Second chance
+					m_clock.add(cif);
+					continue;
 				}
+				if(!cif.discard())
+					continue;
+				unlinked(cif);
+				dellist.add(cif);
+				size += cif.getMemoryCacheSize();
 			}
-			System.out.println("ImageCache: reaped " + count + " image instances totalling " + size + " bytes");
+		} finally {
+			m_evictLock.unlock();
 		}
+		if(dellist.isEmpty())
+			return;
+		m_evictions.add(dellist.size());
+		System.out.println("ImageCache: reaped " + dellist.size() + " image instances totalling " + size + " bytes");
 
-		//-- Now, while we're out of the lock make the ImageRoot's discard their data.
+		//-- Now make the ImageRoot's discard their data.
 		for(CachedImageFragment cif : dellist) {
 			cif.getRoot().lruInstanceDeleted(cif);
 		}
@@ -493,55 +573,73 @@ public class ImageCache {
 	 * Return the amount of memory currently used in the cache system.
 	 * @return
 	 */
-	public synchronized long getUsedMemory() {
-		return m_currentMemorySize;
+	public long getUsedMemory() {
+		return m_currentMemorySize.get();
 	}
 
 	public long getUsedFilespace() {
 		return m_fileCache.getCurrentFileSize();
 	}
 
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Metrics.											*/
+	/*--------------------------------------------------------------*/
+	public int getImageCount() {
+		return m_cacheMap.size();
+	}
+
+	public long getFragmentCount() {
+		return m_linkedCount.get();
+	}
+
 	/**
-	 * Links the entry at the most recently used position of the LRU chain.
-	 * @param e
+	 * The #of requests for an original, a permutation or their info that were served from memory.
 	 */
-	private void link(CachedImageFragment e) {
-		unlink(e); // Make sure we're unlinked
-		if(m_lruFirst == null) { // Empty initial list?
-			m_lruFirst = e;
-			m_lruLast = e;
-			e.m_lruNext = e;
-			e.m_lruPrev = e;
-			return;
-		}
-		e.m_lruPrev = m_lruFirst; // Previous first is my previous
-		e.m_lruNext = m_lruLast; // After me I wrap back to the end
-		m_lruLast.m_lruPrev = e;
-		m_lruFirst.m_lruNext = e; // I'm his next
-		m_lruFirst = e; // I'm the 1st one now;
+	public long getHitCount() {
+		return m_hits.sum();
 	}
 
-	private void unlink(CachedImageFragment e) {
-		if(e.m_lruNext == null) // Already unlinked?
-			return;
-		if(e.m_lruNext == e.m_lruPrev) { // I'm the only one?
-			m_lruFirst = null;
-			m_lruLast = null;
-			e.m_lruNext = null;
-			e.m_lruPrev = null;
-			return;
-		}
+	public long getMissCount() {
+		return m_misses.sum();
+	}
 
-		if(m_lruFirst == e)
-			m_lruFirst = e.m_lruPrev;
-		if(m_lruLast == e)
-			m_lruLast = e.m_lruNext;
+	/**
+	 * The #of permutations that were actually generated, i.e. not found in the file cache either.
+	 */
+	public long getGenerationCount() {
+		return m_generations.sum();
+	}
 
-		e.m_lruPrev.m_lruNext = e.m_lruNext;
-		e.m_lruNext.m_lruPrev = e.m_lruPrev;
-		e.m_lruNext = e.m_lruPrev = null;
+	/**
+	 * The #of requests that waited for a permutation being created by another request instead of creating it too.
+	 */
+	public long getSharedGenerationCount() {
+		return m_sharedGenerations.sum();
 	}
 
+	/**
+	 * The average time to generate a permutation, in millis.
+	 */
+	public long getAverageGenerationMillis() {
+		long count = m_generations.sum();
+		return count == 0 ? 0 : m_generationNanos.sum() / count / 1_000_000;
+	}
+
+	public long getMaxGenerationMillis() {
+		return m_maxGenerationNanos.get() / 1_000_000;
+	}
+
+	public long getEvictionCount() {
+		return m_evictions.sum();
+	}
+
+	@NonNull
+	public String getMetrics() {
+		return "images=" + getImageCount() + ", fragments=" + getFragmentCount() + ", memory=" + getUsedMemory() + "/" + m_maxMemorySize
+			+ ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", generated=" + getGenerationCount() + " (shared " + getSharedGenerationCount() + ")"
+			+ ", avgGenerate=" + getAverageGenerationMillis() + "ms, maxGenerate=" + getMaxGenerationMillis() + "ms"
+			+ ", evicted=" + getEvictionCount();
+	}
 
 	/*--------------------------------------------------------------*/
 	/*	CODING:	Test code.											*/
@@ -26,14 +26,21 @@ package to.etc.domui.caches.images;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import to.etc.function.SupplierEx;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Contains the data for the ROOT (original) image. It also holds the list of permutations
- * currently available in the cache. This object and it's list-of-images is locked thru locking
- * the image cache instance.
+ * currently available in the cache. The lists are locked by locking this root, but only
+ * while they are searched or changed: generating a permutation happens without any lock.
+ * Instead every permutation that is being generated has a future, and other requests for
+ * the same permutation wait for that instead of generating it again.
  *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Oct 2, 2008
@@ -43,12 +50,13 @@ final class ImageRoot {
 	private ImageCache m_cache;
 
 	/**
-	 * This contains the #of attached image fragments that the cache knows of; if this reaches
-	 * zero the cache may remove this ImageRoot instance. This gets lazily added to/removed from
-	 * in the "administration" (2nd locking) of cache changes, and during LRU removals.
+	 * This contains the #of image fragments of this root that are linked in the cache; if this
+	 * and the #of active tasks reach zero the cache removes this ImageRoot instance.
 	 */
-	//@GuardedBy("getCache()")
-	int m_cacheUseCount;
+	final AtomicInteger m_cacheUseCount = new AtomicInteger();
+
+	/** The #of tasks using this root right now. Only changed inside the cache map's compute calls for this root's key. */
+	int m_activeTasks;
 
 	/** The unique key for this image, which includes it's retriever. */
 	@NonNull
@@ -58,6 +66,7 @@ final class ImageRoot {
 
 	private long m_tsLastCheck;
 
+	//@GuardedBy("this")
 	private long m_versionLong;
 
 	//	private String				m_mimeType;
@@ -69,6 +78,9 @@ final class ImageRoot {
 	//@GuardedBy("this")
 	private List<CachedImageInfo> m_infoList = new ArrayList<CachedImageInfo>();
 
+	/** The fragments being created right now, by permutation key. */
+	private final ConcurrentHashMap<String, CompletableFuture<Object>> m_generating = new ConcurrentHashMap<>();
+
 	ImageRoot(@NonNull ImageCache ic, @NonNull ImageKey key) {
 		if(ic == null || key == null)
 			throw new IllegalArgumentException("Args cannot be null");
@@ -91,19 +103,20 @@ final class ImageRoot {
 		m_tsLastCheck = ts;
 	}
 
+	/**
+	 * The version of the source that the fragments in this root belong to.
+	 */
+	synchronized long getVersionLong() {
+		return m_versionLong;
+	}
+
 	/**
 	 * If the original image reference is present locate and return it.
 	 * @return
 	 */
 	@Nullable
-	CachedImageData findOriginalData() {
-		synchronized(this) {
-			for(CachedImageData ii : m_dataList) {
-				if(ii.getPermutation().length() == 0)
-					return ii;
-			}
-			return null;
-		}
+	CachedImageData findOriginalData(long version) {
+		return findPermutationData("", version);
 	}
 
 	/**
@@ -111,38 +124,31 @@ final class ImageRoot {
 	 * @return
 	 */
 	@Nullable
-	CachedImageInfo findOriginalInfo() {
-		synchronized(this) {
-			for(CachedImageInfo ii : m_infoList) {
-				if(ii.getPermutation().length() == 0)
-					return ii;
-			}
-			return null;
-		}
+	CachedImageInfo findOriginalInfo(long version) {
+		return findPermutationInfo("", version);
 	}
 
-
-
 	/**
 	 * Try to find the specified permutation of the original document in this root document's cache entry.
 	 * @param perm
 	 * @return
 	 */
 	@Nullable
-	CachedImageData findPermutationData(String perm) {
+	CachedImageData findPermutationData(String perm, long version) {
 		synchronized(this) {
 			for(CachedImageData ii : m_dataList) {
-				if(perm.equals(ii.getPermutation()))
+				if(perm.equals(ii.getPermutation()) && ii.getSourceVersionLong() == version)
 					return ii;
 			}
 			return null;
 		}
 	}
 
-	CachedImageInfo findPermutationInfo(String perm) {
+	@Nullable
+	CachedImageInfo findPermutationInfo(String perm, long version) {
 		synchronized(this) {
 			for(CachedImageInfo ii : m_infoList) {
-				if(perm.equals(ii.getPermutation()))
+				if(perm.equals(ii.getPermutation()) && ii.getSourceVersionLong() == version)
 					return ii;
 			}
 			return null;
@@ -158,21 +164,64 @@ final class ImageRoot {
 		return m_cache;
 	}
 
+	/**
+	 * Create a fragment, unless another thread is creating the same one already: then wait for
+	 * that thread and return its result. The generator must check whether the fragment exists
+	 * already before it creates it, as it could have been completed just before this call.
+	 */
+	@NonNull
+	<T> T generateOnce(@NonNull String key, @NonNull SupplierEx<T> generator) throws Exception {
+		CompletableFuture<Object> mine = new CompletableFuture<>();
+		CompletableFuture<Object> running = m_generating.putIfAbsent(key, mine);
+		if(null != running) {
+			m_cache.sharedGeneration();
+			try {
+				return (T) running.get();
+			} catch(ExecutionException x) {
+				Throwable cause = x.getCause();
+				if(cause instanceof Exception)
+					throw (Exception) cause;
+				throw x;
+			}
+		}
+
+		try {
+			T result = generator.get();
+			if(null == result)
+				throw new IllegalStateException("Generating " + key + " of " + m_imageKey + " returned null");
+			mine.complete(result);
+			return result;
+		} catch(Exception | Error x) {
+			mine.completeExceptionally(x);
+			throw x;
+		} finally {
+			m_generating.remove(key, mine);
+		}
+	}
+
 	/**
 	 * Adds the image to the list of instances. This does not register it in the
-	 * LRU cache nor does it register it's cache load.
+	 * LRU cache nor does it register it's cache load. The fragment is not added
+	 * when it belongs to another version than the current one: the source changed
+	 * while it was created.
 	 *
 	 * @param ii
 	 */
-	void registerInstance(CachedImageData id) {
+	boolean registerInstance(CachedImageData id) {
 		synchronized(this) {
+			if(id.getSourceVersionLong() != m_versionLong)
+				return false;
 			m_dataList.add(id);
+			return true;
 		}
 	}
 
-	void registerInstance(CachedImageInfo id) {
+	boolean registerInstance(CachedImageInfo id) {
 		synchronized(this) {
+			if(id.getSourceVersionLong() != m_versionLong)
+				return false;
 			m_infoList.add(id);
+			return true;
 		}
 	}
 
@@ -192,8 +241,7 @@ final class ImageRoot {
 
 	/**
 	 * LOCKS THIS: Called when a new source version has been found, this discards all instances
-	 * currently in the list and returns the original list.
-	 * @return
+	 * currently in the lists.
 	 */
 	//@GuardedBy("this")
 	synchronized void checkVersionLong(CacheChange cc, long currentversion) {
@@ -202,11 +250,13 @@ final class ImageRoot {
 
 		//-- All versions are outdated- discard the lot of 'm.
 		m_versionLong = currentversion;
-		List<CachedImageData> old = m_dataList;
+		List<CachedImageFragment> old = new ArrayList<>(m_dataList);
+		old.addAll(m_infoList);
 		m_dataList = new ArrayList<CachedImageData>();
+		m_infoList = new ArrayList<CachedImageInfo>();
 
-		//-- Now decrement all of their use counts- they are removed from cache. Usecount is protected by THIS too.
-		for(CachedImageData ii : old) {
+		//-- Tell the cache they are gone, so that it removes their cache load.
+		for(CachedImageFragment ii : old) {
 			try {
 				cc.addDeletedFragment(ii); // Account for deleting this instance
 			} catch(Exception x) {
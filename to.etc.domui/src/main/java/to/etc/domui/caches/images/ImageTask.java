@@ -67,6 +67,9 @@ public class ImageTask extends CacheChange {
 	//@GuardedBy("getRoot()")
 	private boolean m_outdatedChecked;
 
+	/** The version of the source that this task uses, determined by the outdated-versions check. */
+	private long m_version;
+
 	//	private List<File> m_addedFiles;
 
 	ImageTask(ImageKey key, ImageRoot root) {
@@ -124,14 +127,15 @@ public class ImageTask extends CacheChange {
 	/**
 	 * This gets called from every <i>master</i> call. The first time it gets called
 	 * this checks if versions have expired from this set. It does this only once; and
-	 * obeys the checkinterval.
+	 * obeys the checkinterval. It returns the version of the source that this task
+	 * uses: the current version when it was checked, else the version last seen.
 	 *
 	 * @throws Exception
 	 */
-	private void removeOutdatedVersions() throws Exception {
+	private long removeOutdatedVersions() throws Exception {
 		synchronized(getRoot()) {
 			if(m_outdatedChecked)
-				return;
+				return m_version;
 
 			//-- Is it already time to check?
 			long dts = getKey().getRetriever().getCheckInterval();
@@ -141,7 +145,8 @@ public class ImageTask extends CacheChange {
 				if(ct < getRoot().getTSLastCheck() + dts) { // Past expiry time?
 					//-- No- do not check
 					m_outdatedChecked = true; // Do not check again in this task.
-					return;
+					m_version = getRoot().getVersionLong();
+					return m_version;
 				}
 				getRoot().setTSLastCheck(ct); // We'll go and check now- save the current ts
 			}
@@ -150,6 +155,8 @@ public class ImageTask extends CacheChange {
 			long versionlong = getCurrentVersionLong();
 			getRoot().checkVersionLong(this, versionlong); // Clear all ImageInstances if source has changed;
 			m_outdatedChecked = true;
+			m_version = versionlong;
+			return versionlong;
 		}
 	}
 
@@ -182,17 +189,27 @@ public class ImageTask extends CacheChange {
 	 */
 	@NonNull
 	CachedImageData getOriginalData() throws Exception {
-		removeOutdatedVersions(); // Remove all old thingies from the cache.
+		long version = removeOutdatedVersions(); // Remove all old thingies from the cache.
 
 		//-- Is the required version cached? In that case it's current so reuse
-		CachedImageData cid = getRoot().findOriginalData();
+		CachedImageData cid = getRoot().findOriginalData(version);
 		if(cid != null) {
-			addUsedFragment(cid); // Mark recently used
-			return cid;
+			cache().hit();
+		} else {
+			cache().miss();
+			cid = getRoot().generateOnce("data::" + version, () -> loadOriginalData(version));
 		}
+		addUsedFragment(cid); // Mark recently used
+		return cid;
+	}
+
+	@NonNull
+	private CachedImageData loadOriginalData(long cts) throws Exception {
+		CachedImageData cid = getRoot().findOriginalData(cts);
+		if(cid != null)
+			return cid;
 
 		//-- We need to create the thingy. Get a file ref to store it in,
-		long cts = getCurrentVersionLong();
 		String	cachename	= getKey().getRetriever().getRetrieverKey()+"/"+getKey().getInstanceKey()+"-"+Long.toHexString(cts)+".data";
 		FileCacheRef ref = cache().getFileRef(cachename);
 		InputStream is = null;
@@ -223,8 +240,7 @@ public class ImageTask extends CacheChange {
 
 			//-- All of this worked!! Nothing normal can go wrong after this so link and register all data
 			CachedImageData ii = new CachedImageData(getRoot(), "", cts, ref, len, bufs, memload);
-			addUsedFragment(ii); // Link/relink in LRU
-			getRoot().registerInstance(ii);
+			register(ii);
 			ok = true;
 			return ii;
 		} finally {
@@ -243,17 +259,27 @@ public class ImageTask extends CacheChange {
 	 * @throws Exception
 	 */
 	CachedImageInfo getOriginalInfo() throws Exception {
-		removeOutdatedVersions(); // Remove all old thingies from the cache.
+		long version = removeOutdatedVersions(); // Remove all old thingies from the cache.
 
 		//-- Is the required version cached? In that case it's current so reuse
-		CachedImageInfo cii = getRoot().findOriginalInfo();
+		CachedImageInfo cii = getRoot().findOriginalInfo(version);
 		if(cii != null) {
-			addUsedFragment(cii); // Mark recently used
-			return cii;
+			cache().hit();
+		} else {
+			cache().miss();
+			cii = getRoot().generateOnce("info::" + version, () -> loadOriginalInfo(version));
 		}
+		addUsedFragment(cii); // Mark recently used
+		return cii;
+	}
+
+	@NonNull
+	private CachedImageInfo loadOriginalInfo(long cts) throws Exception {
+		CachedImageInfo cii = getRoot().findOriginalInfo(cts);
+		if(cii != null)
+			return cii;
 
 		//-- Not cached in memory.. Try to get the stuff from a cachefile..
-		long cts = getCurrentVersionLong();
 		String cachename = getKey().getRetriever().getRetrieverKey() + "/" + getKey().getInstanceKey() + "-" + Long.toHexString(cts) + ".meta";
 		FileCacheRef ref = cache().getFileRef(cachename);
 		InputStream is = null;
@@ -298,11 +324,21 @@ public class ImageTask extends CacheChange {
 	private CachedImageInfo addNewInfo(String perm, long cts, FileCacheRef ref, ImageInfo info) {
 		int memload = 64 + info.getPageCount() * 32;
 		CachedImageInfo ii = new CachedImageInfo(getRoot(), perm, cts, ref, info, memload);
-		addUsedFragment(ii); // Link/relink in LRU
-		getRoot().registerInstance(ii);
+		register(ii);
 		return ii;
 	}
 
+	/**
+	 * Add a new fragment to the root and mark it as used. A fragment made for a version that is no
+	 * longer current can still be returned, but it is discarded so that it is never linked in the cache.
+	 */
+	private void register(@NonNull CachedImageFragment ii) {
+		boolean registered = ii instanceof CachedImageData ? getRoot().registerInstance((CachedImageData) ii) : getRoot().registerInstance((CachedImageInfo) ii);
+		if(!registered)
+			ii.discard();
+		addUsedFragment(ii); // Link/relink in LRU
+	}
+
 	static private List<IImageConversionSpecifier>	convertArray(IImageConversionSpecifier[] conversions) {
 		List<IImageConversionSpecifier> l = new ArrayList<IImageConversionSpecifier>();
 		for(IImageConversionSpecifier s : conversions)
@@ -337,18 +373,37 @@ public class ImageTask extends CacheChange {
 		if(conversions == null || conversions.size() == 0)
 			return getOriginalData();
 
-		removeOutdatedVersions(); // Remove all old thingies from the cache.
+		long version = removeOutdatedVersions(); // Remove all old thingies from the cache.
 		String perm = getPermutationKey(conversions); // Create the key for the specified conversions
 
 		//-- Is the required version cached? In that case it's current so reuse
-		CachedImageData cid = getRoot().findPermutationData(perm);
+		CachedImageData cid = getRoot().findPermutationData(perm, version);
 		if(cid != null) {
-			addUsedFragment(cid); // Mark recently used
-			return cid;
+			cache().hit();
+		} else {
+			cache().miss();
+			cid = generatePermutationOnce(perm, version, conversions);
 		}
+		addUsedFragment(cid); // Mark recently used
+		return cid;
+	}
+
+	/**
+	 * Get the data and info of a permutation from the file cache, or generate them. When another
+	 * request is doing that for the same permutation already we wait for its result instead.
+	 */
+	@NonNull
+	private CachedImageData generatePermutationOnce(@NonNull String perm, long version, @NonNull List<IImageConversionSpecifier> conversions) throws Exception {
+		return getRoot().generateOnce("data:" + perm + ":" + version, () -> loadPermutation(perm, version, conversions));
+	}
+
+	@NonNull
+	private CachedImageData loadPermutation(@NonNull String perm, long cts, @NonNull List<IImageConversionSpecifier> conversions) throws Exception {
+		CachedImageData cid = getRoot().findPermutationData(perm, cts);
+		if(cid != null && getRoot().findPermutationInfo(perm, cts) != null)
+			return cid;
 
 		//-- Not cached in memory.. Try to get the stuff from a cachefile..
-		long cts = getCurrentVersionLong();
 		String datacachename = getKey().getRetriever().getRetrieverKey() + "/" + getKey().getInstanceKey() + "-" + perm + "-" + Long.toHexString(cts) + ".data";
 		String infocachename = getKey().getRetriever().getRetrieverKey() + "/" + getKey().getInstanceKey() + "-" + perm + "-" + Long.toHexString(cts) + ".info";
 		FileCacheRef dataref = cache().getFileRef(datacachename);
@@ -383,13 +438,20 @@ public class ImageTask extends CacheChange {
 			}
 
 			//-- Store the info on this image.
-			CachedImageInfo oldci = getRoot().findPermutationInfo(perm);// Is an older copy available?
+			CachedImageInfo oldci = getRoot().findPermutationInfo(perm, cts);// Is an older copy available?
 			if(oldci != null) {
 				addDeletedFragment(oldci); // Tell the cache to update it's admin
 				getRoot().unregisterInstance(oldci);
 			}
 			addNewInfo(perm, cts, inforef, info);
 
+			//-- If only the info was missing we're done
+			if(null != cid) {
+				ok = true;
+				dataref.close();
+				return cid;
+			}
+
 			//-- Now load the data block.
 			len = (int) dataref.getFile().length();
 
@@ -403,8 +465,7 @@ public class ImageTask extends CacheChange {
 
 			//-- All of this worked!! Nothing normal can go wrong after this so link and register all data
 			CachedImageData ii = new CachedImageData(getRoot(), perm, cts, dataref, len, bufs, memload);
-			addUsedFragment(ii); // Link/relink in LRU
-			getRoot().registerInstance(ii);
+			register(ii);
 			ok = true;
 			return ii;
 		} finally {
@@ -421,6 +482,7 @@ public class ImageTask extends CacheChange {
 		CachedImageInfo origi = getOriginalInfo(); // And the info's nice too
 
 		//-- 2. Create the object using the permutator factories.
+		long ts = System.nanoTime();
 		ImageConverterHelper ich = new ImageConverterHelper();
 		try {
 			ImageSpec sis = new ImageSpec(origd.getFile(), origi.getImageInfo());
@@ -428,7 +490,9 @@ public class ImageTask extends CacheChange {
 
 			//-- Now copy the final result into the cachefile;
 			FileTool.copyFile(targetref.getFile(), ich.getTarget().getSource()); // Copy result to cachefile
-			return ich.getTarget().getInfo();
+			ImageInfo info = ich.getTarget().getInfo();
+			cache().generated(System.nanoTime() - ts);
+			return info;
 		} finally {
 			ich.destroy();
 		}
@@ -439,20 +503,22 @@ public class ImageTask extends CacheChange {
 		if(conversions == null || conversions.size() == 0)
 			return getOriginalInfo();
 
-		removeOutdatedVersions(); // Remove all old thingies from the cache.
+		long version = removeOutdatedVersions(); // Remove all old thingies from the cache.
 		String perm = getPermutationKey(conversions); // Create the key for the specified conversions
 
 		//-- Is the required version cached? In that case it's current so reuse
-		CachedImageInfo cii = getRoot().findPermutationInfo(perm);
+		CachedImageInfo cii = getRoot().findPermutationInfo(perm, version);
 		if(cii != null) {
+			cache().hit();
 			addUsedFragment(cii); // Mark recently used
 			return cii;
 		}
 
 		//-- We need to create it- Just creating the data also creates the info.
-		getImageData(conversions);
+		cache().miss();
+		addUsedFragment(generatePermutationOnce(perm, version, conversions));
 
-		cii = getRoot().findPermutationInfo(perm);
+		cii = getRoot().findPermutationInfo(perm, version);
 		if(cii == null)
 			throw new IllegalStateException("? Image transformation did not create an ImageInfo instance in the cache?");
 		return cii;
@@ -6,7 +6,7 @@ import to.etc.domui.trouble.UIException;
 import to.etc.domui.util.images.converters.ImageConverterHelper;
 import to.etc.domui.util.images.converters.ImageSpec;
 import to.etc.domui.util.images.machines.ImageInfo;
-import to.etc.domui.util.images.machines.ImageMagicImageHandler;
+import to.etc.domui.util.images.machines.ImageManipulator;
 import to.etc.domui.util.images.machines.OriginalImagePage;
 import to.etc.sjit.ImaTool;
 import to.etc.util.FileTool;
@@ -56,7 +56,7 @@ final public class LoadedImage implements IUIImage {
 
 	@NonNull
 	static public LoadedImage	create(@NonNull File original, @Nullable Dimension maxSize, @Nullable List<Object> resourceList) throws Exception {
-		ImageInfo identify = ImageMagicImageHandler.getInstance().identify(original);
+		ImageInfo identify = ImageManipulator.getImageHandler().identify(original);
 		if(identify.getPageCount() != 1)
 			throw new UIException(BUNDLE, "image.invalid");
 
@@ -66,7 +66,7 @@ final public class LoadedImage implements IUIImage {
 			//-- Resize
 			ImageSpec spec = new ImageSpec(original, identify);
 			ImageConverterHelper h = new ImageConverterHelper();
-			ImageSpec resized = ImageMagicImageHandler.getInstance().thumbnail(h, spec, 0, maxSize.getWidth(), maxSize.getHeight(), "image/png");
+			ImageSpec resized = ImageManipulator.getImageHandler().thumbnail(h, spec, 0, maxSize.getWidth(), maxSize.getHeight(), "image/png");
 			original = resized.getSource();											// Original is now the initial resized one.
 			if(null != resourceList)
 				resourceList.add(original);
@@ -106,9 +106,9 @@ final public class LoadedImage implements IUIImage {
 				ImageConverterHelper h = new ImageConverterHelper();
 				ImageSpec resized;
 				if(thumbNail) {
-					resized = ImageMagicImageHandler.getInstance().thumbnail(h, spec, 0, size.getWidth(), size.getHeight(), "image/png");
+					resized = ImageManipulator.getImageHandler().thumbnail(h, spec, 0, size.getWidth(), size.getHeight(), "image/png");
 				} else {
-					resized = ImageMagicImageHandler.getInstance().scale(h, spec, 0, size.getWidth(), size.getHeight(), "image/png");
+					resized = ImageManipulator.getImageHandler().scale(h, spec, 0, size.getWidth(), size.getHeight(), "image/png");
 				}
 				List<Object> resourceList = m_resourceList;
 				if(null != resourceList)
@@ -12,6 +12,8 @@ import to.etc.domui.component.meta.SearchPropertyMetaModel;
 import to.etc.domui.component.meta.impl.SearchPropertyMetaModelImpl;
 import to.etc.domui.component.misc.Icon;
 import to.etc.domui.component.tbl.IQueryHandler;
+import to.etc.domui.component.tbl.ITableModel;
+import to.etc.domui.component.tbl.SimpleListModel;
 import to.etc.domui.dom.errors.UIMessage;
 import to.etc.domui.dom.html.Div;
 import to.etc.domui.dom.html.IActionControl;
@@ -21,8 +23,10 @@ import to.etc.domui.dom.html.IHasModifiedIndication;
 import to.etc.domui.dom.html.IValueChanged;
 import to.etc.domui.dom.html.NodeBase;
 import to.etc.domui.dom.html.Span;
+import to.etc.domui.server.DomApplication;
 import to.etc.domui.trouble.ValidationException;
 import to.etc.domui.util.DomUtil;
+import to.etc.domui.util.ICachedListMaker;
 import to.etc.domui.util.IRenderInto;
 import to.etc.domui.util.Msgs;
 import to.etc.util.StringTool;
@@ -128,6 +132,17 @@ abstract public class AbstractLookupInputBase<QT, OT> extends Div implements ICo
 	@Nullable
 	private IValueChanged< ? > m_onValueChanged;
 
+	/** The previous keyword search result while typing, see {@link TypeAheadCache}. */
+	@NonNull
+	private final TypeAheadCache<OT> m_typeAhead = new TypeAheadCache<>();
+
+	/** When T (default) a keyword search while typing filters the previous result when possible. */
+	private boolean m_reuseKeyWordResults = true;
+
+	/** When set, keyword searches use an in-memory index on this cached list instead of the database. */
+	@Nullable
+	private ICachedListMaker<OT> m_keyWordSearchList;
+
 	@Nullable
 	private String m_keyWordSearchCssClass;
 
@@ -483,6 +498,7 @@ abstract public class AbstractLookupInputBase<QT, OT> extends Div implements ICo
 	 * @throws Exception
 	 */
 	protected void handleSetValue(@Nullable OT value) throws Exception {
+		m_typeAhead.clear();
 		if(!MetaManager.areObjectsEqual(value, m_value, null)) {
 			DomUtil.setModifiedFlag(this);
 			setValue(value);
@@ -758,4 +774,78 @@ abstract public class AbstractLookupInputBase<QT, OT> extends Div implements ICo
 		return m_keywordLookupPropertyList;
 	}
 
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Type-ahead.											*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * Try to answer a keyword search without a database query: from the index on the keyword search
+	 * list when one is set, else, while typing, by filtering the previous result. This is only possible
+	 * for the default keyword search where the query and output types are the same. Returns null when
+	 * the database must be queried.
+	 */
+	@Nullable
+	protected ITableModel<OT> searchKeyWordInMemory(@NonNull String searchString, @NonNull List<SearchPropertyMetaModel> spml, boolean typing) throws Exception {
+		if(getQueryClass() != (Class<?>) getOutputClass())
+			return null;
+		ICachedListMaker<OT> listMaker = m_keyWordSearchList;
+		if(null != listMaker) {
+			List<SearchPropertyMetaModel> active = TypeAheadCache.getActiveStringProperties(spml, searchString);
+			if(null == active)
+				return null;
+			StringBuilder sb = new StringBuilder("kwindex");
+			for(SearchPropertyMetaModel spm : spml)
+				sb.append(':').append(spm.getProperty().getName());
+			KeyWordSearchIndex<OT> index = DomApplication.get().getListCache().getDerived(listMaker, sb.toString(), list -> new KeyWordSearchIndex<>(list, spml));
+			return new SimpleListModel<>(index.search(searchString, active));
+		}
+
+		if(!typing || !m_reuseKeyWordResults) {
+			m_typeAhead.clear();
+			return null;
+		}
+		List<OT> items = m_typeAhead.find(searchString, spml);
+		return null == items ? null : new SimpleListModel<>(items);
+	}
+
+	/**
+	 * Called with the result of a keyword search done on the database, so that it can be reused while typing.
+	 */
+	protected void keyWordSearchCompleted(@NonNull String searchString, @NonNull List<SearchPropertyMetaModel> spml, @Nullable ITableModel<OT> model, boolean typing) throws Exception {
+		if(typing && m_reuseKeyWordResults && getQueryClass() == (Class<?>) getOutputClass())
+			m_typeAhead.remember(searchString, spml, model);
+		else
+			m_typeAhead.clear();
+	}
+
+	public boolean isReuseKeyWordResults() {
+		return m_reuseKeyWordResults;
+	}
+
+	/**
+	 * When T (the default), a keyword search while typing that extends the previous search text
+	 * filters the previous result in memory when that result was complete, instead of querying the
+	 * database again. Switch this off when the query manipulator or root criteria depend on data that
+	 * can change while the user types.
+	 */
+	public void setReuseKeyWordResults(boolean reuseKeyWordResults) {
+		m_reuseKeyWordResults = reuseKeyWordResults;
+		m_typeAhead.clear();
+	}
+
+	@Nullable
+	public ICachedListMaker<OT> getKeyWordSearchList() {
+		return m_keyWordSearchList;
+	}
+
+	/**
+	 * For small reference tables: do keyword searches on this cached list (see {@link DomApplication#getCachedList})
+	 * using a shared in-memory {@link KeyWordSearchIndex}, instead of querying the database. The index is rebuilt
+	 * when the cached list is invalidated. The list must already contain only the selectable records: root criteria
+	 * and query manipulators are not applied to it. Texts with wildcards, or texts that search on a numeric property,
+	 * still query the database.
+	 */
+	public void setKeyWordSearchList(@Nullable ICachedListMaker<OT> keyWordSearchList) {
+		m_keyWordSearchList = keyWordSearchList;
+	}
+
 }
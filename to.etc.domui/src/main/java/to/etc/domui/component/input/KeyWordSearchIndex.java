@@ -0,0 +1,97 @@
+package to.etc.domui.component.input;
+
+import org.eclipse.jdt.annotation.NonNull;
+import to.etc.domui.component.meta.PropertyMetaModel;
+import to.etc.domui.component.meta.SearchPropertyMetaModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory keyword search index on a small reference list, for lookup controls that search
+ * a cached list instead of the database (see {@link AbstractLookupInputBase#setKeyWordSearchList}).
+ * It indexes the lowercased first 1..3 characters (the leading n-grams) of every string search
+ * property, so a search only verifies the items that start with the same characters. The match is
+ * the same as the database search: any search property starts with the text.
+ *
+ * <p>The index is immutable; it is shared through the {@link to.etc.domui.server.ListCache}
+ * and rebuilt when the list is loaded again after an invalidation or expiry.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class KeyWordSearchIndex<T> {
+	static private final int GRAM = 3;
+
+	static private final int[] NONE = new int[0];
+
+	@NonNull
+	private final List<T> m_items;
+
+	/** Item indexes, in ascending order, by lowercased leading n-gram. */
+	@NonNull
+	private final Map<String, int[]> m_postings;
+
+	public KeyWordSearchIndex(@NonNull List<T> items, @NonNull List<SearchPropertyMetaModel> spml) throws Exception {
+		m_items = items;
+		Map<String, int[]> postings = new HashMap<>();
+		Map<String, Integer> sizes = new HashMap<>();
+		for(int i = 0; i < items.size(); i++) {
+			T item = items.get(i);
+			for(SearchPropertyMetaModel spm : spml) {
+				PropertyMetaModel<?> pmm = spm.getProperty();
+				if(pmm == null || !pmm.getActualType().isAssignableFrom(String.class))
+					continue;
+				Object value = pmm.getValue(item);
+				if(!(value instanceof String))
+					continue;
+				String s = ((String) value).toLowerCase();
+				for(int len = 1; len <= GRAM && len <= s.length(); len++)
+					add(postings, sizes, s.substring(0, len), i);
+			}
+		}
+
+		//-- Trim all posting lists to size
+		for(Map.Entry<String, int[]> me : postings.entrySet())
+			me.setValue(Arrays.copyOf(me.getValue(), sizes.get(me.getKey()).intValue()));
+		m_postings = postings;
+	}
+
+	static private void add(@NonNull Map<String, int[]> postings, @NonNull Map<String, Integer> sizes, @NonNull String gram, int index) {
+		int[] list = postings.get(gram);
+		int size = list == null ? 0 : sizes.get(gram).intValue();
+		if(size > 0 && list[size - 1] == index)			// Another property of the same item
+			return;
+		if(null == list)
+			list = new int[4];
+		else if(size == list.length)
+			list = Arrays.copyOf(list, size * 2);
+		list[size] = index;
+		postings.put(gram, list);
+		sizes.put(gram, Integer.valueOf(size + 1));
+	}
+
+	/**
+	 * Return the items where one of the active properties starts with the text, in list order.
+	 * The active properties are the string properties the search uses for this text, see
+	 * {@link TypeAheadCache#getActiveStringProperties(List, String)}.
+	 */
+	@NonNull
+	public List<T> search(@NonNull String searchString, @NonNull List<SearchPropertyMetaModel> active) throws Exception {
+		String gram = searchString.substring(0, Math.min(GRAM, searchString.length())).toLowerCase();
+		int[] candidates = m_postings.getOrDefault(gram, NONE);
+		List<T> res = new ArrayList<>();
+		for(int index : candidates) {
+			T item = m_items.get(index);
+			if(TypeAheadCache.matches(item, active, searchString))
+				res.add(item);
+		}
+		return res;
+	}
+
+	public int size() {
+		return m_items.size();
+	}
+}
@@ -253,7 +253,7 @@ abstract public class LookupInputBase<QT, OT> extends AbstractLookupInputBase<QT
 		ks.setResultsHintPopupRowRenderer(rr);
 
 		ks.setOnLookupTyping(component -> {
-			ITableModel<OT> keySearchModel = searchKeyWord(component.getKeySearchValue());
+			ITableModel<OT> keySearchModel = searchKeyWord(component.getKeySearchValue(), true);
 			component.showResultsHintPopup(null);
 			if(keySearchModel == null) {
 				//in case of insufficient searchString data cancel search and return.
@@ -274,7 +274,7 @@ abstract public class LookupInputBase<QT, OT> extends AbstractLookupInputBase<QT
 		});
 
 		ks.setOnShowResults(component -> {
-			ITableModel<OT> keySearchModel = searchKeyWord(component.getKeySearchValue());
+			ITableModel<OT> keySearchModel = searchKeyWord(component.getKeySearchValue(), false);
 			component.showResultsHintPopup(null);
 			if(keySearchModel == null) {
 				//in case of insufficient searchString data cancel search and popup clean search dialog.
@@ -326,14 +326,26 @@ abstract public class LookupInputBase<QT, OT> extends AbstractLookupInputBase<QT
 	/**
 	 * Returns data that matches keyword search string.
 	 * @param searchString
+	 * @param typing	T when called while the user types; the result can then be reused for the next keystroke.
 	 * @return Matching data or null in case that search is cancelled because of insufficient number of characters typed into keyword search field.
 	 * @throws Exception
 	 */
 	@Nullable
-	private ITableModel<OT> searchKeyWord(@Nullable String searchString) throws Exception {
+	private ITableModel<OT> searchKeyWord(@Nullable String searchString, boolean typing) throws Exception {
 		if(searchString == null || searchString.trim().length() == 0) {
 			return null;
 		}
+
+		//-- The default search on the metadata properties can sometimes be done without the database
+		List<SearchPropertyMetaModel> spml = null;
+		if(getKeyWordSearchHandler() == null) {
+			List<SearchPropertyMetaModel> kwl = getKeywordLookupPropertyList();
+			spml = kwl == null ? getQueryMetaModel().getKeyWordSearchProperties() : kwl;
+			ITableModel<OT> model = searchKeyWordInMemory(searchString, spml, typing);
+			if(null != model)
+				return model;
+		}
+
 		searchString = DomUtil.nullChecked(searchString.replace("*", "%"));
 		QCriteria<QT> searchQuery;
 
@@ -353,7 +365,10 @@ abstract public class LookupInputBase<QT, OT> extends AbstractLookupInputBase<QT
 			return null;
 		}
 
-		return createTableModel(searchQuery);
+		ITableModel<OT> model = createTableModel(searchQuery);
+		if(null != spml)
+			keyWordSearchCompleted(searchString, spml, model, typing);
+		return model;
 	}
 
 	/**
@@ -477,7 +492,7 @@ abstract public class LookupInputBase<QT, OT> extends AbstractLookupInputBase<QT
 	protected void openPopupWithClick() throws Exception {
 		KeyWordSearchInput<OT> keySearch = getKeySearch();
 		if(keySearch != null) {
-			toggleFloater(searchKeyWord(keySearch.getKeySearchValue()));
+			toggleFloater(searchKeyWord(keySearch.getKeySearchValue(), false));
 		} else {
 			toggleFloater(null);
 		}
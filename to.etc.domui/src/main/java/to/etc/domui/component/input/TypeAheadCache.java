@@ -0,0 +1,153 @@
+package to.etc.domui.component.input;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.domui.component.meta.PropertyMetaModel;
+import to.etc.domui.component.meta.SearchPropertyMetaModel;
+import to.etc.domui.component.tbl.ITableModel;
+import to.etc.domui.component.tbl.ITruncateableDataModel;
+import to.etc.domui.util.DomUtil;
+import to.etc.util.RuntimeConversions;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Remembers the last keyword search result of a lookup control while the user types. The
+ * default keyword search is an "or" of "property like 'text%'" conditions, so when the user types
+ * "amst" right after "ams" the new result is a subset of the previous one. If that previous result
+ * was complete it is filtered in memory instead of querying the database again.
+ *
+ * <p>Reuse is only possible when the search is evaluated on the result objects themselves (the
+ * query and output types are the same), when the search text has no wildcards, and when the same
+ * properties take part in both searches. Numeric search properties are matched by value instead
+ * of by prefix, so a text that converts to a number is always queried.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class TypeAheadCache<T> {
+	/** Larger results are not kept. */
+	static public final int MAX_ROWS = 500;
+
+	@Nullable
+	private String m_searchString;
+
+	@NonNull
+	private List<SearchPropertyMetaModel> m_properties = Collections.emptyList();
+
+	@Nullable
+	private List<T> m_items;
+
+	/**
+	 * Return the result for the search string by filtering the previous result, or null if the
+	 * database must be queried.
+	 */
+	@Nullable
+	public List<T> find(@NonNull String searchString, @NonNull List<SearchPropertyMetaModel> spml) throws Exception {
+		List<T> items = m_items;
+		String previous = m_searchString;
+		if(null == items || null == previous || !searchString.startsWith(previous))
+			return null;
+		List<SearchPropertyMetaModel> active = getActiveStringProperties(spml, searchString);
+		if(null == active || !active.equals(m_properties))
+			return null;
+
+		List<T> res = new ArrayList<>();
+		for(T item : items) {
+			if(matches(item, active, searchString))
+				res.add(item);
+		}
+		m_searchString = searchString;					// The filtered result is complete for the new string too
+		m_items = res;
+		return res;
+	}
+
+	/**
+	 * Keep the result of a database search for the string, if it can be reused later.
+	 */
+	public void remember(@NonNull String searchString, @NonNull List<SearchPropertyMetaModel> spml, @Nullable ITableModel<T> model) throws Exception {
+		clear();
+		if(null == model || (model instanceof ITruncateableDataModel && ((ITruncateableDataModel) model).isTruncated()))
+			return;
+		List<SearchPropertyMetaModel> active = getActiveStringProperties(spml, searchString);
+		if(null == active)
+			return;
+		int rows = model.getRows();
+		if(rows > MAX_ROWS)
+			return;
+		m_items = new ArrayList<>(model.getItems(0, rows));
+		m_searchString = searchString;
+		m_properties = active;
+	}
+
+	public void clear() {
+		m_items = null;
+		m_searchString = null;
+		m_properties = Collections.emptyList();
+	}
+
+	/**
+	 * True if the item matches the default keyword search on the specified string properties.
+	 */
+	static public boolean matches(@NonNull Object item, @NonNull List<SearchPropertyMetaModel> active, @NonNull String searchString) throws Exception {
+		for(SearchPropertyMetaModel spm : active) {
+			Object value = spm.getProperty().getValue(item);
+			if(value instanceof String) {
+				String s = (String) value;
+				if(s.regionMatches(spm.isIgnoreCase(), 0, searchString, 0, searchString.length()))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the properties that the default keyword search uses for the string, if they can all
+	 * be evaluated in memory as a prefix match; else return null.
+	 */
+	@Nullable
+	static public List<SearchPropertyMetaModel> getActiveStringProperties(@NonNull List<SearchPropertyMetaModel> spml, @NonNull String searchString) {
+		if(!isPlainSearchString(searchString))
+			return null;
+		List<SearchPropertyMetaModel> res = new ArrayList<>(spml.size());
+		for(SearchPropertyMetaModel spm : spml) {
+			if(spm.getMinLength() > searchString.length())
+				continue;
+			PropertyMetaModel<?> pmm = spm.getProperty();
+			if(pmm == null || pmm.getName().indexOf('.') >= 0)			// Path properties are not on the result object
+				return null;
+			Class<?> type = pmm.getActualType();
+			if(type.isAssignableFrom(String.class)) {
+				res.add(spm);
+			} else if(DomUtil.isIntegerType(type) || type == BigDecimal.class) {
+				if(isConvertible(searchString, type))
+					return null;
+			}
+		}
+		return res.size() == 0 ? null : res;
+	}
+
+	static private boolean isConvertible(@NonNull String searchString, @NonNull Class<?> type) {
+		try {
+			return RuntimeConversions.convertTo(searchString, type) != null;
+		} catch(Exception x) {
+			return false;
+		}
+	}
+
+	/**
+	 * True if the string has no wildcards or special lookup prefixes.
+	 */
+	static public boolean isPlainSearchString(@NonNull String searchString) {
+		if(searchString.startsWith("$$") || searchString.startsWith(LookupInputBase.MAGIC_ID_MARKER))
+			return false;
+		for(int i = searchString.length(); --i >= 0;) {
+			char c = searchString.charAt(i);
+			if(c == '%' || c == '*' || c == '_')
+				return false;
+		}
+		return true;
+	}
+}
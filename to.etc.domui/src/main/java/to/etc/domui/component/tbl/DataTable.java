@@ -44,14 +44,18 @@ import to.etc.domui.dom.html.THead;
 import to.etc.domui.dom.html.TR;
 import to.etc.domui.dom.html.Table;
 import to.etc.domui.dom.html.TextNode;
+import to.etc.domui.parts.IComponentJsonProvider;
 import to.etc.domui.server.RequestContextImpl;
+import to.etc.domui.state.IPageParameters;
 import to.etc.domui.util.DomUtil;
 import to.etc.domui.util.JavascriptUtil;
 import to.etc.domui.util.Msgs;
 import to.etc.util.DeveloperOptions;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DataTable which allows rendering of multiple rows per data element. Originally created
@@ -64,7 +68,10 @@ import java.util.List;
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on 7/29/16.
  */
-final public class DataTable<T> extends PageableTabularComponentBase<T> implements ISelectionListener<T>, ISelectableTableComponent<T> {
+final public class DataTable<T> extends PageableTabularComponentBase<T> implements ISelectionListener<T>, ISelectableTableComponent<T>, IComponentJsonProvider {
+	/** Tables with more rows than this are always sorted on the server, even when client sorting is enabled. */
+	static public final int CLIENT_SORT_MAX_ROWS = 1000;
+
 	private MiniLogger m_ml = new MiniLogger(40);
 
 	private Table m_table = new Table();
@@ -108,6 +115,16 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 	@NonNull
 	private DataTableResize m_resizeMode = DataTableResize.NONE;
 
+	/** When set, small tables are sorted and filtered in the browser, see {@link #setClientSort(boolean)}. */
+	private boolean m_clientSort;
+
+	/** T when the current header was rendered for client sorting. */
+	private boolean m_clientSortRendered;
+
+	/** The input whose text filters the rows in the browser, when client sorting is active. */
+	@Nullable
+	private NodeBase m_clientFilter;
+
 	@NonNull
 	final private IClicked<TH> m_headerSelectClickHandler = clickednode -> {
 		if(isDisabled()) {
@@ -165,6 +182,7 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 		}
 		m_dataBody = null;
 		m_errorDiv = null;
+		m_clientSortRendered = false;
 		addCssClass("ui-dt");
 		m_table.setWidth(getWidth());
 
@@ -196,6 +214,8 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 		//-- Render the rows.
 		renderRowList(list);
 		ml("createContent rebuilt visibleList after render");
+		if(m_clientSortRendered)
+			appendCreateJS(getClientSortJS());
 		//if(isDisableClipboardSelection())
 		//	appendCreateJS(JavascriptUtil.disableSelection(this)); // Needed to prevent ctrl+click in IE doing clipboard-select, because preventDefault does not work there of course.
 	}
@@ -270,6 +290,7 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 //			headerCell.setWidth("1%"); //keep selection column with minimal width
 			cell.getCol().setWidth("3em");
 		}
+		m_clientSortRendered = isClientSortActive();
 		m_rowRenderer.renderHeader(this, hc);
 	}
 
@@ -710,6 +731,7 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 		//-- Render the rows.
 		renderRowList(list);
 		ml("createContent rebuilt visibleList updateAllRows");
+		clientRowsChanged();
 	}
 
 	private void renderRowList(List<T> list) throws Exception {
@@ -732,6 +754,8 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 	}
 
 	@Override public void rowsSorted(@NonNull ITableModel<T> model) throws Exception {
+		if(m_clientSortRendered && isBuilt())
+			appendJavascript("WebUI.dataTableClientSortReset('" + m_table.getActualID() + "');");
 		updateAllRows();
 	}
 
@@ -798,6 +822,7 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 				ml("rowAdded after pgsz delete visibleSz=" + m_visibleItemList.size());
 			}
 			handleOddEven(rrow);
+			clientRowsChanged();
 			firePageChanged();
 		} catch(Exception x) {
 			System.err.println("Last DataTable actions:\n" + m_ml.getData());
@@ -883,6 +908,7 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 			}
 			calcIndices(); // Calculate visible nodes
 			handleOddEven(rrow);
+			clientRowsChanged();
 			firePageChanged();
 		} catch(IndexOutOfBoundsException x) {
 			System.err.println("Last DataTable actions:\n" + m_ml.getData());
@@ -935,6 +961,7 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 			ColumnContainer<T> cc = new ColumnContainer<>(this);
 			cc.setParent(tr);
 			renderRow(tr, cc, index, value);
+			clientRowsChanged();
 		} catch(Exception x) {
 			System.err.println("Last DataTable actions:\n" + m_ml.getData());
 			throw x;
@@ -1134,4 +1161,113 @@ final public class DataTable<T> extends PageableTabularComponentBase<T> implemen
 	public void webActionCOLWIDTHS(@NonNull RequestContextImpl context) throws Exception {
 		m_rowRenderer.updateWidths(this, context);
 	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Client side sorting and filtering.					*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * When set, a table that shows all of its rows on one page (and has at most {@link #CLIENT_SORT_MAX_ROWS})
+	 * is sorted in the browser: clicking a sortable column header does not call the server. The sort
+	 * keys of the rows are fetched once, as JSON, when the user first sorts or filters. This only
+	 * applies to columns that sort on a single property of a simple type (string, number, date,
+	 * boolean or enum) and needs a {@link RowRenderer}; other columns still sort on the server.
+	 *
+	 * <p>The server remains the owner of the data: the model's order does not change, and selection
+	 * and row actions use the rows themselves. When the model changes, the browser reapplies the sort
+	 * and filter to the new rows. Selecting a range of rows with shift-click uses the model's order.</p>
+	 */
+	public void setClientSort(boolean clientSort) {
+		if(m_clientSort == clientSort)
+			return;
+		m_clientSort = clientSort;
+		forceRebuild();
+	}
+
+	public boolean isClientSort() {
+		return m_clientSort;
+	}
+
+	/**
+	 * Set a text input (or a control containing one) whose text filters the rows in the browser
+	 * while the user types, when client sorting is active. A row stays visible when its text contains
+	 * the filter text, ignoring case.
+	 */
+	public void setClientFilter(@Nullable NodeBase clientFilter) {
+		if(m_clientFilter == clientFilter)
+			return;
+		m_clientFilter = clientFilter;
+		forceRebuild();
+	}
+
+	@Nullable
+	public NodeBase getClientFilter() {
+		return m_clientFilter;
+	}
+
+	/**
+	 * T if the rows are sorted and filtered in the browser: client sorting is enabled
+	 * and all rows of the model fit on the page.
+	 */
+	boolean isClientSortActive() throws Exception {
+		if(!m_clientSort || !(m_rowRenderer instanceof RowRenderer))
+			return false;
+		ITableModel<T> model = getModel();
+		if(null == model)
+			return false;
+		if(model instanceof ITruncateableDataModel && ((ITruncateableDataModel) model).isTruncated())
+			return false;
+		int rows = model.getRows();
+		return rows <= CLIENT_SORT_MAX_ROWS && (m_pageSize <= 0 || rows <= m_pageSize);
+	}
+
+	/**
+	 * T when the header was rendered for sorting in the browser.
+	 */
+	boolean isClientSortRendered() {
+		return m_clientSortRendered;
+	}
+
+	@NonNull
+	private String getClientSortJS() {
+		NodeBase filter = m_clientFilter;
+		return "WebUI.dataTableClientSort('" + m_table.getActualID() + "','" + getActualID() + "'," + (filter == null ? "null" : "'" + filter.getActualID() + "'") + ");";
+	}
+
+	/**
+	 * After the server changed the rows: if the table no longer fits client sorting (or now does) the
+	 * header must be rendered again; else let the browser reapply its sort and filter.
+	 */
+	private void clientRowsChanged() throws Exception {
+		if(!m_clientSort || m_dataBody == null)
+			return;
+		if(m_clientSortRendered != isClientSortActive()) {
+			forceRebuild();
+			return;
+		}
+		if(m_clientSortRendered)
+			appendJavascript(getClientSortJS());
+	}
+
+	/**
+	 * Returns the data for sorting in the browser: the IDs of the rows of each item, in model
+	 * order, and the sort key of each item for each client sortable column, by the ID of the
+	 * column's header cell.
+	 */
+	@NonNull
+	@Override
+	public Object provideJsonData(@NonNull IPageParameters parameterSource) throws Exception {
+		List<List<String>> rows = new ArrayList<>(m_visibleItemList.size());
+		List<T> items = new ArrayList<>(m_visibleItemList.size());
+		for(TableRowSet<T> rowSet : m_visibleItemList) {
+			List<String> ids = new ArrayList<>(rowSet.rowCount());
+			for(DataTableRow<T> row : rowSet)
+				ids.add(row.getActualID());
+			rows.add(ids);
+			items.add(rowSet.getInstance());
+		}
+		Map<String, Object> res = new HashMap<>();
+		res.put("rows", rows);
+		res.put("cols", m_clientSortRendered ? ((RowRenderer<T>) m_rowRenderer).getClientSortValues(items) : new HashMap<>());
+		return res;
+	}
 }
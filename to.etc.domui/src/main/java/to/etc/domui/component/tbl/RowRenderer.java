@@ -35,6 +35,7 @@ import to.etc.webapp.query.QField;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -92,6 +93,9 @@ import java.util.function.Predicate;
 
 	private Map<ColumnDef<T, ?>, TH> m_columnByThIdMap = new HashMap<>();
 
+	/** The columns that are sorted in the browser, when the table sorts client side. */
+	private List<ColumnDef<T, ?>> m_clientSortColumnList = new ArrayList<>();
+
 	@NonNull
 	private List<TableHeader> m_tableHeaderBeforeList = Collections.EMPTY_LIST;
 
@@ -183,11 +187,13 @@ import java.util.function.Predicate;
 		Div[] sortSpans = m_sortSpans = new Div[m_columnList.size()];
 		int ix = 0;
 		final boolean sortablemodel = tbl.getModel() instanceof ISortableTableModel;
+		final boolean clientSort = tbl instanceof DataTable && ((DataTable<T>) tbl).isClientSortRendered();
 		StringBuilder sb = new StringBuilder();
 
 		Map<ColumnDef<T, ?>, String> widthMap = calculateWidths(tbl);
 
 		m_columnByThIdMap.clear();
+		m_clientSortColumnList.clear();
 		for(final ColumnDef<T, ?> cd : m_columnList) {
 			TH th;
 			Col col;
@@ -209,7 +215,12 @@ import java.util.function.Predicate;
 				if(!StringTool.isBlank(label))
 					cellSpan.add(new Span(label));
 				final ColumnDef<T, ?> scd = cd;
-				th.setClicked((IClicked<TH>) b -> handleSortClick(b, scd));
+				if(clientSort && isClientSortable(cd)) {
+					th.addCssClass("ui-dt-csort");				// Sorted by the browser
+					m_clientSortColumnList.add(cd);
+				} else {
+					th.setClicked((IClicked<TH>) b -> handleSortClick(b, scd));
+				}
 
 				//in order to apply correct positioning, we need to wrap Span around sort indicator image and label
 
@@ -270,6 +281,77 @@ import java.util.function.Predicate;
 		return false;
 	}
 
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Client side sorting.								*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * A column can be sorted in the browser when it sorts on a single property of a simple type.
+	 */
+	private boolean isClientSortable(ColumnDef<T, ?> cd) {
+		if(cd.getSortHelper() != null)
+			return false;
+		PropertyMetaModel<?> pmm = getClientSortProperty(cd);
+		if(null == pmm)
+			return false;
+		Class<?> type = pmm.getActualType();
+		return (type.isPrimitive() && type != char.class)
+			|| type == String.class
+			|| type == Boolean.class
+			|| Number.class.isAssignableFrom(type)
+			|| Date.class.isAssignableFrom(type)
+			|| Enum.class.isAssignableFrom(type);
+	}
+
+	@Nullable
+	private PropertyMetaModel<?> getClientSortProperty(ColumnDef<T, ?> cd) {
+		String name = cd.getSortProperty();
+		if(null == name)
+			name = cd.getPropertyName();
+		if(null == name || name.indexOf(';') >= 0 || name.indexOf(':') >= 0)
+			return null;
+		return m_metaModel.findProperty(name);
+	}
+
+	/**
+	 * Return the sort keys of the items for all columns that sort in the browser, by the ID
+	 * of the column's header cell. Keys are strings, numbers or null; dates are sent as their
+	 * time, booleans as 0 and 1 and enums by their ordinal, so that their order matches the order
+	 * used when sorting on the server.
+	 */
+	Map<String, List<Object>> getClientSortValues(List<T> items) throws Exception {
+		Map<String, List<Object>> res = new HashMap<>();
+		for(ColumnDef<T, ?> cd : m_clientSortColumnList) {
+			TH th = m_columnByThIdMap.get(cd);
+			PropertyMetaModel<?> pmm = getClientSortProperty(cd);
+			if(null == th || null == pmm)
+				continue;
+			List<Object> values = new ArrayList<>(items.size());
+			for(T item : items)
+				values.add(toClientSortValue(pmm.getValue(item)));
+			res.put(th.getActualID(), values);
+		}
+		return res;
+	}
+
+	@Nullable
+	static private Object toClientSortValue(@Nullable Object value) {
+		if(value == null || value instanceof String)
+			return value;
+		if(value instanceof Boolean)
+			return Integer.valueOf(((Boolean) value).booleanValue() ? 1 : 0);
+		if(value instanceof Date)
+			return Long.valueOf(((Date) value).getTime());
+		if(value instanceof Enum)
+			return Integer.valueOf(((Enum<?>) value).ordinal());
+		if(value instanceof Number) {
+			if(DomUtil.isIntegerType(value.getClass()))
+				return Long.valueOf(((Number) value).longValue());
+			double d = ((Number) value).doubleValue();
+			return Double.isNaN(d) || Double.isInfinite(d) ? null : Double.valueOf(d);
+		}
+		return value.toString();
+	}
+
 	/**
 	 * This calculates the widths.
 	 */
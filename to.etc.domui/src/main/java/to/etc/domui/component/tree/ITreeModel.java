@@ -53,6 +53,9 @@ public interface ITreeModel<T> {
 	 * to expand that node. At that time we'll call getChildCount() which <i>must</i> determine
 	 * the #of children. If that returns zero it will at that time properly re-render the state
 	 * of the node, showing that the node is actually a leaf and cannot be expanded further.
+	 * <p>The Tree calls this for every node it renders, but never loads a node's children
+	 * before that node is expanded, so a cheap implementation (like an "exists" query, or a
+	 * child count that is stored with the node) keeps rendering large trees fast.</p>
 	 * @param item
 	 * @return
 	 */
@@ -79,6 +82,25 @@ public interface ITreeModel<T> {
 	@NonNull
 	T getChild(@Nullable T parent, int index) throws Exception;
 
+	/**
+	 * Returns the children [start..end> of the parent. The Tree renders large child lists in pages and
+	 * asks for each page through this call, so a lazily-loaded model can override it to load just
+	 * that range (for instance using a query with offset and limit) instead of all children.
+	 *
+	 * @param parent
+	 * @param start
+	 * @param end	Exclusive; never more than {@link #getChildCount(Object)}.
+	 * @return
+	 * @throws Exception
+	 */
+	@NonNull
+	default List<T> getChildren(@Nullable T parent, int start, int end) throws Exception {
+		List<T> res = new ArrayList<>(end - start);
+		for(int i = start; i < end; i++)
+			res.add(getChild(parent, i));
+		return res;
+	}
+
 	/**
 	 * Get the parent node of a child in the tree. This may only return null for the root node.
 	 *
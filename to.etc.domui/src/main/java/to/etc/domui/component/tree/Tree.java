@@ -42,6 +42,7 @@ import to.etc.domui.dom.html.TR;
 import to.etc.domui.dom.html.Table;
 import to.etc.domui.server.DomApplication;
 import to.etc.domui.util.IRenderInto;
+import to.etc.domui.util.Msgs;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -74,6 +75,9 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 
 	private INodePredicate<T> m_nodeSelectablePredicate;
 
+	/** The max #of children rendered at once when a node is expanded; 0 renders all children. */
+	private int m_pageSize = 100;
+
 	/**
 	 * Represents the internal visible state of the tree.
 	 *
@@ -86,8 +90,23 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 		/** The first row of the node's data. */
 		TR nodeRow;
 
-		/** If this is an expanded node this contains the expanded children's nodes. */
-		VisibleNode<V>[] childNodes;
+		/** If this is an expanded node this contains the expanded children's nodes that are rendered. */
+		List<VisibleNode<V>> childNodes;
+
+		/** The body containing the rendered children, when expanded. */
+		TBody childBody;
+
+		/** The total #of children, when expanded. */
+		int childCount;
+
+		/** The index of the first child that is not yet rendered by paging. */
+		int nextIndex;
+
+		/** The "show more" row after the rendered children, if not all of them are rendered. */
+		TR moreRow;
+
+		/** Children that were rendered out of page order because a path to one of their descendants was expanded. */
+		List<VisibleNode<V>> pinnedNodes;
 
 		boolean expanded;
 
@@ -96,6 +115,13 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 		public VisibleNode(V data) {
 			this.data = data;
 		}
+
+		void clearChildren() {
+			childNodes = null;
+			childBody = null;
+			moreRow = null;
+			pinnedNodes = null;
+		}
 	}
 
 	public Tree() {
@@ -138,13 +164,11 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 		}
 
 		if(m_expandRoot) {
-			for(int i = getModel().getChildCount(root); --i >= 0;) {
-				T v = getModel().getChild(root, i);
-				expandNode(v);
-				//				for(int j = getModel().getChildCount(v); --j >= 0;) {
-				//					Object w = getModel().getChild(v, j);
-				//					expandNode(w);
-				//				}
+			//-- Only expand the children that are rendered, not the ones on later pages
+			List<VisibleNode<T>> children = getVisibleNode(root).childNodes;
+			if(null != children) {
+				for(VisibleNode<T> vn : new ArrayList<>(children))
+					expandNode(vn.data);
 			}
 		}
 		add(m_rootTable);
@@ -175,17 +199,86 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 		if(len == 0) {
 			throw new IllegalStateException("Implement 'expanding node having 0 children': base=" + base);
 		}
+		baseInfo.childNodes = new ArrayList<>();
+		baseInfo.childBody = b;
+		baseInfo.childCount = len;
+		baseInfo.nextIndex = 0;
+		baseInfo.moreRow = null;
+		baseInfo.pinnedNodes = null;
+		renderNextPage(baseInfo);
+		return t;
+	}
+
+	/**
+	 * Render the next page of children of an expanded node, followed by a "show more" row if
+	 * there are children left. Only that page is obtained from the model.
+	 */
+	private void renderNextPage(VisibleNode<T> baseInfo) throws Exception {
+		TBody b = baseInfo.childBody;
+		if(baseInfo.moreRow != null) {
+			baseInfo.moreRow.remove();
+			baseInfo.moreRow = null;
+		}
+		int start = baseInfo.nextIndex;
+		int end = m_pageSize <= 0 ? baseInfo.childCount : Math.min(baseInfo.childCount, start + m_pageSize);
+		List<T> items = getModel().getChildren(baseInfo.data, start, end);
+		baseInfo.nextIndex = end;
+
+		//-- Skip children that were already rendered out of order
+		List<VisibleNode<T>> pinned = baseInfo.pinnedNodes;
+		List<VisibleNode<T>> page = new ArrayList<>(items.size());
+		for(T item : items) {
+			VisibleNode<T> chvn = getVisibleNode(item);
+			if(pinned == null || !pinned.contains(chvn))
+				page.add(chvn);
+		}
 
 		//-- Render each child && assign their VisibleNode thingy.
-		VisibleNode<T>[] vnar = new VisibleNode[len];
-		for(int i = 0; i < len; i++) {
-			final T item = getModel().getChild(base, i); // Get ith child
-			VisibleNode<T> chvn = getVisibleNode(item);
-			vnar[i] = chvn;
-			renderItem(b, chvn, i == (len - 1));
+		boolean more = end < baseInfo.childCount;
+		for(int i = 0; i < page.size(); i++) {
+			VisibleNode<T> chvn = page.get(i);
+			baseInfo.childNodes.add(chvn);
+			renderItem(b, chvn, !more && i == page.size() - 1);
 		}
-		baseInfo.childNodes = vnar;
-		return t;
+		if(more)
+			renderMoreRow(baseInfo);
+	}
+
+	private void renderMoreRow(VisibleNode<T> baseInfo) {
+		TBody b = baseInfo.childBody;
+		baseInfo.moreRow = b.addRow();
+		TD td = b.addCell();
+		Img img = new Img("THEME/tree-leaf-last.png");
+		img.setImgBorder(0);
+		td.add(img);
+		td = b.addCell();
+		td.setCssClass("ui-tr-val ui-tr-more ui-tr-act");
+		int remaining = baseInfo.childCount - baseInfo.nextIndex;
+		int next = m_pageSize <= 0 ? remaining : Math.min(remaining, m_pageSize);
+		td.add(Msgs.BUNDLE.formatMessage(Msgs.UI_TREE_MORE, Integer.valueOf(next), Integer.valueOf(remaining)));
+		td.setClicked(new IClicked<TD>() {
+			@Override
+			public void clicked(@NonNull TD clickednode) throws Exception {
+				renderNextPage(baseInfo);
+			}
+		});
+	}
+
+	/**
+	 * Render a child that is not on the rendered pages yet just before the "show more" row, so that
+	 * a path to a deep node can be expanded without rendering all of its siblings.
+	 */
+	private void pinChild(VisibleNode<T> baseInfo, VisibleNode<T> chvn) throws Exception {
+		if(baseInfo.moreRow == null || baseInfo.childNodes == null)
+			throw new IllegalStateException("Tree node " + chvn.data + " is not rendered, but its parent " + baseInfo.data + " has all of its children rendered: model implementation sucks?");
+		baseInfo.moreRow.remove();
+		baseInfo.moreRow = null;
+		if(baseInfo.pinnedNodes == null)
+			baseInfo.pinnedNodes = new ArrayList<>();
+		baseInfo.pinnedNodes.add(chvn);
+		baseInfo.childNodes.add(chvn);
+		renderItem(baseInfo.childBody, chvn, false);
+		renderMoreRow(baseInfo);
 	}
 
 	private void renderItem(TBody b, VisibleNode<T> chvn, boolean last) throws Exception {
@@ -249,6 +342,8 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 	 *		to display the target node.</li>
 	 *	<li>For each node in the path check expansion state; if the node is expanded we're done, but if
 	 *		not we need to expand it, so render the expanded state in the tree.
+	 *	<li>When a node in the path is on a page of its parent's children that is not rendered yet, only
+	 *		that node is rendered (before the parent's "show more" row), not the pages before it.
 	 * </ul>
 	 *
 	 * @param item
@@ -273,8 +368,12 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 		//		}
 
 		//-- The thing is visible. We need to re-render where needed.
+		VisibleNode<T> parentVn = null;
 		for(final T o : path) {
 			VisibleNode<T> vn = getVisibleNode(o);
+			if(parentVn != null && parentVn.childNodes != null && !parentVn.childNodes.contains(vn))
+				pinChild(parentVn, vn);
+			parentVn = vn;
 			vn.expanded = true;
 
 			if(vn.childNodes == null && vn.nodeRow != null /* if root is not visible skip */) {
@@ -356,7 +455,7 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 		dropCrud(vn);
 		getModel().collapseChildren(item);
 		vn.expanded = false;
-		vn.childNodes = null;
+		vn.clearChildren();
 
 		//-- Collapse the node. Get the base of the presentation,
 		TR row = vn.nodeRow;
@@ -379,12 +478,11 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 	}
 
 	public void collapseAll() throws Exception {
-		T item = getModel().getRoot();
-
-		for(int i = 0; i < getModel().getChildCount(item); i++) {
-			T xx = getModel().getChild(item, i);
-			collapseNode(xx);
-		}
+		List<VisibleNode<T>> children = getVisibleNode(getModel().getRoot()).childNodes;
+		if(null == children)
+			return;
+		for(VisibleNode<T> vn : new ArrayList<>(children))
+			collapseNode(vn.data);
 	}
 
 	public void toggleNode(T item) throws Exception {
@@ -595,6 +693,24 @@ public class Tree<T> extends Div implements ITreeModelChangedListener<T> {
 		return m_expandRoot;
 	}
 
+	public int getPageSize() {
+		return m_pageSize;
+	}
+
+	/**
+	 * Set the max #of children that are rendered when a node is expanded; the rest is rendered
+	 * page by page when the user clicks the "show more" row. Set to 0 to always render all
+	 * children. Defaults to 100.
+	 */
+	public void setPageSize(int pageSize) {
+		if(pageSize < 0)
+			throw new IllegalArgumentException("Page size cannot be negative");
+		if(m_pageSize == pageSize)
+			return;
+		m_pageSize = pageSize;
+		forceRebuild();
+	}
+
 	/**
 	 * Get the currently used model.
 	 * @return
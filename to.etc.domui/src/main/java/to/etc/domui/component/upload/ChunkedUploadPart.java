@@ -0,0 +1,74 @@
+package to.etc.domui.component.upload;
+
+import org.eclipse.jdt.annotation.NonNull;
+import to.etc.domui.dom.DeltaFormat;
+import to.etc.domui.parts.ComponentPartRenderer;
+import to.etc.domui.server.DomApplication;
+import to.etc.domui.server.HttpServerRequestResponse;
+import to.etc.domui.server.IRequestResponse;
+import to.etc.domui.server.PageUtil;
+import to.etc.domui.server.RequestContextImpl;
+import to.etc.domui.server.parts.IUnbufferedPartFactory;
+import to.etc.domui.trouble.ThingyNotFoundException;
+import to.etc.domui.util.upload.ChunkedUploadReceiver;
+
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * Accepts the chunks of a file that the browser uploads in parts, for a component
+ * implementing {@link IChunkedUploadAcceptingComponent}. Every chunk is a POST with the raw
+ * data as body and these parameters:
+ * <ul>
+ *	<li>upid: an id for the upload, generated by the browser</li>
+ *	<li>offset: the offset of the chunk in the file, or -1 to just ask for the offset to continue at</li>
+ *	<li>total: the size of the file</li>
+ *	<li>name, ctype: the file name and content type</li>
+ * </ul>
+ * While the upload is incomplete the reply is the #of bytes received, as text; the browser sends
+ * the next chunk from there. When the upload is complete, or refused, the reply is the page delta.
+ *
+ * Created on 19-10-26.
+ */
+public class ChunkedUploadPart implements IUnbufferedPartFactory {
+	@Override
+	public void generate(@NonNull DomApplication app, @NonNull String rurl, @NonNull RequestContextImpl param) throws Exception {
+		try {
+			ComponentPartRenderer r = new ComponentPartRenderer();
+			r.initialize(app, param, rurl);
+			if(!(r.getComponent() instanceof IChunkedUploadAcceptingComponent))
+				throw new IllegalStateException("The targeted component " + r.getComponent() + " does not accept chunked uploads.");
+			IChunkedUploadAcceptingComponent c = (IChunkedUploadAcceptingComponent) r.getComponent();
+
+			String uploadId = Objects.requireNonNull(param.getParameter("upid"), "Missing upid");
+			long offset = Long.parseLong(Objects.requireNonNull(param.getParameter("offset"), "Missing offset"));
+			long total = Long.parseLong(Objects.requireNonNull(param.getParameter("total"), "Missing total"));
+			IRequestResponse rr = param.getRequestResponse();
+			rr.setNoCache();
+
+			ChunkedUploadReceiver receiver = c.getChunkedUploadReceiver(uploadId, param.getParameter("name"), param.getParameter("ctype"), total);
+			if(null != receiver) {
+				long received = receiver.getReceived();
+				if(offset >= 0) {
+					HttpServerRequestResponse hr = Objects.requireNonNull(HttpServerRequestResponse.get(param));
+					try(InputStream is = hr.getRequest().getInputStream()) {
+						received = receiver.write(offset, is);
+					}
+				}
+				if(!receiver.isComplete()) {
+					try(Writer w = rr.getOutputWriter("text/plain; charset=utf-8", "utf-8")) {
+						w.write(Long.toString(received));
+					}
+					return;
+				}
+				c.handleChunkedUploadComplete(receiver);
+			}
+			PageUtil.renderOptimalDelta(param, r.getPage(), DeltaFormat.XML, false);
+		} catch(ThingyNotFoundException x) {
+			//-- Page seems to have gone in the meanwhile
+			System.err.println("domui: chunked upload target " + rurl + " has gone while the upload commenced");
+			param.getRequestResponse().sendError(404, x.getMessage());
+		}
+	}
+}
@@ -41,14 +41,20 @@ import to.etc.domui.dom.html.NodeBase;
 import to.etc.domui.dom.html.Page;
 import to.etc.domui.parts.ComponentPartRenderer;
 import to.etc.domui.server.RequestContextImpl;
+import to.etc.domui.state.AbstractConversationContext;
 import to.etc.domui.state.ConversationContext;
+import to.etc.domui.state.IConversationStateListener;
 import to.etc.domui.state.UIContext;
 import to.etc.domui.trouble.ValidationException;
 import to.etc.domui.util.DomUtil;
 import to.etc.domui.util.Msgs;
+import to.etc.domui.util.upload.ChunkedUploadReceiver;
 import to.etc.domui.util.upload.FileUploadException;
+import to.etc.domui.util.upload.FileUploadSizeExceededException;
+import to.etc.domui.util.upload.IUploadSinkFactory;
 import to.etc.domui.util.upload.UploadItem;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -79,7 +85,7 @@ import java.util.stream.Collectors;
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Nov 14, 2017
  */
-public class FileUpload2 extends Div implements IUploadAcceptingComponent, IControl<UploadItem> /* implements IHasChangeListener */ {
+public class FileUpload2 extends Div implements IUploadAcceptingComponent, IChunkedUploadAcceptingComponent, IControl<UploadItem> /* implements IHasChangeListener */ {
 	@NonNull
 	private List<String> m_allowedExtensions;
 
@@ -109,6 +115,15 @@ public class FileUpload2 extends Div implements IUploadAcceptingComponent, ICont
 	@Nullable
 	private IIconRef m_clearButtonIcon = Icon.faWindowClose;
 
+	@Nullable
+	private IUploadSinkFactory m_uploadSinkFactory;
+
+	private int m_chunkSize;
+
+	/** The chunked upload in progress, if any. */
+	@Nullable
+	private ChunkedUploadReceiver m_chunkedUpload;
+
 	public FileUpload2() {
 		m_allowedExtensions = new ArrayList<>();
 	}
@@ -191,6 +206,13 @@ public class FileUpload2 extends Div implements IUploadAcceptingComponent, ICont
 			if(maxSize <= 0)
 				maxSize = 100 * 1024 * 1024;
 			input.setSpecialAttribute("fumaxsize", Integer.toString(maxSize));
+			if(m_chunkSize > 0) {
+				sb.setLength(0);
+				ComponentPartRenderer.appendComponentURL(sb, ChunkedUploadPart.class, this, UIContext.getRequestContext());
+				sb.append("?uniq=" + System.currentTimeMillis());
+				input.setSpecialAttribute("fuchunk", Integer.toString(m_chunkSize));
+				input.setSpecialAttribute("fuchunkurl", sb.toString());
+			}
 		} else {
 			Form f = new Form();
 			add(f);
@@ -393,6 +415,132 @@ public class FileUpload2 extends Div implements IUploadAcceptingComponent, ICont
 		return true;
 	}
 
+	@Nullable
+	@Override
+	public IUploadSinkFactory getUploadSinkFactory() {
+		return m_uploadSinkFactory;
+	}
+
+	/**
+	 * Stream the uploaded file's data to a sink from this factory instead of to a temp file. The
+	 * value of this control then is an {@link UploadItem} that {@link UploadItem#isStreamed()}.
+	 */
+	public void setUploadSinkFactory(@Nullable IUploadSinkFactory uploadSinkFactory) {
+		m_uploadSinkFactory = uploadSinkFactory;
+	}
+
+	public int getChunkSize() {
+		return m_chunkSize;
+	}
+
+	/**
+	 * When &gt; 0 the file is uploaded in chunks of this #of bytes, by browsers that support that.
+	 * An upload that fails halfway due to network trouble then resumes with the chunk that failed.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if(m_chunkSize == chunkSize)
+			return;
+		m_chunkSize = chunkSize;
+		forceRebuild();
+	}
+
+	@Nullable
+	@Override
+	public ChunkedUploadReceiver getChunkedUploadReceiver(@NonNull String uploadId, @Nullable String fileName, @Nullable String contentType, long totalSize) throws Exception {
+		if(m_chunkSize <= 0 || isDisabled() || isReadOnly())
+			return null;
+		ChunkedUploadReceiver receiver = m_chunkedUpload;
+		if(null != receiver) {
+			if(receiver.getUploadId().equals(uploadId))
+				return receiver;
+			discardChunkedUpload();
+		}
+
+		int maxSize = getMaxSize();
+		if(maxSize <= 0)
+			maxSize = 100 * 1024 * 1024;
+		if(totalSize > maxSize) {
+			MessageFlare.display(this, new FileUploadSizeExceededException(maxSize).getMessage());
+			forceRebuild();
+			return null;
+		}
+		receiver = m_chunkedUpload = new ChunkedUploadReceiver(uploadId, getInput().getActualID(), fileName, contentType, totalSize, m_uploadSinkFactory);
+		ConversationContext cc = getPage().getConversation();
+		File file = receiver.getFile();
+		if(null != file)
+			cc.registerTempFile(file);
+		else
+			cc.setAttribute(getChunkedUploadKey(), new ChunkedUploadDiscarder(receiver));		// A sink is not a temp file: discard it when the conversation dies
+		return receiver;
+	}
+
+	@Override
+	public void handleChunkedUploadComplete(@NonNull ChunkedUploadReceiver receiver) throws Exception {
+		m_chunkedUpload = null;
+		if(isAttached())
+			getPage().getConversation().setAttribute(getChunkedUploadKey(), null);
+		m_value = receiver.complete();
+		forceRebuild();
+		if(m_onValueChanged != null)
+			((IValueChanged<FileUpload2>) m_onValueChanged).onValueChanged(this);
+	}
+
+	/**
+	 * An upload that has not completed when the control leaves the page will never complete: drop its data.
+	 */
+	@Override
+	public void onRemoveFromPage(Page p) {
+		super.onRemoveFromPage(p);
+		ChunkedUploadReceiver receiver = m_chunkedUpload;
+		if(null != receiver) {
+			m_chunkedUpload = null;
+			receiver.discard();
+			ConversationContext cc = p.internalGetConversation();
+			if(null != cc)
+				cc.setAttribute(getChunkedUploadKey(), null);
+		}
+	}
+
+	private void discardChunkedUpload() {
+		ChunkedUploadReceiver receiver = m_chunkedUpload;
+		if(null == receiver)
+			return;
+		m_chunkedUpload = null;
+		receiver.discard();
+		getPage().getConversation().setAttribute(getChunkedUploadKey(), null);
+	}
+
+	@NonNull
+	private String getChunkedUploadKey() {
+		return getClass().getName() + ".chunked." + getActualID();
+	}
+
+	/**
+	 * Discards a streamed chunked upload that is still in progress when its conversation is destroyed,
+	 * for instance because the user left the page without removing it.
+	 */
+	static private final class ChunkedUploadDiscarder implements IConversationStateListener {
+		@NonNull
+		private final ChunkedUploadReceiver m_receiver;
+
+		ChunkedUploadDiscarder(@NonNull ChunkedUploadReceiver receiver) {
+			m_receiver = receiver;
+		}
+
+		@Override public void conversationNew(@NonNull AbstractConversationContext cc) throws Exception {
+		}
+
+		@Override public void conversationAttached(@NonNull AbstractConversationContext cc) throws Exception {
+		}
+
+		@Override public void conversationDetached(@NonNull AbstractConversationContext cc) throws Exception {
+		}
+
+		@Override public void conversationDestroyed(@NonNull AbstractConversationContext cc) throws Exception {
+			m_receiver.discard();
+		}
+	}
+
 	@Override public boolean isReadOnly() {
 		return m_readOnly;
 	}
@@ -0,0 +1,24 @@
+package to.etc.domui.component.upload;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.domui.util.upload.ChunkedUploadReceiver;
+
+/**
+ * A component that accepts files uploaded in chunks through the {@link ChunkedUploadPart}.
+ *
+ * Created on 19-10-26.
+ */
+public interface IChunkedUploadAcceptingComponent {
+	/**
+	 * Return the receiver for the upload with the specified id, and create it when this is
+	 * a new upload. Return null to refuse the upload, after telling the user why.
+	 */
+	@Nullable
+	ChunkedUploadReceiver getChunkedUploadReceiver(@NonNull String uploadId, @Nullable String fileName, @Nullable String contentType, long totalSize) throws Exception;
+
+	/**
+	 * Called when all data of the upload has been received.
+	 */
+	void handleChunkedUploadComplete(@NonNull ChunkedUploadReceiver receiver) throws Exception;
+}
@@ -1,10 +1,20 @@
 package to.etc.domui.component.upload;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import to.etc.domui.server.RequestContextImpl;
 import to.etc.domui.state.ConversationContext;
+import to.etc.domui.util.upload.IUploadSinkFactory;
 
 public interface IUploadAcceptingComponent {
 	boolean handleUploadRequest(@NonNull RequestContextImpl param, @NonNull ConversationContext conversation) throws Exception;
 
+	/**
+	 * When this returns a factory, the files uploaded to this component are streamed to the
+	 * sinks it creates instead of to temp files.
+	 */
+	@Nullable
+	default IUploadSinkFactory getUploadSinkFactory() {
+		return null;
+	}
 }
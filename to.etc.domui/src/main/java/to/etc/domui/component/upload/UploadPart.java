@@ -25,12 +25,16 @@
 package to.etc.domui.component.upload;
 
 import org.eclipse.jdt.annotation.NonNull;
+import to.etc.domui.dom.DeltaFormat;
 import to.etc.domui.parts.ComponentPartRenderer;
 import to.etc.domui.server.DomApplication;
+import to.etc.domui.server.HttpServerRequestResponse;
 import to.etc.domui.server.PageUtil;
 import to.etc.domui.server.RequestContextImpl;
 import to.etc.domui.server.parts.IUnbufferedPartFactory;
 import to.etc.domui.trouble.ThingyNotFoundException;
+import to.etc.domui.util.upload.IUploadSinkFactory;
+import to.etc.domui.util.upload.UploadHttpRequestWrapper;
 
 /**
  * This thingy accepts file upload requests for a given control.
@@ -48,12 +52,19 @@ public class UploadPart implements IUnbufferedPartFactory {
 				throw new IllegalStateException("The targeted component " + r.getComponent() + " does not accept uploaded files.");
 
 			IUploadAcceptingComponent fu = (IUploadAcceptingComponent) r.getComponent();
+			IUploadSinkFactory sinkFactory = fu.getUploadSinkFactory();
+			if(null != sinkFactory) {
+				HttpServerRequestResponse rr = HttpServerRequestResponse.get(param);
+				UploadHttpRequestWrapper w = rr == null ? null : UploadHttpRequestWrapper.findWrapper(rr.getRequest());
+				if(null != w && ! w.setSinkFactory(sinkFactory))
+					System.err.println("domui: upload to " + rurl + " was parsed before the sink was set, the files are in temp files");
+			}
 			boolean render = fu.handleUploadRequest(param, r.getConversation());
 
 			//-- Render an optimal delta as the response,
 			if(render) {
 				param.getRequestResponse().setNoCache();
-				PageUtil.renderOptimalDelta(param, r.getPage());
+				PageUtil.renderOptimalDelta(param, r.getPage(), DeltaFormat.XML, false);	// The response is read from an iframe, which needs xml
 			}
 		} catch(ThingyNotFoundException x) {
 			//-- Page seems to have gone in the meanwhile
@@ -63,8 +63,7 @@ public class DefaultStringQueryFactory<QT> implements IStringQueryFactory<QT> {
 		}
 
 		//-- Has default meta?
-		List<SearchPropertyMetaModel> keywordLookupPropertyList = m_keywordLookupPropertyList;
-		List<SearchPropertyMetaModel> spml = keywordLookupPropertyList == null ? getQueryMetaModel().getKeyWordSearchProperties() : keywordLookupPropertyList;
+		List<SearchPropertyMetaModel> spml = getSearchProperties();
 		QCriteria<QT> searchQuery = (QCriteria<QT>) getQueryMetaModel().createCriteria();
 
 		QRestrictorImpl<QT> r = searchQuery.or();
@@ -109,6 +108,15 @@ public class DefaultStringQueryFactory<QT> implements IStringQueryFactory<QT> {
 		return searchQuery;
 	}
 
+	/**
+	 * The properties that are searched on.
+	 */
+	@NonNull
+	public List<SearchPropertyMetaModel> getSearchProperties() {
+		List<SearchPropertyMetaModel> keywordLookupPropertyList = m_keywordLookupPropertyList;
+		return keywordLookupPropertyList == null ? getQueryMetaModel().getKeyWordSearchProperties() : keywordLookupPropertyList;
+	}
+
 	@NonNull
 	public ClassMetaModel getQueryMetaModel() {
 		return m_queryMetaModel;
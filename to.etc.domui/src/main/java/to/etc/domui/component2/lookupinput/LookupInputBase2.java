@@ -162,7 +162,7 @@ abstract public class LookupInputBase2<QT, OT> extends AbstractLookupInputBase<Q
 		ks.setPopupWidth(getKeyWordSearchPopupWidth());
 
 		ks.setOnLookupTyping(component -> {
-			ITableModel<OT> keySearchModel = searchKeyWord(component.getValue());
+			ITableModel<OT> keySearchModel = searchKeyWord(component.getValue(), true);
 			showResults(keySearchModel);
 		});
 
@@ -185,7 +185,7 @@ abstract public class LookupInputBase2<QT, OT> extends AbstractLookupInputBase<Q
 				return;
 			}
 		}
-		ITableModel<OT> keySearchModel = searchKeyWord(node.getValue());
+		ITableModel<OT> keySearchModel = searchKeyWord(node.getValue(), false);
 		openPopup(keySearchModel);
 	}
 
@@ -202,15 +202,26 @@ abstract public class LookupInputBase2<QT, OT> extends AbstractLookupInputBase<Q
 	/**
 	 * Returns data that matches keyword search string.
 	 * @param searchString
+	 * @param typing	T when called while the user types; the result can then be reused for the next keystroke.
 	 * @return Matching data or null in case that search is cancelled because of insufficient number of characters typed into keyword search field.
 	 * @throws Exception
 	 */
 	@Nullable
-	private ITableModel<OT> searchKeyWord(@Nullable String searchString) throws Exception {
+	private ITableModel<OT> searchKeyWord(@Nullable String searchString, boolean typing) throws Exception {
 		if(searchString == null || searchString.trim().length() == 0) {
 			return null;
 		}
 		IStringQueryFactory<QT> ksh = getStringQueryFactory();
+
+		//-- The default search on the metadata properties can sometimes be done without the database
+		List<SearchPropertyMetaModel> spml = null;
+		if(ksh instanceof DefaultStringQueryFactory) {
+			spml = ((DefaultStringQueryFactory<QT>) ksh).getSearchProperties();
+			ITableModel<OT> model = searchKeyWordInMemory(searchString, spml, typing);
+			if(null != model)
+				return model;
+		}
+
 		QCriteria<QT> searchQuery = ksh.createQuery(searchString);
 		if(searchQuery == null) {								// Search cancelled
 			return null;
@@ -221,7 +232,10 @@ abstract public class LookupInputBase2<QT, OT> extends AbstractLookupInputBase<Q
 			return null;
 		}
 
-		return createTableModel(searchQuery);
+		ITableModel<OT> model = createTableModel(searchQuery);
+		if(null != spml)
+			keyWordSearchCompleted(searchString, spml, model, typing);
+		return model;
 	}
 
 	@NonNull
@@ -249,7 +263,7 @@ abstract public class LookupInputBase2<QT, OT> extends AbstractLookupInputBase<Q
 		ITableModel<OT> initialModel = null;
 		SearchInput2 keySearch = getKeySearch();
 		if(keySearch != null) {
-			initialModel = searchKeyWord(keySearch.getValue());
+			initialModel = searchKeyWord(keySearch.getValue(), false);
 		}
 		openPopup(initialModel);
 	}
@@ -0,0 +1,109 @@
+package to.etc.domui.dom;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Browser output that renders into a reusable buffer, used by the {@link JsonDeltaCommandWriter}
+ * to collect the content of a single delta command. Besides rendering XHTML it can pass
+ * text unescaped (for Javascript) and it can capture the attributes rendered by a tagless
+ * tag renderer as name/value pairs.
+ *
+ * Created on 19-10-26.
+ */
+final public class DeltaBufferOutput extends XmlOutputWriterBase implements IBrowserOutput {
+	@NonNull
+	private final StringWriter m_sw;
+
+	/** When T, text() writes the string verbatim; used while rendering Javascript. */
+	private boolean m_rawText;
+
+	/** When not null, attr() calls are collected here as name, value pairs instead of being written. */
+	@Nullable
+	private List<String> m_attributes;
+
+	public DeltaBufferOutput() {
+		this(new StringWriter(8192));
+	}
+
+	private DeltaBufferOutput(@NonNull StringWriter sw) {
+		super(sw);
+		m_sw = sw;
+	}
+
+	@Override
+	public void setIndentEnabled(boolean ind) {}
+
+	@Override
+	public boolean isIndentEnabled() {
+		return false;
+	}
+
+	@Override
+	public void text(String s) throws IOException {
+		if(m_rawText) {
+			if(s == null)
+				throw new IllegalStateException("Attempt to write null cdata.");
+			writeRaw(s);
+			return;
+		}
+		super.text(s);
+	}
+
+	@Override
+	public void attr(String name, String value) throws IOException {
+		List<String> list = m_attributes;
+		if(null != list) {
+			list.add(name);
+			list.add(value);
+			return;
+		}
+		super.attr(name, value);
+	}
+
+	@Override
+	public void rawAttr(String name, String value) throws IOException {
+		List<String> list = m_attributes;
+		if(null != list) {
+			list.add(name);
+			list.add(value);
+			return;
+		}
+		super.rawAttr(name, value);
+	}
+
+	public void setRawText(boolean rawText) {
+		m_rawText = rawText;
+	}
+
+	public void startAttributeCapture() {
+		m_attributes = new ArrayList<>();
+	}
+
+	@NonNull
+	public List<String> endAttributeCapture() {
+		List<String> list = m_attributes;
+		if(null == list)
+			throw new IllegalStateException("Attribute capture was not started");
+		m_attributes = null;
+		return list;
+	}
+
+	/**
+	 * The content rendered since the last {@link #clear()}.
+	 */
+	@NonNull
+	public CharSequence getContent() {
+		return m_sw.getBuffer();
+	}
+
+	public void clear() {
+		m_sw.getBuffer().setLength(0);
+		m_intag = false;
+	}
+}
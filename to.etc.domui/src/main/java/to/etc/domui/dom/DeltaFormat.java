@@ -0,0 +1,19 @@
+package to.etc.domui.dom;
+
+/**
+ * The wire encoding used to send a page delta to the browser. Both encodings have the
+ * same semantics: all deletes first, then adds, content replacements and attribute
+ * changes, followed by the Javascript to execute.
+ *
+ * Created on 19-10-26.
+ */
+public enum DeltaFormat {
+	/** The original &lt;delta&gt; XML document, parsed by the browser's XML parser as a whole. */
+	XML,
+
+	/**
+	 * A compact JSON array of commands. Only the HTML fragments for added or replaced content are
+	 * still (X)HTML; attribute changes and Javascript are sent as plain JSON strings.
+	 */
+	JSON,
+}
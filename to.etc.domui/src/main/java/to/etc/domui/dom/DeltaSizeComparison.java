@@ -0,0 +1,242 @@
+package to.etc.domui.dom;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import to.etc.util.FileTool;
+import to.etc.util.StringTool;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the size of recorded XML deltas with their {@link DeltaFormat#JSON} equivalent. Record
+ * real deltas by setting the developer option domui.deltarecord to a directory, then run this
+ * with that directory as argument. For every recorded xml delta this reports the raw and gzipped
+ * byte counts of both encodings, the time needed to parse the XML document and the estimated
+ * transfer time on a slow link.
+ *
+ * <pre>
+ * java to.etc.domui.dom.DeltaSizeComparison [-kbit 256] directory...
+ * </pre>
+ *
+ * Created on 19-10-26.
+ */
+final public class DeltaSizeComparison {
+	private int m_linkSpeedKbit = 256;
+
+	private long m_totalXml;
+
+	private long m_totalJson;
+
+	private long m_totalXmlGz;
+
+	private long m_totalJsonGz;
+
+	private long m_totalParseNanos;
+
+	private int m_count;
+
+	private DeltaSizeComparison() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		DeltaSizeComparison c = new DeltaSizeComparison();
+		List<File> files = new ArrayList<>();
+		for(int i = 0; i < args.length; i++) {
+			String a = args[i];
+			if("-kbit".equals(a) && i + 1 < args.length) {
+				c.m_linkSpeedKbit = Integer.parseInt(args[++i]);
+			} else {
+				File f = new File(a);
+				if(f.isDirectory()) {
+					File[] list = f.listFiles((dir, name) -> name.endsWith(".xml"));
+					if(null != list) {
+						Arrays.sort(list);
+						files.addAll(Arrays.asList(list));
+					}
+				} else
+					files.add(f);
+			}
+		}
+		if(files.isEmpty()) {
+			System.err.println("Usage: DeltaSizeComparison [-kbit speed] directory|file...");
+			System.exit(10);
+		}
+		for(File f : files)
+			c.compare(f);
+		c.report();
+	}
+
+	private void compare(@NonNull File f) throws Exception {
+		byte[] xml = FileTool.readFileAsByteArray(f);
+		long ts = System.nanoTime();
+		Document doc = parse(xml);
+		ts = System.nanoTime() - ts;
+
+		Element root = doc.getDocumentElement();
+		if(!"delta".equals(root.getTagName())) {
+			System.out.println(f.getName() + ": not a delta, skipped");
+			return;
+		}
+		byte[] json = toJson(root).getBytes(StandardCharsets.UTF_8);
+		int xmlGz = gzipSize(xml);
+		int jsonGz = gzipSize(json);
+		System.out.println(f.getName() + ": xml " + xml.length + " (" + xmlGz + " gz), json " + json.length + " (" + jsonGz + " gz), " + percentage(json.length, xml.length)
+			+ " of xml, xml parse " + StringTool.strNanoTime(ts));
+
+		m_count++;
+		m_totalXml += xml.length;
+		m_totalJson += json.length;
+		m_totalXmlGz += xmlGz;
+		m_totalJsonGz += jsonGz;
+		m_totalParseNanos += ts;
+	}
+
+	private void report() {
+		if(m_count == 0)
+			return;
+		System.out.println();
+		System.out.println("Deltas compared:  " + m_count);
+		System.out.println("Total xml bytes:  " + m_totalXml + " (" + m_totalXmlGz + " gzipped)");
+		System.out.println("Total json bytes: " + m_totalJson + " (" + m_totalJsonGz + " gzipped), " + percentage(m_totalJson, m_totalXml) + " of xml");
+		System.out.println("Avg xml parse:    " + StringTool.strNanoTime(m_totalParseNanos / m_count));
+		System.out.println("Avg transfer @" + m_linkSpeedKbit + "kbit: xml " + transferMillis(m_totalXmlGz / m_count) + "ms, json " + transferMillis(m_totalJsonGz / m_count) + "ms (gzipped)");
+	}
+
+	private long transferMillis(long bytes) {
+		return bytes * 8 / m_linkSpeedKbit;
+	}
+
+	@NonNull
+	static private String percentage(long a, long b) {
+		if(b == 0)
+			return "-";
+		return (a * 100 / b) + "%";
+	}
+
+	@NonNull
+	static private Document parse(@NonNull byte[] data) throws Exception {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(false);
+		DocumentBuilder db = dbf.newDocumentBuilder();
+		return db.parse(new ByteArrayInputStream(data));
+	}
+
+	static private int gzipSize(@NonNull byte[] data) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 16);
+		try(GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+			gos.write(data);
+		}
+		return bos.size();
+	}
+
+	/**
+	 * Convert the XML delta to the encoding that {@link JsonDeltaCommandWriter} generates.
+	 */
+	@NonNull
+	static private String toJson(@NonNull Element root) throws Exception {
+		Transformer tf = TransformerFactory.newInstance().newTransformer();
+		tf.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"delta\":[");
+		boolean first = true;
+		NodeList nl = root.getChildNodes();
+		for(int i = 0; i < nl.getLength(); i++) {
+			Node n = nl.item(i);
+			if(n.getNodeType() != Node.ELEMENT_NODE)
+				continue;
+			Element cmd = (Element) n;
+			if(!first)
+				sb.append(',');
+			first = false;
+			String id = cmd.getAttribute("select");
+			if(id.startsWith("#"))
+				id = id.substring(1);
+
+			switch(cmd.getTagName()) {
+				default:
+					throw new IllegalStateException("Unknown delta command: " + cmd.getTagName());
+
+				case "eval":
+					sb.append("[\"e\",");
+					StringTool.strToJsonString(sb, cmd.getTextContent());
+					break;
+
+				case "remove":
+					sb.append("[\"r\",");
+					StringTool.strToJsonString(sb, id);
+					break;
+
+				case "changeTagAttributes":
+					sb.append("[\"a\",");
+					StringTool.strToJsonString(sb, id);
+					sb.append(",[");
+					NamedNodeMap attributes = cmd.getAttributes();
+					boolean firstAttr = true;
+					for(int j = 0; j < attributes.getLength(); j++) {
+						Node a = attributes.item(j);
+						if("select".equals(a.getNodeName()))
+							continue;
+						if(!firstAttr)
+							sb.append(',');
+						firstAttr = false;
+						StringTool.strToJsonString(sb, a.getNodeName());
+						sb.append(',');
+						StringTool.strToJsonString(sb, a.getNodeValue());
+					}
+					sb.append(']');
+					break;
+
+				case "prepend":
+					appendContent(sb, tf, "p", id, cmd);
+					break;
+
+				case "after":
+					appendContent(sb, tf, "f", id, cmd);
+					break;
+
+				case "replaceContent":
+					appendContent(sb, tf, "c", id, cmd);
+					break;
+			}
+			sb.append(']');
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	static private void appendContent(@NonNull StringBuilder sb, @NonNull Transformer tf, @NonNull String code, @NonNull String id, @NonNull Element cmd) throws Exception {
+		sb.append("[\"").append(code).append("\",");
+		StringTool.strToJsonString(sb, id);
+		sb.append(',');
+
+		StringWriter sw = new StringWriter();
+		NodeList nl = cmd.getChildNodes();
+		for(int i = 0; i < nl.getLength(); i++) {
+			Node n = nl.item(i);
+			if(n.getNodeType() == Node.TEXT_NODE && n.getNodeValue().trim().isEmpty())
+				continue;						// Indentation added by the pretty printer
+			tf.transform(new DOMSource(n), new StreamResult(sw));
+		}
+		StringTool.strToJsonString(sb, sw.getBuffer());
+	}
+}
@@ -37,6 +37,8 @@ import to.etc.domui.dom.html.TextArea;
 import to.etc.domui.dom.html.TextNode;
 import to.etc.domui.server.DomApplication;
 import to.etc.domui.server.IRequestContext;
+import to.etc.domui.server.PushChannel;
+import to.etc.domui.state.ConversationContext;
 import to.etc.domui.themes.ITheme;
 import to.etc.domui.util.javascript.JavascriptStmt;
 import to.etc.util.DeveloperOptions;
@@ -422,8 +424,14 @@ public class HtmlFullRenderer extends NodeVisitorBase implements IContributorRen
 		/*
 		 * We need polling if we have any of the keep alive options on, or when there is an async request.
 		 */
-		int pollinterval = application.calculatePollInterval(page.getConversation().isPollCallbackRequired());
-		if(pollinterval > 0) {
+		ConversationContext cc = page.getConversation();
+		boolean callbackRequired = cc.isPollCallbackRequired();
+		int pollinterval = application.calculatePollInterval(callbackRequired);
+		PushChannel channel = application.getPushChannel();
+		if(callbackRequired && channel != null && cc.isPushPossible()) {
+			channel.register(cc.getFullId());
+			o().writeRaw("WebUI.startPushWait(" + pollinterval + ");");
+		} else if(pollinterval > 0) {
 			o().writeRaw("WebUI.startPolling(" + pollinterval + ");");
 		}
 		int autorefresh = application.getAutoRefreshPollInterval();
@@ -0,0 +1,47 @@
+package to.etc.domui.dom;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * Encodes the commands that the delta renderer generates into some wire format. Between
+ * a beginXxx and its endXxx call the delta renderer writes the command's content (HTML,
+ * tag attributes or Javascript) to the {@link IBrowserOutput} that the full renderer uses;
+ * the writer decides how that content ends up in the response.
+ *
+ * Created on 19-10-26.
+ */
+public interface IDeltaCommandWriter {
+	@NonNull
+	DeltaFormat getFormat();
+
+	void begin() throws Exception;
+
+	void end() throws Exception;
+
+	/** Start a block of Javascript that is to be executed by the browser. */
+	void beginEval() throws Exception;
+
+	void endEval() throws Exception;
+
+	void remove(@NonNull String id) throws Exception;
+
+	/** Starts an attribute change; the tag renderer then renders the attributes tagless. */
+	void beginAttributeChange(@NonNull String id) throws Exception;
+
+	void endAttributeChange() throws Exception;
+
+	/** Starts adding HTML as the first child of the node with the specified id. */
+	void beginPrepend(@NonNull String parentId) throws Exception;
+
+	void endPrepend() throws Exception;
+
+	/** Starts adding HTML directly after the node with the specified id. */
+	void beginAfter(@NonNull String siblingId) throws Exception;
+
+	void endAfter() throws Exception;
+
+	/** Starts replacing all children of the node with the specified id. */
+	void beginReplaceContent(@NonNull String id) throws Exception;
+
+	void endReplaceContent() throws Exception;
+}
@@ -0,0 +1,181 @@
+package to.etc.domui.dom;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.util.StringTool;
+
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the delta as a compact JSON document. The response has the form
+ * <pre>
+ * {"delta":[ command, ... ]}
+ * </pre>
+ * where each command is an array whose first element is the command code:
+ * <ul>
+ *	<li>["r", id]: remove the node</li>
+ *	<li>["a", id, [name, value, ...]]: change the node's attributes</li>
+ *	<li>["p", id, xhtml]: prepend the content to the node's children</li>
+ *	<li>["f", id, xhtml]: insert the content after the node</li>
+ *	<li>["c", id, xhtml]: replace the node's children with the content</li>
+ *	<li>["e", javascript]: evaluate the script</li>
+ * </ul>
+ * The commands are executed in order. The content of each command is rendered into a
+ * {@link DeltaBufferOutput} and copied into the response when the command ends.
+ *
+ * Created on 19-10-26.
+ */
+final public class JsonDeltaCommandWriter implements IDeltaCommandWriter {
+	@NonNull
+	private final Writer m_w;
+
+	@NonNull
+	private final DeltaBufferOutput m_buffer;
+
+	private boolean m_first = true;
+
+	@Nullable
+	private String m_currentId;
+
+	public JsonDeltaCommandWriter(@NonNull Writer w, @NonNull DeltaBufferOutput buffer) {
+		m_w = w;
+		m_buffer = buffer;
+	}
+
+	@NonNull
+	@Override
+	public DeltaFormat getFormat() {
+		return DeltaFormat.JSON;
+	}
+
+	@Override
+	public void begin() throws Exception {
+		m_w.write("{\"delta\":[");
+		m_buffer.clear();
+	}
+
+	@Override
+	public void end() throws Exception {
+		m_w.write("]}");
+	}
+
+	@Override
+	public void beginEval() throws Exception {
+		m_buffer.clear();
+		m_buffer.setRawText(true);
+	}
+
+	@Override
+	public void endEval() throws Exception {
+		m_buffer.setRawText(false);
+		CharSequence js = m_buffer.getContent();
+		if(js.length() > 0) {
+			startCommand("e");
+			m_w.write(',');
+			StringTool.strToJsonString(m_w, js);
+			m_w.write(']');
+		}
+		m_buffer.clear();
+	}
+
+	@Override
+	public void remove(@NonNull String id) throws Exception {
+		startCommand("r", id);
+		m_w.write(']');
+	}
+
+	@Override
+	public void beginAttributeChange(@NonNull String id) throws Exception {
+		m_currentId = id;
+		m_buffer.startAttributeCapture();
+	}
+
+	@Override
+	public void endAttributeChange() throws Exception {
+		List<String> list = m_buffer.endAttributeCapture();
+		startCommand("a", currentId());
+		m_w.write(",[");
+		boolean first = true;
+		for(int i = 0; i < list.size(); i += 2) {
+			String name = list.get(i);
+			if("select".equals(name))					// The tag renderer's selector is already in the command
+				continue;
+			if(!first)
+				m_w.write(',');
+			first = false;
+			StringTool.strToJsonString(m_w, name);
+			m_w.write(',');
+			StringTool.strToJsonString(m_w, list.get(i + 1));
+		}
+		m_w.write("]]");
+	}
+
+	@Override
+	public void beginPrepend(@NonNull String parentId) throws Exception {
+		beginContent(parentId);
+	}
+
+	@Override
+	public void endPrepend() throws Exception {
+		endContent("p");
+	}
+
+	@Override
+	public void beginAfter(@NonNull String siblingId) throws Exception {
+		beginContent(siblingId);
+	}
+
+	@Override
+	public void endAfter() throws Exception {
+		endContent("f");
+	}
+
+	@Override
+	public void beginReplaceContent(@NonNull String id) throws Exception {
+		beginContent(id);
+	}
+
+	@Override
+	public void endReplaceContent() throws Exception {
+		endContent("c");
+	}
+
+	private void beginContent(@NonNull String id) {
+		m_currentId = id;
+		m_buffer.clear();
+	}
+
+	private void endContent(@NonNull String code) throws Exception {
+		startCommand(code, currentId());
+		m_w.write(',');
+		StringTool.strToJsonString(m_w, m_buffer.getContent());
+		m_w.write(']');
+		m_buffer.clear();
+	}
+
+	@NonNull
+	private String currentId() {
+		String id = m_currentId;
+		if(null == id)
+			throw new IllegalStateException("No command is active");
+		m_currentId = null;
+		return id;
+	}
+
+	private void startCommand(@NonNull String code) throws Exception {
+		if(m_first)
+			m_first = false;
+		else
+			m_w.write(',');
+		m_w.write("[\"");
+		m_w.write(code);
+		m_w.write('\"');
+	}
+
+	private void startCommand(@NonNull String code, @NonNull String id) throws Exception {
+		startCommand(code);
+		m_w.write(',');
+		StringTool.strToJsonString(m_w, id);
+	}
+}
@@ -0,0 +1,100 @@
+package to.etc.domui.dom;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * Writes the delta as the classic &lt;delta&gt; XML document, directly to the renderer's output.
+ *
+ * Created on 19-10-26.
+ */
+final public class XmlDeltaCommandWriter implements IDeltaCommandWriter {
+	@NonNull
+	private final IBrowserOutput m_o;
+
+	public XmlDeltaCommandWriter(@NonNull IBrowserOutput o) {
+		m_o = o;
+	}
+
+	@NonNull
+	@Override
+	public DeltaFormat getFormat() {
+		return DeltaFormat.XML;
+	}
+
+	@Override
+	public void begin() throws Exception {
+		m_o.writeRaw("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		m_o.tag("delta");
+		m_o.endtag();
+	}
+
+	@Override
+	public void end() throws Exception {
+		m_o.closetag("delta");
+	}
+
+	@Override
+	public void beginEval() throws Exception {
+		m_o.tag("eval");
+		m_o.endtag();
+	}
+
+	@Override
+	public void endEval() throws Exception {
+		m_o.closetag("eval");
+	}
+
+	@Override
+	public void remove(@NonNull String id) throws Exception {
+		m_o.tag("remove");
+		m_o.attr("select", "#" + id);
+		m_o.endAndCloseXmltag();
+		m_o.nl();
+	}
+
+	@Override
+	public void beginAttributeChange(@NonNull String id) throws Exception {
+		m_o.tag("changeTagAttributes");
+	}
+
+	@Override
+	public void endAttributeChange() throws Exception {
+		m_o.endAndCloseXmltag(); // Fully-close tag with />
+		m_o.nl();
+	}
+
+	@Override
+	public void beginPrepend(@NonNull String parentId) throws Exception {
+		m_o.tag("prepend");
+		m_o.attr("select", "#" + parentId);
+	}
+
+	@Override
+	public void endPrepend() throws Exception {
+		m_o.closetag("prepend");
+		m_o.nl();
+	}
+
+	@Override
+	public void beginAfter(@NonNull String siblingId) throws Exception {
+		m_o.tag("after");
+		m_o.attr("select", "#" + siblingId);
+	}
+
+	@Override
+	public void endAfter() throws Exception {
+		m_o.closetag("after");
+		m_o.nl();
+	}
+
+	@Override
+	public void beginReplaceContent(@NonNull String id) throws Exception {
+		m_o.tag("replaceContent");
+		m_o.attr("select", "#" + id);
+	}
+
+	@Override
+	public void endReplaceContent() throws Exception {
+		m_o.closetag("replaceContent");
+	}
+}
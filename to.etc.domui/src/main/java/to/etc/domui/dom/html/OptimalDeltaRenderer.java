@@ -25,16 +25,21 @@
 package to.etc.domui.dom.html;
 
 import org.eclipse.jdt.annotation.NonNull;
+import to.etc.domui.dom.DeltaFormat;
 import to.etc.domui.dom.HtmlFullRenderer;
 import to.etc.domui.dom.HtmlRenderMode;
 import to.etc.domui.dom.HtmlTagRenderer;
 import to.etc.domui.dom.IBrowserOutput;
 import to.etc.domui.dom.IContributorRenderer;
+import to.etc.domui.dom.IDeltaCommandWriter;
 import to.etc.domui.dom.IHtmlDeltaAttributeRenderer;
+import to.etc.domui.dom.XmlDeltaCommandWriter;
 import to.etc.domui.dom.header.HeaderContributor;
 import to.etc.domui.dom.header.HeaderContributorEntry;
 import to.etc.domui.server.DomApplication;
 import to.etc.domui.server.IRequestContext;
+import to.etc.domui.server.PushChannel;
+import to.etc.domui.state.ConversationContext;
 import to.etc.util.IndentWriter;
 import to.etc.util.StringTool;
 
@@ -67,6 +72,9 @@ import java.util.Map;
  * children, so at the end of the 1st loop we have a list of actual changes per node. The goal of this
  * change list is to create all deletes before all inserts, and to minimize the #of deletes and inserts.</p>
  *
+ * <p>The resulting commands are encoded by an {@link IDeltaCommandWriter}, which determines the wire
+ * format (see {@link DeltaFormat}).</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Jun 6, 2008
  */
@@ -83,6 +91,8 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 
 	private HtmlFullRenderer m_fullRenderer;
 
+	private final IDeltaCommandWriter m_writer;
+
 	/**
 	 * Info on a changed container. It contains the deletes and adds list, plus
 	 * the list of base attribute changes collected thru them. While this is
@@ -162,6 +172,15 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 	private Map<NodeContainer, NodeInfo> m_infoMap = new HashMap<NodeContainer, NodeInfo>(255);
 
 	public OptimalDeltaRenderer(HtmlFullRenderer fullr, IRequestContext ctx, Page page) {
+		this(fullr, ctx, page, new XmlDeltaCommandWriter(fullr.o()));
+	}
+
+	/**
+	 * Create a delta renderer that encodes its commands using the specified writer. The writer must
+	 * use the output of the full renderer for the command content.
+	 */
+	public OptimalDeltaRenderer(HtmlFullRenderer fullr, IRequestContext ctx, Page page, IDeltaCommandWriter writer) {
+		m_writer = writer;
 		m_o = fullr.o();
 		m_html = fullr.getTagRenderer();
 		m_fullRenderer = fullr;
@@ -186,6 +205,10 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 		return m_page;
 	}
 
+	public DeltaFormat getFormat() {
+		return m_writer.getFormat();
+	}
+
 	public void render() throws Exception {
 		m_page.internalSetPhase(PagePhase.DELTARENDER);
 		if(DEBUG) {
@@ -201,9 +224,7 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 			}
 		}
 
-		o().writeRaw("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
-		o().tag("delta");
-		o().endtag();
+		m_writer.begin();
 
 		//-- 20091127 jal Add header contributors delta rendering
 		//-- This is incomplete: see bug 669
@@ -211,11 +232,10 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 		if(list.size() > 0) {
 			Collections.sort(list, HeaderContributor.C_ENTRY);
 
-			o().tag("eval");
-			o().endtag();
+			m_writer.beginEval();
 			for(HeaderContributorEntry hc : list)
 				hc.getContributor().contribute(this);
-			o().closetag("eval");
+			m_writer.endEval();
 
 			//-- 20111004 vmijic We need to state that delta contributors are added, so next render would not add it again -> this fixes infinite adds in pulling divs that causes browsers memory leak
 			m_page.internalContributorsRendered();
@@ -223,8 +243,7 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 
 		//-- 20091127 jal Add header contributors delta rendering end
 		calc(m_page);
-		o().tag("eval");
-		o().endtag();
+		m_writer.beginEval();
 
 		//-- Render all component-requested Javascript code for this phase
 		o().text(m_fullRenderer.getCreateJS().toString());
@@ -253,15 +272,21 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 		}
 
 		//-- Handle delayed stuff...
-		int pollinterval = DomApplication.get().calculatePollInterval(m_page.getConversation().isPollCallbackRequired());
-		if(pollinterval > 0) {
+		ConversationContext cc = m_page.getConversation();
+		boolean callbackRequired = cc.isPollCallbackRequired();
+		int pollinterval = DomApplication.get().calculatePollInterval(callbackRequired);
+		PushChannel channel = DomApplication.get().getPushChannel();
+		if(callbackRequired && channel != null && cc.isPushPossible()) {
+			channel.register(cc.getFullId());
+			o().writeRaw("WebUI.startPushWait(" + pollinterval + ");");
+		} else if(pollinterval > 0) {
 			o().writeRaw("WebUI.startPolling(" + pollinterval + ");");
 		} else {
 			o().writeRaw("WebUI.cancelPolling();");
 		}
 
-		o().closetag("eval");
-		o().closetag("delta");
+		m_writer.endEval();
+		m_writer.end();
 		m_page.internalSetPhase(PagePhase.NULL);
 	}
 
@@ -313,7 +338,7 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 		page.internalClearDeltaFully();
 	}
 
-	private void renderDeletes(NodeInfo ni) throws IOException {
+	private void renderDeletes(NodeInfo ni) throws Exception {
 		if(DEBUG)
 			System.out.println("  .. renderDeletes for " + ni.node);
 		if(ni.isFullRender)
@@ -331,11 +356,8 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 		}
 	}
 
-	private void renderDelete(NodeBase nd) throws IOException {
-		o().tag("remove");
-		o().attr("select", "#" + nd.getActualID());
-		o().endAndCloseXmltag();
-		o().nl();
+	private void renderDelete(NodeBase nd) throws Exception {
+		m_writer.remove(nd.getActualID());
 	}
 
 	private void renderAttributeChange(NodeBase b) throws Exception {
@@ -344,7 +366,7 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 			return;
 		}
 
-		o().tag("changeTagAttributes");
+		m_writer.beginAttributeChange(b.getActualID());
 		m_html.setTagless(true);
 		m_html.setRenderMode(HtmlRenderMode.ATTR);
 		//		m_html.setNewNode(false);
@@ -361,8 +383,7 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 		//		}
 		//-- End fix
 
-		o().endAndCloseXmltag(); // Fully-close tag with />
-		o().nl();
+		m_writer.endAttributeChange();
 	}
 
 	private void renderAdd(NodeContainer parent, NodeBase nd) throws Exception {
@@ -370,22 +391,19 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 		m_fullRenderer.setRenderMode(HtmlRenderMode.ADDS); // jal 20091002 added to allow textarea to know what is happening
 		//		m_html.setNewNode(true);				// Indicate a new node is to be rendered
 		if(nd.m_origNewIndex == 0) {
-			o().tag("prepend");
-			o().attr("select", "#" + parent.getActualID());
+			m_writer.beginPrepend(parent.getActualID());
 			m_html.setTagless(false);
 			nd.visit(m_fullRenderer);
-			o().closetag("prepend");
+			m_writer.endPrepend();
 		} else {
 			NodeBase pre = parent.internalGetChildren().get(nd.m_origNewIndex - 1);
 			if(pre instanceof TextNode)
 				throw new IllegalStateException("Internal: attempting to insert after a #text node");
-			o().tag("after");
-			o().attr("select", "#" + pre.getActualID());
+			m_writer.beginAfter(pre.getActualID());
 			m_html.setTagless(false);
 			nd.visit(m_fullRenderer);
-			o().closetag("after");
+			m_writer.endAfter();
 		}
-		o().nl();
 	}
 
 	private void renderRest(NodeInfo ni) throws Exception {
@@ -400,8 +418,7 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 				return;
 			} else {
 				o().setIndentEnabled(false);
-				o().tag("replaceContent");
-				o().attr("select", "#" + ni.node.getActualID());
+				m_writer.beginReplaceContent(ni.node.getActualID());
 				m_html.setTagless(false);
 				m_html.setRenderMode(HtmlRenderMode.REPL);
 
@@ -412,7 +429,7 @@ final public class OptimalDeltaRenderer implements IContributorRenderer {
 
 				m_fullRenderer.setRenderMode(HtmlRenderMode.REPL); // jal 20091002 added to let textarea know what mode we're rendering in.
 				m_fullRenderer.visitChildren(ni.node); // 20080624 jal fix for table in table in table in table..... when paging
-				o().closetag("replaceContent");
+				m_writer.endReplaceContent();
 				//				o().setIndentEnabled(ind);
 				renderAttributeChange(ni.node); // 20080820 jal Fix voor ontbrekende attrs als tekstinhoud TextArea wijzigt?
 				return;
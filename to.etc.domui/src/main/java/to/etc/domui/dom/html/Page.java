@@ -30,6 +30,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import to.etc.domui.component.binding.OldBindingHandler;
 import to.etc.domui.component.layout.FloatingDiv;
 import to.etc.domui.component.misc.WindowParameters;
+import to.etc.domui.dom.DeltaFormat;
 import to.etc.domui.dom.errors.IErrorFence;
 import to.etc.domui.dom.errors.UIMessage;
 import to.etc.domui.dom.header.HeaderContributor;
@@ -122,6 +123,9 @@ final public class Page implements IQContextContainer {
 	/** Temp for checking shelve order. */
 	private boolean m_shelved;
 
+	/** The time this page was last shelved, used to find idle pages for passivation. */
+	private long m_shelvedAt;
+
 	@Nullable
 	private NodeBase m_defaultFocusSource;
 
@@ -192,6 +196,12 @@ final public class Page implements IQContextContainer {
 	 */
 	private boolean m_renderAsXHTML;
 
+	/**
+	 * The wire format used for deltas of this page; when null the application's default is used.
+	 */
+	@Nullable
+	private DeltaFormat m_deltaFormat;
+
 	/**
 	 * If the page has gotten it's values injected this is set to true. This prevents injecting
 	 * a value twice which causes trouble for NEW objects (it creates two separate instances of
@@ -911,6 +921,7 @@ final public class Page implements IQContextContainer {
 		if(m_shelved)
 			throw new IllegalStateException("Calling SHELVE on already-shelved page " + this);
 		m_shelved = true;
+		m_shelvedAt = System.currentTimeMillis();
 		getBody().internalShelve();
 	}
 
@@ -928,6 +939,13 @@ final public class Page implements IQContextContainer {
 		return m_shelved;
 	}
 
+	/**
+	 * The time (in millis) this page was last shelved. Only valid when {@link #isShelved()} is true.
+	 */
+	public long internalGetShelvedAt() {
+		return m_shelvedAt;
+	}
+
 	/*--------------------------------------------------------------*/
 	/*	CODING:	Javascript component state registration.			*/
 	/*--------------------------------------------------------------*/
@@ -1062,6 +1080,20 @@ final public class Page implements IQContextContainer {
 		m_renderAsXHTML = renderAsXHTML;
 	}
 
+	/**
+	 * The encoding used to send deltas for this page to the browser. Defaults to
+	 * {@link DomApplication#getDefaultDeltaFormat()}.
+	 */
+	@NonNull
+	public DeltaFormat getDeltaFormat() {
+		DeltaFormat format = m_deltaFormat;
+		return null == format ? DomApplication.get().getDefaultDeltaFormat() : format;
+	}
+
+	public void setDeltaFormat(@Nullable DeltaFormat deltaFormat) {
+		m_deltaFormat = deltaFormat;
+	}
+
 	public void setDefaultFocusSource(@Nullable NodeBase node) {
 		m_defaultFocusSource = node;
 	}
@@ -50,10 +50,10 @@ import java.util.Map;
 @NonNullByDefault
 final public class DefaultPageInjector implements IPageInjector {
 	/**
-	 * Maps UrlPage class names to their PageInjectors. We use names instead of the Class instances
-	 * to allow for class reloading.
+	 * The injection plan per UrlPage class. A ClassValue does not keep the class alive, so reloaded
+	 * classes just get a new plan. It is replaced when the injectors change.
 	 */
-	private Map<String, PageInjectionList> m_injectorMap = new HashMap<>();
+	private volatile ClassValue<PageInjectionList> m_injectorCache = createInjectorCache();
 
 	private final DefaultPagePropertyInjectorFactory m_defaultPageInjectorFactory;
 
@@ -71,6 +71,15 @@ final public class DefaultPageInjector implements IPageInjector {
 	@Override
 	public  void registerFactory(int urgency, IPagePropertyFactory injector) {
 		m_defaultPageInjectorFactory.registerFactory(urgency, injector);
+		m_injectorCache = createInjectorCache();
+	}
+
+	private ClassValue<PageInjectionList> createInjectorCache() {
+		return new ClassValue<PageInjectionList>() {
+			@Override protected PageInjectionList computeValue(Class<?> type) {
+				return calculateInjectors((Class<? extends UrlPage>) type);
+			}
+		};
 	}
 
 	final public PageInjectionList calculateInjectors(Class<? extends UrlPage> page) {
@@ -90,6 +99,7 @@ final public class DefaultPageInjector implements IPageInjector {
 		List<IPageInjectorCalculator> res = new ArrayList<>(list.size());
 		list.forEach(item -> res.add(item.getPageInjector()));
 		m_pageInjectorList = Collections.unmodifiableList(res);
+		m_injectorCache = createInjectorCache();
 	}
 
 	@NonNull
@@ -98,20 +108,10 @@ final public class DefaultPageInjector implements IPageInjector {
 	}
 
 	/**
-	 * Find the page injectors to use for the page. This uses the cache.
+	 * Find the page injectors to use for the page. This uses the cache, and takes no lock once the page's plan is known.
 	 */
-	private synchronized PageInjectionList findPageInjector(Class< ? extends UrlPage> page) {
-		String cn = page.getClass().getCanonicalName();
-		PageInjectionList pij = m_injectorMap.get(cn);
-		if(pij != null) {
-			//-- Hit on name; is the class instance the same? If not this is a reload.
-			if(pij.getPageClass() == page) // Idiotic generics. If the class changed we have a reload of the class and need to recalculate.
-				return pij;
-		}
-
-		pij = calculateInjectors(page);
-		m_injectorMap.put(cn, pij);
-		return pij;
+	private PageInjectionList findPageInjector(Class< ? extends UrlPage> page) {
+		return m_injectorCache.get(page);
 	}
 
 	/**
@@ -28,19 +28,48 @@ import org.eclipse.jdt.annotation.NonNullByDefault;
 import to.etc.domui.dom.html.UrlPage;
 import to.etc.domui.state.IPageParameters;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+/**
+ * The injection plan for a page class. Injectors that load the same entity type by primary key are
+ * grouped, so that all of those entities are loaded with one query. A group is injected at the
+ * position of its first member, so the order of the injections stays the same otherwise.
+ */
 @NonNullByDefault
 final class PageInjectionList {
-	final private List<PropertyInjector> m_propInjectorList;
+	/** A single injection: one property, or a group of entity properties. */
+	private interface IInjectStep {
+		void inject(UrlPage page, IPageParameters pp, Map<String, Object> attributeMap) throws Exception;
+	}
+
+	final private List<IInjectStep> m_stepList;
 
 	final private Class< ? extends UrlPage> m_pageClass;
 
 	public PageInjectionList(Class< ? extends UrlPage> pageClass, List<PropertyInjector> propInjectorList) {
 		m_pageClass = Objects.requireNonNull(pageClass);
-		m_propInjectorList = Objects.requireNonNull(propInjectorList);
+
+		Map<Class<?>, List<UrlFindEntityByPkInjector>> groupMap = new LinkedHashMap<>();
+		for(PropertyInjector pi : propInjectorList) {
+			if(pi instanceof UrlFindEntityByPkInjector && ((UrlFindEntityByPkInjector) pi).isBatchable()) {
+				UrlFindEntityByPkInjector ei = (UrlFindEntityByPkInjector) pi;
+				groupMap.computeIfAbsent(ei.getEntityClass(), a -> new ArrayList<>()).add(ei);
+			}
+		}
+
+		List<IInjectStep> list = new ArrayList<>(propInjectorList.size());
+		for(PropertyInjector pi : propInjectorList) {
+			List<UrlFindEntityByPkInjector> group = pi instanceof UrlFindEntityByPkInjector ? groupMap.get(((UrlFindEntityByPkInjector) pi).getEntityClass()) : null;
+			if(null == group || group.size() < 2 || !group.contains(pi))
+				list.add(pi::inject);
+			else if(group.get(0) == pi)
+				list.add((page, pp, attributeMap) -> UrlFindEntityByPkInjector.injectAll(page, pp, group));
+		}
+		m_stepList = list;
 	}
 
 	public Class< ? extends UrlPage> getPageClass() {
@@ -52,7 +81,7 @@ final class PageInjectionList {
 	 * @param attributeMap A map that can be used to store things while injecting.
 	 */
 	public void inject(UrlPage page, IPageParameters pp, Map<String, Object> attributeMap) throws Exception {
-		for(PropertyInjector pi : m_propInjectorList)
-			pi.inject(page, pp, attributeMap);
+		for(IInjectStep step : m_stepList)
+			step.inject(page, pp, attributeMap);
 	}
 }
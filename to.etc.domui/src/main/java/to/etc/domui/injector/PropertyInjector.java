@@ -34,6 +34,10 @@ import to.etc.domui.state.IPageParameters;
 import to.etc.util.PropertyInfo;
 import to.etc.util.WrappedException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.Objects;
@@ -45,10 +49,26 @@ import java.util.Objects;
 public abstract class PropertyInjector {
 	private final PropertyInfo m_propertyInfo;
 
+	/** The setter as (Object, Object)void, or null if there is no setter or it can only be called by reflection. */
+	@Nullable
+	private final MethodHandle m_setter;
+
 	public abstract void inject(@NonNull UrlPage page, @NonNull IPageParameters pp, @NonNull Map<String, Object> attributeMap) throws Exception;
 
 	public PropertyInjector(@NonNull PropertyInfo info) {
 		m_propertyInfo = info;
+		m_setter = createSetter(info.getSetter());
+	}
+
+	@Nullable
+	static private MethodHandle createSetter(@Nullable Method setter) {
+		if(null == setter)
+			return null;
+		try {
+			return MethodHandles.publicLookup().unreflect(setter).asType(MethodType.methodType(void.class, Object.class, Object.class));
+		} catch(IllegalAccessException x) {
+			return null;
+		}
 	}
 
 	protected PropertyInfo getPropertyInfo() {
@@ -68,12 +88,37 @@ public abstract class PropertyInjector {
 			throw new IllegalDataValueException(m_propertyInfo);
 
 		try {
-			getPropertySetter().invoke(instance, value);
+			invokeSetter(instance, value);
 		} catch(Exception x) {
 			throw new WrappedException("Cannot SET the entity '" + value + "' for property=" + m_propertyInfo.getName() + " of page=" + instance.getClass() + ": " + x, x);
 		}
 	}
 
+	/**
+	 * Call the property's setter without any checks. Exceptions thrown by the setter are thrown as-is.
+	 */
+	protected void invokeSetter(@NonNull AbstractPage instance, @Nullable Object value) throws Exception {
+		MethodHandle mh = m_setter;
+		if(null == mh) {
+			try {
+				getPropertySetter().invoke(instance, value);
+			} catch(InvocationTargetException x) {
+				Throwable cause = x.getCause();
+				if(cause instanceof Exception)
+					throw (Exception) cause;
+				throw x;
+			}
+			return;
+		}
+		try {
+			mh.invokeExact((Object) instance, value);
+		} catch(Exception | Error x) {
+			throw x;
+		} catch(Throwable x) {
+			throw new WrappedException(x);
+		}
+	}
+
 	private boolean isValueAllowed(AbstractPage instance, @Nullable Object value) throws Exception {
 		for(IInjectedPropertyAccessChecker checker : DomApplication.get().getInjectedPropertyAccessCheckerList()) {
 			if(! checker.isAccessAllowed(m_propertyInfo, instance, value)) {
@@ -30,10 +30,18 @@ import to.etc.domui.converter.CompoundKeyConverter;
 import to.etc.domui.dom.html.UrlPage;
 import to.etc.domui.state.IPageParameters;
 import to.etc.util.PropertyInfo;
+import to.etc.util.RuntimeConversions;
+import to.etc.webapp.query.QCriteria;
 import to.etc.webapp.query.QDataContext;
 import to.etc.webapp.query.QNotFoundException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This property injector takes the named URL parameter as a string. It does a lookup of the entity specified
@@ -42,6 +50,9 @@ import java.util.Map;
  * PK. This converter accepts the special value "NEW"; when that is present it constructs a new instance of the
  * entity.
  *
+ * <p>When a page has more than one of these injectors for the same entity type, the page's injection
+ * list loads all of them with a single query, see {@link #injectAll(UrlPage, IPageParameters, List)}.</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Dec 19, 2008
  */
@@ -54,12 +65,32 @@ public class UrlFindEntityByPkInjector extends PropertyInjector {
 
 	private final PropertyMetaModel<?> m_pkMetaPmm;
 
+	/** T if this can be loaded together with others for the same entity: it has a simple PK and uses the standard injection. */
+	private final boolean m_batchable;
+
 	public UrlFindEntityByPkInjector(PropertyInfo info, final String name, final boolean mandatory, final Class<?> enityClass, PropertyMetaModel<?> pkMetaPmm) {
 		super(info);
 		m_name = name;
 		m_mandatory = mandatory;
 		m_entityClass = enityClass;
 		m_pkMetaPmm = pkMetaPmm;
+		m_batchable = RuntimeConversions.isSimpleType(pkMetaPmm.getActualType()) && !isInjectOverridden(getClass());
+	}
+
+	static private boolean isInjectOverridden(Class<?> clz) {
+		try {
+			return clz.getMethod("inject", UrlPage.class, IPageParameters.class, Map.class).getDeclaringClass() != UrlFindEntityByPkInjector.class;
+		} catch(NoSuchMethodException x) {
+			return true;
+		}
+	}
+
+	Class<?> getEntityClass() {
+		return m_entityClass;
+	}
+
+	boolean isBatchable() {
+		return m_batchable;
 	}
 
 	protected String getParameterName() {
@@ -141,4 +172,66 @@ public class UrlFindEntityByPkInjector extends PropertyInjector {
 		}
 		setValue(page, value);
 	}
+
+	/**
+	 * Inject all batchable injectors for the same entity type, loading all entities with one query.
+	 * Nothing is injected, not even a new instance, until all mandatory entities have been found.
+	 */
+	static void injectAll(@NonNull UrlPage page, @NonNull IPageParameters papa, @NonNull List<UrlFindEntityByPkInjector> list) throws Exception {
+		QDataContext dc = null;
+		List<UrlFindEntityByPkInjector> pending = new ArrayList<>(list.size());
+		List<Object> pkList = new ArrayList<>(list.size());
+		List<UrlFindEntityByPkInjector> newList = new ArrayList<>();
+		for(UrlFindEntityByPkInjector pij : list) {
+			String pv = pij.getParameterValue(page, papa);
+			if(pv == null)
+				continue;
+			if(pij.isNew(page, papa, pv)) {
+				newList.add(pij);
+				continue;
+			}
+			if(null == dc)
+				dc = page.getSharedContext();
+			Object pk = pij.getKeyInstance(dc, page, pv);
+			if(pk == null) {
+				if(pij.m_mandatory)
+					throw new QNotFoundException(pij.m_entityClass, pk);
+				continue;
+			}
+			pending.add(pij);
+			pkList.add(pk);
+		}
+
+		//-- Load all entities
+		Map<Object, Object> entityMap = new HashMap<>();
+		if(!pending.isEmpty() && null != dc) {
+			UrlFindEntityByPkInjector first = pending.get(0);
+			Set<Object> pkSet = new LinkedHashSet<>(pkList);
+			if(pkSet.size() == 1) {
+				Object pk = pkList.get(0);
+				Object value = dc.find(first.m_entityClass, pk);
+				if(null != value)
+					entityMap.put(pk, value);
+			} else {
+				for(Object value : queryByPk(dc, first.m_entityClass, first.m_pkMetaPmm.getName(), pkSet))
+					entityMap.put(first.m_pkMetaPmm.getValue(value), value);
+			}
+		}
+
+		//-- Check all mandatory ones before injecting anything
+		for(int i = 0; i < pending.size(); i++) {
+			UrlFindEntityByPkInjector pij = pending.get(i);
+			Object pk = pkList.get(i);
+			if(pij.m_mandatory && !entityMap.containsKey(pk))
+				throw new QNotFoundException(pij.m_entityClass, pk);
+		}
+		for(UrlFindEntityByPkInjector pij : newList)
+			pij.setValue(page, pij.createNew(page));
+		for(int i = 0; i < pending.size(); i++)
+			pending.get(i).setValue(page, entityMap.get(pkList.get(i)));
+	}
+
+	static private <T> List<T> queryByPk(QDataContext dc, Class<T> entityClass, String pkName, Collection<Object> pks) throws Exception {
+		return dc.query(QCriteria.create(entityClass).in(pkName, pks));
+	}
 }
@@ -25,10 +25,14 @@
 package to.etc.domui.injector;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import to.etc.domui.converter.ConverterRegistry;
+import to.etc.domui.converter.IConverter;
 import to.etc.domui.dom.html.UrlPage;
 import to.etc.domui.state.IPageParameters;
 import to.etc.util.PropertyInfo;
+import to.etc.util.RuntimeConversions;
+import to.etc.webapp.nls.NlsContext;
 
 import java.util.Map;
 
@@ -36,7 +40,7 @@ import java.util.Map;
  * This property injector contains the name of an URL parameter plus the property to set from it. At
  * injection time it uses the name to get the string value of the URL parameter. This parameter is
  * then converted using the URL converters registered in the ConverterRegistry to the proper value
- * type of the setter.
+ * type of the setter. The converter is looked up once, when the injector is created.
  *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Dec 19, 2008
@@ -46,10 +50,19 @@ final public class UrlParameterInjector extends PropertyInjector {
 
 	final private boolean m_mandatory;
 
+	@NonNull
+	final private Class< ? > m_type;
+
+	/** The URL converter for the type, or null to use the default conversions. */
+	@Nullable
+	final private IConverter< ? > m_converter;
+
 	public UrlParameterInjector(@NonNull PropertyInfo info, final String name, final boolean mandatory) {
 		super(info);
 		m_name = name;
 		m_mandatory = mandatory;
+		m_type = getPropertySetter().getParameterTypes()[0];
+		m_converter = ConverterRegistry.findURLConverter(m_type);
 	}
 
 	/**
@@ -66,17 +79,21 @@ final public class UrlParameterInjector extends PropertyInjector {
 		}
 
 		//-- 2. Convert the thing to the appropriate type.
-		Class< ? > type = getPropertySetter().getParameterTypes()[0];
+		Class< ? > type = m_type;
+		IConverter< ? > converter = m_converter;
 		Object value;
 		try {
-			value = ConverterRegistry.convertURLStringToValue(type, pv);
+			if(null == converter)
+				value = RuntimeConversions.convertTo(pv, type);
+			else
+				value = converter.convertStringToObject(NlsContext.getLocale(), pv);
 		} catch(Exception x) {
 			throw new RuntimeException("Cannot convert the string '" + pv + "' to type=" + type + ", for URL parameter=" + m_name + " of page=" + page.getClass() + ": " + x, x);
 		}
 
 		//-- 3. Insert the value.
 		try {
-			getPropertySetter().invoke(page, value);
+			invokeSetter(page, value);
 		} catch(Exception x) {
 			throw new RuntimeException("Cannot SET the value '" + value + "' converted from the string '" + pv + "' to type=" + type + ", for URL parameter=" + m_name + " of page="
 				+ page.getClass() + ": " + x, x);
@@ -0,0 +1,36 @@
+package to.etc.domui.parts;
+
+import org.eclipse.jdt.annotation.NonNull;
+import to.etc.domui.server.DomApplication;
+import to.etc.domui.server.RequestContextImpl;
+import to.etc.domui.server.parts.IUnbufferedPartFactory;
+import to.etc.domui.state.HeapAccountant;
+import to.etc.domui.trouble.ThingyNotFoundException;
+import to.etc.util.DeveloperOptions;
+
+import java.io.Writer;
+
+/**
+ * Returns the last heap measurement of the {@link HeapAccountant} as JSON. Pass the parameter
+ * "refresh" to measure all sessions first. Because this shows data on all sessions it is only
+ * available in development mode, or when the developer option domui.heapinfo is true.
+ *
+ * Created on 19-10-26.
+ */
+public class HeapInfoPart implements IUnbufferedPartFactory {
+	@Override
+	public void generate(@NonNull DomApplication app, @NonNull String rurl, @NonNull RequestContextImpl param) throws Exception {
+		if(!app.inDevelopmentMode() && !DeveloperOptions.getBool("domui.heapinfo", false))
+			throw new ThingyNotFoundException("Heap info is not enabled");
+
+		Writer w = param.getRequestResponse().getOutputWriter("application/json; charset=UTF-8", "utf-8");
+		HeapAccountant ha = app.getHeapAccountant();
+		if(null == ha) {
+			w.write("{\"error\":\"Heap accounting is not enabled, see DomApplication.setHeapAccounting\"}");
+			return;
+		}
+		if(null != param.getParameter("refresh"))
+			ha.measure();
+		ha.renderJson(w);
+	}
+}
@@ -0,0 +1,37 @@
+package to.etc.domui.parts;
+
+import org.eclipse.jdt.annotation.NonNull;
+import to.etc.domui.server.DomApplication;
+import to.etc.domui.server.HttpServerRequestResponse;
+import to.etc.domui.server.PushChannel;
+import to.etc.domui.server.RequestContextImpl;
+import to.etc.domui.server.parts.IUnbufferedPartFactory;
+import to.etc.domui.util.Constants;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The wait request of the server push channel, see {@link PushChannel}. This does not touch
+ * the session, so a waiting browser does not block its other requests.
+ *
+ * Created on 19-10-26.
+ */
+public class PushWaitPart implements IUnbufferedPartFactory {
+	@Override
+	public void generate(@NonNull DomApplication app, @NonNull String rurl, @NonNull RequestContextImpl param) throws Exception {
+		if(!(param.getRequestResponse() instanceof HttpServerRequestResponse))
+			return;
+		HttpServerRequestResponse rr = (HttpServerRequestResponse) param.getRequestResponse();
+		HttpServletResponse response = rr.getResponse();
+		response.setHeader("Cache-Control", "no-cache, no-store");
+
+		PushChannel channel = app.getPushChannel();
+		String cid = param.getParameter(Constants.PARAM_CONVERSATION_ID);
+		if(null == channel || null == cid) {
+			response.setContentType("text/plain; charset=UTF-8");
+			response.getWriter().write(PushChannel.RESPONSE_NOPUSH);
+			return;
+		}
+		channel.waitFor(rr.getRequest(), response, cid);
+	}
+}
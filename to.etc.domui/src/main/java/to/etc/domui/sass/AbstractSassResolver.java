@@ -1,6 +1,7 @@
 package to.etc.domui.sass;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import to.etc.domui.parts.ParameterInfoImpl;
@@ -13,7 +14,11 @@ import to.etc.util.StringTool;
 import to.etc.util.WrappedException;
 
 import java.io.InputStream;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -24,6 +29,9 @@ import java.util.Map;
  * the Application. This allows the Application limited control over variables inside
  * the style sheet.
  *
+ * <p>All files resolved are remembered in the order they were resolved in, so that a hash over their
+ * contents can identify a compiled result, see {@link SassCompileCache}.</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on 29-10-17.
  */
@@ -36,14 +44,19 @@ abstract public class AbstractSassResolver<O> {
 
 	private long m_resolveTime;
 
+	static final String PARAMETER_FILE = "_parameters.scss";
+
 	private static class Line<O> {
 		private final String m_name;
 
 		private final O m_ref;
 
-		public Line(String name, O ref) {
+		private final String m_content;
+
+		public Line(String name, O ref, String content) {
 			m_name = name;
 			m_ref = ref;
+			m_content = content;
 		}
 
 		public String getName() {
@@ -53,10 +66,15 @@ abstract public class AbstractSassResolver<O> {
 		public O getRef() {
 			return m_ref;
 		}
+
+		public String getContent() {
+			return m_content;
+		}
 	}
 
 
-	final private Map<String, Line<O>> m_map = new HashMap<>();
+	/** All resolved files, in the order they were first resolved in. */
+	final private Map<String, Line<O>> m_map = new LinkedHashMap<>();
 
 	private O m_parameterFile;
 
@@ -185,7 +203,7 @@ abstract public class AbstractSassResolver<O> {
 				content = FileTool.readStreamAsString(is, "utf-8");
 			}
 			O imp = createInput(name, content);
-			m_map.put(name, new Line<>(name, imp));
+			m_map.put(name, new Line<>(name, imp, content));
 			return imp;
 		} catch(ThingyNotFoundException tnf) {				// Normal exception if resource cannot be located.
 			return null;
@@ -202,7 +220,8 @@ abstract public class AbstractSassResolver<O> {
 		if(null == pf) {
 			try {
 				String parameters = generateParameterFile();
-				pf = m_parameterFile = createInput("_parameters.scss", parameters);
+				pf = m_parameterFile = createInput(PARAMETER_FILE, parameters);
+				m_map.put(PARAMETER_FILE, new Line<>(PARAMETER_FILE, pf, parameters));
 			} catch(Exception x) {
 				throw WrappedException.wrap(x);
 			}
@@ -210,6 +229,45 @@ abstract public class AbstractSassResolver<O> {
 		return pf;
 	}
 
+	/**
+	 * The names of all files resolved so far, in the order they were resolved in.
+	 */
+	@NonNull
+	public List<String> getResolvedNames() {
+		return new ArrayList<>(m_map.keySet());
+	}
+
+	/**
+	 * Calculate a hash over the names and contents of all files resolved so far.
+	 */
+	@NonNull
+	public String calculateHash() throws Exception {
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		for(Line<O> line : m_map.values()) {
+			md.update(line.getName().getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(line.getContent().getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+		}
+		return StringTool.toHex(md.digest());
+	}
+
+	/**
+	 * Resolve the files in the list again, by their name as returned by {@link #getResolvedNames()}, and
+	 * return the hash over their current contents. This returns null if one of the files no longer exists.
+	 */
+	@Nullable
+	public String calculateHash(@NonNull List<String> names) throws Exception {
+		DomApplication app = DomApplication.get();
+		for(String name : names) {
+			if(name.equals(PARAMETER_FILE))
+				calculateParameterFile();
+			else if(null == tryRef(app, name))
+				return null;
+		}
+		return calculateHash();
+	}
+
 	public void close() {
 		LOG.info("scss total resolve time " + StringTool.strNanoTime(m_resolveTime));
 	}
@@ -1,6 +1,7 @@
 package to.etc.domui.sass;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import to.etc.domui.parts.ParameterInfoImpl;
 import to.etc.domui.util.resources.IResourceDependencyList;
 
@@ -11,7 +12,18 @@ import java.io.Writer;
  * Created on 29-10-17.
  */
 public interface ISassCompiler {
+	/**
+	 * Compile for development: readable output, with the source map embedded unless the
+	 * parameter __nomap is present.
+	 */
 	void compiler(String rurl, Writer output, @NonNull ParameterInfoImpl params, @NonNull IResourceDependencyList rdl) throws Exception;
 
+	/**
+	 * Compile for production: compressed output with a separate source map. If a cache is passed
+	 * the result is taken from it when none of the sources has changed, else the result is stored in it.
+	 */
+	@NonNull
+	SassOutput compileProduction(String rurl, @NonNull ParameterInfoImpl params, @NonNull IResourceDependencyList rdl, @Nullable SassCompileCache cache) throws Exception;
+
 	boolean available();
 }
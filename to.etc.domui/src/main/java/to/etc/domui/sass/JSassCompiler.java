@@ -8,14 +8,13 @@ import io.bit3.jsass.OutputStyle;
 import io.bit3.jsass.context.StringContext;
 import io.bit3.jsass.importer.Import;
 import org.eclipse.jdt.annotation.NonNull;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.eclipse.jdt.annotation.Nullable;
 import to.etc.domui.parts.ParameterInfoImpl;
 import to.etc.domui.trouble.ThingyNotFoundException;
 import to.etc.domui.util.resources.IResourceDependencyList;
 
-import java.io.File;
 import java.io.Writer;
+import java.net.URI;
 import java.util.Collections;
 
 /**
@@ -23,9 +22,55 @@ import java.util.Collections;
  * Created on 29-10-17.
  */
 public class JSassCompiler implements ISassCompiler {
-	static private final Logger LOG = LoggerFactory.getLogger(JSassCompiler.class);
-
 	@Override public void compiler(String rurl, Writer output, @NonNull ParameterInfoImpl params, @NonNull IResourceDependencyList rdl) throws Exception {
+		JSassResolver jsr = createResolver(rurl, params, rdl);
+
+		Options opt = new Options();
+		opt.setOutputStyle(OutputStyle.EXPANDED);
+		opt.setIndent("\t");
+		opt.setLinefeed("\n");
+
+		boolean map = params.getParameter("__nomap") == null;
+		opt.setSourceMapEmbed(map);
+		if(! map) {
+			opt.setSourceMapContents(false);
+		}
+
+		String css = compile(rurl, jsr, opt).getCss();
+		output.write(css == null ? "" : css);
+		jsr.close();
+	}
+
+	@NonNull
+	@Override public SassOutput compileProduction(String rurl, @NonNull ParameterInfoImpl params, @NonNull IResourceDependencyList rdl, @Nullable SassCompileCache cache) throws Exception {
+		String variantKey = null;
+		if(null != cache) {
+			variantKey = SassCompileCache.getVariantKey(rurl, params);
+			JSassResolver jsr = createResolver(rurl, params, rdl);
+			SassOutput out = cache.find(variantKey, jsr);
+			jsr.close();
+			if(null != out)
+				return out;
+		}
+
+		JSassResolver jsr = createResolver(rurl, params, rdl);
+		Options opt = new Options();
+		opt.setOutputStyle(OutputStyle.COMPRESSED);
+		opt.setSourceMapFile(getOutputUri(rurl + ".map"));
+		opt.setSourceMapContents(true);
+		opt.setOmitSourceMapUrl(true);							// The part adds its own url, pointing to the map part
+
+		Output res = compile(rurl, jsr, opt);
+		String css = res.getCss();
+		SassOutput out = new SassOutput(css == null ? "" : css, res.getSourceMap(), jsr.calculateHash());
+		if(null != cache && null != variantKey)
+			cache.store(variantKey, jsr.getResolvedNames(), out);
+		jsr.close();
+		return out;
+	}
+
+	@NonNull
+	private JSassResolver createResolver(String rurl, @NonNull ParameterInfoImpl params, @NonNull IResourceDependencyList rdl) {
 		/*
 		 * Define resolvers: these resolve "filenames" in the scss to resources in the webapp.
 		 */
@@ -36,41 +81,32 @@ public class JSassCompiler implements ISassCompiler {
 		} else {
 			basePath = rurl.substring(pos + 1);
 		}
+		return new JSassResolver(params, basePath, rdl);
+	}
 
-		JSassResolver jsr = new JSassResolver(params, basePath, rdl);
+	/**
+	 * The compiler needs an output location to make the source map relative to; nothing gets written there.
+	 */
+	@NonNull
+	static private URI getOutputUri(String rurl) throws Exception {
+		return new URI(null, null, "/" + rurl, null);
+	}
 
+	@NonNull
+	private Output compile(String rurl, @NonNull JSassResolver jsr, @NonNull Options opt) throws Exception {
 		Import file = jsr.resolve(rurl, "");
 		if(null == file)
 			throw new ThingyNotFoundException("The sass/scss file " + rurl + " could not be found");
 
-		File out = File.createTempFile("sass-out-", ".css");
-		LOG.debug("CSS output " + out);
-
-		Options opt = new Options();
 		opt.setImporters(Collections.singletonList(jsr));
-		opt.setOutputStyle(OutputStyle.EXPANDED);
-		opt.setIndent("\t");
-		opt.setLinefeed("\n");
-
-		boolean map = params.getParameter("__nomap") == null;
-		opt.setSourceMapEmbed(map);
-		if(! map) {
-			opt.setSourceMapContents(false);
-		}
 		opt.setSourceComments(false);
-
-
 		boolean isSass = rurl.toLowerCase().endsWith(".sass");
 		opt.setIsIndentedSyntaxSrc(isSass);
 
 		try {
-			StringContext fc = new StringContext(file.getContents(), file.getImportUri(), out.toURI(), opt);
+			StringContext fc = new StringContext(file.getContents(), file.getImportUri(), getOutputUri(rurl + ".css"), opt);
 			Compiler co = new Compiler();
-			Output res = co.compile(fc);
-			String css = res.getCss();
-			output.write(css == null ? "" : css);
-			out.delete();
-			jsr.close();
+			return co.compile(fc);
 		} catch(CompilationException cx) {
 			throw new SassException(cx.getErrorMessage() + "\n" + cx.getErrorJson(), cx);
 		}
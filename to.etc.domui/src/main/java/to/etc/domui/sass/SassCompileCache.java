@@ -0,0 +1,132 @@
+package to.etc.domui.sass;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import to.etc.domui.parts.ParameterInfoImpl;
+import to.etc.util.StringTool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps compiled production stylesheets on disk, so that they survive a restart of the server. A
+ * compiled stylesheet is stored under the hash of the contents of all files it was compiled from
+ * (see {@link AbstractSassResolver#calculateHash()}). For every stylesheet url with its parameters
+ * the cache stores the list of files the last compile used; to find a compiled result these files
+ * are read again, hashed, and the result for that hash is used if it exists. Changing any of the
+ * files, or the parameters used for _parameters.scss, so leads to a new compile.
+ *
+ * <p>Files are written to a temp file first and then moved in place, so that multiple servers can
+ * share the same cache directory.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class SassCompileCache {
+	static private final Logger LOG = LoggerFactory.getLogger(SassCompileCache.class);
+
+	/** Changes when the compiler options for production change, so that old results are not used. */
+	static private final String VERSION = "compressed-1";
+
+	@NonNull
+	private final File m_cacheDir;
+
+	public SassCompileCache(@NonNull File cacheDir) {
+		m_cacheDir = cacheDir;
+		cacheDir.mkdirs();
+	}
+
+	@NonNull
+	public File getCacheDir() {
+		return m_cacheDir;
+	}
+
+	/**
+	 * Calculate the key for a stylesheet url with its parameters. Parameters starting with __ do
+	 * not change the output, and are skipped.
+	 */
+	@NonNull
+	static String getVariantKey(@NonNull String rurl, @NonNull ParameterInfoImpl params) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append(VERSION).append('\u0000').append(rurl);
+		String[] names = params.getParameterNames();
+		Arrays.sort(names);
+		for(String name : names) {
+			if(name.startsWith("__"))
+				continue;
+			sb.append('\u0000').append(name);
+			for(String value : params.getParameters(name))
+				sb.append('\u0001').append(value);
+		}
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		return StringTool.toHex(md.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Find the compiled result for the variant, if the files it was compiled from are unchanged. The
+	 * resolver is used to read the files again.
+	 */
+	@Nullable
+	SassOutput find(@NonNull String variantKey, @NonNull AbstractSassResolver<?> resolver) throws Exception {
+		File deps = new File(m_cacheDir, variantKey + ".deps");
+		if(!deps.exists())
+			return null;
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(deps.toPath(), StandardCharsets.UTF_8);
+		} catch(IOException x) {
+			return null;
+		}
+		if(lines.size() < 2)
+			return null;
+		String hash = resolver.calculateHash(lines.subList(1, lines.size()));
+		if(null == hash || !hash.equals(lines.get(0)))
+			return null;
+
+		try {
+			File css = new File(m_cacheDir, hash + ".css");
+			File map = new File(m_cacheDir, hash + ".css.map");
+			String mapData = map.exists() ? new String(Files.readAllBytes(map.toPath()), StandardCharsets.UTF_8) : null;
+			return new SassOutput(new String(Files.readAllBytes(css.toPath()), StandardCharsets.UTF_8), mapData, hash);
+		} catch(IOException x) {
+			return null;
+		}
+	}
+
+	/**
+	 * Store a compiled result, and the list of files the variant was compiled from.
+	 */
+	void store(@NonNull String variantKey, @NonNull List<String> names, @NonNull SassOutput output) {
+		try {
+			String hash = output.getHash();
+			write(new File(m_cacheDir, hash + ".css"), output.getCss());
+			String map = output.getSourceMap();
+			if(null != map)
+				write(new File(m_cacheDir, hash + ".css.map"), map);
+			List<String> lines = new ArrayList<>(names.size() + 1);
+			lines.add(hash);
+			lines.addAll(names);
+			write(new File(m_cacheDir, variantKey + ".deps"), String.join("\n", lines));
+		} catch(Exception x) {
+			LOG.error("sass: cannot write compiled css to " + m_cacheDir + ": " + x, x);
+		}
+	}
+
+	static private void write(@NonNull File target, @NonNull String data) throws IOException {
+		File tmp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try {
+			Files.write(tmp.toPath(), data.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+}
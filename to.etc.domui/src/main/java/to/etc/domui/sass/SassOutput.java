@@ -0,0 +1,42 @@
+package to.etc.domui.sass;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The result of a production compile: the css, its source map, and the hash over all
+ * sources that were used to compile it.
+ *
+ * Created on 19-10-26.
+ */
+final public class SassOutput {
+	@NonNull
+	private final String m_css;
+
+	@Nullable
+	private final String m_sourceMap;
+
+	@NonNull
+	private final String m_hash;
+
+	public SassOutput(@NonNull String css, @Nullable String sourceMap, @NonNull String hash) {
+		m_css = css;
+		m_sourceMap = sourceMap;
+		m_hash = hash;
+	}
+
+	@NonNull
+	public String getCss() {
+		return m_css;
+	}
+
+	@Nullable
+	public String getSourceMap() {
+		return m_sourceMap;
+	}
+
+	@NonNull
+	public String getHash() {
+		return m_hash;
+	}
+}
@@ -11,15 +11,22 @@ import to.etc.domui.server.IParameterInfo;
 import to.etc.domui.server.parts.IBufferedPartFactory;
 import to.etc.domui.server.parts.IUrlMatcher;
 import to.etc.domui.server.parts.PartResponse;
+import to.etc.domui.trouble.ThingyNotFoundException;
 import to.etc.domui.util.resources.IResourceDependencyList;
 import to.etc.util.StringTool;
 
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This Web part accepts requests ending in .scss, and compiles them into a .css stylesheet on-the-fly.
  *
+ * <p>In development mode the stylesheet is readable and has its source map embedded. In production
+ * it is compressed, and refers to its source map which is served by this same part when the
+ * parameter __map is present. Production stylesheets are kept in the application's
+ * {@link SassCompileCache} when one is configured.</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on 17-4-17.
  */
@@ -51,13 +58,52 @@ public class SassPartFactory implements IBufferedPartFactory<ParameterInfoImpl>
 		String rurl = params.getInputPath();
 		ISassCompiler compiler = SassCompilerFactory.createCompiler();
 
-		pr.setMime("text/css");
-		try(OutputStream outputStream = pr.getOutputStream()) {
-			OutputStreamWriter osw = new OutputStreamWriter(outputStream, "utf-8");
-			compiler.compiler(rurl, osw, params, rdl);
-			osw.close();
+		if(da.inDevelopmentMode()) {
+			pr.setMime("text/css");
+			try(OutputStream outputStream = pr.getOutputStream()) {
+				OutputStreamWriter osw = new OutputStreamWriter(outputStream, "utf-8");
+				compiler.compiler(rurl, osw, params, rdl);
+				osw.close();
+			}
+		} else {
+			SassOutput out = compiler.compileProduction(rurl, params, rdl, da.getSassCompileCache());
+			String data;
+			if(params.getParameter("__map") != null) {
+				String map = out.getSourceMap();
+				if(null == map)
+					throw new ThingyNotFoundException("The sass/scss file " + rurl + " has no source map");
+				pr.setMime("application/json");
+				data = map;
+			} else {
+				pr.setMime("text/css");
+				data = out.getCss();
+				if(params.getParameter("__nomap") == null && out.getSourceMap() != null)
+					data += "\n/*# sourceMappingURL=" + getSourceMapUrl(rurl, params) + " */\n";
+			}
+			try(OutputStream outputStream = pr.getOutputStream()) {
+				outputStream.write(data.getBytes(StandardCharsets.UTF_8));
+			}
 		}
 		ts = System.nanoTime() - ts;
 		LOG.info("sass: script render took " + StringTool.strNanoTime(ts));
 	}
+
+	/**
+	 * The url of the source map, relative to the stylesheet: the stylesheet's name with the same parameters, and __map.
+	 */
+	static private String getSourceMapUrl(String rurl, ParameterInfoImpl params) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(rurl.substring(rurl.lastIndexOf('/') + 1)).append("?__map=true");
+		for(String name : params.getParameterNames()) {
+			if(name.startsWith("__"))
+				continue;
+			for(String value : params.getParameters(name)) {
+				sb.append('&');
+				StringTool.encodeURLEncoded(sb, name);
+				sb.append('=');
+				StringTool.encodeURLEncoded(sb, value);
+			}
+		}
+		return sb.toString();
+	}
 }
@@ -29,6 +29,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import to.etc.domui.ajax.AjaxRequestHandler;
+import to.etc.domui.caches.images.ImageCache;
 import to.etc.domui.component.binding.DefaultBindingHandler;
 import to.etc.domui.component.binding.IBindingHandler;
 import to.etc.domui.component.binding.IBindingHandlerFactory;
@@ -41,6 +42,7 @@ import to.etc.domui.component.layout.title.AppPageTitleBar;
 import to.etc.domui.component.layout.title.BasePageTitleBar;
 import to.etc.domui.component.misc.Icon;
 import to.etc.domui.component2.controlfactory.ControlCreatorRegistry;
+import to.etc.domui.dom.DeltaFormat;
 import to.etc.domui.dom.HtmlFullRenderer;
 import to.etc.domui.dom.HtmlTagRenderer;
 import to.etc.domui.dom.IBrowserOutput;
@@ -69,7 +71,9 @@ import to.etc.domui.login.ILoginAuthenticator;
 import to.etc.domui.login.ILoginDialogFactory;
 import to.etc.domui.login.ILoginListener;
 import to.etc.domui.login.IPageAccessChecker;
+import to.etc.domui.parts.ExtendedParameterInfoImpl;
 import to.etc.domui.parts.SvgPartFactory;
+import to.etc.domui.sass.SassCompileCache;
 import to.etc.domui.sass.SassPartFactory;
 import to.etc.domui.server.parts.IPartFactory;
 import to.etc.domui.server.parts.IUrlMatcher;
@@ -78,8 +82,11 @@ import to.etc.domui.server.parts.PartRequestHandler;
 import to.etc.domui.server.parts.PartService;
 import to.etc.domui.state.AbstractConversationContext;
 import to.etc.domui.state.AppSession;
+import to.etc.domui.state.AsyncActivityExecutor;
 import to.etc.domui.state.ConversationContext;
 import to.etc.domui.state.DelayedActivitiesManager;
+import to.etc.domui.state.HeapAccountant;
+import to.etc.domui.state.PagePassivator;
 import to.etc.domui.state.PageParameters;
 import to.etc.domui.state.UIGoto;
 import to.etc.domui.state.WindowSession;
@@ -133,6 +140,7 @@ import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -142,7 +150,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  *
@@ -162,6 +174,9 @@ public abstract class DomApplication {
 
 	static private final Map<String, IThemeFactory> THEME_FACTORIES = new HashMap<>();
 
+	/** How long a server push wait request is held before the browser is told to poll anyway, in millis. */
+	static private final long PUSH_WAIT_TIMEOUT = 25_000;
+
 	@NonNull
 	private final PartService m_partService = new PartService(this);
 
@@ -171,6 +186,10 @@ public abstract class DomApplication {
 	@NonNull
 	private Set<IAppSessionListener> m_appSessionListeners = new HashSet<IAppSessionListener>();
 
+	/** All sessions that are alive; weak so that a session that is never destroyed properly does not leak. */
+	@NonNull
+	private final Set<AppSession> m_sessionSet = Collections.newSetFromMap(new WeakHashMap<>());
+
 	@Nullable
 	private File m_webFilePath;
 
@@ -223,6 +242,28 @@ public abstract class DomApplication {
 	/** The default poll interval time for pages containing Async objects (see {@link DelayedActivitiesManager}). */
 	private int m_defaultPollInterval = 2500;
 
+	/** The wire format for page deltas, for pages that do not define their own. */
+	private volatile DeltaFormat m_defaultDeltaFormat = DeltaFormat.XML;
+
+	/** When set, idle shelved pages get passivated, see {@link #setPagePassivation(int, int)}. */
+	@Nullable
+	private PagePassivator m_pagePassivator;
+
+	/** When set, the heap usage of all sessions is measured, see {@link #setHeapAccounting(int)}. */
+	@Nullable
+	private HeapAccountant m_heapAccountant;
+
+	/** Runs the asynchronous activities of all conversations, see {@link #setAsyncActivityExecution(int, boolean)}. */
+	@Nullable
+	private AsyncActivityExecutor m_asyncActivityExecutor;
+
+	/** T once the executor has been handed out; after that it can no longer be replaced. */
+	private boolean m_asyncActivityExecutorUsed;
+
+	/** When set, pages with asynchronous activities wait for changes instead of polling, see {@link #setServerPush(boolean)}. */
+	@Nullable
+	private volatile PushChannel m_pushChannel;
+
 	/** When set, problem reports have a "mail" button and send mail here, */
 	private String m_problemMailAddress;
 
@@ -283,6 +324,10 @@ public abstract class DomApplication {
 	/** Global properties for all themes */
 	final private Map<String, String> m_themeApplicationProperties = new HashMap<>();
 
+	/** When set, compiled production stylesheets are kept in this cache so that they survive a restart. */
+	@Nullable
+	private SassCompileCache m_sassCompileCache;
+
 	/** The "current theme". This will become part of all themed resource URLs and is interpreted by the theme factory to resolve resources. */
 	@NonNull
 	private volatile String m_defaultTheme = "";
@@ -607,7 +652,10 @@ public abstract class DomApplication {
 	/**
 	 * Called when the session is bound to the HTTPSession. This calls all session listeners.
 	 */
-	void registerSession(@NonNull final AppSession aps) {
+	public final void internalRegisterSession(@NonNull final AppSession aps) {
+		synchronized(m_sessionSet) {
+			m_sessionSet.add(aps);
+		}
 		for(IAppSessionListener l : getAppSessionListeners()) {
 			try {
 				l.sessionCreated(this, aps);
@@ -617,17 +665,53 @@ public abstract class DomApplication {
 		}
 	}
 
-	void unregisterSession(@NonNull final AppSession aps) {
+	/**
+	 * Called when the session is destroyed. This calls all session listeners.
+	 */
+	public final void internalUnregisterSession(@NonNull final AppSession aps) {
+		synchronized(m_sessionSet) {
+			if(!m_sessionSet.remove(aps))
+				return;
+		}
+		for(IAppSessionListener l : getAppSessionListeners()) {
+			try {
+				l.sessionDestroyed(this, aps);
+			} catch(Exception x) {
+				x.printStackTrace();
+			}
+		}
+	}
 
+	/**
+	 * Return all sessions that are currently alive.
+	 */
+	@NonNull
+	public final List<AppSession> internalGetSessions() {
+		synchronized(m_sessionSet) {
+			return new ArrayList<>(m_sessionSet);
+		}
 	}
 
 	final void internalDestroy() {
 		LOG.info("Destroying application " + this);
+		PagePassivator pp = getPagePassivator();
+		if(null != pp)
+			pp.stop();
+		HeapAccountant ha = getHeapAccountant();
+		if(null != ha)
+			ha.stop();
+		AsyncActivityExecutor ae;
+		synchronized(this) {
+			ae = m_asyncActivityExecutor;
+		}
+		if(null != ae)
+			ae.stop();
 		try {
 			destroy();
 		} catch(Throwable x) {
 			AppFilter.LOG.error("Exception when destroying Application", x);
 		}
+		ImageCache.shutdown();
 
 		ServiceLoader<IApplicationInitializer> initLoader = ServiceLoader.load(IApplicationInitializer.class);
 		for(IApplicationInitializer ai : initLoader) {
@@ -971,6 +1055,117 @@ public abstract class DomApplication {
 		m_defaultPollInterval = defaultPollInterval;
 	}
 
+	/**
+	 * The encoding used to send page deltas to the browser, for pages that do not set
+	 * their own using {@link Page#setDeltaFormat(DeltaFormat)}. Defaults to XML.
+	 */
+	@NonNull
+	public DeltaFormat getDefaultDeltaFormat() {
+		return m_defaultDeltaFormat;
+	}
+
+	public void setDefaultDeltaFormat(@NonNull DeltaFormat defaultDeltaFormat) {
+		m_defaultDeltaFormat = defaultDeltaFormat;
+	}
+
+	/**
+	 * Enable passivation of shelved pages: pages that have been on the shelve stack unused for idleMinutes
+	 * get their page tree discarded, and are rebuilt from their page parameters when the user returns
+	 * to them. When memoryThresholdPercentage is &gt; 0 idle pages are also passivated as soon as the heap
+	 * usage exceeds that percentage. Passing 0 as idleMinutes disables passivation. Call this from
+	 * {@link #initialize(ConfigParameters)}, before sessions are created.
+	 */
+	public synchronized void setPagePassivation(int idleMinutes, int memoryThresholdPercentage) throws Exception {
+		PagePassivator pp = m_pagePassivator;
+		if(null != pp) {
+			pp.stop();
+			m_pagePassivator = null;
+		}
+		if(idleMinutes <= 0)
+			return;
+		pp = new PagePassivator(this, idleMinutes);
+		pp.start(memoryThresholdPercentage);
+		m_pagePassivator = pp;
+	}
+
+	/**
+	 * Return the page passivator and its metrics, if passivation is enabled.
+	 */
+	@Nullable
+	public synchronized PagePassivator getPagePassivator() {
+		return m_pagePassivator;
+	}
+
+	/**
+	 * Enable measuring the estimated heap usage of all sessions, windows, conversations and pages every
+	 * intervalMinutes. The result is available from {@link #getHeapAccountant()}, through JMX and as the
+	 * {@link to.etc.domui.parts.HeapInfoPart}. Passing 0 disables the measurement.
+	 */
+	public synchronized void setHeapAccounting(int intervalMinutes) throws Exception {
+		HeapAccountant ha = m_heapAccountant;
+		if(null != ha) {
+			ha.stop();
+			m_heapAccountant = null;
+		}
+		if(intervalMinutes <= 0)
+			return;
+		ha = new HeapAccountant(this, intervalMinutes);
+		ha.start();
+		m_heapAccountant = ha;
+	}
+
+	@Nullable
+	public synchronized HeapAccountant getHeapAccountant() {
+		return m_heapAccountant;
+	}
+
+	/**
+	 * Set how asynchronous activities (see {@link to.etc.domui.component.delayed.AsyncContainer}) are run:
+	 * at most maxConcurrency activities run at the same time for the whole application, divided fairly
+	 * between users. Activities of a single conversation always run one at a time. When useVirtualThreads
+	 * is T and the JVM supports them the activities run on virtual threads. Call this in initialize(); the
+	 * default is max(8, 2 * #processors) platform threads. Once the first conversation has used the
+	 * executor it can no longer be replaced, because its queued activities would never run.
+	 */
+	public synchronized void setAsyncActivityExecution(int maxConcurrency, boolean useVirtualThreads) {
+		if(m_asyncActivityExecutorUsed)
+			throw new IllegalStateException("The async activity executor is already in use; call setAsyncActivityExecution() in initialize()");
+		AsyncActivityExecutor old = m_asyncActivityExecutor;
+		m_asyncActivityExecutor = new AsyncActivityExecutor(maxConcurrency, useVirtualThreads);
+		if(null != old)
+			old.stop();
+	}
+
+	@NonNull
+	public synchronized AsyncActivityExecutor getAsyncActivityExecutor() {
+		AsyncActivityExecutor executor = m_asyncActivityExecutor;
+		if(null == executor)
+			m_asyncActivityExecutor = executor = new AsyncActivityExecutor(Math.max(8, 2 * Runtime.getRuntime().availableProcessors()), false);
+		m_asyncActivityExecutorUsed = true;
+		return executor;
+	}
+
+	/**
+	 * When T, pages that have asynchronous activities running let the browser wait for their results
+	 * using a suspended request, instead of polling every {@link #getDefaultPollInterval()} millis. This
+	 * requires Servlet 3 async support on the DomUI filter (async-supported in web.xml); if that is
+	 * missing the browser falls back to polling. Pages with registered pollers always use polling.
+	 */
+	public synchronized void setServerPush(boolean on) {
+		if(on == (m_pushChannel != null))
+			return;
+		m_pushChannel = on ? new PushChannel(PUSH_WAIT_TIMEOUT) : null;
+	}
+
+	public boolean isServerPush() {
+		return m_pushChannel != null;
+	}
+
+	@Nullable
+	public PushChannel getPushChannel() {
+		return m_pushChannel;
+	}
+
 	public synchronized int calculatePollInterval(boolean pollCallbackRequired) {
 		int pollinterval = Integer.MAX_VALUE;
 		if(m_keepAliveInterval > 0)
@@ -1471,30 +1666,24 @@ public abstract class DomApplication {
 	/*	CODING:	Code table cache.									*/
 	/*--------------------------------------------------------------*/
 
-	private final Map<String, ListRef<?>> m_listCacheMap = new HashMap<String, ListRef<?>>();
-
-	static private final class ListRef<T> {
-		private List<T> m_list;
-
-		private final ICachedListMaker<T> m_maker;
-
-		public ListRef(final ICachedListMaker<T> maker) {
-			m_maker = maker;
-		}
+	@NonNull
+	private final ListCache m_listCache = new ListCache(this);
 
-		public synchronized List<T> initialize() throws Exception {
-			if(m_list == null)
-				m_list = m_maker.createList(DomApplication.get());
-			return m_list;
-		}
+	/**
+	 * The cache for lists created by {@link ICachedListMaker}s, for configuration and metrics.
+	 */
+	@NonNull
+	public ListCache getListCache() {
+		return m_listCache;
 	}
 
 	/**
+	 * Get a list from a list maker. When the maker is an {@link ICachedListMaker} the list is cached
+	 * in the {@link ListCache}, else it is created every time.
 	 *
 	 * @param <T>
-	 * @param key
 	 * @param maker
-	 * @return
+	 * @return	a copy of the list, which may be changed.
 	 */
 	@NonNull
 	public <T> List<T> getCachedList(final IListMaker<T> maker) throws Exception {
@@ -1502,35 +1691,23 @@ public abstract class DomApplication {
 			//-- Just make on the fly.
 			return maker.createList(this);
 		}
-
-		ICachedListMaker<T> cm = (ICachedListMaker<T>) maker;
-		ListRef<T> ref;
-		String key = cm.getCacheKey();
-		synchronized(m_listCacheMap) {
-			ref = (ListRef<T>) m_listCacheMap.get(key);
-			if(ref == null) {
-				ref = new ListRef<T>(cm);
-				m_listCacheMap.put(key, ref);
-			}
-		}
-		return new ArrayList<T>(ref.initialize());
+		return new ArrayList<T>(m_listCache.get((ICachedListMaker<T>) maker));
 	}
 
 	/**
-	 * Discard all cached stuff in the list cache.
+	 * Discard all cached stuff in the list cache, on all servers in the cluster when the
+	 * event manager is used. Call this after the changes are committed.
 	 */
 	public void clearListCaches() {
-		synchronized(m_listCacheMap) {
-			m_listCacheMap.clear();
-		}
-		// FIXME URGENT Clear all other server's caches too by sending an event.
+		m_listCache.invalidateAll();
 	}
 
+	/**
+	 * Discard the maker's list, on all servers in the cluster when the event manager is
+	 * used. Call this after the changes are committed.
+	 */
 	public void clearListCache(final ICachedListMaker<?> maker) {
-		synchronized(m_listCacheMap) {
-			m_listCacheMap.remove(maker.getCacheKey());
-		}
-		// FIXME URGENT Clear all other server's caches too by sending an event.
+		m_listCache.invalidate(maker.getCacheKey());
 	}
 
 	public boolean logOutput() {
@@ -1968,6 +2145,51 @@ public abstract class DomApplication {
 		return m_themeManager.getTheme(getDefaultThemeName(), DefaultThemeVariant.INSTANCE, null);
 	}
 
+	/**
+	 * Keep compiled production stylesheets in the specified directory, so that a restarted server does
+	 * not need to compile every stylesheet again. The directory can be shared between servers.
+	 */
+	public synchronized void setSassCompileCache(@NonNull File cacheDir) {
+		m_sassCompileCache = new SassCompileCache(cacheDir);
+	}
+
+	@Nullable
+	public synchronized SassCompileCache getSassCompileCache() {
+		return m_sassCompileCache;
+	}
+
+	/**
+	 * Compile the stylesheets of the specified sass themes in the background, in parallel, so that
+	 * the first users do not have to wait for them. Without theme names this compiles the default
+	 * theme. Call this at the end of initialize(); the returned future completes when all stylesheets
+	 * are compiled. Failures are logged, and do not fail the future.
+	 */
+	@NonNull
+	public CompletableFuture<Void> precompileSassThemes(@NonNull String... themeNames) {
+		List<String> list = themeNames.length == 0 ? Collections.singletonList(getDefaultThemeName()) : Arrays.asList(themeNames);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(list.size(), Runtime.getRuntime().availableProcessors()), r -> {
+			Thread t = new Thread(r, "sass-precompile");
+			t.setDaemon(true);
+			return t;
+		});
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[list.size()];
+		for(int i = 0; i < list.size(); i++) {
+			String themeName = list.get(i);
+			futures[i] = CompletableFuture.runAsync(() -> {
+				long ts = System.nanoTime();
+				String css = ThemeResourceFactory.PREFIX + themeName + "/style.scss";
+				try {
+					getPartService().getData(new ExtendedParameterInfoImpl(themeName, BrowserVersion.INSTANCE, css, ""));
+					LOG.info("sass: precompiled " + css + " in " + StringTool.strNanoTime(System.nanoTime() - ts));
+				} catch(Exception x) {
+					LOG.error("sass: precompiling " + css + " failed: " + x, x);
+				}
+			}, executor);
+		}
+		executor.shutdown();
+		return CompletableFuture.allOf(futures);
+	}
+
 	/**
 	 * Get the theme store representing the specified theme name. This is the name as obtained
 	 * from the resource name which is the part between $THEME/ and the actual filename.
@@ -0,0 +1,363 @@
+package to.etc.domui.server;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import to.etc.domui.util.ICachedListMaker;
+import to.etc.function.FunctionEx;
+import to.etc.webapp.eventmanager.ListenerType;
+import to.etc.webapp.eventmanager.VpEventManager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The application's cache of reference lists, see {@link DomApplication#getCachedList}. The cache
+ * is bounded both by its #of lists and by the total #of elements in those lists; when either is
+ * exceeded the least recently used lists are dropped. Lists expire after their time-to-live. A list
+ * is created by one thread only: other threads asking for it at the same time wait for the result.
+ *
+ * <p>When the {@link VpEventManager} is initialized, invalidating a list sends an event so that all
+ * servers in the cluster drop it.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class ListCache {
+	static private final Logger LOG = LoggerFactory.getLogger(ListCache.class);
+
+	@NonNull
+	private final DomApplication m_application;
+
+	/** All lists in LRU order: the first one is the least recently used one. */
+	@NonNull
+	private final LinkedHashMap<String, Entry<?>> m_map = new LinkedHashMap<>(64, 0.75f, true);
+
+	private int m_maxLists = 1000;
+
+	private long m_maxElements = 250_000;
+
+	private long m_defaultTimeToLive = 60 * 60 * 1000;
+
+	/** The total #of elements in all loaded lists. */
+	private long m_elementCount;
+
+	private boolean m_listening;
+
+	private long m_hits;
+
+	private long m_misses;
+
+	private long m_loads;
+
+	private long m_loadFailures;
+
+	private long m_totalLoadMillis;
+
+	private long m_maxLoadMillis;
+
+	private long m_evictions;
+
+	private long m_expirations;
+
+	ListCache(@NonNull DomApplication application) {
+		m_application = application;
+	}
+
+	/**
+	 * Set the cache bounds and the time-to-live for makers that do not specify their own.
+	 * A time-to-live of 0 means that lists do not expire.
+	 */
+	public void setLimits(int maxLists, long maxElements, long defaultTimeToLive) {
+		if(maxLists < 1 || maxElements < 1 || defaultTimeToLive < 0)
+			throw new IllegalArgumentException("Invalid list cache limits");
+		synchronized(this) {
+			m_maxLists = maxLists;
+			m_maxElements = maxElements;
+			m_defaultTimeToLive = defaultTimeToLive;
+		}
+		evict(null);
+	}
+
+	/**
+	 * Get the list from the cache, or create it when it is not there or expired. The returned list
+	 * is shared and must not be changed.
+	 */
+	@NonNull
+	<T> List<T> get(@NonNull ICachedListMaker<T> maker) throws Exception {
+		return getEntry(maker).load(this);
+	}
+
+	/**
+	 * Get data derived from a cached list, like an index on it. It is created once for every time the
+	 * list is loaded, and dropped together with the list. Derived data does not count towards the
+	 * element bound.
+	 */
+	@NonNull
+	public <T, D> D getDerived(@NonNull ICachedListMaker<T> maker, @NonNull String name, @NonNull FunctionEx<List<T>, D> factory) throws Exception {
+		Entry<T> e = getEntry(maker);
+		return e.getDerived(e.load(this), name, factory);
+	}
+
+	@NonNull
+	private <T> Entry<T> getEntry(@NonNull ICachedListMaker<T> maker) {
+		checkListening();
+		String key = maker.getCacheKey();
+		Entry<T> e;
+		synchronized(this) {
+			e = (Entry<T>) m_map.get(key);
+			if(null != e && e.isExpired(System.currentTimeMillis())) {
+				remove(key);
+				m_expirations++;
+				e = null;
+			}
+			if(null == e) {
+				e = new Entry<>(key, maker);
+				m_map.put(key, e);
+				m_misses++;
+			} else if(e.isLoaded()) {
+				m_hits++;
+			} else {
+				m_misses++;									// Waits for another thread's load
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * Drop a list, on all servers when the event manager is used.
+	 */
+	public void invalidate(@NonNull String key) {
+		if(!broadcast(key))
+			remove(key);
+	}
+
+	/**
+	 * Drop all lists, on all servers when the event manager is used.
+	 */
+	public void invalidateAll() {
+		if(!broadcast(null))
+			clear();
+	}
+
+	private synchronized void remove(@NonNull String key) {
+		Entry<?> e = m_map.remove(key);
+		if(null != e)
+			m_elementCount -= e.m_size;
+	}
+
+	private synchronized void clear() {
+		m_map.clear();
+		m_elementCount = 0;
+	}
+
+	/**
+	 * Account for a list that finished loading, then drop lists until the cache is within bounds again.
+	 */
+	private void loaded(@NonNull Entry<?> e, int size, long millis) {
+		synchronized(this) {
+			m_loads++;
+			m_totalLoadMillis += millis;
+			if(millis > m_maxLoadMillis)
+				m_maxLoadMillis = millis;
+			if(m_map.get(e.m_key) != e)						// Invalidated while loading: it is gone already
+				return;
+			e.m_size = size;
+			m_elementCount += size;
+		}
+		evict(e);
+	}
+
+	private synchronized void loadFailed(@NonNull Entry<?> e) {
+		m_loadFailures++;
+		if(m_map.get(e.m_key) == e)
+			m_map.remove(e.m_key);
+	}
+
+	private synchronized void evict(@Nullable Entry<?> keep) {
+		Iterator<Entry<?>> it = m_map.values().iterator();
+		while((m_map.size() > m_maxLists || m_elementCount > m_maxElements) && it.hasNext()) {
+			Entry<?> e = it.next();
+			if(e == keep || !e.isLoaded())
+				continue;
+			it.remove();
+			m_elementCount -= e.m_size;
+			m_evictions++;
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Cluster invalidation.								*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * Once the event manager is available, listen for invalidations from other servers. The
+	 * listener is called immediately for our own events, and for the other server's events when
+	 * they are read from the database.
+	 */
+	private void checkListening() {
+		synchronized(this) {
+			if(m_listening || !VpEventManager.isInitialized())
+				return;
+			m_listening = true;
+		}
+		VpEventManager.getInstance().addListener(ListCacheInvalidatedEvent.class, ListenerType.IMMEDIATELY, event -> {
+			String key = event.getCacheKey();
+			if(null == key)
+				clear();
+			else
+				remove(key);
+		});
+	}
+
+	/**
+	 * Send the invalidation to all servers. Returns false if that is not possible, in which case
+	 * the caller must invalidate locally.
+	 */
+	private boolean broadcast(@Nullable String key) {
+		checkListening();
+		synchronized(this) {
+			if(!m_listening)
+				return false;
+		}
+		try {
+			VpEventManager.getInstance().postEvent(new ListCacheInvalidatedEvent(key));
+			return true;
+		} catch(Exception x) {
+			LOG.error("Failed to send list cache invalidation for " + (key == null ? "all lists" : key) + " to the cluster", x);
+			return false;
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Metrics.											*/
+	/*--------------------------------------------------------------*/
+	public synchronized int getListCount() {
+		return m_map.size();
+	}
+
+	public synchronized long getElementCount() {
+		return m_elementCount;
+	}
+
+	public synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	public synchronized long getMissCount() {
+		return m_misses;
+	}
+
+	public synchronized long getLoadCount() {
+		return m_loads;
+	}
+
+	public synchronized long getLoadFailureCount() {
+		return m_loadFailures;
+	}
+
+	/**
+	 * The average time to create a list, in millis.
+	 */
+	public synchronized long getAverageLoadMillis() {
+		return m_loads == 0 ? 0 : m_totalLoadMillis / m_loads;
+	}
+
+	public synchronized long getMaxLoadMillis() {
+		return m_maxLoadMillis;
+	}
+
+	public synchronized long getEvictionCount() {
+		return m_evictions;
+	}
+
+	public synchronized long getExpirationCount() {
+		return m_expirations;
+	}
+
+	@NonNull
+	public synchronized String getMetrics() {
+		return "lists=" + m_map.size() + "/" + m_maxLists + ", elements=" + m_elementCount + "/" + m_maxElements
+			+ ", hits=" + m_hits + ", misses=" + m_misses + ", loads=" + m_loads + " (failed " + m_loadFailures + ")"
+			+ ", avgLoad=" + getAverageLoadMillis() + "ms, maxLoad=" + m_maxLoadMillis + "ms"
+			+ ", evicted=" + m_evictions + ", expired=" + m_expirations;
+	}
+
+	static private final class Entry<T> {
+		@NonNull
+		final String m_key;
+
+		@NonNull
+		final ICachedListMaker<T> m_maker;
+
+		/** The list, set once loaded. Volatile, as the cache checks it while holding its own lock only: taking the entry's lock there could deadlock with a load. */
+		@Nullable
+		private volatile List<T> m_list;
+
+		private volatile long m_expiresAt = Long.MAX_VALUE;
+
+		/** The #of elements accounted for this entry, protected by the cache's lock. */
+		int m_size;
+
+		/** Data derived from the list by name, see {@link ListCache#getDerived}. */
+		@Nullable
+		private Map<String, Object> m_derivedMap;
+
+		Entry(@NonNull String key, @NonNull ICachedListMaker<T> maker) {
+			m_key = key;
+			m_maker = maker;
+		}
+
+		boolean isLoaded() {
+			return m_list != null;
+		}
+
+		boolean isExpired(long now) {
+			return m_list != null && now >= m_expiresAt;
+		}
+
+		/**
+		 * Create the list if this is the first thread to ask for it; the others wait for it.
+		 */
+		@NonNull
+		synchronized List<T> load(@NonNull ListCache cache) throws Exception {
+			List<T> list = m_list;
+			if(null != list)
+				return list;
+
+			long ts = System.currentTimeMillis();
+			try {
+				list = m_maker.createList(cache.m_application);
+			} catch(Exception x) {
+				cache.loadFailed(this);
+				throw x;
+			}
+			long now = System.currentTimeMillis();
+			long ttl = m_maker.getCacheTimeToLive();
+			if(ttl <= 0) {
+				synchronized(cache) {
+					ttl = cache.m_defaultTimeToLive;
+				}
+			}
+			m_expiresAt = ttl > 0 ? now + ttl : Long.MAX_VALUE;
+			m_list = list;
+			cache.loaded(this, list.size(), now - ts);
+			return list;
+		}
+
+		@NonNull
+		synchronized <D> D getDerived(@NonNull List<T> list, @NonNull String name, @NonNull FunctionEx<List<T>, D> factory) throws Exception {
+			Map<String, Object> map = m_derivedMap;
+			if(null == map)
+				m_derivedMap = map = new HashMap<>();
+			D data = (D) map.get(name);
+			if(null == data) {
+				data = factory.apply(list);
+				map.put(name, data);
+			}
+			return data;
+		}
+	}
+}
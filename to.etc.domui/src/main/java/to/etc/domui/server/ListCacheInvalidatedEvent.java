@@ -0,0 +1,33 @@
+package to.etc.domui.server;
+
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.webapp.eventmanager.AppEventBase;
+import to.etc.webapp.eventmanager.ICoalescableEvent;
+
+/**
+ * Sent through the event manager when a cached list changed, so that all servers in the
+ * cluster drop it from their {@link ListCache}.
+ *
+ * Created on 19-10-26.
+ */
+public class ListCacheInvalidatedEvent extends AppEventBase implements ICoalescableEvent {
+	/** The cache key of the list, or null to drop all lists. */
+	@Nullable
+	private String m_cacheKey;
+
+	public ListCacheInvalidatedEvent() {
+	}
+
+	public ListCacheInvalidatedEvent(@Nullable String cacheKey) {
+		m_cacheKey = cacheKey;
+	}
+
+	@Nullable
+	public String getCacheKey() {
+		return m_cacheKey;
+	}
+
+	public void setCacheKey(@Nullable String cacheKey) {
+		m_cacheKey = cacheKey;
+	}
+}
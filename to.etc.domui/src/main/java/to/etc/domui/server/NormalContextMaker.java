@@ -81,6 +81,7 @@ final public class NormalContextMaker extends AbstractContextMaker {
 				if(appSession == null) {
 					appSession = m_application.createSession();
 					sess.setAttribute(AppSession.class.getName(), appSession);
+					m_application.internalRegisterSession(appSession);
 				}
 			}
 
@@ -47,8 +47,9 @@ import to.etc.domui.util.INewPageInstantiated;
 import to.etc.domui.util.IRebuildOnRefresh;
 import to.etc.domui.util.Msgs;
 import to.etc.function.ConsumerEx;
-import to.etc.util.IndentWriter;
+import to.etc.util.DeveloperOptions;
 import to.etc.util.StringTool;
+import to.etc.util.Utf8Writer;
 import to.etc.util.WrappedException;
 import to.etc.webapp.ProgrammerErrorException;
 import to.etc.webapp.ajax.renderer.json.JSONRegistry;
@@ -886,18 +887,28 @@ final public class PageRequestHandler {
 		}
 	}
 
+	/** Shared by all requests, so that the renderers for classes are only created once. */
 	@NonNull
-	final private JSONRegistry m_jsonRegistry = new JSONRegistry();
+	static private final JSONRegistry m_jsonRegistry = new JSONRegistry();
+
+	/** When set, JSON responses are indented for debugging. */
+	static private final boolean PRETTY_JSON = DeveloperOptions.getBool("domui.prettyjson", false);
 
 	private void renderJsonLikeResponse(@NonNull Object value) throws Exception {
-		Writer w = m_ctx.getOutputWriter("application/javascript", "utf-8");
 		if(value instanceof String) {
 			//-- String return: we'll assume this is a javascript response by itself.
+			Writer w = m_ctx.getOutputWriter("application/javascript", "utf-8");
 			w.write((String) value);
 		} else {
-			//-- Object return: render as JSON
-			JSONRenderer jr = new JSONRenderer(m_jsonRegistry, new IndentWriter(w), false);
-			jr.render(value);
+			//-- Object return: render as JSON, directly to the response stream
+			Utf8Writer w = new Utf8Writer(m_ctx.getRequestResponse().getOutputStream("application/javascript", "utf-8", -1));
+			try {
+				JSONRenderer jr = new JSONRenderer(m_jsonRegistry, w, false, PRETTY_JSON);
+				jr.render(value);
+				w.close();
+			} finally {
+				w.discard();						// When rendering failed: do not send the half-rendered rest
+			}
 		}
 	}
 
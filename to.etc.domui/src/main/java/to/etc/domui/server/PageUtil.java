@@ -1,14 +1,23 @@
 package to.etc.domui.server;
 
 import org.eclipse.jdt.annotation.NonNull;
+import to.etc.domui.dom.DeltaBufferOutput;
+import to.etc.domui.dom.DeltaFormat;
 import to.etc.domui.dom.HtmlFullRenderer;
 import to.etc.domui.dom.IBrowserOutput;
+import to.etc.domui.dom.JsonDeltaCommandWriter;
 import to.etc.domui.dom.PrettyXmlOutputWriter;
 import to.etc.domui.dom.html.OptimalDeltaRenderer;
 import to.etc.domui.dom.html.Page;
 import to.etc.domui.util.Constants;
 import to.etc.util.DeveloperOptions;
+import to.etc.util.FileTool;
 import to.etc.util.StringTool;
+import to.etc.util.TeeWriter;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
 
 /**
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
@@ -17,6 +26,11 @@ import to.etc.util.StringTool;
 final public class PageUtil {
 	static boolean m_logPerf = DeveloperOptions.getBool("domui.logtime", false);
 
+	/** When set, every rendered delta is also written to a file in this directory, for use with DeltaSizeComparison. */
+	static private final String m_deltaRecordDir = DeveloperOptions.getString("domui.deltarecord");
+
+	static private int m_deltaRecordCounter;
+
 	private PageUtil() {
 	}
 
@@ -27,6 +41,14 @@ final public class PageUtil {
 
 	// FIXME MOVE
 	static void renderOptimalDelta(RequestContextImpl ctx, Page page, boolean inhibitlog) throws Exception {
+		renderOptimalDelta(ctx, page, page.getDeltaFormat(), inhibitlog);
+	}
+
+	/**
+	 * Render the delta in the specified format. Use XML for responses that are not handled by
+	 * the Ajax response handler, like the ones for uploads which are read from an iframe.
+	 */
+	static public void renderOptimalDelta(RequestContextImpl ctx, Page page, DeltaFormat format, boolean inhibitlog) throws Exception {
 		// ORDERED
 		//-- 20100519 jal Force full rebuild before rendering, always. See bug 688.
 		page.getBody().internalOnBeforeRender();
@@ -35,13 +57,28 @@ final public class PageUtil {
 		page.internalDeltaBuild();
 		// /ORDERED
 
-		IBrowserOutput out = new PrettyXmlOutputWriter(ctx.getOutputWriter("text/xml; charset=UTF-8", "utf-8"));
-
 		long ts = System.nanoTime();
-		//		String	usag = ctx.getUserAgent();
-		HtmlFullRenderer fullr = ctx.getApplication().findRendererFor(ctx.getBrowserVersion(), out);
-		OptimalDeltaRenderer dr = new OptimalDeltaRenderer(fullr, ctx, page);
+		StringWriter recording = m_deltaRecordDir == null ? null : new StringWriter();
+		HtmlFullRenderer fullr;
+		OptimalDeltaRenderer dr;
+		if(format == DeltaFormat.JSON) {
+			Writer w = ctx.getOutputWriter("application/json; charset=UTF-8", "utf-8");
+			if(null != recording)
+				w = new TeeWriter(w, recording);
+			DeltaBufferOutput out = new DeltaBufferOutput();
+			fullr = ctx.getApplication().findRendererFor(ctx.getBrowserVersion(), out);
+			dr = new OptimalDeltaRenderer(fullr, ctx, page, new JsonDeltaCommandWriter(w, out));
+		} else {
+			Writer w = ctx.getOutputWriter("text/xml; charset=UTF-8", "utf-8");
+			if(null != recording)
+				w = new TeeWriter(w, recording);
+			IBrowserOutput out = new PrettyXmlOutputWriter(w);
+			fullr = ctx.getApplication().findRendererFor(ctx.getBrowserVersion(), out);
+			dr = new OptimalDeltaRenderer(fullr, ctx, page);
+		}
 		dr.render();
+		if(null != recording)
+			recordDelta(recording.toString(), format);
 		if(m_logPerf && !inhibitlog) {
 			ts = System.nanoTime() - ts;
 			System.out.println("domui: Optimal Delta rendering using " + fullr + " took " + StringTool.strNanoTime(ts));
@@ -49,6 +86,19 @@ final public class PageUtil {
 		page.getConversation().startDelayedExecution();
 	}
 
+	static private void recordDelta(String delta, DeltaFormat format) throws Exception {
+		String dir = m_deltaRecordDir;
+		if(null == dir)
+			return;
+		int nr;
+		synchronized(PageUtil.class) {
+			nr = ++m_deltaRecordCounter;
+		}
+		File target = new File(dir, "delta-" + System.currentTimeMillis() + "-" + nr + (format == DeltaFormat.JSON ? ".json" : ".xml"));
+		target.getParentFile().mkdirs();
+		FileTool.writeFileFromString(target, delta, "utf-8");
+	}
+
 	/**
 	 * Defines the actions that could arrive too late due to race conditions in client javascript, when target elements are already removed from DOM at server side.
 	 * It is safe to just ignore such obsoleted events, rather than giving error response.
@@ -0,0 +1,206 @@
+package to.etc.domui.server;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets the browser wait for server side changes instead of polling for them. A page that has
+ * asynchronous activities running asks the browser to send a wait request (see
+ * {@link to.etc.domui.parts.PushWaitPart}). That request is suspended using Servlet 3 async, so it
+ * holds no thread and does not lock the session. When the conversation signals that a delta is
+ * pending, or when the wait times out, the request completes with "poll", and the browser then
+ * does a normal poll to get the delta.
+ *
+ * <p>When the container or filter does not support async requests the wait request answers
+ * "nopush", and the browser falls back to timer polling.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class PushChannel {
+	static private final Logger LOG = LoggerFactory.getLogger(PushChannel.class);
+
+	/** Wait response: a delta may be pending (or the wait timed out); the browser must poll. */
+	static public final String RESPONSE_POLL = "poll";
+
+	/** Wait response: push is not possible, the browser must use timer polling. */
+	static public final String RESPONSE_NOPUSH = "nopush";
+
+	/** The max #of waiting requests per conversation; more are likely stale requests from reloads. */
+	static private final int MAX_WAITERS = 4;
+
+	/** The registered conversations, by full conversation ID. */
+	@NonNull
+	private final Map<String, Entry> m_entryMap = new ConcurrentHashMap<>();
+
+	/** How long a wait request is held before it completes anyway, in millis. */
+	private final long m_waitTimeout;
+
+	public PushChannel(long waitTimeout) {
+		m_waitTimeout = waitTimeout;
+	}
+
+	public long getWaitTimeout() {
+		return m_waitTimeout;
+	}
+
+	/**
+	 * Make the conversation known so that wait requests for it get suspended. Called when a
+	 * page is rendered that asks the browser to wait.
+	 */
+	public void register(@NonNull String conversationId) {
+		m_entryMap.computeIfAbsent(conversationId, k -> new Entry());
+	}
+
+	/**
+	 * Called when the conversation is destroyed: complete all its waiters.
+	 */
+	public void unregister(@NonNull String conversationId) {
+		Entry e = m_entryMap.remove(conversationId);
+		if(null != e)
+			e.signal();
+	}
+
+	/**
+	 * Signal that the conversation has something for the browser. If a request is waiting it
+	 * is completed, else the next wait request completes immediately.
+	 */
+	public void signal(@NonNull String conversationId) {
+		Entry e = m_entryMap.get(conversationId);
+		if(null != e)
+			e.signal();
+	}
+
+	/**
+	 * Handle a wait request for the conversation. This either answers immediately or suspends the
+	 * request until {@link #signal(String)} is called or the wait times out.
+	 */
+	public void waitFor(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull String conversationId) throws IOException {
+		Entry e = m_entryMap.get(conversationId);
+		if(null == e) {
+			respond(response, RESPONSE_POLL);			// Unknown conversation: the poll will find out what's up
+			return;
+		}
+		if(!request.isAsyncSupported()) {
+			respond(response, RESPONSE_NOPUSH);
+			return;
+		}
+		e.waitFor(request, response, m_waitTimeout);
+	}
+
+	/**
+	 * The #of currently suspended wait requests.
+	 */
+	public int getWaiterCount() {
+		int count = 0;
+		for(Entry e : m_entryMap.values())
+			count += e.getWaiterCount();
+		return count;
+	}
+
+	static private void respond(@NonNull ServletResponse response, @NonNull String text) throws IOException {
+		response.setContentType("text/plain; charset=UTF-8");
+		response.getWriter().write(text);
+	}
+
+	/**
+	 * Complete a suspended request. This can race with the container's timeout handling, so
+	 * failures are expected now and then.
+	 */
+	static private void complete(@NonNull AsyncContext ac, @NonNull String text) {
+		try {
+			respond(ac.getResponse(), text);
+		} catch(Exception x) {
+			LOG.debug("Failed to answer push wait: " + x);
+		}
+		try {
+			ac.complete();
+		} catch(IllegalStateException x) {
+			//-- Already completed or timed out
+		}
+	}
+
+	/**
+	 * The pending state and waiting requests of a single conversation.
+	 */
+	static private final class Entry {
+		@NonNull
+		private final List<AsyncContext> m_waiters = new ArrayList<>(2);
+
+		private boolean m_pending;
+
+		void waitFor(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, long timeout) throws IOException {
+			AsyncContext stale = null;
+			synchronized(this) {
+				if(m_pending) {
+					m_pending = false;
+					respond(response, RESPONSE_POLL);
+					return;
+				}
+
+				AsyncContext ac = request.startAsync(request, response);
+				ac.setTimeout(timeout);
+				ac.addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) {
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {
+						if(remove(ac))
+							complete(ac, RESPONSE_POLL);
+					}
+
+					@Override
+					public void onError(AsyncEvent event) {
+						remove(ac);
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {
+					}
+				});
+				m_waiters.add(ac);
+				if(m_waiters.size() > MAX_WAITERS)
+					stale = m_waiters.remove(0);
+			}
+			if(null != stale)
+				complete(stale, RESPONSE_POLL);
+		}
+
+		void signal() {
+			List<AsyncContext> list;
+			synchronized(this) {
+				if(m_waiters.isEmpty()) {
+					m_pending = true;
+					return;
+				}
+				list = new ArrayList<>(m_waiters);
+				m_waiters.clear();
+			}
+			for(AsyncContext ac : list)
+				complete(ac, RESPONSE_POLL);
+		}
+
+		synchronized boolean remove(@Nullable AsyncContext ac) {
+			return m_waiters.remove(ac);
+		}
+
+		synchronized int getWaiterCount() {
+			return m_waiters.size();
+		}
+	}
+}
@@ -28,6 +28,7 @@ import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 import java.io.IOException;
@@ -217,5 +218,18 @@ public class WrappedHttpServetResponse extends HttpServletResponseWrapper {
 			// TODO Auto-generated method stub
 			super.close();
 		}
+
+		/**
+		 * Readiness is that of the wrapped response's stream.
+		 */
+		@Override
+		public boolean isReady() {
+			return m_sos.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			m_sos.setWriteListener(writeListener);
+		}
 	}
 }
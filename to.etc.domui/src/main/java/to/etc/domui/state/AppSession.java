@@ -97,6 +97,7 @@ public class AppSession implements HttpSessionBindingListener, IAttributeContain
 			LOG.warn("Exception when destroying session", x);
 		}
 		unbindAll();
+		m_application.internalUnregisterSession(this);
 	}
 
 	/**
@@ -171,6 +172,23 @@ public class AppSession implements HttpSessionBindingListener, IAttributeContain
 		}
 	}
 
+	/**
+	 * INTERNAL USE ONLY.
+	 * Like {@link #internalLockSession()} but does not wait: when the session is already locked
+	 * this returns false immediately. Used by background tasks that can skip a busy session. Only
+	 * a true result means this call took the lock, and it must then be released with
+	 * {@link #internalUnlockSession()}; a lock already held by the calling thread also returns false,
+	 * so that the caller's unlock cannot release a lock that its own caller still relies on.
+	 */
+	public boolean internalTryLockSession() {
+		synchronized(this) {
+			if(m_lockingThread != null)
+				return false;
+			m_lockingThread = Thread.currentThread();
+			return true;
+		}
+	}
+
 	/**
 	 * INTERNAL USE ONLY.
 	 * Leave the session-controlled monitor. THIS CALL DOES NOT NEST!
@@ -244,6 +262,32 @@ public class AppSession implements HttpSessionBindingListener, IAttributeContain
 		}
 	}
 
+	@NonNull
+	final synchronized List<WindowSession> internalGetWindowSessions() {
+		return new ArrayList<>(m_windowMap.values());
+	}
+
+	/**
+	 * Passivate all pages in all windows that have been shelved since before the specified time. The
+	 * session must be locked by the caller.
+	 */
+	@NonNull
+	final List<PassivatedDomUIPage> internalPassivateIdlePages(long idleSince) {
+		List<WindowSession> list;
+		synchronized(this) {
+			list = new ArrayList<>(m_windowMap.values());
+		}
+		List<PassivatedDomUIPage> res = new ArrayList<>();
+		for(WindowSession ws : list) {
+			try {
+				res.addAll(ws.internalPassivateIdlePages(idleSince));
+			} catch(Exception x) {
+				LOG.warn("Exception while passivating pages of " + ws, x);
+			}
+		}
+		return res;
+	}
+
 	/**
 	 * Create a new WindowSession. The thingy has a new, globally-unique ID.
 	 * @return
@@ -0,0 +1,242 @@
+package to.etc.domui.state;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import to.etc.util.ThreadTool;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The application-wide executor for the asynchronous activities of all conversations. Every
+ * {@link DelayedActivitiesManager} is a mailbox: its activities run one at a time, in order. The
+ * executor runs at most maxConcurrency activities at the same time, and divides them fairly
+ * between users: each turn takes one activity from the next user (session) that has work, so
+ * one user starting 20 reports does not keep the others waiting until all 20 are done.
+ *
+ * <p>The workers are pooled platform threads, or virtual threads when requested and the JVM
+ * supports them.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class AsyncActivityExecutor {
+	static private final Logger LOG = LoggerFactory.getLogger(AsyncActivityExecutor.class);
+
+	private final int m_maxConcurrency;
+
+	private final boolean m_virtual;
+
+	@NonNull
+	private final ExecutorService m_executor;
+
+	/** The users that have mailboxes with work, in round-robin order. */
+	@NonNull
+	private final ArrayDeque<UserQueue> m_readyQueue = new ArrayDeque<>();
+
+	@NonNull
+	private final Map<Object, UserQueue> m_userMap = new HashMap<>();
+
+	/** The #of workers currently taking work from the ready queue. */
+	private int m_workerCount;
+
+	private boolean m_stopped;
+
+	private long m_executedCount;
+
+	private long m_totalWaitMillis;
+
+	private long m_maxWaitMillis;
+
+	public AsyncActivityExecutor(int maxConcurrency, boolean useVirtualThreads) {
+		if(maxConcurrency < 1)
+			throw new IllegalArgumentException("maxConcurrency must be >= 1");
+		m_maxConcurrency = maxConcurrency;
+		ExecutorService executor = useVirtualThreads ? createVirtualExecutor() : null;
+		m_virtual = executor != null;
+		if(null == executor)
+			executor = createPlatformExecutor(maxConcurrency);
+		m_executor = executor;
+	}
+
+	@NonNull
+	static private ExecutorService createPlatformExecutor(int maxConcurrency) {
+		AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor tpe = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "xc-" + count.incrementAndGet());
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+		tpe.allowCoreThreadTimeOut(true);
+		return tpe;
+	}
+
+	@Nullable
+	static private ExecutorService createVirtualExecutor() {
+		ExecutorService executor = ThreadTool.newVirtualThreadPerTaskExecutor();
+		if(null == executor)
+			LOG.info("Virtual threads are not available, using platform threads for async activities");
+		return executor;
+	}
+
+	public int getMaxConcurrency() {
+		return m_maxConcurrency;
+	}
+
+	public boolean isVirtual() {
+		return m_virtual;
+	}
+
+	/**
+	 * Called by a mailbox that has pending work and is not queued yet.
+	 */
+	void submit(@NonNull DelayedActivitiesManager mailbox) {
+		synchronized(this) {
+			if(m_stopped)
+				return;
+			enqueue(mailbox);
+			if(m_workerCount >= m_maxConcurrency)
+				return;
+			m_workerCount++;
+		}
+		m_executor.execute(this::work);
+	}
+
+	/**
+	 * Add the mailbox at the end of its user's queue; put the user at the end of the ready queue if it was not there.
+	 */
+	private void enqueue(@NonNull DelayedActivitiesManager mailbox) {
+		Object user = mailbox.getUser();
+		UserQueue uq = m_userMap.get(user);
+		if(null == uq) {
+			uq = new UserQueue(user);
+			m_userMap.put(user, uq);
+		}
+		uq.m_mailboxes.add(mailbox);
+		if(uq.m_mailboxes.size() == 1)
+			m_readyQueue.add(uq);
+	}
+
+	/**
+	 * Worker: run one activity per turn from the next user until no work is left.
+	 */
+	private void work() {
+		for(;;) {
+			DelayedActivitiesManager mailbox;
+			synchronized(this) {
+				UserQueue uq = m_readyQueue.poll();
+				if(m_stopped || null == uq) {
+					m_workerCount--;
+					return;
+				}
+				mailbox = uq.m_mailboxes.poll();
+				if(!uq.m_mailboxes.isEmpty())
+					m_readyQueue.add(uq);					// Other conversations of this user go to the back
+				else
+					m_userMap.remove(uq.m_user);
+			}
+
+			boolean more;
+			try {
+				more = mailbox.runNext(this);
+			} catch(Throwable x) {
+				LOG.error("Unexpected failure running an async activity", x);
+				more = false;
+			}
+			if(more) {
+				synchronized(this) {
+					if(!m_stopped)
+						enqueue(mailbox);
+				}
+			}
+		}
+	}
+
+	synchronized void activityStarted(long waitMillis) {
+		m_executedCount++;
+		m_totalWaitMillis += waitMillis;
+		if(waitMillis > m_maxWaitMillis)
+			m_maxWaitMillis = waitMillis;
+	}
+
+	/**
+	 * Stop accepting work; running activities are left to finish, queued ones are dropped.
+	 */
+	public void stop() {
+		synchronized(this) {
+			m_stopped = true;
+			m_readyQueue.clear();
+			m_userMap.clear();
+		}
+		m_executor.shutdown();
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Metrics.											*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * The #of activities that are currently running.
+	 */
+	public synchronized int getActiveCount() {
+		return m_workerCount;
+	}
+
+	/**
+	 * The #of conversations that have activities waiting for a free worker.
+	 */
+	public synchronized int getQueueDepth() {
+		int count = 0;
+		for(UserQueue uq : m_readyQueue)
+			count += uq.m_mailboxes.size();
+		return count;
+	}
+
+	/**
+	 * The #of users that have activities waiting for a free worker.
+	 */
+	public synchronized int getWaitingUserCount() {
+		return m_readyQueue.size();
+	}
+
+	public synchronized long getExecutedCount() {
+		return m_executedCount;
+	}
+
+	/**
+	 * The average time between scheduling an activity and its start, in millis.
+	 */
+	public synchronized long getAverageWaitMillis() {
+		return m_executedCount == 0 ? 0 : m_totalWaitMillis / m_executedCount;
+	}
+
+	public synchronized long getMaxWaitMillis() {
+		return m_maxWaitMillis;
+	}
+
+	@NonNull
+	public synchronized String getMetrics() {
+		return "active=" + m_workerCount + "/" + m_maxConcurrency + (m_virtual ? " (virtual)" : "")
+			+ ", queued=" + getQueueDepth() + " conversations of " + m_readyQueue.size() + " users"
+			+ ", executed=" + m_executedCount + ", avgWait=" + getAverageWaitMillis() + "ms, maxWait=" + m_maxWaitMillis + "ms";
+	}
+
+	static private final class UserQueue {
+		@NonNull
+		final Object m_user;
+
+		@NonNull
+		final ArrayDeque<DelayedActivitiesManager> m_mailboxes = new ArrayDeque<>(2);
+
+		UserQueue(@NonNull Object user) {
+			m_user = user;
+		}
+	}
+}
@@ -32,6 +32,8 @@ import to.etc.domui.component.delayed.IAsyncRunnable;
 import to.etc.domui.dom.html.NodeBase;
 import to.etc.domui.dom.html.NodeContainer;
 import to.etc.domui.dom.html.Page;
+import to.etc.domui.server.DomApplication;
+import to.etc.domui.server.PushChannel;
 import to.etc.domui.server.RequestContextImpl;
 import to.etc.util.WrappedException;
 import to.etc.webapp.query.IQContextContainer;
@@ -39,6 +41,7 @@ import to.etc.webapp.query.IQContextContainer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -255,6 +258,9 @@ public class ConversationContext extends AbstractConversationContext implements
 			m_delayManager.terminate();
 			m_delayManager = null;
 		}
+		PushChannel channel = getWindowSession().getApplication().getPushChannel();
+		if(null != channel)
+			channel.unregister(getFullId());
 		super.internalDestroy(sessionDestroyed);
 	}
 
@@ -291,6 +297,11 @@ public class ConversationContext extends AbstractConversationContext implements
 		return m_pageMap.get(clz.getName());
 	}
 
+	@NonNull
+	List<Page> internalGetPages() {
+		return new ArrayList<>(m_pageMap.values());
+	}
+
 	public void internalRegisterPage(@NonNull final Page p, @NonNull final IPageParameters papa) {
 		m_pageMap.put(p.getBody().getClass().getName(), p);
 		p.internalInitialize(papa, this);
@@ -352,9 +363,17 @@ public class ConversationContext extends AbstractConversationContext implements
 	/*	CODING:	Delayed activities scheduling.						*/
 	/*--------------------------------------------------------------*/
 	synchronized DelayedActivitiesManager getDelayedActivitiesManager() {
-		if(m_delayManager == null)
-			m_delayManager = new DelayedActivitiesManager();
-		return m_delayManager;
+		DelayedActivitiesManager dm = m_delayManager;
+		if(dm == null) {
+			DomApplication app = getWindowSession().getApplication();
+			m_delayManager = dm = new DelayedActivitiesManager(app.getAsyncActivityExecutor(), getWindowSession().getAppSession());
+			PushChannel channel = app.getPushChannel();
+			if(null != channel) {
+				String id = getFullId();
+				dm.setWakeupListener(() -> channel.signal(id), app.getDefaultPollInterval());
+			}
+		}
+		return dm;
 	}
 
 	/**
@@ -385,6 +404,15 @@ public class ConversationContext extends AbstractConversationContext implements
 		return delayManager != null && delayManager.callbackRequired();
 	}
 
+	/**
+	 * T if the browser can wait for changes using server push instead of polling. This is
+	 * the case when push is enabled and no nodes need timed polling.
+	 */
+	public boolean isPushPossible() {
+		DelayedActivitiesManager delayManager = m_delayManager;
+		return getWindowSession().getApplication().getPushChannel() != null && delayManager != null && !delayManager.hasPollers();
+	}
+
 	/**
 	 * Registers a node as a thingy which needs to be called every polltime seconds to
 	 * update the screen. This is not an asy action by itself (it starts no threads) but
@@ -43,17 +43,30 @@ import java.util.Set;
 
 /**
  * This helper class does all of the handling for delayed activities for
- * a conversation. It contains all activity queues plus all handling of
- * the executor thread.
+ * a conversation. It contains all activity queues. The activities are run
+ * by the application's {@link AsyncActivityExecutor}, for which this is a
+ * mailbox: activities of one conversation run one at a time, in order.
  *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Oct 7, 2008
  */
-final public class DelayedActivitiesManager implements Runnable {
+final public class DelayedActivitiesManager {
 	private static final Logger LOG = LoggerFactory.getLogger(DelayedActivitiesManager.class);
 
+	@NonNull
+	private final AsyncActivityExecutor m_executor;
+
+	/** The user (session) this belongs to, so that the executor can divide work fairly between users. */
+	@NonNull
+	private final Object m_user;
+
+	/** The thread that is executing an activity of this manager, if any. */
+	@Nullable
 	private Thread m_executorThread;
 
+	/** T when this is queued in, or being run by, the executor. */
+	private boolean m_queued;
+
 	private List<DelayedActivityInfo> m_pendingQueue = new ArrayList<DelayedActivityInfo>();
 
 	private List<DelayedActivityInfo> m_completionQueue = new ArrayList<DelayedActivityInfo>();
@@ -69,7 +82,39 @@ final public class DelayedActivitiesManager implements Runnable {
 	 */
 	private Set<NodeContainer> m_pollSet = new HashSet<NodeContainer>();
 
-	protected DelayedActivitiesManager() {
+	/** When set (server push is on) this gets called when the browser should come and fetch changes. */
+	@Nullable
+	private Runnable m_wakeupListener;
+
+	/** The minimal time between two wakeups caused by progress reports, in millis. */
+	private int m_progressInterval;
+
+	/** The last time progress caused a wakeup, to throttle progress wakeups. */
+	private long m_lastProgressWakeup;
+
+	protected DelayedActivitiesManager(@NonNull AsyncActivityExecutor executor, @NonNull Object user) {
+		m_executor = executor;
+		m_user = user;
+	}
+
+	@NonNull
+	Object getUser() {
+		return m_user;
+	}
+
+	/**
+	 * Set the listener that gets called when there are changes for the browser, used by server push.
+	 */
+	synchronized void setWakeupListener(@Nullable Runnable wakeupListener, int progressInterval) {
+		m_wakeupListener = wakeupListener;
+		m_progressInterval = progressInterval;
+	}
+
+	/**
+	 * T if there are nodes that need to be polled. Those need timer polling and cannot use server push.
+	 */
+	public synchronized boolean hasPollers() {
+		return m_pollSet.size() > 0;
 	}
 
 	/**
@@ -88,6 +133,7 @@ final public class DelayedActivitiesManager implements Runnable {
 
 		//-- Call listeners.
 		dai.callScheduled();
+		dai.getMonitor().addListener(p -> progressed());
 
 		synchronized(this) {
 			m_pendingQueue.add(dai);
@@ -115,8 +161,6 @@ final public class DelayedActivitiesManager implements Runnable {
 	 * executing we try to cancel the executor.
 	 */
 	public boolean cancelActivity(@NonNull DelayedActivityInfo dai) {
-		Thread tr;
-
 		synchronized(this) {
 			if(m_pendingQueue.remove(dai)) {
 				dai.getContainer().confirmCancelled();
@@ -129,14 +173,47 @@ final public class DelayedActivitiesManager implements Runnable {
 				return false;
 
 			//-- The activity is currently running. Try to abort the task && thread.
-			tr = m_executorThread;
 			runningActivity.getMonitor().cancel();				// Force cancel indication.
+
+			//-- Interrupt while locked: the pooled thread cannot move on to another activity while we hold the lock.
+			Thread tr = m_executorThread;
+			if(null != tr)
+				tr.interrupt();
 		}
-		tr.interrupt();
 		return true;
 	}
 
-	private void wakeupListeners(int lingertime) {}
+	/**
+	 * Tell whoever listens that the browser should come and get changes. Must be called outside
+	 * of any lock on this.
+	 */
+	private void wakeupListeners() {
+		Runnable r;
+		synchronized(this) {
+			r = m_wakeupListener;
+		}
+		if(null != r) {
+			try {
+				r.run();
+			} catch(Exception x) {
+				LOG.error("Exception in wakeup listener", x);
+			}
+		}
+	}
+
+	/**
+	 * Progress was reported by an activity; wake up the browser, but not more often than
+	 * the poll interval so that the progress bar updates at the same rate as with polling.
+	 */
+	private void progressed() {
+		long now = System.currentTimeMillis();
+		synchronized(this) {
+			if(m_wakeupListener == null || now - m_lastProgressWakeup < m_progressInterval)
+				return;
+			m_lastProgressWakeup = now;
+		}
+		wakeupListeners();
+	}
 
 	/**
 	 * Retrieves the current activity state. This creates Progress records for
@@ -169,23 +246,16 @@ final public class DelayedActivitiesManager implements Runnable {
 	 * when data is present in the completion queue.
 	 */
 	public boolean start() {
-		Thread t;
 		synchronized(this) {
-			if(m_executorThread != null) // Active thread?
-				return true; // Begone.
-
-			//-- Must a thread be started?
-			if(m_pendingQueue.size() == 0) // Pending requests?
-				return false; // Nope -> begone
-
-			//-- Prepare to start the executor.
-			m_executorThread = new Thread(this);
-			m_executorThread.setName("xc");
-			m_executorThread.setDaemon(true);
-			m_executorThread.setPriority(Thread.MIN_PRIORITY);
-			t = m_executorThread; // Prevent naked access to m_ variable even though it is untouched by other code.
+			if(m_queued)						// Already queued or running?
+				return true;					// Begone.
+
+			//-- Must we be queued?
+			if(m_pendingQueue.size() == 0 || m_terminated)
+				return false;					// Nope -> begone
+			m_queued = true;
 		}
-		t.start();
+		m_executor.submit(this);
 		return true;
 	}
 
@@ -214,16 +284,21 @@ final public class DelayedActivitiesManager implements Runnable {
 	 * trying to fondle a dead body and throw (up).
 	 */
 	public void terminate() {
-		Thread killme = null;
 		DelayedActivityInfo pendingcorpse = null;
 
 		synchronized(this) {
 			if(m_terminated)
 				return;
 			m_terminated = true;
-			if(m_executorThread != null) {
-				killme = m_executorThread;
-				m_executorThread = null;
+
+			//-- Signal the thread, while locked so that it cannot have moved on to another conversation's activity.
+			Thread killme = m_executorThread;
+			if(killme != null) {
+				try {
+					killme.interrupt();
+				} catch(Exception x) {
+					x.printStackTrace();
+				}
 			}
 			pendingcorpse = m_runningActivity;
 			m_runningActivity = null;
@@ -231,8 +306,8 @@ final public class DelayedActivitiesManager implements Runnable {
 			m_completionQueue.clear();
 			m_pendingQueue.forEach(a -> a.setState(State.DONE));
 			m_pendingQueue.clear();
-			wakeupListeners(100);				// Wake up anything that's listening quickly
 		}
+		wakeupListeners();						// Wake up anything that's listening quickly
 
 		//-- Do our utmost to kill the task, not gently.
 		try {
@@ -241,62 +316,42 @@ final public class DelayedActivitiesManager implements Runnable {
 		} catch(Exception x) {
 			x.printStackTrace();
 		}
-
-		//-- Signal the thread
-		try {
-			if(killme != null) {
-				killme.interrupt();
-			}
-		} catch(Exception x) {
-			x.printStackTrace();
-		}
 	}
 
 	/*--------------------------------------------------------------*/
-	/*	CODING:	Executor thread.									*/
+	/*	CODING:	Executor.											*/
 	/*--------------------------------------------------------------*/
 	/**
-	 * Main action runnert. This is the thread's executor function. While the manager is
-	 * active this will execute activities in the PENDING queue one by one until the queue
-	 * is empty. If that happens it will commit suicide. This suicidal act will not invalidate
-	 * the manager; at any time can new actions be posted and a new thread be started.
+	 * Called by the executor on one of its threads: run the first pending activity. Returns true if
+	 * more activities are pending, in which case the executor queues this again; if not this is no
+	 * longer queued, and a new start() queues it again.
 	 */
-	@Override
-	public void run() {
-		try {
-			for(;;) {
-				//-- Are we attempting to die?
-				DelayedActivityInfo dai;
-				synchronized(this) {
-					if(m_terminated) 				// Manager is deadish?
-						return; 					// Just quit immediately (nothing is currently running)
-
-					//-- Anything to do?
-					if(m_pendingQueue.size() == 0) {	// Something queued still?
-						//-- Nope. We can stop properly.
-						return;
-					}
-
-					//-- Schedule for a new execute.
-					dai = m_pendingQueue.remove(0); 	// Get and remove from pending queue
-					m_runningActivity = dai; 			// Make this the running dude
-				}
-				execute(dai);
-			}
-		} catch(Exception x) {
-			//-- Do not report trouble if the manager is in the process of dying
-			if(!isTerminated()) {
-				System.err.println("FATAL Exception in DelayedActivitiesManager.run()!??!?!?!?\nAsy tasks WILL NOT COMPLETE anymore.");
-				x.printStackTrace();
+	boolean runNext(@NonNull AsyncActivityExecutor executor) {
+		DelayedActivityInfo dai;
+		synchronized(this) {
+			if(m_terminated || m_pendingQueue.size() == 0) {
+				m_queued = false;
+				return false;
 			}
+			dai = m_pendingQueue.remove(0);		// Get and remove from pending queue
+			m_runningActivity = dai;			// Make this the running dude
+			m_executorThread = Thread.currentThread();
+		}
+		executor.activityStarted(System.currentTimeMillis() - dai.getScheduledAt());
+
+		boolean more = false;
+		try {
+			execute(dai);
 		} finally {
-			/*
-			 * Be very, very certain that we handle state @ thread termination properly.
-			 */
 			synchronized(this) {
-				m_executorThread = null; // I'm gone...
+				m_executorThread = null;
+				Thread.interrupted();			// Clear any cancel interrupt: this thread will run other activities.
+				more = !m_terminated && m_pendingQueue.size() > 0;
+				if(!more)
+					m_queued = false;
 			}
 		}
+		return more;
 	}
 
 	/**
@@ -329,8 +384,8 @@ final public class DelayedActivitiesManager implements Runnable {
 
 			//-- We're still alive; post the result in the done queue and awake listeners quickly.
 			m_completionQueue.add(dai);		// Append to completion queue for access by whatever.
-			wakeupListeners(1000);
 		}
+		wakeupListeners();
 	}
 
 	/**
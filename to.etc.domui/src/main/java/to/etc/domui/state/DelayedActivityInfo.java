@@ -54,6 +54,9 @@ final public class DelayedActivityInfo {
 
 	@NonNull private State m_state = State.WAITING;
 
+	/** When this was scheduled, to measure how long it waited for the executor. */
+	final private long m_scheduledAt = System.currentTimeMillis();
+
 	@NonNull
 	final private Map<IAsyncListener< ? >, Object> m_listenerDataMap = new HashMap<IAsyncListener< ? >, Object>();
 
@@ -72,6 +75,10 @@ final public class DelayedActivityInfo {
 		return m_monitor;
 	}
 
+	long getScheduledAt() {
+		return m_scheduledAt;
+	}
+
 	public State getState() {
 		synchronized(m_manager) {
 			return m_state;
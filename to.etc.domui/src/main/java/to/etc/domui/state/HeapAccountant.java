@@ -0,0 +1,395 @@
+package to.etc.domui.state;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import to.etc.domui.dom.html.NodeBase;
+import to.etc.domui.dom.html.Page;
+import to.etc.domui.server.DomApplication;
+import to.etc.domui.util.ObjectSizeEstimator;
+import to.etc.domui.util.janitor.Janitor;
+import to.etc.domui.util.janitor.JanitorTask;
+import to.etc.util.StringTool;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how much heap every session, window, conversation and page uses, and which
+ * component classes use the most. Every measurement walks all sessions that are not busy; the
+ * size of a page is its node count times the estimated size of a node of each class. That size
+ * is determined by deep sizing the first few nodes of each class encountered in a measurement,
+ * using an {@link ObjectSizeEstimator} that does not cross into other nodes, pages or
+ * conversations. The conversation's own data is deep sized separately.
+ *
+ * <p>The last measurement is available as a JSON part (see {@link to.etc.domui.parts.HeapInfoPart})
+ * and through JMX. A soft limit per session can be set; sessions that exceed it are logged and,
+ * depending on the {@link HeapLimitAction}, get all their shelved pages passivated.</p>
+ *
+ * <p>The accountant is created by {@link DomApplication#setHeapAccounting(int)}.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class HeapAccountant implements HeapAccountantMXBean {
+	static private final Logger LOG = LoggerFactory.getLogger(HeapAccountant.class);
+
+	/** The #of nodes of each class that are deep sized in a single measurement. */
+	static private final int SAMPLES_PER_CLASS = 4;
+
+	/** The max #of objects walked when deep sizing a single node. */
+	static private final int MAX_SAMPLE_OBJECTS = 5000;
+
+	static private final int TOP_N = 20;
+
+	@NonNull
+	private final DomApplication m_application;
+
+	private final int m_intervalMinutes;
+
+	@NonNull
+	private final ObjectSizeEstimator m_estimator = new ObjectSizeEstimator(MAX_SAMPLE_OBJECTS, NodeBase.class, Page.class, AbstractConversationContext.class,
+		WindowSession.class, AppSession.class, DomApplication.class);
+
+	private int m_janitorTask = -1;
+
+	@Nullable
+	private ObjectName m_objectName;
+
+	private volatile long m_sessionSoftLimit;
+
+	@NonNull
+	private volatile HeapLimitAction m_limitAction = HeapLimitAction.WARN;
+
+	@NonNull
+	private List<SessionHeapInfo> m_sessionList = Collections.emptyList();
+
+	@NonNull
+	private List<ClassUsage> m_classList = Collections.emptyList();
+
+	private long m_lastMeasurementMillis;
+
+	private long m_measuredAt;
+
+	public HeapAccountant(@NonNull DomApplication application, int intervalMinutes) {
+		if(intervalMinutes <= 0)
+			throw new IllegalArgumentException("The interval must be > 0");
+		m_application = application;
+		m_intervalMinutes = intervalMinutes;
+	}
+
+	public synchronized void start() throws Exception {
+		if(m_janitorTask != -1)
+			throw new IllegalStateException("Already started");
+		int secs = m_intervalMinutes * 60;
+		m_janitorTask = Janitor.getJanitor().addTask(secs, secs, "HeapAccountant", new JanitorTask() {
+			@Override
+			public void run() throws Exception {
+				measure();
+			}
+		});
+
+		String appName = m_application.getApplicationContext();
+		if(null == appName)
+			appName = m_application.getClass().getName();
+		try {
+			ObjectName on = new ObjectName("to.etc.domui:type=HeapAccountant,application=" + ObjectName.quote(appName));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(on))
+				server.unregisterMBean(on);							// Left over from a previous instance of the application
+			server.registerMBean(this, on);
+			m_objectName = on;
+		} catch(Exception x) {
+			LOG.warn("Cannot register the heap accountant MBean: " + x);
+		}
+	}
+
+	public synchronized void stop() {
+		if(m_janitorTask != -1) {
+			Janitor.getJanitor().cancelJob(m_janitorTask);
+			m_janitorTask = -1;
+		}
+		ObjectName on = m_objectName;
+		if(null != on) {
+			m_objectName = null;
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(on);
+			} catch(Exception x) {
+				LOG.debug("Unregistering the heap accountant MBean failed", x);
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Measuring.											*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * Measure all sessions that are not handling a request right now. The result replaces the
+	 * previous measurement.
+	 */
+	@Override
+	public void measure() {
+		long ts = System.currentTimeMillis();
+		Map<Class<?>, ClassUsage> usageMap = new HashMap<>();
+		List<SessionHeapInfo> sessionList = new ArrayList<>();
+		for(AppSession ses : m_application.internalGetSessions()) {
+			if(!ses.internalTryLockSession())
+				continue;
+			try {
+				SessionHeapInfo info = measureSession(ses, usageMap);
+				sessionList.add(info);
+				checkLimit(ses, info);
+			} catch(Exception x) {
+				LOG.warn("Failed to measure session", x);
+			} finally {
+				ses.internalUnlockSession();
+			}
+		}
+		sessionList.sort((a, b) -> Long.compare(b.getEstimatedSize(), a.getEstimatedSize()));
+		List<ClassUsage> classList = new ArrayList<>(usageMap.values());
+		classList.sort((a, b) -> Long.compare(b.getEstimatedSize(), a.getEstimatedSize()));
+		if(classList.size() > TOP_N)
+			classList = new ArrayList<>(classList.subList(0, TOP_N));
+
+		synchronized(this) {
+			m_sessionList = Collections.unmodifiableList(sessionList);
+			m_classList = Collections.unmodifiableList(classList);
+			m_measuredAt = ts;
+			m_lastMeasurementMillis = System.currentTimeMillis() - ts;
+		}
+	}
+
+	@NonNull
+	private SessionHeapInfo measureSession(@NonNull AppSession ses, @NonNull Map<Class<?>, ClassUsage> usageMap) {
+		SessionHeapInfo info = new SessionHeapInfo(getSessionId(ses), System.currentTimeMillis());
+		for(WindowSession ws : ses.internalGetWindowSessions()) {
+			SessionHeapInfo.WindowInfo wi = new SessionHeapInfo.WindowInfo(ws.getWindowID(), ws.internalGetPassivatedCount());
+			info.getWindowList().add(wi);
+			for(ConversationContext cc : ws.internalGetConversations()) {
+				SessionHeapInfo.ConversationInfo ci = new SessionHeapInfo.ConversationInfo(cc.getId(), m_estimator.estimate(cc));
+				wi.getConversationList().add(ci);
+				for(Page pg : cc.internalGetPages()) {
+					Collection<NodeBase> nodes = pg.internalNodeMap().values();
+					long size = 0;
+					for(NodeBase n : nodes)
+						size += usageMap.computeIfAbsent(n.getClass(), ClassUsage::new).add(n, m_estimator);
+					ci.getPageList().add(new SessionHeapInfo.PageInfo(pg.getBody().getClass().getName(), nodes.size(), size, pg.isShelved()));
+				}
+			}
+		}
+		return info;
+	}
+
+	private void checkLimit(@NonNull AppSession ses, @NonNull SessionHeapInfo info) {
+		long limit = m_sessionSoftLimit;
+		if(limit <= 0 || info.getEstimatedSize() <= limit)
+			return;
+		if(m_limitAction != HeapLimitAction.PASSIVATE) {
+			LOG.warn("Session " + info.getSessionId() + " uses an estimated " + StringTool.strSize(info.getEstimatedSize()) + " in " + info.getPageCount()
+				+ " pages, exceeding the soft limit of " + StringTool.strSize(limit));
+			return;
+		}
+		List<PassivatedDomUIPage> list = ses.internalPassivateIdlePages(Long.MAX_VALUE);
+		LOG.warn("Session " + info.getSessionId() + " uses an estimated " + StringTool.strSize(info.getEstimatedSize()) + ", exceeding the soft limit of "
+			+ StringTool.strSize(limit) + "; passivated " + list.size() + " shelved pages");
+	}
+
+	@NonNull
+	static private String getSessionId(@NonNull AppSession ses) {
+		return "s" + Integer.toHexString(System.identityHashCode(ses));
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Results.											*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * The sessions of the last measurement, largest first.
+	 */
+	@NonNull
+	public synchronized List<SessionHeapInfo> getSessionList() {
+		return m_sessionList;
+	}
+
+	/**
+	 * The component classes that used the most heap in the last measurement, largest first.
+	 */
+	@NonNull
+	public synchronized List<ClassUsage> getClassList() {
+		return m_classList;
+	}
+
+	@Override
+	public synchronized int getSessionCount() {
+		return m_sessionList.size();
+	}
+
+	@Override
+	public synchronized long getTotalEstimatedSize() {
+		long size = 0;
+		for(SessionHeapInfo si : m_sessionList)
+			size += si.getEstimatedSize();
+		return size;
+	}
+
+	@Override
+	public synchronized long getTotalNodeCount() {
+		long count = 0;
+		for(SessionHeapInfo si : m_sessionList)
+			count += si.getNodeCount();
+		return count;
+	}
+
+	@Override
+	public synchronized long getLastMeasurementMillis() {
+		return m_lastMeasurementMillis;
+	}
+
+	@Override
+	public synchronized String[] getLargestSessions() {
+		int count = Math.min(TOP_N, m_sessionList.size());
+		String[] res = new String[count];
+		for(int i = 0; i < count; i++) {
+			SessionHeapInfo si = m_sessionList.get(i);
+			res[i] = si.getSessionId() + ": " + si.getEstimatedSize() + " bytes, " + si.getNodeCount() + " nodes";
+		}
+		return res;
+	}
+
+	@Override
+	public synchronized String[] getTopComponentClasses() {
+		String[] res = new String[m_classList.size()];
+		for(int i = 0; i < res.length; i++) {
+			ClassUsage cu = m_classList.get(i);
+			res[i] = cu.getClassName() + ": " + cu.getCount() + " nodes, " + cu.getEstimatedSize() + " bytes";
+		}
+		return res;
+	}
+
+	@Override
+	public long getSessionSoftLimit() {
+		return m_sessionSoftLimit;
+	}
+
+	/**
+	 * Set the estimated size (in bytes) above which a session is acted upon; 0 means no limit.
+	 */
+	@Override
+	public void setSessionSoftLimit(long bytes) {
+		m_sessionSoftLimit = bytes;
+	}
+
+	@NonNull
+	public HeapLimitAction getHeapLimitAction() {
+		return m_limitAction;
+	}
+
+	public void setHeapLimitAction(@NonNull HeapLimitAction action) {
+		m_limitAction = action;
+	}
+
+	@Override
+	public String getLimitAction() {
+		return m_limitAction.name();
+	}
+
+	@Override
+	public void setLimitAction(String action) {
+		m_limitAction = HeapLimitAction.valueOf(action.toUpperCase());
+	}
+
+	@Override
+	public String getReportJson() {
+		StringBuilder sb = new StringBuilder(8192);
+		try {
+			renderJson(sb);
+		} catch(IOException x) {
+			throw new IllegalStateException(x);					// Cannot happen with a StringBuilder
+		}
+		return sb.toString();
+	}
+
+	public synchronized void renderJson(@NonNull Appendable a) throws IOException {
+		a.append("{\"measuredAt\":").append(Long.toString(m_measuredAt));
+		a.append(",\"measureMillis\":").append(Long.toString(m_lastMeasurementMillis));
+		a.append(",\"softLimit\":").append(Long.toString(m_sessionSoftLimit));
+		a.append(",\"sessions\":[");
+		for(int i = 0; i < m_sessionList.size(); i++) {
+			if(i > 0)
+				a.append(',');
+			m_sessionList.get(i).renderJson(a);
+		}
+		a.append("],\"classes\":[");
+		for(int i = 0; i < m_classList.size(); i++) {
+			if(i > 0)
+				a.append(',');
+			ClassUsage cu = m_classList.get(i);
+			a.append("{\"class\":");
+			StringTool.strToJsonString(a, cu.getClassName());
+			a.append(",\"count\":").append(Integer.toString(cu.getCount()));
+			a.append(",\"size\":").append(Long.toString(cu.getEstimatedSize()));
+			a.append(",\"sampleSize\":").append(Long.toString(cu.getSampleSize()));
+			a.append('}');
+		}
+		a.append("]}");
+	}
+
+	/**
+	 * The #of nodes and their estimated size for a single component class.
+	 */
+	final static public class ClassUsage {
+		@NonNull
+		private final String m_className;
+
+		private int m_count;
+
+		private long m_estimatedSize;
+
+		private int m_samples;
+
+		private long m_sampleTotal;
+
+		ClassUsage(@NonNull Class<?> clz) {
+			m_className = clz.getName();
+		}
+
+		long add(@NonNull NodeBase node, @NonNull ObjectSizeEstimator estimator) {
+			long size;
+			if(m_samples < SAMPLES_PER_CLASS) {
+				size = estimator.estimate(node);
+				m_sampleTotal += size;
+				m_samples++;
+			} else {
+				size = m_sampleTotal / m_samples;
+			}
+			m_count++;
+			m_estimatedSize += size;
+			return size;
+		}
+
+		@NonNull
+		public String getClassName() {
+			return m_className;
+		}
+
+		public int getCount() {
+			return m_count;
+		}
+
+		public long getEstimatedSize() {
+			return m_estimatedSize;
+		}
+
+		/** The average deep size of the sampled nodes. */
+		public long getSampleSize() {
+			return m_samples == 0 ? 0 : m_sampleTotal / m_samples;
+		}
+	}
+}
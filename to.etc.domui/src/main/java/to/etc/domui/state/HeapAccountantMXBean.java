@@ -0,0 +1,36 @@
+package to.etc.domui.state;
+
+/**
+ * JMX view on the {@link HeapAccountant}. All values come from the last measurement.
+ *
+ * Created on 19-10-26.
+ */
+public interface HeapAccountantMXBean {
+	int getSessionCount();
+
+	long getTotalEstimatedSize();
+
+	long getTotalNodeCount();
+
+	long getLastMeasurementMillis();
+
+	/** The largest sessions, as "sessionId: size bytes, nodes nodes". */
+	String[] getLargestSessions();
+
+	/** The component classes using the most heap, as "class: count nodes, size bytes". */
+	String[] getTopComponentClasses();
+
+	long getSessionSoftLimit();
+
+	void setSessionSoftLimit(long bytes);
+
+	String getLimitAction();
+
+	void setLimitAction(String action);
+
+	/** The full report, in the same JSON format as the heap info part. */
+	String getReportJson();
+
+	/** Measure all sessions now. */
+	void measure();
+}
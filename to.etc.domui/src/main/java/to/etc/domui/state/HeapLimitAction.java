@@ -0,0 +1,14 @@
+package to.etc.domui.state;
+
+/**
+ * What the {@link HeapAccountant} does when a session exceeds its soft heap limit.
+ *
+ * Created on 19-10-26.
+ */
+public enum HeapLimitAction {
+	/** Only log a warning. */
+	WARN,
+
+	/** Log a warning and passivate all shelved pages of the session, see {@link PagePassivator}. */
+	PASSIVATE
+}
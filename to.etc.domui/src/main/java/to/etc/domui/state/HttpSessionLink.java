@@ -97,9 +97,10 @@ final public class HttpSessionLink implements IReloadedClassesListener, HttpSess
 		AppSession s;
 		synchronized(this) {
 			s = m_appSession;
-			if(s == null)
+			if(s == null) {
 				s = m_appSession = app.createSession();
-			else if(s.getApplication() != app)
+				app.internalRegisterSession(s);
+			} else if(s.getApplication() != app)
 				throw new IllegalStateException("Different DomApplication instances??");
 		}
 		return s;
@@ -0,0 +1,251 @@
+package to.etc.domui.state;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import to.etc.domui.server.DomApplication;
+import to.etc.domui.util.janitor.Janitor;
+import to.etc.domui.util.janitor.JanitorTask;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Frees the memory held by pages that sit unused on the shelve stack. Every minute all sessions
+ * that are not busy are checked for shelved pages that have not been used for the idle time; these
+ * pages are passivated: their page tree and conversation are destroyed and only the page class and
+ * parameters are kept in a {@link PassivatedDomUIPage}. When the user moves back to such a page it
+ * is rebuilt as if it was entered anew.
+ *
+ * <p>When a memory threshold is set the heap pools are monitored too, and a sweep with a much shorter
+ * idle time is started as soon as the heap usage crosses that threshold.</p>
+ *
+ * <p>The passivator is created by {@link DomApplication#setPagePassivation(int, int)}.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class PagePassivator {
+	static private final Logger LOG = LoggerFactory.getLogger(PagePassivator.class);
+
+	/** The idle time used when a sweep is done because of memory pressure. */
+	static private final long PRESSURE_IDLE_TIME = 60 * 1000;
+
+	@NonNull
+	private final DomApplication m_application;
+
+	/** Pages shelved for longer than this (in millis) get passivated. */
+	private final long m_idleTime;
+
+	private int m_janitorTask = -1;
+
+	@Nullable
+	private NotificationListener m_memoryListener;
+
+	private long m_passivationCount;
+
+	private long m_passivatedNodeCount;
+
+	private long m_restoreCount;
+
+	private long m_restoreNanos;
+
+	private long m_maxRestoreNanos;
+
+	private long m_pressureSweepCount;
+
+	private boolean m_pressureSweepScheduled;
+
+	public PagePassivator(@NonNull DomApplication application, int idleMinutes) {
+		if(idleMinutes <= 0)
+			throw new IllegalArgumentException("The idle time must be > 0");
+		m_application = application;
+		m_idleTime = idleMinutes * 60L * 1000L;
+	}
+
+	/**
+	 * Start the periodic sweep, and when memoryThresholdPercentage is > 0 also start monitoring the heap.
+	 */
+	public synchronized void start(int memoryThresholdPercentage) throws Exception {
+		if(m_janitorTask != -1)
+			throw new IllegalStateException("Already started");
+		m_janitorTask = Janitor.getJanitor().addTask(60, 60, "PagePassivator", new JanitorTask() {
+			@Override
+			public void run() throws Exception {
+				sweep(System.currentTimeMillis() - m_idleTime);
+			}
+		});
+		if(memoryThresholdPercentage > 0)
+			startMemoryMonitor(memoryThresholdPercentage);
+	}
+
+	public synchronized void stop() {
+		if(m_janitorTask != -1) {
+			Janitor.getJanitor().cancelJob(m_janitorTask);
+			m_janitorTask = -1;
+		}
+		NotificationListener ml = m_memoryListener;
+		if(null != ml) {
+			m_memoryListener = null;
+			try {
+				((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(ml);
+			} catch(Exception x) {
+				LOG.debug("Removing memory listener failed", x);
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Sweeping.											*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * Passivate all pages that were shelved before idleSince, in all sessions that are not
+	 * handling a request right now. Busy sessions are skipped until the next sweep.
+	 */
+	public void sweep(long idleSince) {
+		int pages = 0;
+		int nodes = 0;
+		for(AppSession ses : m_application.internalGetSessions()) {
+			if(!ses.internalTryLockSession())
+				continue;
+			try {
+				for(PassivatedDomUIPage pp : ses.internalPassivateIdlePages(idleSince)) {
+					pages++;
+					nodes += pp.getNodeCount();
+				}
+			} finally {
+				ses.internalUnlockSession();
+			}
+		}
+		if(pages == 0)
+			return;
+		synchronized(this) {
+			m_passivationCount += pages;
+			m_passivatedNodeCount += nodes;
+		}
+		LOG.info("Passivated " + pages + " idle pages holding " + nodes + " nodes");
+	}
+
+	/**
+	 * Called by the WindowSession when a passivated page has been rebuilt.
+	 */
+	synchronized void pageRestored(@NonNull PassivatedDomUIPage pp, long nanos) {
+		m_restoreCount++;
+		m_restoreNanos += nanos;
+		if(nanos > m_maxRestoreNanos)
+			m_maxRestoreNanos = nanos;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Memory pressure.									*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * Set a usage threshold on all heap pools that support it, and sweep when one is exceeded.
+	 */
+	private void startMemoryMonitor(int percentage) {
+		boolean any = false;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported())
+				continue;
+			long max = pool.getUsage().getMax();
+			if(max <= 0)
+				continue;
+			pool.setUsageThreshold(max * percentage / 100);
+			any = true;
+		}
+		if(!any) {
+			LOG.info("No heap pool supports usage thresholds; memory pressure passivation is disabled");
+			return;
+		}
+		NotificationListener ml = this::memoryNotification;
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(ml, null, null);
+		m_memoryListener = ml;
+	}
+
+	private void memoryNotification(@NonNull Notification n, @Nullable Object handback) {
+		if(!MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(n.getType()))
+			return;
+
+		//-- Do not sweep inside the notification thread; let the janitor run it once.
+		synchronized(this) {
+			if(m_pressureSweepScheduled || m_janitorTask == -1)
+				return;
+			m_pressureSweepScheduled = true;
+		}
+		try {
+			Janitor.getJanitor().addTask(0, true, "PagePassivatorPressure", new JanitorTask() {
+				@Override
+				public void run() throws Exception {
+					synchronized(PagePassivator.this) {
+						m_pressureSweepScheduled = false;
+						m_pressureSweepCount++;
+					}
+					sweep(System.currentTimeMillis() - Math.min(m_idleTime, PRESSURE_IDLE_TIME));
+				}
+			});
+		} catch(Exception x) {
+			synchronized(this) {
+				m_pressureSweepScheduled = false;
+			}
+			LOG.error("Cannot schedule memory pressure sweep", x);
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Metrics.											*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * The #of pages passivated since start.
+	 */
+	public synchronized long getPassivationCount() {
+		return m_passivationCount;
+	}
+
+	/**
+	 * The total #of nodes that the passivated pages contained.
+	 */
+	public synchronized long getPassivatedNodeCount() {
+		return m_passivatedNodeCount;
+	}
+
+	/**
+	 * The #of passivated pages that were rebuilt because the user returned to them.
+	 */
+	public synchronized long getRestoreCount() {
+		return m_restoreCount;
+	}
+
+	public synchronized long getAverageRestoreNanos() {
+		return m_restoreCount == 0 ? 0 : m_restoreNanos / m_restoreCount;
+	}
+
+	public synchronized long getMaxRestoreNanos() {
+		return m_maxRestoreNanos;
+	}
+
+	/**
+	 * The #of sweeps started because the heap usage threshold was exceeded.
+	 */
+	public synchronized long getPressureSweepCount() {
+		return m_pressureSweepCount;
+	}
+
+	@NonNull
+	public synchronized Map<String, Long> getMetrics() {
+		Map<String, Long> map = new LinkedHashMap<>();
+		map.put("passivations", m_passivationCount);
+		map.put("passivatedNodes", m_passivatedNodeCount);
+		map.put("restores", m_restoreCount);
+		map.put("avgRestoreNanos", m_restoreCount == 0 ? 0 : m_restoreNanos / m_restoreCount);
+		map.put("maxRestoreNanos", m_maxRestoreNanos);
+		map.put("pressureSweeps", m_pressureSweepCount);
+		return map;
+	}
+}
@@ -0,0 +1,108 @@
+package to.etc.domui.state;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.domui.dom.html.Page;
+import to.etc.domui.server.RequestContextImpl;
+import to.etc.domui.util.DomUtil;
+
+/**
+ * A shelve stack entry for a DomUI page whose page tree and conversation have been
+ * discarded by the {@link PagePassivator}. It only keeps what is needed to rebuild the
+ * page: its class name and its page parameters. The page is rebuilt when the
+ * user moves back to it.
+ *
+ * Created on 19-10-26.
+ */
+final public class PassivatedDomUIPage implements IShelvedEntry {
+	@NonNull
+	private final WindowSession m_session;
+
+	@NonNull
+	private final String m_className;
+
+	@NonNull
+	private final IPageParameters m_parameters;
+
+	@NonNull
+	private final String m_name;
+
+	@Nullable
+	private final String m_title;
+
+	/** The #of nodes that the page had when it was passivated. */
+	private final int m_nodeCount;
+
+	private final long m_passivatedAt;
+
+	PassivatedDomUIPage(@NonNull WindowSession session, @NonNull ShelvedDomUIPage from) {
+		Page page = from.getPage();
+		m_session = session;
+		m_className = page.getBody().getClass().getName();
+		m_parameters = page.getPageParameters();
+		m_name = from.getName();
+		m_title = from.getTitle();
+		m_nodeCount = page.internalNodeMap().size();
+		m_passivatedAt = System.currentTimeMillis();
+	}
+
+	@NonNull
+	public String getClassName() {
+		return m_className;
+	}
+
+	@NonNull
+	public IPageParameters getParameters() {
+		return m_parameters;
+	}
+
+	public int getNodeCount() {
+		return m_nodeCount;
+	}
+
+	public long getPassivatedAt() {
+		return m_passivatedAt;
+	}
+
+	@NonNull
+	@Override
+	public String getName() {
+		return m_name;
+	}
+
+	@Nullable
+	@Override
+	public String getTitle() {
+		return m_title;
+	}
+
+	/**
+	 * Nothing to discard: the page and its conversation were destroyed when it was passivated.
+	 */
+	@Override
+	public void discard() {
+	}
+
+	@Override
+	public void activate(@NonNull RequestContextImpl ctx, boolean ajax) throws Exception {
+		Page page = m_session.internalRestorePage(this);
+		UIContext.internalSet(page);
+		page.internalUnshelve();
+		m_session.generateRedirect(ctx, page, ajax);
+	}
+
+	@Override
+	public String getURL() {
+		return DomUtil.createPageURL(m_session.getApplication().loadPageClass(m_className), m_parameters);
+	}
+
+	@Override
+	public boolean isClose() {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "passivated " + m_className + " " + m_parameters;
+	}
+}
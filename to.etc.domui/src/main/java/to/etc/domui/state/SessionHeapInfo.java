@@ -0,0 +1,242 @@
+package to.etc.domui.state;
+
+import org.eclipse.jdt.annotation.NonNull;
+import to.etc.util.StringTool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The estimated heap usage of a single {@link AppSession}, as measured by the {@link HeapAccountant}.
+ * It contains the estimate for every window, conversation and page in the session. All sizes are
+ * estimates in bytes.
+ *
+ * Created on 19-10-26.
+ */
+final public class SessionHeapInfo {
+	@NonNull
+	private final String m_sessionId;
+
+	private final long m_measuredAt;
+
+	@NonNull
+	private final List<WindowInfo> m_windowList = new ArrayList<>();
+
+	SessionHeapInfo(@NonNull String sessionId, long measuredAt) {
+		m_sessionId = sessionId;
+		m_measuredAt = measuredAt;
+	}
+
+	@NonNull
+	public String getSessionId() {
+		return m_sessionId;
+	}
+
+	public long getMeasuredAt() {
+		return m_measuredAt;
+	}
+
+	@NonNull
+	public List<WindowInfo> getWindowList() {
+		return m_windowList;
+	}
+
+	public long getEstimatedSize() {
+		long size = 0;
+		for(WindowInfo w : m_windowList)
+			size += w.getEstimatedSize();
+		return size;
+	}
+
+	public int getNodeCount() {
+		int count = 0;
+		for(WindowInfo w : m_windowList)
+			count += w.getNodeCount();
+		return count;
+	}
+
+	public int getPageCount() {
+		int count = 0;
+		for(WindowInfo w : m_windowList) {
+			for(ConversationInfo c : w.getConversationList())
+				count += c.getPageList().size();
+		}
+		return count;
+	}
+
+	public void renderJson(@NonNull Appendable a) throws IOException {
+		a.append("{\"session\":");
+		StringTool.strToJsonString(a, m_sessionId);
+		a.append(",\"measuredAt\":").append(Long.toString(m_measuredAt));
+		a.append(",\"size\":").append(Long.toString(getEstimatedSize()));
+		a.append(",\"nodes\":").append(Integer.toString(getNodeCount()));
+		a.append(",\"windows\":[");
+		for(int i = 0; i < m_windowList.size(); i++) {
+			if(i > 0)
+				a.append(',');
+			m_windowList.get(i).renderJson(a);
+		}
+		a.append("]}");
+	}
+
+	final static public class WindowInfo {
+		@NonNull
+		private final String m_windowId;
+
+		private final int m_passivatedPageCount;
+
+		@NonNull
+		private final List<ConversationInfo> m_conversationList = new ArrayList<>();
+
+		WindowInfo(@NonNull String windowId, int passivatedPageCount) {
+			m_windowId = windowId;
+			m_passivatedPageCount = passivatedPageCount;
+		}
+
+		@NonNull
+		public String getWindowId() {
+			return m_windowId;
+		}
+
+		public int getPassivatedPageCount() {
+			return m_passivatedPageCount;
+		}
+
+		@NonNull
+		public List<ConversationInfo> getConversationList() {
+			return m_conversationList;
+		}
+
+		public long getEstimatedSize() {
+			long size = 0;
+			for(ConversationInfo c : m_conversationList)
+				size += c.getEstimatedSize();
+			return size;
+		}
+
+		public int getNodeCount() {
+			int count = 0;
+			for(ConversationInfo c : m_conversationList)
+				count += c.getNodeCount();
+			return count;
+		}
+
+		void renderJson(@NonNull Appendable a) throws IOException {
+			a.append("{\"window\":");
+			StringTool.strToJsonString(a, m_windowId);
+			a.append(",\"size\":").append(Long.toString(getEstimatedSize()));
+			a.append(",\"nodes\":").append(Integer.toString(getNodeCount()));
+			a.append(",\"passivated\":").append(Integer.toString(m_passivatedPageCount));
+			a.append(",\"conversations\":[");
+			for(int i = 0; i < m_conversationList.size(); i++) {
+				if(i > 0)
+					a.append(',');
+				m_conversationList.get(i).renderJson(a);
+			}
+			a.append("]}");
+		}
+	}
+
+	final static public class ConversationInfo {
+		@NonNull
+		private final String m_conversationId;
+
+		/** The size of the conversation's own data, excluding its pages. */
+		private final long m_ownSize;
+
+		@NonNull
+		private final List<PageInfo> m_pageList = new ArrayList<>();
+
+		ConversationInfo(@NonNull String conversationId, long ownSize) {
+			m_conversationId = conversationId;
+			m_ownSize = ownSize;
+		}
+
+		@NonNull
+		public String getConversationId() {
+			return m_conversationId;
+		}
+
+		public long getOwnSize() {
+			return m_ownSize;
+		}
+
+		@NonNull
+		public List<PageInfo> getPageList() {
+			return m_pageList;
+		}
+
+		public long getEstimatedSize() {
+			long size = m_ownSize;
+			for(PageInfo p : m_pageList)
+				size += p.getEstimatedSize();
+			return size;
+		}
+
+		public int getNodeCount() {
+			int count = 0;
+			for(PageInfo p : m_pageList)
+				count += p.getNodeCount();
+			return count;
+		}
+
+		void renderJson(@NonNull Appendable a) throws IOException {
+			a.append("{\"conversation\":");
+			StringTool.strToJsonString(a, m_conversationId);
+			a.append(",\"size\":").append(Long.toString(getEstimatedSize()));
+			a.append(",\"ownSize\":").append(Long.toString(m_ownSize));
+			a.append(",\"pages\":[");
+			for(int i = 0; i < m_pageList.size(); i++) {
+				if(i > 0)
+					a.append(',');
+				m_pageList.get(i).renderJson(a);
+			}
+			a.append("]}");
+		}
+	}
+
+	final static public class PageInfo {
+		@NonNull
+		private final String m_pageClass;
+
+		private final int m_nodeCount;
+
+		private final long m_estimatedSize;
+
+		private final boolean m_shelved;
+
+		PageInfo(@NonNull String pageClass, int nodeCount, long estimatedSize, boolean shelved) {
+			m_pageClass = pageClass;
+			m_nodeCount = nodeCount;
+			m_estimatedSize = estimatedSize;
+			m_shelved = shelved;
+		}
+
+		@NonNull
+		public String getPageClass() {
+			return m_pageClass;
+		}
+
+		public int getNodeCount() {
+			return m_nodeCount;
+		}
+
+		public long getEstimatedSize() {
+			return m_estimatedSize;
+		}
+
+		public boolean isShelved() {
+			return m_shelved;
+		}
+
+		void renderJson(@NonNull Appendable a) throws IOException {
+			a.append("{\"page\":");
+			StringTool.strToJsonString(a, m_pageClass);
+			a.append(",\"size\":").append(Long.toString(m_estimatedSize));
+			a.append(",\"nodes\":").append(Integer.toString(m_nodeCount));
+			a.append(",\"shelved\":").append(Boolean.toString(m_shelved));
+			a.append('}');
+		}
+	}
+}
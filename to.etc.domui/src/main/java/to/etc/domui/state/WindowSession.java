@@ -143,6 +143,11 @@ final public class WindowSession {
 		return m_appSession.getApplication();
 	}
 
+	@NonNull
+	final AppSession getAppSession() {
+		return m_appSession;
+	}
+
 	@NonNull
 	final public String getWindowID() {
 		return m_windowID;
@@ -169,6 +174,11 @@ final public class WindowSession {
 		return cc;
 	}
 
+	@NonNull
+	List<ConversationContext> internalGetConversations() {
+		return new ArrayList<>(m_conversationMap.values());
+	}
+
 	/**
 	 * Add a new conversation to the conversation context.
 	 */
@@ -429,10 +439,14 @@ final public class WindowSession {
 			clearShelve(psix + 1);
 			internalAttachConversations();
 			IShelvedEntry xse = m_shelvedPageStack.get(psix);
-			if(!(xse instanceof ShelvedDomUIPage))
+			Page currentPage;
+			if(xse instanceof ShelvedDomUIPage)
+				currentPage = ((ShelvedDomUIPage) xse).getPage();
+			else if(xse instanceof PassivatedDomUIPage)
+				currentPage = internalRestorePage((PassivatedDomUIPage) xse);
+			else
 				throw new IllegalStateException("Shelve entry is not a domui page but " + xse);
 
-			Page currentPage = ((ShelvedDomUIPage) xse).getPage();
 			if(currentPage == currentpg) {
 				logUser(ctx, currentpg, "GOTO " + getTargetMode() + " to current page - ignored");
 				return false;
@@ -748,6 +762,21 @@ final public class WindowSession {
 			}
 		}
 
+		/*
+		 * A full page request for a page that was passivated (its conversation is gone) rebuilds that page.
+		 */
+		if(papa != null) {
+			int psix = findInPageStack(null, clz, papa);
+			if(psix != -1 && m_shelvedPageStack.get(psix) instanceof PassivatedDomUIPage) {
+				clearShelve(psix + 1);
+				internalAttachConversations();
+				Page pg = internalRestorePage((PassivatedDomUIPage) m_shelvedPageStack.get(psix));
+				pg.internalUnshelve();
+				saveWindowState();
+				return pg;
+			}
+		}
+
 		/*
 		 * None of the shelved thingies accept the current page -> check if this is expired AJAX request.
 		 */
@@ -828,6 +857,12 @@ final public class WindowSession {
 					return ix;
 				if(papa.equals(sdp.getPage().getPageParameters()))	// New page request -> acceptable if same parameters.
 					return ix;
+			} else if(se instanceof PassivatedDomUIPage) {
+				PassivatedDomUIPage pp = (PassivatedDomUIPage) se;
+				if(cc != null || !pp.getClassName().equals(clz.getName()))	// Passivated pages have no conversation anymore
+					continue;
+				if(papa == null || papa.equals(pp.getParameters()))
+					return ix;
 			}
 		}
 		return -1;												// Nothing acceptable
@@ -844,6 +879,10 @@ final public class WindowSession {
 				//-- Page AND context are acceptable; check parameters;
 				if(sdp.getPage().getPageParameters().equals(papa)) // Got a page; must make sure the parameters, if present, are equal.
 					return true;
+			} else if(se instanceof PassivatedDomUIPage) {
+				PassivatedDomUIPage pp = (PassivatedDomUIPage) se;
+				if(pp.getClassName().equals(clz.getName()) && pp.getParameters().equals(papa))
+					return true;
 			}
 		}
 		return false;
@@ -940,7 +979,20 @@ final public class WindowSession {
 	private Page insertShelveEntryMain(int depth, @NonNull Class< ? extends UrlPage> clz, @NonNull IPageParameters parameters) throws Exception {
 		if(isPageOnStack(clz, parameters))
 			return null;
+		if(depth > 0)
+			throw new IllegalArgumentException("Depth must be <= 0");
+		int ix = m_shelvedPageStack.size() + depth;				// Depth moves index backwards because it is -ve
+		if(ix < 0)
+			throw new IllegalArgumentException("Depth of " + depth + " invalid: max is " + -m_shelvedPageStack.size());
+		return createShelvedPage(ix, false, clz, parameters);
+	}
 
+	/**
+	 * Create and fully build a page, and put it on the shelve stack at the specified index. If replace is
+	 * true the page replaces the entry at that index, else it is inserted there. The new page is left shelved.
+	 */
+	@NonNull
+	private Page createShelvedPage(int ix, boolean replace, @NonNull Class< ? extends UrlPage> clz, @NonNull IPageParameters parameters) throws Exception {
 		//-- We need to create a page.
 		Constructor< ? extends UrlPage> bestpc = PageMaker.getBestPageConstructor(clz, true);
 		Class< ? extends ConversationContext> ccclz = PageMaker.getConversationType(bestpc); 	// Get the conversation class to use,
@@ -956,13 +1008,10 @@ final public class WindowSession {
 
 			//-- Create the page && add to shelve,
 			Page newpg = PageMaker.createPageWithContent(bestpc, coco, parameters);
-
-			if(depth > 0)
-				throw new IllegalArgumentException("Depth must be <= 0");
-			int ix = m_shelvedPageStack.size() + depth;			// Depth moves index backwards because it is -ve
-			if(ix < 0)
-				throw new IllegalArgumentException("Depth of " + depth + " invalid: max is " + -m_shelvedPageStack.size());
-			m_shelvedPageStack.add(ix, new ShelvedDomUIPage(this, newpg));
+			if(replace)
+				m_shelvedPageStack.set(ix, new ShelvedDomUIPage(this, newpg));
+			else
+				m_shelvedPageStack.add(ix, new ShelvedDomUIPage(this, newpg));
 
 			getApplication().getInjector().injectPageValues(newpg.getBody(), parameters);
 			newpg.setInjected(true);
@@ -992,6 +1041,96 @@ final public class WindowSession {
 	}
 
 
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Passivation of idle shelved pages.					*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * Discards the page tree and conversation of all shelved pages that have been idle since before
+	 * the specified time, replacing them on the shelve stack with a {@link PassivatedDomUIPage} that
+	 * can rebuild the page from its parameters. The topmost page is never passivated, and neither
+	 * are pages that implement {@link INotReloadablePage}, pages that share their conversation with
+	 * another page on the stack and pages with running asynchronous activities. This must be called
+	 * with the session locked.
+	 *
+	 * @return the passivated entries.
+	 */
+	@NonNull
+	List<PassivatedDomUIPage> internalPassivateIdlePages(long idleSince) {
+		List<PassivatedDomUIPage> res = Collections.emptyList();
+		for(int ix = m_shelvedPageStack.size() - 1; --ix >= 0;) {
+			IShelvedEntry se = m_shelvedPageStack.get(ix);
+			if(!(se instanceof ShelvedDomUIPage))
+				continue;
+			Page pg = ((ShelvedDomUIPage) se).getPage();
+			if(!isPassivatable(pg, idleSince))
+				continue;
+			ConversationContext cc = pg.getConversation();
+			PassivatedDomUIPage pp = new PassivatedDomUIPage(this, (ShelvedDomUIPage) se);
+			m_shelvedPageStack.set(ix, pp);					// Replace before destroying, so the entry is not removed
+			destroyConversation(cc);
+			if(res.isEmpty())
+				res = new ArrayList<>();
+			res.add(pp);
+		}
+		if(!res.isEmpty())
+			saveWindowState();
+		return res;
+	}
+
+	/**
+	 * The #of passivated pages on the shelve stack.
+	 */
+	int internalGetPassivatedCount() {
+		int count = 0;
+		for(IShelvedEntry se : m_shelvedPageStack) {
+			if(se instanceof PassivatedDomUIPage)
+				count++;
+		}
+		return count;
+	}
+
+	private boolean isPassivatable(@NonNull Page pg, long idleSince) {
+		if(!pg.isShelved() || pg.internalGetShelvedAt() > idleSince)
+			return false;
+		if(pg.getBody() instanceof INotReloadablePage)
+			return false;
+		ConversationContext cc = pg.internalGetConversation();
+		if(null == cc || cc.isPollCallbackRequired())
+			return false;
+
+		//-- The conversation must not be used by any other page on the stack
+		for(IShelvedEntry se : m_shelvedPageStack) {
+			if(se instanceof ShelvedDomUIPage) {
+				Page other = ((ShelvedDomUIPage) se).getPage();
+				if(other != pg && other.internalGetConversation() == cc)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rebuild a passivated page in a new conversation, and replace the passivated entry on the stack
+	 * with it. The page is returned in the shelved state.
+	 */
+	@NonNull
+	Page internalRestorePage(@NonNull PassivatedDomUIPage pp) throws Exception {
+		int ix = m_shelvedPageStack.indexOf(pp);
+		if(ix == -1)
+			throw new IllegalStateException("The passivated page " + pp + " is not on the shelve stack");
+		long ts = System.nanoTime();
+		Class<? extends UrlPage> clz = getApplication().loadPageClass(pp.getClassName());
+		Page pg = createShelvedPage(ix, true, clz, pp.getParameters());
+		ts = System.nanoTime() - ts;
+
+		PagePassivator passivator = getApplication().getPagePassivator();
+		if(null != passivator)
+			passivator.pageRestored(pp, ts);
+		if(LOG.isDebugEnabled())
+			LOG.debug(this + ": restored passivated page " + pp + " in " + StringTool.strNanoTime(ts));
+		return pg;
+	}
+
 	/*--------------------------------------------------------------*/
 	/*	CODING:	Developer mode save/restore state during reloads.	*/
 	/*--------------------------------------------------------------*/
@@ -1005,6 +1144,9 @@ final public class WindowSession {
 			if(se instanceof ShelvedDomUIPage) {
 				ShelvedDomUIPage dp = (ShelvedDomUIPage) se;
 				res.add(new SavedPage(dp.getPage().getBody().getClass().getName(), dp.getPage().getPageParameters()));
+			} else if(se instanceof PassivatedDomUIPage) {
+				PassivatedDomUIPage pp = (PassivatedDomUIPage) se;
+				res.add(new SavedPage(pp.getClassName(), pp.getParameters()));
 			}
 		}
 		return res;
@@ -31,21 +31,22 @@ import to.etc.domui.server.DomApplication;
 import to.etc.domui.server.IRequestContext;
 import to.etc.domui.trouble.ThingyNotFoundException;
 import to.etc.domui.util.js.IScriptScope;
+import to.etc.domui.util.js.RhinoTemplate;
 import to.etc.domui.util.js.RhinoTemplateCompiler;
 import to.etc.domui.util.resources.IIsModified;
 import to.etc.domui.util.resources.IResourceDependencyList;
 import to.etc.domui.util.resources.IResourceRef;
 import to.etc.domui.util.resources.ResourceDependencies;
+import to.etc.util.FileTool;
 import to.etc.util.StringTool;
 import to.etc.util.WrappedException;
 
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * This is used by DomApplication to manage themes. It exists to reduce the code in DomApplication; it
@@ -66,6 +67,9 @@ final public class ThemeManager {
 
 	private long m_themeNextReapTS;
 
+	/** Per theme the scope used to expand templates: its properties augmented by the application, prepared once. */
+	private final Map<ITheme, IScriptScope> m_templateScopeMap = new WeakHashMap<>();
+
 	static private class ThemeRef {
 		final private ITheme m_theme;
 
@@ -203,13 +207,11 @@ final public class ThemeManager {
 
 		String[] spl = ThemeResourceFactory.splitThemeResourceURL(resourceURL);
 		ITheme theme = getTheme(spl[0], null);					// Dependencies already added by get-resource call.
-		IScriptScope ss = theme.getPropertyScope();
-		ss = ss.newScope();
+		IScriptScope ss = getTemplateScope(theme).newScope();
 
 		if(bv != null) {
 			ss.put("browser", bv);
 		}
-		m_application.augmentThemeMap(ss); // Provide a hook to let user code add stuff to the theme map
 
 		//-- 2. Get a reader.
 		InputStream is = ires.getInputStream();
@@ -218,11 +220,11 @@ final public class ThemeManager {
 			throw new ThingyNotFoundException("Unexpected: cannot get input stream for IResourceRef rurl=" + resourceURL + ", ref=" + ires);
 		}
 		try {
-			Reader r = new InputStreamReader(is, "utf-8");
+			String source = FileTool.readStreamAsString(is, "utf-8");
 			StringBuilder sb = new StringBuilder(65536);
 
-			RhinoTemplateCompiler rtc = new RhinoTemplateCompiler();
-			rtc.execute(sb, r, resourceURL, ss);
+			RhinoTemplate tmpl = RhinoTemplateCompiler.getTemplate(source, resourceURL);
+			tmpl.execute(sb, ss);
 			ts = System.nanoTime() - ts;
 			if(bv != null)
 				System.out.println("theme-replace: " + resourceURL + " for " + bv.getBrowserName() + ":" + bv.getMajorVersion() + " took " + StringTool.strNanoTime(ts));
@@ -238,6 +240,24 @@ final public class ThemeManager {
 		}
 	}
 
+	/**
+	 * Get the scope to expand templates for a theme with: a scope on top of the theme's properties,
+	 * with the additions from {@link DomApplication#augmentThemeMap(IScriptScope)}. This is created
+	 * once per theme instance; every template expansion uses a new scope on top of it.
+	 */
+	@NonNull
+	private IScriptScope getTemplateScope(@NonNull ITheme theme) throws Exception {
+		synchronized(m_templateScopeMap) {
+			IScriptScope ss = m_templateScopeMap.get(theme);
+			if(null == ss) {
+				ss = theme.getPropertyScope().newScope();
+				m_application.augmentThemeMap(ss);				// Provide a hook to let user code add stuff to the theme map
+				m_templateScopeMap.put(theme, ss);
+			}
+			return ss;
+		}
+	}
+
 	/**
 	 * FIXME Variant kludge
 	 *
@@ -51,7 +51,6 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -476,8 +475,6 @@ public class FragmentedThemeFactory {
 		try {
 			//-- 1. Load as a string.
 			String source = FileTool.readStreamAsString(is, "utf-8");
-			RhinoTemplateCompiler rtc = new RhinoTemplateCompiler();
-			RhinoTemplate tmpl = rtc.compile(new StringReader(source), fullPathName);
 			switch(loadType){
 				default:
 					throw new IllegalStateException("Bad?");
@@ -486,6 +483,7 @@ public class FragmentedThemeFactory {
 					return;
 				case CHECK:
 					target.append(source);
+					RhinoTemplate tmpl = RhinoTemplateCompiler.getTemplate(source, fullPathName);	// Shared with all other themes using the same fragment
 					tmpl.execute(new StringBuilder(), executor().newScope());
 					return;
 			}
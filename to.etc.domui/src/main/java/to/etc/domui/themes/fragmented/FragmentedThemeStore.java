@@ -27,7 +27,6 @@ package to.etc.domui.themes.fragmented;
 import org.eclipse.jdt.annotation.NonNull;
 import to.etc.domui.server.DomApplication;
 import to.etc.domui.themes.ITheme;
-import to.etc.domui.themes.StyleException;
 import to.etc.domui.themes.ThemeResourceFactory;
 import to.etc.domui.util.js.IScriptScope;
 import to.etc.domui.util.resources.ByteArrayResourceRef;
@@ -36,7 +35,10 @@ import to.etc.domui.util.resources.IResourceRef;
 import to.etc.domui.util.resources.ResourceDependencies;
 
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This contains the results for a fragmented theme.
@@ -57,6 +59,9 @@ public class FragmentedThemeStore implements ITheme {
 
 	private final String m_themeName;
 
+	/** The 'icon' mapping from the theme properties, copied once so that lookups do not need Javascript. */
+	final private Map<String, String> m_iconMap;
+
 	public FragmentedThemeStore(DomApplication app, String themeName, byte[] tbytes, IScriptScope themeProperties, List<String> themeInheritanceStack, ResourceDependencies deps) {
 		m_app = app;
 		m_propertyScope = themeProperties;
@@ -64,6 +69,20 @@ public class FragmentedThemeStore implements ITheme {
 		m_dependencies = deps;
 		m_styleSheetBytes = tbytes;
 		m_themeName = themeName;
+		m_iconMap = createIconMap(themeProperties);
+	}
+
+	static private Map<String, String> createIconMap(IScriptScope themeProperties) {
+		IScriptScope ss = themeProperties.getValue(IScriptScope.class, "icon");
+		if(null == ss)
+			return Collections.emptyMap();
+		Map<String, String> map = new HashMap<>();
+		for(String name : ss.getProperties(String.class)) {
+			Object val = ss.getValue(Object.class, name);
+			if(val instanceof CharSequence)
+				map.put(name, val.toString());
+		}
+		return map;
 	}
 
 	@NonNull @Override public String getThemeName() {
@@ -91,17 +110,8 @@ public class FragmentedThemeStore implements ITheme {
 
 	@Override
 	public @NonNull String translateResourceName(@NonNull String name) {
-		try {
-			IScriptScope ss = getPropertyScope().getValue(IScriptScope.class, "icon");
-			if(null == ss)
-				return name;
-
-			//-- Retrieve a value here,
-			String val = ss.getValue(String.class, name);		// Is this icon name mapped to something else?
-			return val == null ? name : val;
-		} catch(Exception x) {
-			throw new StyleException("The 'icon' mapping for '" + name + "' results in an exception: " + name);
-		}
+		String val = m_iconMap.get(name);					// Is this icon name mapped to something else?
+		return val == null ? name : val;
 	}
 
 	/**
@@ -26,4 +26,12 @@ package to.etc.domui.util;
 
 public interface ICachedListMaker<T> extends IListMaker<T> {
 	String getCacheKey();
+
+	/**
+	 * The time in milliseconds that the list may stay in the cache, after which it is
+	 * created again. Return 0 to use the application's default.
+	 */
+	default long getCacheTimeToLive() {
+		return 0;
+	}
 }
@@ -97,6 +97,10 @@ public enum Msgs implements IBundleCode {
 
 	public static String UI_XDT_SURE = "ui.xdt.sure";
 
+	//-- Tree
+	/** Show the next {0} of the {1} remaining nodes */
+	public static String UI_TREE_MORE = "ui.tree.more";
+
 	//# Exceptions.
 
 	/** The required page parameter {0} is missing. */
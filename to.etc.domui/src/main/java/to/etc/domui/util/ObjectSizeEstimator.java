@@ -0,0 +1,207 @@
+package to.etc.domui.util;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimates the heap size of an object graph by walking it with reflection. The size of
+ * an object is estimated for a 64 bit VM with compressed references: a 12 byte header,
+ * 4 bytes per reference, and 8 byte alignment. This is an estimate only: it is good
+ * enough to compare things, not to account for every byte.
+ *
+ * <p>The walk does not enter objects of the boundary classes passed to the constructor, and
+ * it stops after a maximum number of objects. Objects whose fields cannot be read because
+ * their module is not open (most of java.*) are sized shallowly, except for collections,
+ * maps and strings which are walked through their public interface.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class ObjectSizeEstimator {
+	static private final int HEADER = 12;
+
+	static private final int ARRAY_HEADER = 16;
+
+	static private final int REFERENCE = 4;
+
+	/** Estimated overhead of a single map entry (HashMap.Node). */
+	static private final int MAP_ENTRY = 32;
+
+	static private final ClassValue<ClassLayout> LAYOUT = new ClassValue<ClassLayout>() {
+		@Override
+		protected ClassLayout computeValue(Class<?> type) {
+			return new ClassLayout(type);
+		}
+	};
+
+	@NonNull
+	private final Class<?>[] m_boundaries;
+
+	private final int m_maxObjects;
+
+	public ObjectSizeEstimator(int maxObjects, @NonNull Class<?>... boundaries) {
+		m_maxObjects = maxObjects;
+		m_boundaries = boundaries;
+	}
+
+	/**
+	 * Estimate the size of the object and everything reachable from it, except the boundary
+	 * objects. The root itself is always sized, even if it is of a boundary class.
+	 */
+	public long estimate(@Nullable Object root) {
+		if(null == root)
+			return 0;
+		Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Object> todo = new ArrayDeque<>();
+		seen.add(root);
+		todo.add(root);
+		long size = 0;
+		int count = 0;
+		while(!todo.isEmpty() && count++ < m_maxObjects) {
+			Object o = todo.removeFirst();
+			size += sizeOf(o, seen, todo);
+		}
+		return size;
+	}
+
+	private long sizeOf(@NonNull Object o, @NonNull Set<Object> seen, @NonNull Deque<Object> todo) {
+		Class<?> clz = o.getClass();
+		if(clz.isArray()) {
+			Class<?> ct = clz.getComponentType();
+			int len = Array.getLength(o);
+			if(ct.isPrimitive())
+				return align(ARRAY_HEADER + (long) len * primitiveSize(ct));
+			for(Object v : (Object[]) o)
+				push(v, seen, todo);
+			return align(ARRAY_HEADER + (long) len * REFERENCE);
+		}
+
+		if(o instanceof String)
+			return align(HEADER + 8) + align(ARRAY_HEADER + ((String) o).length());	// Latin1 compact strings are the norm
+
+		ClassLayout layout = LAYOUT.get(clz);
+		if(layout.isAccessible()) {
+			for(Field f : layout.getReferenceFields()) {
+				try {
+					push(f.get(o), seen, todo);
+				} catch(Exception x) {
+					//-- Cannot happen: the field was made accessible.
+				}
+			}
+		} else if(o instanceof Collection) {
+			try {
+				for(Object v : (Collection<?>) o)
+					push(v, seen, todo);
+			} catch(RuntimeException x) {
+				//-- Concurrent modification; we only estimate
+			}
+			if(!(o instanceof List))
+				return layout.getShallowSize() + (long) ((Collection<?>) o).size() * MAP_ENTRY;	// Sets are usually maps
+		} else if(o instanceof Map) {
+			try {
+				for(Map.Entry<?, ?> e : ((Map<?, ?>) o).entrySet()) {
+					push(e.getKey(), seen, todo);
+					push(e.getValue(), seen, todo);
+				}
+			} catch(RuntimeException x) {
+				//-- Concurrent modification; we only estimate
+			}
+			return layout.getShallowSize() + (long) ((Map<?, ?>) o).size() * MAP_ENTRY;
+		}
+		return layout.getShallowSize();
+	}
+
+	private void push(@Nullable Object v, @NonNull Set<Object> seen, @NonNull Deque<Object> todo) {
+		if(null == v || isBoundary(v))
+			return;
+		if(seen.add(v))
+			todo.add(v);
+	}
+
+	private boolean isBoundary(@NonNull Object v) {
+		if(v instanceof Class || v instanceof ClassLoader || v instanceof Thread || v instanceof Enum)
+			return true;
+		for(Class<?> b : m_boundaries) {
+			if(b.isInstance(v))
+				return true;
+		}
+		return false;
+	}
+
+	static private long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	static private int primitiveSize(@NonNull Class<?> type) {
+		if(type == long.class || type == double.class)
+			return 8;
+		if(type == int.class || type == float.class)
+			return 4;
+		if(type == short.class || type == char.class)
+			return 2;
+		return 1;
+	}
+
+	/**
+	 * The shallow size and reference fields of a class, computed once per class.
+	 */
+	static private final class ClassLayout {
+		private final long m_shallowSize;
+
+		@NonNull
+		private final List<Field> m_referenceFields = new ArrayList<>();
+
+		private boolean m_accessible = true;
+
+		ClassLayout(@NonNull Class<?> type) {
+			long size = HEADER;
+			for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for(Field f : c.getDeclaredFields()) {
+					if(Modifier.isStatic(f.getModifiers()))
+						continue;
+					Class<?> ft = f.getType();
+					if(ft.isPrimitive()) {
+						size += primitiveSize(ft);
+					} else {
+						size += REFERENCE;
+						if(m_accessible) {
+							try {
+								f.setAccessible(true);
+								m_referenceFields.add(f);
+							} catch(RuntimeException x) {
+								m_accessible = false;					// Module not open: fall back to the public interface
+								m_referenceFields.clear();
+							}
+						}
+					}
+				}
+			}
+			m_shallowSize = align(size);
+		}
+
+		long getShallowSize() {
+			return m_shallowSize;
+		}
+
+		@NonNull
+		List<Field> getReferenceFields() {
+			return m_referenceFields;
+		}
+
+		boolean isAccessible() {
+			return m_accessible;
+		}
+	}
+}
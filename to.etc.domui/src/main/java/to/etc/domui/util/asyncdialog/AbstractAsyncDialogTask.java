@@ -57,6 +57,25 @@ abstract public class AbstractAsyncDialogTask implements IAsyncRunnable {
 		return lc;
 	}
 
+	/**
+	 * Commit the task's data context when it has a transaction, and close it, so that the next
+	 * call to dc() or lc() starts with an empty context. Long running tasks call this between
+	 * chunks of work so that the context does not keep every object the task has touched.
+	 */
+	protected void commitContext() throws Exception {
+		QDataContext dc = m_dc;
+		if(null == dc)
+			return;
+		m_dc = null;
+		m_lc = null;
+		try {
+			if(dc.inTransaction())
+				dc.commit();
+		} finally {
+			FileTool.closeAll(dc);
+		}
+	}
+
 	private boolean isDone() {
 		return m_done;
 	}
@@ -40,6 +40,9 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ExcelExportWriter<T> implements IExportWriter<T> {
 	private static final int EXCEL_CHAR_WIDTH = 256;
 
+	/** For XLSX, the #of rows kept in memory; older rows are flushed to a temporary file. */
+	static public final int ROW_WINDOW = 200;
+
 	private final ExcelFormat m_format;
 
 	private int m_sheetIndex;
@@ -157,8 +160,12 @@ public class ExcelExportWriter<T> implements IExportWriter<T> {
 		if(! m_started)
 			return;
 
+		Workbook wb = getWorkbook();
 		try(OutputStream out = new FileOutputStream(Objects.requireNonNull(m_target))) {
-			getWorkbook().write(out);
+			wb.write(out);
+		} finally {
+			if(wb instanceof SXSSFWorkbook)
+				((SXSSFWorkbook) wb).dispose();				// Delete the temporary files holding the flushed rows
 		}
 	}
 
@@ -173,7 +180,7 @@ public class ExcelExportWriter<T> implements IExportWriter<T> {
 
 			case XLSX:
 				m_maxRows = 1024*1024-1;
-				return new SXSSFWorkbook();
+				return new SXSSFWorkbook(null, ROW_WINDOW, true);
 		}
 	}
 
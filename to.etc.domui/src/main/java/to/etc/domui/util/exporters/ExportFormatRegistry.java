@@ -2,7 +2,10 @@ package to.etc.domui.util.exporters;
 
 import org.eclipse.jdt.annotation.NonNull;
 
+import to.etc.webapp.nls.NlsContext;
+
 import java.io.File;
+import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -25,7 +28,19 @@ public class ExportFormatRegistry {
 		return m_list;
 	}
 
+	/**
+	 * The CSV separator Excel expects for the current locale: a semicolon when the locale uses a decimal comma.
+	 */
+	static private char getCsvSeparator() {
+		return DecimalFormatSymbols.getInstance(NlsContext.getLocale()).getDecimalSeparator() == ',' ? ';' : ',';
+	}
+
 	static {
+		register(new AbstractExportFormat("csv", "Comma separated values (csv)") {
+			@Override public IExportWriter<?> createWriter(@NonNull File out) {
+				return new CsvExportWriter<>(out, getCsvSeparator());
+			}
+		});
 		register(new AbstractExportFormat("xls", "Microsoft Office Excel (old)") {
 			@Override public IExportWriter<?> createWriter(@NonNull File out) {
 				return new ExcelExportWriter<>(ExcelFormat.XLS, out);
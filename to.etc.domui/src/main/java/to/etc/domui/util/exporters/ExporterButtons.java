@@ -24,6 +24,7 @@ import to.etc.function.ConsumerEx;
 import to.etc.function.SupplierEx;
 import to.etc.util.Progress;
 import to.etc.webapp.nls.NlsContext;
+import to.etc.webapp.query.QContextManager;
 import to.etc.webapp.query.QCriteria;
 import to.etc.webapp.query.QField;
 
@@ -122,7 +123,7 @@ public class ExporterButtons {
 		}
 
 		@Override protected void export(IExportWriter<T> writer, @NonNull Progress progress) throws Exception {
-			QCriteriaExporter<T> qxp = new QCriteriaExporter<>(writer, dc(), m_criteria, m_columns);
+			QCriteriaExporter<T> qxp = new QCriteriaExporter<>(writer, QContextManager::createUnmanagedContext, m_criteria, m_columns);
 			qxp.export(progress);
 		}
 	}
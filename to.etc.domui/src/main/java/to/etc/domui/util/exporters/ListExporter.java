@@ -34,8 +34,11 @@ public class ListExporter<T> extends AbstractObjectExporter<T> {
 			int count = 0;
 			p.setTotalWork(list.size() + (list.size() / 100));
 			for(T t : list) {
+				if(p.isCancelled())
+					return ExportResult.TRUNCATED;
 				m_exportWriter.exportRow(t);
-				p.setCompleted(count);
+				if(++count % 100 == 0)
+					p.setCompleted(count);
 			}
 			return ExportResult.COMPLETED;
 		} finally {
@@ -1,33 +1,87 @@
 package to.etc.domui.util.exporters;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.domui.component.meta.MetaManager;
+import to.etc.domui.component.meta.PropertyMetaModel;
+import to.etc.function.SupplierEx;
+import to.etc.util.FileTool;
 import to.etc.util.Progress;
 import to.etc.webapp.query.QCriteria;
 import to.etc.webapp.query.QDataContext;
+import to.etc.webapp.query.QFetchStrategy;
+import to.etc.webapp.query.QMultiNode;
+import to.etc.webapp.query.QOperation;
+import to.etc.webapp.query.QOperatorNode;
+import to.etc.webapp.query.QOrder;
+import to.etc.webapp.query.QRestriction;
+import to.etc.webapp.query.QSelection;
+import to.etc.webapp.query.QSortOrderDirection;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
+ * Exports the result of a query. The query is read in batches of {@link #BATCH_SIZE} rows which
+ * are written to the export writer before the next batch is read, so the export never has the
+ * whole result in memory. Batches never use an offset, because the database would have to read
+ * and skip all earlier rows for every batch again:
+ * <ul>
+ *	<li>When the query is not ordered, or only by its primary key, every batch continues after the
+ *		key of the last row of the previous batch (keyset paging). A count query gives the total
+ *		for the progress.</li>
+ *	<li>When the query has its own order, the primary keys of all rows are read first, in that order,
+ *		in a single query. The rows are then loaded per batch by key.</li>
+ * </ul>
+ *
+ * <p>When the exporter gets a data context supplier every batch is read in a new data context
+ * which is closed after the batch has been written, so that the context's entity cache does not
+ * grow with the export.</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on 26-10-17.
  */
 public class QCriteriaExporter<T> extends AbstractObjectExporter<T> {
+	static public final int BATCH_SIZE = 1000;
+
+	@Nullable
 	private final QDataContext m_dc;
 
+	@Nullable
+	private final SupplierEx<QDataContext> m_dcSupplier;
+
 	private final QCriteria<T> m_query;
 
 	private final IExportWriter<T>	m_exportWriter;
 
 	private final List<IExportColumn<?>> m_columnList;
 
+	private final Class<T> m_baseClass;
+
 	public QCriteriaExporter(@NonNull IExportWriter<T> writer, @NonNull QDataContext dc, @NonNull QCriteria<T> query, List<IExportColumn<?>> columnList) {
+		this(writer, dc, null, query, columnList);
+	}
+
+	/**
+	 * Export the query, reading every batch in a new data context from the supplier.
+	 */
+	public QCriteriaExporter(@NonNull IExportWriter<T> writer, @NonNull SupplierEx<QDataContext> dcSupplier, @NonNull QCriteria<T> query, List<IExportColumn<?>> columnList) {
+		this(writer, null, dcSupplier, query, columnList);
+	}
+
+	private QCriteriaExporter(@NonNull IExportWriter<T> writer, @Nullable QDataContext dc, @Nullable SupplierEx<QDataContext> dcSupplier, @NonNull QCriteria<T> query, List<IExportColumn<?>> columnList) {
 		m_dc = dc;
+		m_dcSupplier = dcSupplier;
 		m_query = query;
 		m_exportWriter = writer;
 
 		Class<T> baseClass = query.getBaseClass();
 		if(null == baseClass)
 			throw new IllegalStateException("Metadata-query not yet supported");
+		m_baseClass = baseClass;
 		m_columnList = columnList;
 	}
 
@@ -35,26 +89,175 @@ public class QCriteriaExporter<T> extends AbstractObjectExporter<T> {
 		if(m_columnList.size() == 0)
 			return ExportResult.EMPTY;
 
+		//-- Never export more than the writer can take nor more than the query asks for.
 		int rowLimit = m_exportWriter.getRowLimit();
-		int limit = m_query.getLimit();
-		if(limit > rowLimit || limit <= 0)
-			m_query.limit(rowLimit + 1);
+		int oldLimit = m_query.getLimit();
+		boolean queryLimited = oldLimit > 0 && oldLimit <= rowLimit;
+		if(queryLimited)
+			rowLimit = oldLimit;
 
-		List<T> list = m_dc.query(m_query);
+		PropertyMetaModel<?> pk = MetaManager.findClassMeta(m_baseClass).getPrimaryKey();
+		if(null == pk)
+			throw new IllegalStateException("The exported class " + m_baseClass.getName() + " has no primary key");
+		QOperatorNode oldRestrictions = m_query.getRestrictions();
+		int oldStart = m_query.getStart();
 		m_exportWriter.startExport(m_columnList);
 		try {
+			if(isOrderedByKeyOnly(pk))
+				return exportByKeyset(p, pk, rowLimit, queryLimited);
+			return exportByKeyList(p, pk, rowLimit, queryLimited);
+		} finally {
+			//m_exportWriter.close();					// We do not own exportWriter, this leads to double close.
+			m_query.setRestrictions(oldRestrictions);
+			m_query.start(oldStart);
+			m_query.limit(oldLimit);
+		}
+	}
+
+	private boolean isOrderedByKeyOnly(@NonNull PropertyMetaModel<?> pk) {
+		List<QOrder> orderList = m_query.getOrder();
+		return orderList.isEmpty() || (orderList.size() == 1 && pk.getName().equals(orderList.get(0).getProperty()));
+	}
+
+	/**
+	 * Read the query in batches ordered by the primary key, each batch starting after the last key of
+	 * the previous one.
+	 */
+	@NonNull
+	private ExportResult exportByKeyset(@NonNull Progress p, @NonNull PropertyMetaModel<?> pk, int rowLimit, boolean queryLimited) throws Exception {
+		QOperatorNode restrictions = m_query.getRestrictions();
+		boolean descending = !m_query.getOrder().isEmpty() && m_query.getOrder().get(0).getDirection() == QSortOrderDirection.DESC;
+		QOrder keyOrder = null;
+		if(m_query.getOrder().isEmpty()) {
+			keyOrder = QOrder.ascending(pk.getName());
+			m_query.getOrder().add(keyOrder);
+		}
+		try {
+			p.setTotalWork(Math.min(rowLimit, countRows(pk, restrictions)));
 			int count = 0;
-			p.setTotalWork(list.size() + (list.size() / 100));
-			for(T t : list) {
-				if(++count >= rowLimit) {
-					break;
+			Object lastKey = null;
+			for(;;) {
+				if(p.isCancelled())
+					return ExportResult.TRUNCATED;
+
+				//-- Read one row more than needed, to know whether the export is truncated.
+				int size = Math.min(BATCH_SIZE, rowLimit - count + 1);
+				if(null != lastKey) {
+					QOperatorNode after = descending ? QRestriction.lt(pk.getName(), lastKey) : QRestriction.gt(pk.getName(), lastKey);
+					m_query.setRestrictions(null == restrictions ? after : new QMultiNode(QOperation.AND, new QOperatorNode[]{restrictions, after}));
+					m_query.start(0);									// A start offset only applies to the first batch
+				}
+				m_query.limit(size);
+				QDataContext dc = allocateContext();
+				try {
+					List<T> list = dc.query(m_query);
+					for(T t : list) {
+						if(count >= rowLimit)
+							return queryLimited ? ExportResult.COMPLETED : ExportResult.TRUNCATED;
+						m_exportWriter.exportRow(t);
+						count++;
+						lastKey = pk.getValue(t);
+					}
+					p.setCompleted(count, count + " rows");
+					if(list.size() < size)
+						return ExportResult.COMPLETED;
+				} finally {
+					releaseContext(dc);
 				}
-				m_exportWriter.exportRow(t);
-				p.setCompleted(count);
 			}
-			return list.size() >= rowLimit ? ExportResult.TRUNCATED : ExportResult.COMPLETED;
 		} finally {
-			//m_exportWriter.close();					// We do not own exportWriter, this leads to double close.
+			if(null != keyOrder)
+				m_query.getOrder().remove(keyOrder);
+		}
+	}
+
+	/**
+	 * Read the primary keys of all rows in the query's order in a single query, then load and export the
+	 * rows per batch of keys.
+	 */
+	@NonNull
+	private ExportResult exportByKeyList(@NonNull Progress p, @NonNull PropertyMetaModel<?> pk, int rowLimit, boolean queryLimited) throws Exception {
+		QSelection<T> keyQuery = QSelection.create(m_baseClass);
+		keyQuery.setRestrictions(m_query.getRestrictions());
+		for(QOrder order : m_query.getOrder())
+			keyQuery.add(order);
+		boolean hasKeyOrder = false;
+		for(QOrder order : m_query.getOrder()) {
+			if(pk.getName().equals(order.getProperty()))
+				hasKeyOrder = true;
+		}
+		if(!hasKeyOrder)
+			keyQuery.add(QOrder.ascending(pk.getName()));				// Make the order unique
+		keyQuery.selectProperty(pk.getName());
+		keyQuery.start(m_query.getStart());
+		keyQuery.limit(rowLimit + 1);								// One more, to know whether the export is truncated
+
+		List<Object> keyList = new ArrayList<>();
+		QDataContext dc = allocateContext();
+		try {
+			for(Object[] row : dc.query(keyQuery))
+				keyList.add(row[0]);
+		} finally {
+			releaseContext(dc);
+		}
+		boolean truncated = keyList.size() > rowLimit;
+		if(truncated)
+			keyList = keyList.subList(0, rowLimit);
+		p.setTotalWork(keyList.size());
+
+		int count = 0;
+		while(count < keyList.size()) {
+			if(p.isCancelled())
+				return ExportResult.TRUNCATED;
+			List<Object> batch = keyList.subList(count, Math.min(keyList.size(), count + BATCH_SIZE));
+			QCriteria<T> q = QCriteria.create(m_baseClass);
+			for(Map.Entry<String, QFetchStrategy> e : m_query.getFetchStrategies().entrySet())
+				q.fetch(e.getKey(), e.getValue());
+			q.in(pk.getName(), batch);
+
+			dc = allocateContext();
+			try {
+				//-- The rows come in any order: put them back in key order. Rows deleted in the meantime are skipped.
+				Map<Object, T> rowMap = new HashMap<>();
+				for(T t : dc.query(q))
+					rowMap.put(pk.getValue(t), t);
+				for(Object key : batch) {
+					T t = rowMap.get(key);
+					if(null != t)
+						m_exportWriter.exportRow(t);
+				}
+			} finally {
+				releaseContext(dc);
+			}
+			count += batch.size();
+			p.setCompleted(count, count + " rows");
+		}
+		return truncated && !queryLimited ? ExportResult.TRUNCATED : ExportResult.COMPLETED;
+	}
+
+	private long countRows(@NonNull PropertyMetaModel<?> pk, @Nullable QOperatorNode restrictions) throws Exception {
+		QSelection<T> countQuery = QSelection.create(m_baseClass);
+		countQuery.setRestrictions(restrictions);
+		countQuery.count(pk.getName());
+		QDataContext dc = allocateContext();
+		try {
+			Object[] row = dc.queryOne(countQuery);
+			return null == row || null == row[0] ? 0 : ((Number) row[0]).longValue();
+		} finally {
+			releaseContext(dc);
 		}
 	}
+
+	@NonNull
+	private QDataContext allocateContext() throws Exception {
+		QDataContext dc = m_dc;
+		if(null == dc)
+			dc = Objects.requireNonNull(m_dcSupplier).get();
+		return dc;
+	}
+
+	private void releaseContext(@NonNull QDataContext dc) {
+		if(dc != m_dc)
+			FileTool.closeAll(dc);
+	}
 }
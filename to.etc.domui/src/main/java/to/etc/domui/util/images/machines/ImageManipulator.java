@@ -26,18 +26,27 @@ package to.etc.domui.util.images.machines;
 
 import java.io.*;
 
+/**
+ * Gives access to the image handler. By default this handles JPEG, PNG and GIF images inside the VM
+ * with {@link JavaImageHandler}, and uses ImageMagick, when present, for all other formats.
+ */
 public class ImageManipulator {
 	static private ImageHandler m_instance;
 
 	synchronized public static ImageHandler getImageHandler() {
 		if(m_instance == null) {
-			m_instance = ImageMagicImageHandler.getInstance();
-			if(m_instance == null)
-				throw new RuntimeException("No ImageHandler current, and none of the defaults work.");
+			m_instance = new JavaImageHandler(ImageMagicImageHandler.getInstance());
 		}
 		return m_instance;
 	}
 
+	/**
+	 * Replace the image handler, for instance with ImageMagick only.
+	 */
+	synchronized public static void setImageHandler(ImageHandler handler) {
+		m_instance = handler;
+	}
+
 	static public ImageInfo identify(File input) throws Exception {
 		return getImageHandler().identify(input);
 	}
@@ -0,0 +1,309 @@
+package to.etc.domui.util.images.machines;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.domui.util.images.converters.ImageConverterHelper;
+import to.etc.domui.util.images.converters.ImageSpec;
+import to.etc.sjit.ImaTool;
+import to.etc.sjit.ImageSubsampler;
+import to.etc.sjit.Lanczos3Filter;
+import to.etc.sjit.MitchellFilter;
+import to.etc.sjit.ResamplerFilter;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An image handler that decodes, resamples and encodes JPEG, PNG and GIF images inside the VM,
+ * instead of forking ImageMagick for every operation. The resampling uses the filtered
+ * resampler from {@link ImageSubsampler}, which works on the raster data and spreads each
+ * image over a fork/join pool.
+ *
+ * <p>Everything else (multi-page TIFF, PDF, BMP and the like) goes to the fallback handler,
+ * normally ImageMagick; without a fallback those formats are not supported.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class JavaImageHandler implements ImageHandler {
+	/** The source size must be at least this many times the target size when decoding with subsampling. */
+	static private final int SUBSAMPLE_MARGIN = 3;
+
+	static private final float JPEG_QUALITY = 0.95f;
+
+	/** The default for the maximum #of pixels in a source image that is decoded inside the VM. */
+	static public final long DEFAULT_MAX_PIXELS = 40_000_000L;
+
+	@Nullable
+	private final ImageHandler m_fallback;
+
+	@NonNull
+	private final ForkJoinPool m_pool;
+
+	/** Limits the #of images that are decoded at the same time, as every one of them can take a lot of memory. */
+	@NonNull
+	private final Semaphore m_slots;
+
+	private volatile long m_maxPixels = DEFAULT_MAX_PIXELS;
+
+	public JavaImageHandler(@Nullable ImageHandler fallback) {
+		this(fallback, Runtime.getRuntime().availableProcessors());
+	}
+
+	public JavaImageHandler(@Nullable ImageHandler fallback, int parallelism) {
+		m_fallback = fallback;
+		m_pool = new ForkJoinPool(parallelism);
+		m_slots = new Semaphore(parallelism);
+	}
+
+	@Nullable
+	public ImageHandler getFallback() {
+		return m_fallback;
+	}
+
+	public long getMaxPixels() {
+		return m_maxPixels;
+	}
+
+	/**
+	 * Sets the maximum #of pixels (width x height) of a source image that is decoded inside the VM. Larger
+	 * images go to the fallback handler, so that a single huge image cannot exhaust the heap.
+	 */
+	public void setMaxPixels(long maxPixels) {
+		m_maxPixels = maxPixels;
+	}
+
+	/**
+	 * Returns the mime type for an ImageIO format name, if this handler can handle the format.
+	 */
+	@Nullable
+	static private String findMime(@NonNull String formatName) {
+		switch(formatName.toLowerCase()) {
+			default:
+				return null;
+
+			case "jpeg":
+			case "jpg":
+				return ImageMagicImageHandler.JPEG;
+
+			case "png":
+				return ImageMagicImageHandler.PNG;
+
+			case "gif":
+				return ImageMagicImageHandler.GIF;
+		}
+	}
+
+	@Nullable
+	static private String findFormat(@Nullable String mime) {
+		if(null == mime)
+			return null;
+		if(mime.equalsIgnoreCase(ImageMagicImageHandler.JPEG) || mime.equalsIgnoreCase(ImageMagicImageHandler.JPG))
+			return "jpeg";
+		if(mime.equalsIgnoreCase(ImageMagicImageHandler.PNG))
+			return "png";
+		if(mime.equalsIgnoreCase(ImageMagicImageHandler.GIF))
+			return "gif";
+		return null;
+	}
+
+	@NonNull
+	private ImageHandler fallback(@NonNull String what) {
+		ImageHandler fallback = m_fallback;
+		if(null == fallback)
+			throw new IllegalStateException("Cannot " + what + ": the format is not supported without ImageMagick");
+		return fallback;
+	}
+
+	@Override
+	public ImageInfo identify(File input) throws Exception {
+		try(ImageInputStream iis = ImageIO.createImageInputStream(input)) {
+			Iterator<ImageReader> it = null == iis ? null : ImageIO.getImageReaders(iis);
+			if(null != it && it.hasNext()) {
+				ImageReader reader = it.next();
+				try {
+					String type = reader.getFormatName().toUpperCase();
+					String mime = findMime(type);
+					if(null != mime) {
+						reader.setInput(iis, false, true);
+						int count = reader.getNumImages(true);
+						List<OriginalImagePage> list = new ArrayList<>(count);
+						for(int i = 0; i < count; i++)
+							list.add(new OriginalImagePage(i, reader.getWidth(i), reader.getHeight(i), mime, type, false));
+						if(list.size() > 0)
+							return new ImageInfo(mime, null, true, list);
+					}
+				} finally {
+					reader.dispose();
+				}
+			}
+		}
+		return fallback("identify " + input).identify(input);
+	}
+
+	/**
+	 * Decode a page of the source, subsampled while decoding when the source is much larger than
+	 * the size it will be resampled to. Returns null when this handler cannot decode the source,
+	 * or when it has more than {@link #getMaxPixels()} pixels, and there is a fallback.
+	 */
+	@Nullable
+	private BufferedImage read(@NonNull ImageSpec source, int page, int width, int height) throws Exception {
+		String format = findFormat(source.getMime());
+		if(null == format)
+			return null;
+		try(ImageInputStream iis = ImageIO.createImageInputStream(source.getSource())) {
+			Iterator<ImageReader> it = ImageIO.getImageReadersByFormatName(format);
+			if(!it.hasNext())
+				return null;
+			ImageReader reader = it.next();
+			try {
+				reader.setInput(iis, false, true);
+				int sourceWidth = reader.getWidth(page);
+				int sourceHeight = reader.getHeight(page);
+				if((long) sourceWidth * sourceHeight > m_maxPixels) {
+					if(null == m_fallback)
+						throw new IllegalStateException("The image is too large to decode: " + sourceWidth + "x" + sourceHeight + " exceeds the max of " + m_maxPixels + " pixels");
+					return null;
+				}
+				ImageReadParam param = reader.getDefaultReadParam();
+				if(width > 0 && height > 0) {
+					int factor = Math.min(sourceWidth / (width * SUBSAMPLE_MARGIN), sourceHeight / (height * SUBSAMPLE_MARGIN));
+					if(factor > 1)
+						param.setSourceSubsampling(factor, factor, 0, 0);
+				}
+				return reader.read(page, param);
+			} catch(IIOException x) {
+				//-- Things like CMYK JPEGs cannot be decoded by ImageIO; let the fallback try.
+				if(null == m_fallback)
+					throw x;
+				return null;
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	@NonNull
+	private BufferedImage resample(@NonNull BufferedImage bi, int width, int height, @NonNull ResamplerFilter filter) {
+		if(width <= 0 || height <= 0 || (width == bi.getWidth() && height == bi.getHeight()))
+			return bi;
+		if(width < 2 || height < 2 || bi.getWidth() < 2 || bi.getHeight() < 2) {
+			//-- Too small to filter; let Java2D do it.
+			BufferedImage res = new BufferedImage(width, height, bi.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = res.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(bi, 0, 0, width, height, null);
+			g.dispose();
+			return res;
+		}
+		return ImageSubsampler.resampleParallel(bi, filter, width, height, m_pool);
+	}
+
+	private void write(@NonNull BufferedImage bi, @NonNull String format, @NonNull File target) throws Exception {
+		if("jpeg".equals(format)) {
+			//-- JPEG has no alpha: put the image on a white background.
+			if(bi.getColorModel().hasAlpha()) {
+				BufferedImage rgb = new BufferedImage(bi.getWidth(), bi.getHeight(), BufferedImage.TYPE_INT_RGB);
+				Graphics2D g = rgb.createGraphics();
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+				g.setComposite(AlphaComposite.SrcOver);
+				g.drawImage(bi, 0, 0, null);
+				g.dispose();
+				bi = rgb;
+			}
+		}
+
+		Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName(format);
+		if(!it.hasNext())
+			throw new IllegalStateException("No image writer for " + format);
+		ImageWriter writer = it.next();
+		try {
+			ImageWriteParam param = null;
+			if("jpeg".equals(format)) {
+				param = writer.getDefaultWriteParam();
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(JPEG_QUALITY);
+			}
+			target.delete();
+			try(ImageOutputStream ios = ImageIO.createImageOutputStream(target)) {
+				writer.setOutput(ios);
+				writer.write(null, new IIOImage(bi, null, null), param);
+			}
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	/**
+	 * Does the work for all calls: decode the page, resample it to fit inside width x height if a size
+	 * is given, and write it in the target format. Returns null if the source or target format is not one we handle.
+	 */
+	@Nullable
+	private ImageSpec convert(@NonNull ImageConverterHelper h, @NonNull ImageSpec source, int page, int width, int height, @NonNull String targetMime, @NonNull ResamplerFilter filter) throws Exception {
+		String targetFormat = findFormat(targetMime);
+		if(null == targetFormat || null == findFormat(source.getMime()))
+			return null;
+
+		m_slots.acquire();
+		try {
+			BufferedImage bi = read(source, page, width, height);
+			if(null == bi)
+				return null;
+			if(width > 0 && height > 0) {
+				//-- Fit inside the box, keeping the aspect ratio like ImageMagick's -thumbnail WxH does.
+				Dimension d = ImaTool.resizeWithAspect(width, height, bi.getWidth(), bi.getHeight());
+				width = Math.max(1, d.width);
+				height = Math.max(1, d.height);
+			}
+			bi = resample(bi, width, height, filter);
+			File tof = h.createWorkFile("jpeg".equals(targetFormat) ? "jpg" : targetFormat);
+			write(bi, targetFormat, tof);
+			return new ImageSpec(tof, targetMime, bi.getWidth(), bi.getHeight());
+		} finally {
+			m_slots.release();
+		}
+	}
+
+	@Override
+	public ImageSpec thumbnail(ImageConverterHelper h, ImageSpec source, int page, int width, int height, String targetMime) throws Exception {
+		ImageSpec res = convert(h, source, page, width, height, targetMime, new MitchellFilter());
+		if(null != res)
+			return res;
+		return fallback("create a thumbnail from " + source.getMime()).thumbnail(h, source, page, width, height, targetMime);
+	}
+
+	@Override
+	public ImageSpec scale(ImageConverterHelper h, ImageSpec source, int page, int width, int height, String targetMime) throws Exception {
+		ImageSpec res = convert(h, source, page, width, height, targetMime, new Lanczos3Filter());
+		if(null != res)
+			return res;
+		return fallback("scale " + source.getMime()).scale(h, source, page, width, height, targetMime);
+	}
+
+	@Override
+	public ImageSpec convert(ImageConverterHelper h, ImageSpec source, int page, String targetMime) throws Exception {
+		ImageSpec res = convert(h, source, page, 0, 0, targetMime, new Lanczos3Filter());
+		if(null != res)
+			return res;
+		return fallback("convert " + source.getMime()).convert(h, source, page, targetMime);
+	}
+}
@@ -6,6 +6,8 @@ import to.etc.domui.util.asyncdialog.AbstractAsyncDialogTask;
 import to.etc.util.Progress;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -16,6 +18,8 @@ abstract public class AbstractImportTask extends AbstractAsyncDialogTask {
 	@Nullable
 	private File m_inputFile;
 
+	private int m_batchSize;
+
 	public AbstractImportTask() {
 	}
 
@@ -44,15 +48,56 @@ abstract public class AbstractImportTask extends AbstractAsyncDialogTask {
 		IImportRow headerRow = reader.getHeaderRow();
 		onHeaderRow(headerRow);
 		progress.setTotalWork((int) reader.getSetSizeIndicator());
+		int batchSize = m_batchSize;
+		if(batchSize <= 0) {
+			for(IImportRow row : reader) {
+				if(! onRow(row))
+					break;
+				progress.setCompleted((int) reader.getProgressIndicator());
+			}
+			return;
+		}
+
+		List<IImportRow> batch = new ArrayList<>(batchSize);
 		for(IImportRow row : reader) {
-			if(! onRow(row))
-				break;
-			progress.setCompleted((int) reader.getProgressIndicator());
+			batch.add(row);
+			if(batch.size() >= batchSize) {
+				boolean more = onRows(batch);
+				commitBatch();
+				batch.clear();
+				progress.setCompleted((int) reader.getProgressIndicator());
+				if(! more || progress.isCancelled())
+					return;
+			}
+		}
+		if(batch.size() > 0) {
+			onRows(batch);
+			commitBatch();
 		}
 	}
 
 	protected abstract boolean onRow(IImportRow row) throws Exception;
 
+	/**
+	 * Called with every batch of rows when a batch size is set. By default this calls
+	 * {@link #onRow(IImportRow)} for every row. Return false to stop the import.
+	 */
+	protected boolean onRows(List<IImportRow> rows) throws Exception {
+		for(IImportRow row : rows) {
+			if(! onRow(row))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Called after every batch when a batch size is set. By default this commits the task's data
+	 * context and closes it, so every batch starts with an empty context.
+	 */
+	protected void commitBatch() throws Exception {
+		commitContext();
+	}
+
 	private void onHeaderRow(IImportRow headerRow) throws Exception {
 	}
 
@@ -62,4 +107,17 @@ abstract public class AbstractImportTask extends AbstractAsyncDialogTask {
 	public void setInputFile(File inputFile) {
 		m_inputFile = inputFile;
 	}
+
+	public int getBatchSize() {
+		return m_batchSize;
+	}
+
+	/**
+	 * When set, rows are passed to {@link #onRows(List)} in batches of this size, and every batch
+	 * is committed by {@link #commitBatch()}. Use with a streaming reader like {@link ExcelStreamingRowReader}
+	 * to import large files in constant memory.
+	 */
+	public void setBatchSize(int batchSize) {
+		m_batchSize = batchSize;
+	}
 }
@@ -57,6 +57,18 @@ public class ExcelRowReader implements IRowReader, AutoCloseable, Iterable<IImpo
 		m_workbook = openWorkbook();
 	}
 
+	/**
+	 * Open a reader for an Excel file. XLSX files are read by {@link ExcelStreamingRowReader}, which
+	 * does not load the workbook in memory; XLS files are limited to 64K rows and are read as a workbook.
+	 */
+	@NonNull
+	static public IRowReader open(@NonNull File file) throws Exception {
+		String suffix = FileTool.getFileExtension(file.getName());
+		if(ExcelFormat.byExtension(suffix) == ExcelFormat.XLSX)
+			return new ExcelStreamingRowReader(file);
+		return new ExcelRowReader(file);
+	}
+
 	@NonNull @Override public Iterator<IImportRow> iterator() {
 		checkStart();
 		Sheet sheet = getSheet();
@@ -206,7 +218,7 @@ public class ExcelRowReader implements IRowReader, AutoCloseable, Iterable<IImpo
 			Row row = m_sheet.getRow(m_nextRow++);
 			m_progressIndicator++;
 			if(null == row)
-				return new EmptyRow();
+				return new EmptyRow(m_headerNames);
 			return new ExcelImportRow(row, m_headerNames);
 		}
 	}
@@ -230,13 +242,24 @@ public class ExcelRowReader implements IRowReader, AutoCloseable, Iterable<IImpo
 		}
 	}
 
+	/**
+	 * A row that is missing in the sheet. Its columns are named like the columns of
+	 * {@link ExcelImportRow}, so that a missing row looks like a row of empty cells.
+	 */
 	private static class EmptyRow implements IImportRow {
+		private final List<String> m_headerNames;
+
+		public EmptyRow(List<String> headerNames) {
+			m_headerNames = headerNames;
+		}
+
 		@Override public int getColumnCount() {
 			return 0;
 		}
 
 		@NonNull @Override public IImportColumn get(int index) {
-			return new EmptyColumn("Column" + index);
+			String headerName = index >= 0 && index < m_headerNames.size() ? m_headerNames.get(index) : null;
+			return new EmptyColumn(null == headerName ? "COL" + index : headerName);
 		}
 
 		@NonNull @Override public IImportColumn get(@NonNull String name) throws IOException {
@@ -0,0 +1,624 @@
+package to.etc.domui.util.importers;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFReader.SheetIterator;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.util.FileTool;
+import to.etc.util.WrappedException;
+import to.etc.webapp.query.QNotFoundException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads XLSX files without building the workbook in memory. The XSSF workbook model needs many
+ * times the file size in heap; this reader pulls the rows from the sheet's XML one by one, so it
+ * only keeps the current row and the workbook's shared string table in memory.
+ *
+ * <p>Rows are read in file order only: every call to {@link #iterator()} or {@link #getHeaderRow()}
+ * reads the sheet from its start again. The columns behave like those of {@link ExcelRowReader}.</p>
+ *
+ * Created on 19-10-26.
+ */
+public class ExcelStreamingRowReader implements IRowReader, AutoCloseable, Iterable<IImportRow> {
+	static private final XMLInputFactory FACTORY = createFactory();
+
+	@Nullable
+	private OPCPackage m_package;
+
+	@NonNull
+	private final ReadOnlySharedStringsTable m_strings;
+
+	@NonNull
+	private final List<String> m_sheetNames = new ArrayList<>();
+
+	@NonNull
+	private final List<PackagePart> m_sheetParts = new ArrayList<>();
+
+	private int m_setIndex = -1;
+
+	private int m_headerRowCount;
+
+	/** The header row of the current sheet, once read. */
+	@Nullable
+	private IImportRow m_headerRow;
+
+	/** The #of rows of the current sheet from its dimension element, or -1 if not known. */
+	private long m_setSize = -1;
+
+	/** T when the dimension of the current sheet has been looked up. */
+	private boolean m_setSizeRead;
+
+	private long m_progressIndicator;
+
+	/** The open sheet, if any; only one sheet is read at a time. */
+	@Nullable
+	private SheetCursor m_cursor;
+
+	public ExcelStreamingRowReader(@NonNull File file) throws Exception {
+		this(OPCPackage.open(file, PackageAccess.READ));
+	}
+
+	/**
+	 * Read from a stream. Prefer the File constructor: opening a stream unpacks the whole
+	 * (compressed) file in memory first.
+	 */
+	public ExcelStreamingRowReader(@NonNull InputStream is) throws Exception {
+		this(OPCPackage.open(is));
+	}
+
+	private ExcelStreamingRowReader(@NonNull OPCPackage pkg) throws Exception {
+		m_package = pkg;
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			m_strings = new ReadOnlySharedStringsTable(pkg);
+			SheetIterator it = (SheetIterator) reader.getSheetsData();
+			while(it.hasNext()) {
+				InputStream is = it.next();
+				is.close();
+				m_sheetNames.add(it.getSheetName());
+				m_sheetParts.add(it.getSheetPart());
+			}
+		} catch(Exception x) {
+			pkg.revert();
+			m_package = null;
+			throw x;
+		}
+	}
+
+	static private XMLInputFactory createFactory() {
+		XMLInputFactory f = XMLInputFactory.newInstance();
+		f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return f;
+	}
+
+	@Override public int getSetCount() {
+		return m_sheetNames.size();
+	}
+
+	@Override public void setSetIndex(int setIndex) {
+		if(setIndex < 0 || setIndex >= m_sheetNames.size())
+			throw new IllegalArgumentException("Invalid sheet index " + setIndex);
+		if(m_setIndex != setIndex) {
+			closeCursor();
+			m_setIndex = setIndex;
+			m_headerRow = null;
+			m_setSize = -1;
+			m_setSizeRead = false;
+			m_progressIndicator = 0;
+		}
+	}
+
+	public List<IDatasetInfo> getSets() {
+		List<IDatasetInfo> res = new ArrayList<>();
+		for(int i = 0; i < m_sheetNames.size(); i++) {
+			String name = m_sheetNames.get(i);
+			int index = i;
+			res.add(new IDatasetInfo() {
+				@Override public String getName() {
+					return name;
+				}
+
+				@Override public int getIndex() {
+					return index;
+				}
+			});
+		}
+		return res;
+	}
+
+	@Override public void setHasHeaderRow(boolean hasHeaderRow) {
+		setHeaderRowCount(hasHeaderRow ? 1 : 0);
+	}
+
+	public void setHeaderRowCount(int count) {
+		m_headerRowCount = count;
+		m_headerRow = null;
+	}
+
+	public int getHeaderRowCount() {
+		return m_headerRowCount;
+	}
+
+	@Override public IImportRow getHeaderRow() throws IOException {
+		if(m_headerRowCount <= 0)
+			throw new IllegalStateException("You cannot ask for a header row when hasHeaderRow is false");
+		IImportRow row = m_headerRow;
+		if(null == row) {
+			SheetCursor c = openCursor(Collections.emptyList());
+			for(int i = 0; i < m_headerRowCount; i++) {
+				row = c.next();
+				if(null == row) {
+					row = new StreamingRow(new Object[0], Collections.emptyList(), "");
+					break;
+				}
+			}
+			closeCursor();
+			m_headerRow = row;
+		}
+		return row;
+	}
+
+	/**
+	 * Returns the header names by column index, or the empty list if the sheet has no header.
+	 */
+	private List<String> getCurrentHeaderNames() throws IOException {
+		if(m_headerRowCount <= 0)
+			return Collections.emptyList();
+		IImportRow row = getHeaderRow();
+		List<String> res = new ArrayList<>();
+		for(int i = 0; i < row.getColumnCount(); i++) {
+			String name = row.get(i).getStringValue();
+			if(null != name) {
+				name = name.trim();
+				if(name.length() == 0)
+					name = null;
+			}
+			res.add(name);
+		}
+		return res;
+	}
+
+	@NonNull @Override public Iterator<IImportRow> iterator() {
+		try {
+			if(m_setIndex == -1)
+				setSetIndex(0);
+			List<String> headerNames = getCurrentHeaderNames();
+			SheetCursor c = openCursor(headerNames);
+			for(int i = 0; i < m_headerRowCount; i++) {
+				if(c.next() == null)
+					break;
+			}
+			m_progressIndicator = 0;
+			return new Iterator<IImportRow>() {
+				@Nullable
+				private IImportRow m_next;
+
+				@Override public boolean hasNext() {
+					if(m_next == null) {
+						try {
+							m_next = c.next();
+						} catch(IOException x) {
+							throw WrappedException.wrap(x);
+						}
+					}
+					return m_next != null;
+				}
+
+				@Override public IImportRow next() {
+					if(!hasNext())
+						throw new NoSuchElementException();
+					IImportRow row = m_next;
+					m_next = null;
+					m_progressIndicator++;
+					return row;
+				}
+			};
+		} catch(IOException x) {
+			throw WrappedException.wrap(x);
+		}
+	}
+
+	@Override public long getSetSizeIndicator() {
+		if(m_setIndex == -1)
+			setSetIndex(0);
+		if(!m_setSizeRead) {
+			m_setSizeRead = true;
+			if(m_setSize < 0) {
+				try {
+					m_setSize = readDimensionRows();
+				} catch(IOException x) {
+					throw WrappedException.wrap(x);
+				}
+			}
+		}
+		return m_setSize < 0 ? m_progressIndicator + 1 : m_setSize - m_headerRowCount;
+	}
+
+	@Override public long getProgressIndicator() {
+		return m_progressIndicator;
+	}
+
+	@Override public void close() throws IOException {
+		closeCursor();
+		OPCPackage pkg = m_package;
+		if(null != pkg) {
+			m_package = null;
+			pkg.revert();											// Read only: close without saving
+		}
+	}
+
+	/**
+	 * Read the #of rows from the dimension element at the start of the current sheet, using a separate
+	 * reader so that an open cursor is not disturbed. Returns -1 if the sheet has no dimension.
+	 */
+	private long readDimensionRows() throws IOException {
+		if(m_package == null)
+			throw new IllegalStateException("The reader is closed");
+		InputStream is = m_sheetParts.get(m_setIndex).getInputStream();
+		XMLStreamReader xr = null;
+		try {
+			xr = FACTORY.createXMLStreamReader(is);
+			while(xr.hasNext()) {
+				if(xr.next() != XMLStreamConstants.START_ELEMENT)
+					continue;
+				String name = xr.getLocalName();
+				if("dimension".equals(name))
+					return getDimensionRows(xr.getAttributeValue(null, "ref"));
+				if("sheetData".equals(name))					// The dimension always comes before the data
+					return -1;
+			}
+			return -1;
+		} catch(XMLStreamException x) {
+			throw new IOException("Sheet " + m_sheetNames.get(m_setIndex) + ": " + x, x);
+		} finally {
+			try {
+				if(null != xr)
+					xr.close();
+			} catch(XMLStreamException x) {
+				//-- Ignore, the stream gets closed anyway
+			}
+			FileTool.closeAll(is);
+		}
+	}
+
+	@NonNull
+	private SheetCursor openCursor(@NonNull List<String> headerNames) throws IOException {
+		closeCursor();
+		if(m_package == null)
+			throw new IllegalStateException("The reader is closed");
+		if(m_setIndex == -1)
+			setSetIndex(0);
+		SheetCursor c = new SheetCursor(m_sheetParts.get(m_setIndex).getInputStream(), m_sheetNames.get(m_setIndex), headerNames);
+		m_cursor = c;
+		return c;
+	}
+
+	private void closeCursor() {
+		SheetCursor c = m_cursor;
+		if(null != c) {
+			m_cursor = null;
+			c.close();
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Reading the sheet XML.								*/
+	/*--------------------------------------------------------------*/
+	/**
+	 * Pulls the rows from a sheet's XML. Rows that are missing in the file (empty rows) are
+	 * returned as empty rows, like the workbook model does.
+	 */
+	private final class SheetCursor {
+		@NonNull
+		private final InputStream m_is;
+
+		@NonNull
+		private final XMLStreamReader m_xr;
+
+		@NonNull
+		private final String m_sheetName;
+
+		@NonNull
+		private final List<String> m_headerNames;
+
+		/** The 0-based index of the last row returned. */
+		private int m_rowIndex = -1;
+
+		/** The row read ahead while returning the empty rows before it. */
+		@Nullable
+		private IImportRow m_pending;
+
+		private int m_pendingIndex;
+
+		private boolean m_eof;
+
+		SheetCursor(@NonNull InputStream is, @NonNull String sheetName, @NonNull List<String> headerNames) throws IOException {
+			m_is = is;
+			m_sheetName = sheetName;
+			m_headerNames = headerNames;
+			try {
+				m_xr = FACTORY.createXMLStreamReader(is);
+			} catch(XMLStreamException x) {
+				FileTool.closeAll(is);
+				throw new IOException("Sheet " + sheetName + ": " + x, x);
+			}
+		}
+
+		@Nullable
+		IImportRow next() throws IOException {
+			try {
+				IImportRow row = m_pending;
+				if(null == row) {
+					if(m_eof)
+						return null;
+					row = readRow();
+					if(null == row) {
+						m_eof = true;
+						return null;
+					}
+				}
+
+				//-- The first row starts the sheet; later gaps are returned as empty rows
+				if(m_rowIndex >= 0 && m_pendingIndex > m_rowIndex + 1) {
+					m_pending = row;
+					m_rowIndex++;
+					return new StreamingRow(new Object[0], m_headerNames, m_sheetName);
+				}
+				m_pending = null;
+				m_rowIndex = m_pendingIndex;
+				return row;
+			} catch(XMLStreamException x) {
+				throw new IOException("Sheet " + m_sheetName + ": " + x, x);
+			}
+		}
+
+		/**
+		 * Read the next row element, and set its index in m_pendingIndex.
+		 */
+		@Nullable
+		private IImportRow readRow() throws XMLStreamException {
+			XMLStreamReader xr = m_xr;
+			while(xr.hasNext()) {
+				if(xr.next() != XMLStreamConstants.START_ELEMENT)
+					continue;
+				String name = xr.getLocalName();
+				if("dimension".equals(name)) {
+					m_setSize = getDimensionRows(xr.getAttributeValue(null, "ref"));
+				} else if("row".equals(name)) {
+					String r = xr.getAttributeValue(null, "r");
+					m_pendingIndex = r == null ? m_rowIndex + 1 : Integer.parseInt(r) - 1;
+					return readCells();
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Read the cells of the current row element up to its end tag.
+		 */
+		@NonNull
+		private IImportRow readCells() throws XMLStreamException {
+			XMLStreamReader xr = m_xr;
+			Object[] values = new Object[16];
+			int count = 0;
+			int column = -1;
+			String type = null;
+			String value = null;
+			for(;;) {
+				int ev = xr.next();
+				if(ev == XMLStreamConstants.START_ELEMENT) {
+					String name = xr.getLocalName();
+					if("c".equals(name)) {
+						String ref = xr.getAttributeValue(null, "r");
+						column = ref == null ? column + 1 : getColumnIndex(ref);
+						type = xr.getAttributeValue(null, "t");
+						value = null;
+					} else if("v".equals(name)) {
+						value = xr.getElementText();
+					} else if("t".equals(name)) {					// Inline string text, possibly in rich text runs
+						String text = xr.getElementText();
+						value = value == null ? text : value + text;
+					}
+				} else if(ev == XMLStreamConstants.END_ELEMENT) {
+					String name = xr.getLocalName();
+					if("c".equals(name)) {
+						if(column >= values.length)
+							values = Arrays.copyOf(values, Math.max(column + 1, values.length * 2));
+						values[column] = toValue(type, value);
+						if(column >= count)
+							count = column + 1;
+					} else if("row".equals(name)) {
+						return new StreamingRow(Arrays.copyOf(values, count), m_headerNames, m_sheetName);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Convert a cell to a String, Double or Boolean, or null for an empty cell.
+		 */
+		@Nullable
+		private Object toValue(@Nullable String type, @Nullable String value) {
+			if(null == value)
+				return type == null || !"inlineStr".equals(type) ? null : "";
+			if(null == type || "n".equals(type)) {
+				return value.length() == 0 ? null : Double.valueOf(value);
+			}
+			switch(type) {
+				default:
+					return value;
+
+				case "s":
+					return m_strings.getEntryAt(Integer.parseInt(value));
+
+				case "b":
+					return Boolean.valueOf("1".equals(value));
+			}
+		}
+
+		void close() {
+			try {
+				m_xr.close();
+			} catch(XMLStreamException x) {
+				//-- Ignore, the stream gets closed anyway
+			}
+			FileTool.closeAll(m_is);
+		}
+	}
+
+	/**
+	 * Return the #of rows in a dimension reference like "A1:K100", or -1 if it cannot be determined.
+	 */
+	static private long getDimensionRows(@Nullable String ref) {
+		if(null == ref)
+			return -1;
+		int pos = ref.indexOf(':');
+		if(pos < 0)
+			return -1;
+		try {
+			return getRowNumber(ref.substring(pos + 1)) - getRowNumber(ref.substring(0, pos)) + 1;
+		} catch(NumberFormatException x) {
+			return -1;
+		}
+	}
+
+	static private int getRowNumber(@NonNull String cellRef) {
+		int i = 0;
+		while(i < cellRef.length() && Character.isLetter(cellRef.charAt(i)))
+			i++;
+		return Integer.parseInt(cellRef.substring(i));
+	}
+
+	/**
+	 * Return the 0-based column index of a cell reference like "AB12".
+	 */
+	static int getColumnIndex(@NonNull String cellRef) {
+		int index = 0;
+		for(int i = 0; i < cellRef.length(); i++) {
+			char c = cellRef.charAt(i);
+			if(c < 'A' || c > 'Z')
+				break;
+			index = index * 26 + (c - 'A' + 1);
+		}
+		return index - 1;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Rows and columns.									*/
+	/*--------------------------------------------------------------*/
+	static private final class StreamingRow implements IImportRow {
+		/** The cell values by column index: a String, Double, Boolean or null. */
+		@NonNull
+		private final Object[] m_values;
+
+		@NonNull
+		private final List<String> m_headerNames;
+
+		@NonNull
+		private final String m_sheetName;
+
+		StreamingRow(@NonNull Object[] values, @NonNull List<String> headerNames, @NonNull String sheetName) {
+			m_values = values;
+			m_headerNames = headerNames;
+			m_sheetName = sheetName;
+		}
+
+		@Override public int getColumnCount() {
+			return m_values.length;
+		}
+
+		@NonNull @Override public IImportColumn get(int index) {
+			String headerName = index < m_headerNames.size() ? m_headerNames.get(index) : null;
+			if(null == headerName)
+				headerName = "COL" + index;
+			if(index < 0 || index >= m_values.length || m_values[index] == null)
+				return new EmptyColumn(headerName);
+			return new StreamingColumn(m_values[index], headerName, m_sheetName);
+		}
+
+		@NonNull @Override public IImportColumn get(@NonNull String name) {
+			int index = -1;
+			for(int i = m_headerNames.size(); --i >= 0;) {
+				if(name.equals(m_headerNames.get(i))) {
+					if(index == -1)
+						index = i;
+					else
+						throw new IllegalStateException("The field name '" + name + "' occurs more than once in the header");
+				}
+			}
+			if(index == -1)
+				throw new QNotFoundException("Column", "The column with header name '" + name + "' could not be found");
+			return get(index);
+		}
+	}
+
+	static private final class StreamingColumn extends AbstractImportColumn {
+		@NonNull
+		private final Object m_value;
+
+		@NonNull
+		private final String m_name;
+
+		@NonNull
+		private final String m_sheetName;
+
+		StreamingColumn(@NonNull Object value, @NonNull String name, @NonNull String sheetName) {
+			m_value = value;
+			m_name = name;
+			m_sheetName = sheetName;
+		}
+
+		@NonNull @Override public String getName() {
+			return m_name;
+		}
+
+		@NonNull @Override public String getStringValue() {
+			if(m_value instanceof Double)
+				return Double.toString(((Double) m_value).doubleValue());
+			return String.valueOf(m_value);
+		}
+
+		@Nullable @Override public Date asDate() {
+			if(m_value instanceof Double)
+				return DateUtil.getJavaDate(((Double) m_value).doubleValue());
+			throw new ImportValueException("@[" + m_sheetName + ":" + m_name + "] '" + m_value + "' is not a date");
+		}
+
+		@Nullable @Override public BigDecimal getDecimal() {
+			if(m_value instanceof Double)
+				return new BigDecimal(((Double) m_value).doubleValue());
+			if(m_value instanceof Boolean)
+				return BigDecimal.ONE;
+			String value = String.valueOf(m_value).trim().replace(',', '.');
+			if(value.length() == 0)
+				return null;
+			try {
+				return new BigDecimal(value);
+			} catch(NumberFormatException x) {
+				throw new ImportValueException(x, "@[" + m_sheetName + ":" + m_name + "], value '" + m_value + "': " + x);
+			}
+		}
+	}
+}
@@ -55,4 +55,17 @@ public class RhinoExecutor extends RhinoObjectBase implements IScriptScope {
 			Context.exit();
 		}
 	}
+
+	/**
+	 * Compile with the specified Rhino optimization level: -1 interprets, 0 and up generate bytecode.
+	 */
+	public Script compile(String s, String filename, int optimizationLevel) throws Exception {
+		Context jcx = Context.enter();
+		try {
+			jcx.setOptimizationLevel(optimizationLevel);
+			return jcx.compileString(s, filename, 1, null);
+		} finally {
+			Context.exit();
+		}
+	}
 }
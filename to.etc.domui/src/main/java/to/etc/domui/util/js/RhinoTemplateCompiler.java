@@ -26,11 +26,13 @@ package to.etc.domui.util.js;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import org.mozilla.javascript.EvaluatorException;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import to.etc.template.IJSTemplateContext;
 import to.etc.template.JSLocationMapping;
 import to.etc.template.JSTemplateError;
+import to.etc.util.StringTool;
 
 import javax.script.ScriptException;
 import java.io.BufferedReader;
@@ -38,8 +40,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This singleton creates a compiled template for a JSP like template. The
@@ -48,10 +55,30 @@ import java.util.List;
  * it assumes the code is Javascript. The engine first creates a Javascript
  * program from the code entered, then it compiles it into the RhinoTemplate.
  *
+ * <p>Use {@link #getTemplate(String, String)} for templates that are used more than once: it compiles
+ * them to optimized bytecode, and keeps them by the hash of their source so that every user of the
+ * same source shares the same compiled template.</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Nov 26, 2010
  */
 public class RhinoTemplateCompiler {
+	/** The max #of compiled templates kept by {@link #getTemplate(String, String)}. */
+	static private final int MAX_CACHED = 1000;
+
+	/** The Rhino optimization level for cached templates. */
+	static private final int OPTIMIZATION_LEVEL = 9;
+
+	/** Compiled templates by source name and hash of their source, least recently used first. */
+	static private final Map<String, RhinoTemplate> m_templateCache = new LinkedHashMap<String, RhinoTemplate>(256, 0.75f, true) {
+		@Override protected boolean removeEldestEntry(Map.Entry<String, RhinoTemplate> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	/** The optimization level to compile with: -1 for interpreted, 0 (Rhino's default) and up for bytecode. */
+	private int m_optimizationLevel;
+
 	/** Work buffer */
 	private StringBuilder m_sb = new StringBuilder(1024);
 
@@ -108,6 +135,36 @@ public class RhinoTemplateCompiler {
 		return compile();
 	}
 
+	/**
+	 * Get a compiled template for the source, from the shared cache if the same source was compiled
+	 * before. The template is compiled to optimized bytecode, or interpreted if it is too large for that.
+	 */
+	@NonNull
+	static public RhinoTemplate getTemplate(@NonNull String source, @NonNull String sourceName) throws Exception {
+		String key = sourceName + ":" + StringTool.toHex(MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8)));
+		synchronized(m_templateCache) {
+			RhinoTemplate tmpl = m_templateCache.get(key);
+			if(null != tmpl)
+				return tmpl;
+		}
+
+		RhinoTemplate tmpl;
+		try {
+			RhinoTemplateCompiler rtc = new RhinoTemplateCompiler();
+			rtc.m_optimizationLevel = OPTIMIZATION_LEVEL;
+			tmpl = rtc.compile(new StringReader(source), sourceName);
+		} catch(EvaluatorException x) {
+			//-- Bytecode for a single method is limited to 64K; large templates must be interpreted.
+			RhinoTemplateCompiler rtc = new RhinoTemplateCompiler();
+			rtc.m_optimizationLevel = -1;
+			tmpl = rtc.compile(new StringReader(source), sourceName);
+		}
+		synchronized(m_templateCache) {
+			RhinoTemplate old = m_templateCache.putIfAbsent(key, tmpl);
+			return old == null ? tmpl : old;
+		}
+	}
+
 	public String getTranslation() {
 		return m_jsb.toString();
 	}
@@ -190,7 +247,7 @@ public class RhinoTemplateCompiler {
 		//-- Get the Javascript thing, then compile
 		String js = m_jsb.toString();
 		try {
-			Script jsc = jx.compile(js, m_source);
+			Script jsc = jx.compile(js, m_source, m_optimizationLevel);
 			return new RhinoTemplate(m_source, jsc, m_mapList);
 		} catch(ScriptException sx) {
 			int[] res = JSTemplateError.remapLocation(m_mapList, sx.getLineNumber(), sx.getColumnNumber());
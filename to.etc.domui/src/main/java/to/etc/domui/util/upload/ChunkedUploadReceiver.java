@@ -0,0 +1,166 @@
+package to.etc.domui.util.upload;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.util.FileTool;
+import to.etc.util.StringTool;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Reassembles a file that the browser uploads in chunks. The browser sends every chunk with
+ * the offset it starts at; a chunk is only accepted when its offset is the #of bytes received
+ * so far, and the reply is always that #of bytes. After a network failure the browser asks for
+ * that offset and resumes from there, so no data is written twice.
+ *
+ * <p>The data goes to a temp file, or to a sink when one is provided. It is hashed while it is
+ * received, like the data of a normal upload.</p>
+ *
+ * <p>The browser may retry a chunk while the original request is still being handled, so all
+ * access to the stream is synchronized: chunks are written one at a time, and a discard waits
+ * until a running write has finished.</p>
+ *
+ * Created on 19-10-26.
+ */
+final public class ChunkedUploadReceiver {
+	@NonNull
+	private final String m_uploadId;
+
+	@NonNull
+	private final UploadItem m_item;
+
+	private final long m_totalSize;
+
+	@Nullable
+	private final IUploadSink m_sink;
+
+	@Nullable
+	private File m_file;
+
+	@Nullable
+	private OutputStream m_os;
+
+	@NonNull
+	private final MessageDigest m_digest;
+
+	private long m_received;
+
+	private final byte[] m_buffer = new byte[65536];
+
+	public ChunkedUploadReceiver(@NonNull String uploadId, @NonNull String fieldName, @Nullable String fileName, @Nullable String contentType, long totalSize, @Nullable IUploadSinkFactory sinkFactory) throws Exception {
+		m_uploadId = uploadId;
+		m_totalSize = totalSize;
+		m_item = new UploadItem(fieldName, contentType, null, fileName, true);
+		m_digest = MessageDigest.getInstance("SHA-256");
+		IUploadSink sink = m_sink = sinkFactory == null ? null : sinkFactory.createSink(fieldName, fileName, contentType);
+		if(null != sink) {
+			m_os = sink.getOutputStream();
+		} else {
+			String ext = fileName == null ? "" : FileTool.getFileExtension(fileName);
+			if(ext.length() == 0)
+				ext = "tmp";
+			File file = m_file = File.createTempFile("upld", "." + ext);
+			m_os = new FileOutputStream(file);
+		}
+	}
+
+	@NonNull
+	public String getUploadId() {
+		return m_uploadId;
+	}
+
+	public long getTotalSize() {
+		return m_totalSize;
+	}
+
+	/**
+	 * The #of bytes received so far: the offset of the next chunk.
+	 */
+	public synchronized long getReceived() {
+		return m_received;
+	}
+
+	public synchronized boolean isComplete() {
+		return m_received == m_totalSize;
+	}
+
+	/**
+	 * The temp file the data is written to, or null when a sink receives it.
+	 */
+	@Nullable
+	public File getFile() {
+		return m_file;
+	}
+
+	/**
+	 * Append the chunk from the stream when it starts at the offset of the next chunk, and
+	 * return the #of bytes received after that. A chunk at any other offset is ignored.
+	 */
+	public synchronized long write(long offset, @NonNull InputStream is) throws IOException {
+		OutputStream os = m_os;
+		if(null == os)
+			throw new IllegalStateException("The upload " + m_uploadId + " is closed");
+		if(offset != m_received)
+			return m_received;
+
+		int len;
+		while((len = is.read(m_buffer)) > 0) {
+			if(m_received + len > m_totalSize)
+				throw new IOException("The upload " + m_uploadId + " is larger than its announced size of " + m_totalSize + " bytes");
+			os.write(m_buffer, 0, len);
+			m_digest.update(m_buffer, 0, len);
+			m_received += len;
+		}
+		return m_received;
+	}
+
+	/**
+	 * Close the output once all data has been received, and return the item for the file.
+	 */
+	@NonNull
+	public synchronized UploadItem complete() throws Exception {
+		if(!isComplete())
+			throw new IllegalStateException("The upload " + m_uploadId + " is not complete");
+		OutputStream os = m_os;
+		if(null != os) {
+			m_os = null;
+			os.close();
+			m_item.setData(m_received, StringTool.toHex(m_digest.digest()));
+			IUploadSink sink = m_sink;
+			if(null != sink) {
+				m_item.setStreamed(sink);
+				sink.completed(m_item);
+			} else {
+				m_item.setValue(m_file);
+			}
+		}
+		return m_item;
+	}
+
+	/**
+	 * Drop the data of an upload that did not complete. A completed upload's data belongs to its item.
+	 */
+	public synchronized void discard() {
+		OutputStream os = m_os;
+		if(null == os)
+			return;
+		m_os = null;
+		FileTool.closeAll(os);
+		IUploadSink sink = m_sink;
+		if(null != sink) {
+			try {
+				sink.discard();
+			} catch(Exception x) {
+				x.printStackTrace();
+			}
+		}
+		File file = m_file;
+		if(null != file)
+			file.delete();
+	}
+}
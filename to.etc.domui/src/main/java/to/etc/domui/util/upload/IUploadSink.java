@@ -0,0 +1,36 @@
+package to.etc.domui.util.upload;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import java.io.OutputStream;
+
+/**
+ * Receives the data of an uploaded file while it is being uploaded, instead of having it
+ * stored in a temporary file first. This allows an application to stream large uploads
+ * straight into a database or document store. The sink is created by an {@link IUploadSinkFactory}.
+ *
+ * <p>The parser writes all data to the stream from {@link #getOutputStream()} and closes it.
+ * Then it calls {@link #completed(UploadItem)}, where the item holds the size and the SHA-256
+ * hash of the data. If the upload fails or is too large {@link #discard()} is called instead,
+ * and the sink must drop what was written. {@link #discard()} is also called when the completed
+ * item is not claimed by the request.</p>
+ *
+ * Created on 19-10-26.
+ */
+public interface IUploadSink {
+	/**
+	 * Return the stream to write the data to. This is called once.
+	 */
+	@NonNull
+	OutputStream getOutputStream() throws Exception;
+
+	/**
+	 * Called when all data has been written, and the output stream is closed.
+	 */
+	void completed(@NonNull UploadItem item) throws Exception;
+
+	/**
+	 * Called when the data is not used: drop everything written.
+	 */
+	void discard() throws Exception;
+}
@@ -0,0 +1,16 @@
+package to.etc.domui.util.upload;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Decides where an uploaded file's data goes: return a sink to stream the data to, or null
+ * to store the data in a temporary file like for any other upload.
+ *
+ * Created on 19-10-26.
+ */
+@FunctionalInterface
+public interface IUploadSinkFactory {
+	@Nullable
+	IUploadSink createSink(@NonNull String fieldName, @Nullable String fileName, @Nullable String contentType) throws Exception;
+}
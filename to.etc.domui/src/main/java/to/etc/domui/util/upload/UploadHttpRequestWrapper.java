@@ -48,9 +48,20 @@ public class UploadHttpRequestWrapper extends HttpServletRequestWrapper {
 	@Nullable
 	private FileUploadException m_uploadException;
 
+	/**
+	 * The request is parsed when its parameters or files are first used, so that the code
+	 * handling it can set a sink factory before that.
+	 */
+	private boolean m_parsed;
+
+	@Nullable
+	private IUploadSinkFactory m_sinkFactory;
+
 	public UploadHttpRequestWrapper(HttpServletRequest req) {
 		super(req);
-		init(req);
+		if(!UploadParser.isMultipartContent(req))
+			throw new IllegalStateException("Cannot wrap a non-multipart request!");
+		req.setAttribute(UPLOADKEY, this);
 	}
 
 	static public UploadHttpRequestWrapper findWrapper(HttpServletRequest req) {
@@ -59,11 +70,29 @@ public class UploadHttpRequestWrapper extends HttpServletRequestWrapper {
 		return (UploadHttpRequestWrapper) req.getAttribute(UPLOADKEY);
 	}
 
-	private void init(HttpServletRequest req) {
-		if(!UploadParser.isMultipartContent(req))
-			throw new IllegalStateException("Cannot wrap a non-multipart request!");
+	/**
+	 * Stream the files in this request to sinks from the factory. This returns false when the
+	 * request has already been parsed, in which case all files are in temp files.
+	 */
+	public boolean setSinkFactory(@Nullable IUploadSinkFactory sinkFactory) {
+		if(m_parsed)
+			return false;
+		m_sinkFactory = sinkFactory;
+		return true;
+	}
+
+	public boolean isParsed() {
+		return m_parsed;
+	}
+
+	private void init() {
+		if(m_parsed)
+			return;
+		m_parsed = true;
+		HttpServletRequest req = (HttpServletRequest) getRequest();
 		UploadParser dfu = new UploadParser();
 		dfu.setSizeMax(100 * 1024 * 1024); // Max upload size
+		dfu.setSinkFactory(m_sinkFactory);
 
 		List<UploadItem> l = null;
 		try {
@@ -111,7 +140,6 @@ public class UploadHttpRequestWrapper extends HttpServletRequestWrapper {
 				m_fileItemMap.put(me.getKey(), me.getValue().toArray(new UploadItem[me.getValue().size()]));
 			}
 		}
-		req.setAttribute(UPLOADKEY, this);
 	}
 
 	/*--------------------------------------------------------------*/
@@ -119,17 +147,20 @@ public class UploadHttpRequestWrapper extends HttpServletRequestWrapper {
 	/*--------------------------------------------------------------*/
 	@Override
 	public String getParameter(String name) {
+		init();
 		String[] ar = m_formItemMap.get(name.toLowerCase());
 		return ar == null ? null : ar[0];
 	}
 
 	@Override
 	public String[] getParameterValues(String name) {
+		init();
 		return m_formItemMap.get(name.toLowerCase());
 	}
 
 	@Override
 	public Enumeration<String> getParameterNames() {
+		init();
 		Vector<String> v = new Vector<String>(m_formItemMap.keySet());
 		return v.elements();
 	}
@@ -137,6 +168,7 @@ public class UploadHttpRequestWrapper extends HttpServletRequestWrapper {
 	//-- Get all parameters in a genericized map
 	@Override
 	public Map<String, String[]> getParameterMap() {
+		init();
 		return m_formItemMap;
 	}
 
@@ -146,6 +178,7 @@ public class UploadHttpRequestWrapper extends HttpServletRequestWrapper {
 	}
 
 	private void checkUploadException() throws Exception {
+		init();
 		FileUploadException uploadException = m_uploadException;
 		if(uploadException != null) {
 			throw uploadException;
@@ -171,6 +204,7 @@ public class UploadHttpRequestWrapper extends HttpServletRequestWrapper {
 	}
 
 	public void releaseFiles() {
+		init();												// Always read all input, see UploadParser
 		m_uploadException = null;
 		for(UploadItem[] uiar : m_fileItemMap.values()) {
 			for(UploadItem ui : uiar) {
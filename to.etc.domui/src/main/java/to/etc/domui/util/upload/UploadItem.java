@@ -54,6 +54,15 @@ final public class UploadItem {
 
 	private boolean m_file;
 
+	/** When the data was streamed to a sink instead of a file. */
+	@Nullable
+	private IUploadSink m_sink;
+
+	private long m_size = -1;
+
+	@Nullable
+	private String m_sha256;
+
 	public UploadItem(String fieldname, String contenttype, String charset, String filename, boolean isfile) {
 		m_fieldName = fieldname;
 		m_contentType = contenttype;
@@ -122,6 +131,38 @@ final public class UploadItem {
 		m_backingFile = f;
 	}
 
+	void setStreamed(@NonNull IUploadSink sink) {
+		m_sink = sink;
+	}
+
+	void setData(long size, @Nullable String sha256) {
+		m_size = size;
+		m_sha256 = sha256;
+	}
+
+	/**
+	 * T if the data of this file was written to an {@link IUploadSink} instead of to a file.
+	 */
+	public boolean isStreamed() {
+		return m_sink != null;
+	}
+
+	/**
+	 * The sink that received the data, when it was streamed.
+	 */
+	@Nullable
+	public IUploadSink getSink() {
+		return m_sink;
+	}
+
+	/**
+	 * The hex SHA-256 hash of the uploaded file's data, calculated while it was received.
+	 */
+	@Nullable
+	public String getSha256() {
+		return m_sha256;
+	}
+
 	/**
 	 * The name of the input field.
 	 * @return
@@ -156,6 +197,8 @@ final public class UploadItem {
 	 * @return
 	 */
 	public int getSize() {
+		if(m_sink != null)
+			return (int) m_size;
 		if(isFile() && m_backingFile == null)
 			throw new IllegalStateException("The file has already been closed (deleted)");
 		if(m_backingFile != null)
@@ -178,6 +221,8 @@ final public class UploadItem {
 	 * @see to.etc.server.upload.UploadItem#getFile()
 	 */
 	public File getFile() {
+		if(m_sink != null)
+			throw new IllegalStateException("The data of this file was streamed to " + m_sink + ", it has no file");
 		if(isFile() && m_backingFile == null)
 			throw new IllegalStateException("The file has already been closed (deleted)");
 		return m_backingFile;
@@ -187,6 +232,16 @@ final public class UploadItem {
 	 * When the request finishes and no-one has gotten this parameter the file must be discarded.
 	 */
 	void discard() {
+		IUploadSink sink = m_sink;
+		if(null != sink) {
+			m_sink = null;
+			try {
+				sink.discard();
+			} catch(Exception x) {
+				x.printStackTrace();
+			}
+			return;
+		}
 		if(m_backingFile == null)
 			return;
 		try {
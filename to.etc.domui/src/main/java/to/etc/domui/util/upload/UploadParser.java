@@ -25,6 +25,7 @@
 package to.etc.domui.util.upload;
 
 import java.io.*;
+import java.security.*;
 import java.util.*;
 
 import javax.servlet.http.*;
@@ -65,6 +66,9 @@ public class UploadParser {
 	/** The max size of a file uploaded thru this mechanism. Defaults to 100MB. */
 	private int m_sizeMax = 100 * 1024 * 1024;
 
+	/** When set, this decides which files are streamed to a sink instead of to a temp file. */
+	private IUploadSinkFactory m_sinkFactory;
+
 	public UploadParser() {}
 
 	public final int getSizeMax() {
@@ -75,6 +79,14 @@ public class UploadParser {
 		m_sizeMax = sizeMax;
 	}
 
+	public final IUploadSinkFactory getSinkFactory() {
+		return m_sinkFactory;
+	}
+
+	public final void setSinkFactory(final IUploadSinkFactory sinkFactory) {
+		m_sinkFactory = sinkFactory;
+	}
+
 	//	public final void setWorkDir(File workDir) {
 	//		m_workDir = workDir;
 	//	}
@@ -332,21 +344,32 @@ public class UploadParser {
 
 		UploadItem ui = new UploadItem(fieldname, contenttype, charset, fn, isfile);
 
-		//-- Copy data to an output buffer or output file, depending on the size.
+		//-- Copy data to an output buffer, an output file, or the sink for this file.
 		OutputStream os = null;
 		ByteArrayOutputStream bos = null;
 		File resf = null;
+		IUploadSink sink = null;
+		MessageDigest digest = null;
 
-		//-- If this is a file write it to a tempfile, else write it to a byte array && convert to a string value
+		//-- If this is a file write it to a sink or a tempfile, else write it to a byte array && convert to a string value
 		int bytesRead = -1;
 		boolean ok = false;
 		try {
 			if(fn != null) {
-				String ext = FileTool.getFileExtension(fn);
-				if(ext.length() == 0)
-					ext = "tmp";
-				resf = File.createTempFile("upld", "." + ext);
-				os = new FileOutputStream(resf);
+				IUploadSinkFactory sinkFactory = m_sinkFactory;
+				if(null != sinkFactory)
+					sink = sinkFactory.createSink(fieldname, fn, contenttype);
+				if(null != sink) {
+					os = sink.getOutputStream();
+				} else {
+					String ext = FileTool.getFileExtension(fn);
+					if(ext.length() == 0)
+						ext = "tmp";
+					resf = File.createTempFile("upld", "." + ext);
+					os = new FileOutputStream(resf);
+				}
+				digest = MessageDigest.getInstance("SHA-256");
+				os = new DigestOutputStream(os, digest);
 			} else {
 				bos = new ByteArrayOutputStream(8192);
 				os = bos;
@@ -354,7 +377,18 @@ public class UploadParser {
 			bytesRead = multi.readBodyData(os, m_sizeMax);
 			os.close();
 			os = null;
-			ok = true;
+			if(bytesRead < m_sizeMax) {
+				if(null != sink) {
+					ui.setStreamed(sink);
+					ui.setData(bytesRead, StringTool.toHex(digest.digest()));
+					sink.completed(ui);
+				}
+				ok = true;
+			}
+		} catch(IOException x) {
+			throw x;
+		} catch(Exception x) {
+			throw new IOException("Upload sink failed: " + x, x);
 		} finally {
 			try {
 				if(os != null)
@@ -365,18 +399,25 @@ public class UploadParser {
 					if(resf != null)
 						resf.delete();
 				} catch(Exception x) {}
+				try {
+					if(sink != null)
+						sink.discard();
+				} catch(Exception x) {
+					x.printStackTrace();
+				}
 			}
 		}
 
 		if(bytesRead >= m_sizeMax)
 			return false;
 
-		//-- Decode worked, and data flushed either to bytearray or file...
+		//-- Decode worked, and data flushed either to bytearray, sink or file...
 		if(bos != null) {
 			byte[] data = bos.toByteArray();
 			String val = new String(data, charset);
 			ui.setValue(val);
-		} else {
+		} else if(resf != null) {
+			ui.setData(bytesRead, StringTool.toHex(digest.digest()));
 			ui.setValue(resf);
 		}
 		l.add(ui);
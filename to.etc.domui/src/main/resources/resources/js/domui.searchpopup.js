@@ -244,11 +244,26 @@ $.extend(WebUI.SearchPopup.prototype, {
 		// $(waitdiv).remove();
 	},
 
+	/** True while a lookupTyping request runs. */
+	_busy: false,
+
+	/** True when typed in while a lookupTyping request was running. */
+	_pending: false,
+
+	/**
+	 * Only one lookupTyping request runs at the same time. Keystrokes arriving while it runs
+	 * supersede each other: when it completes one new request is sent with the latest text.
+	 */
 	lookupTyping: function() {
 		var lookupField = document.getElementById(this._id);
 		//check for existence, since it is delayed action component can be removed when action is executed.
 		if(lookupField) {
 			var self = this;
+			if(this._busy) {
+				this._pending = true;
+				return;
+			}
+			this._busy = true;
 
 			var showWaitingTimerId = null;
 
@@ -275,6 +290,12 @@ $.extend(WebUI.SearchPopup.prototype, {
 				//handle received lookupTyping component content
 				self.showLookupTypingPopupIfStillFocusedAndFixZIndex();
 				WebUI.doCustomUpdates();
+
+				self._busy = false;
+				if(self._pending) {
+					self._pending = false;
+					self.lookupTyping();
+				}
 			};
 			$.ajax(axaj);
 		}
@@ -344,12 +344,57 @@ var WebUI;
     }
     WebUI.startPolling = startPolling;
     function cancelPolling() {
+        cancelPushWait();
         if (!_pollActive)
             return;
         clearTimeout(_pollTimer);
         _pollActive = false;
     }
     WebUI.cancelPolling = cancelPolling;
+    var _pushRequest = null;
+    var _pushDisabled = false;
+    function startPushWait(interval) {
+        if (_pushDisabled) {
+            startPolling(interval);
+            return;
+        }
+        _pollInterval = interval;
+        if (_pushRequest)
+            return;
+        var fields = {};
+        fields["$pt"] = window.DomUIpageTag;
+        fields["$cid"] = window.DomUICID;
+        _pushRequest = $.ajax({
+            url: window.DomUIappURL + "to.etc.domui.parts.PushWaitPart.part",
+            dataType: "text",
+            data: fields,
+            cache: false,
+            global: false,
+            success: function (data) {
+                _pushRequest = null;
+                if (data == "nopush") {
+                    _pushDisabled = true;
+                    startPolling(_pollInterval);
+                }
+                else {
+                    poll();
+                }
+            },
+            error: function (request, status) {
+                _pushRequest = null;
+                if (status !== "abort")
+                    startPolling(_pollInterval);
+            }
+        });
+    }
+    WebUI.startPushWait = startPushWait;
+    function cancelPushWait() {
+        var rq = _pushRequest;
+        if (!rq)
+            return;
+        _pushRequest = null;
+        rq.abort();
+    }
     function poll() {
         cancelPolling();
         var fields = {};
@@ -660,6 +705,150 @@ var WebUI;
         console.log("Change event", tbl);
     }
     WebUI.dataTableUpdateWidths = dataTableUpdateWidths;
+    var _clientFilterBound = {};
+    function dataTableClientSort(id, compId, filterId) {
+        var tbl = $('#' + id);
+        var state = tbl.data('uiCsort');
+        if (state) {
+            if (state.col || state.filter)
+                dataTableClientApply(id);
+            return;
+        }
+        state = { compId: compId, data: null, text: null, col: null, desc: false, filter: '' };
+        tbl.data('uiCsort', state);
+        tbl.on('click', 'th.ui-dt-csort', function () {
+            dataTableClientSortOn(id, this.id);
+        });
+        if (filterId) {
+            var selector = 'input#' + filterId + ', #' + filterId + ' input';
+            state.filter = String($(selector).val() || '').toLowerCase();
+            if (!_clientFilterBound[filterId]) {
+                _clientFilterBound[filterId] = true;
+                $(document).on('input', selector, function (evt) {
+                    var st = $('#' + id).data('uiCsort');
+                    if (!st)
+                        return;
+                    st.filter = String($(evt.target).val() || '').toLowerCase();
+                    dataTableClientApply(id);
+                });
+            }
+            if (state.filter)
+                dataTableClientApply(id);
+        }
+    }
+    WebUI.dataTableClientSort = dataTableClientSort;
+    function dataTableClientSortReset(id) {
+        var tbl = $('#' + id);
+        var state = tbl.data('uiCsort');
+        if (!state)
+            return;
+        state.col = null;
+        state.desc = false;
+        tbl.find('th.ui-dt-csort .ui-dt-sorticon').removeClass('ui-sort-a ui-sort-d').addClass('ui-sort-n');
+    }
+    WebUI.dataTableClientSortReset = dataTableClientSortReset;
+    function dataTableClientSortOn(id, thId) {
+        var tbl = $('#' + id);
+        var state = tbl.data('uiCsort');
+        if (!state)
+            return;
+        if (state.col === thId) {
+            state.desc = !state.desc;
+        }
+        else {
+            state.col = thId;
+            state.desc = false;
+        }
+        tbl.find('thead .ui-dt-sorticon').removeClass('ui-sort-a ui-sort-d').addClass('ui-sort-n');
+        $('#' + thId).find('.ui-dt-sorticon').removeClass('ui-sort-n').addClass(state.desc ? 'ui-sort-d' : 'ui-sort-a');
+        dataTableClientApply(id);
+    }
+    function dataTableClientApply(id) {
+        var state = $('#' + id).data('uiCsort');
+        if (!state)
+            return;
+        if (state.data && dataTableClientValid(state.data)) {
+            dataTableClientRender(state);
+            return;
+        }
+        WebUI.jsoncall(state.compId, {}, function (data) {
+            if ($('#' + id).data('uiCsort') !== state)
+                return;
+            state.data = data;
+            state.text = null;
+            dataTableClientRender(state);
+        });
+    }
+    function dataTableClientValid(data) {
+        var count = 0;
+        var body = null;
+        for (var i = 0; i < data.rows.length; i++) {
+            var ids = data.rows[i];
+            for (var j = 0; j < ids.length; j++) {
+                var tr = document.getElementById(ids[j]);
+                if (!tr)
+                    return false;
+                body = tr.parentNode;
+                count++;
+            }
+        }
+        return body == null || $(body).children('tr').length == count;
+    }
+    function dataTableClientRender(state) {
+        var rows = state.data.rows;
+        if (rows.length == 0)
+            return;
+        var order = [];
+        for (var i = 0; i < rows.length; i++)
+            order.push(i);
+        var keys = state.col ? state.data.cols[state.col] : null;
+        if (keys) {
+            var desc_1 = state.desc;
+            order.sort(function (a, b) {
+                var r = dataTableClientCompare(keys[a], keys[b]);
+                if (r == 0)
+                    return a - b;
+                return desc_1 ? -r : r;
+            });
+        }
+        if (state.filter && !state.text) {
+            state.text = [];
+            for (var i = 0; i < rows.length; i++) {
+                var s = '';
+                for (var j = 0; j < rows[i].length; j++)
+                    s += document.getElementById(rows[i][j]).textContent + ' ';
+                state.text.push(s.toLowerCase());
+            }
+        }
+        var body = document.getElementById(rows[0][0]).parentNode;
+        var frag = document.createDocumentFragment();
+        var visible = 0;
+        for (var k = 0; k < order.length; k++) {
+            var ix = order[k];
+            var show = !state.filter || state.text[ix].indexOf(state.filter) >= 0;
+            for (var j = 0; j < rows[ix].length; j++) {
+                var tr = document.getElementById(rows[ix][j]);
+                tr.style.display = show ? '' : 'none';
+                if (show)
+                    $(tr).toggleClass('ui-even', (visible & 1) == 0).toggleClass('ui-odd', (visible & 1) != 0);
+                frag.appendChild(tr);
+            }
+            if (show)
+                visible++;
+        }
+        body.appendChild(frag);
+    }
+    function dataTableClientCompare(a, b) {
+        if (a === b)
+            return 0;
+        if (a === null || a === undefined)
+            return -1;
+        if (b === null || b === undefined)
+            return 1;
+        if (typeof a === 'string' && typeof b === 'string')
+            return a.localeCompare(b);
+        return a < b ? -1 : a > b ? 1 : 0;
+    }
     var _ckEditorMap = {};
     function registerCkEditorId(id, ckeInstance) {
         _ckEditorMap[id] = [ckeInstance, null];
@@ -2138,6 +2327,18 @@ var WebUI;
                 return;
             }
         }
+        var chunkSize = Number(tgt.getAttribute('fuchunk'));
+        if (chunkSize > 0 && tgt.files && tgt.files[0] && tgt.files[0].slice) {
+            var chunkForm = tgt.parentNode;
+            var busy = document.createElement('img');
+            busy.border = "0";
+            busy.src = window.DomUIProgressURL;
+            chunkForm.parentNode.insertBefore(busy, chunkForm);
+            chunkForm.style.display = 'none';
+            WebUI.blockUI();
+            fileUploadChunked(tgt.getAttribute('fuchunkurl'), tgt.files[0], chunkSize);
+            return;
+        }
         var iframe = document.getElementById('webuiif');
         if (iframe) {
             iframe.parentNode.removeChild(iframe);
@@ -2174,6 +2375,49 @@ var WebUI;
         WebUI.blockUI();
     }
     WebUI.fileUploadChange = fileUploadChange;
+    function fileUploadChunked(url, file, chunkSize) {
+        var id = new Date().getTime().toString(36) + Math.random().toString(36).substring(2);
+        var offset = 0;
+        var failures = 0;
+        function send(resume) {
+            var xhr = new XMLHttpRequest();
+            xhr.open("POST", url + "&upid=" + id + "&offset=" + (resume ? -1 : offset) + "&total=" + file.size
+                + "&name=" + encodeURIComponent(file.name) + "&ctype=" + encodeURIComponent(file.type || ""), true);
+            xhr.setRequestHeader("Content-Type", "application/octet-stream");
+            xhr.onload = function () {
+                if (xhr.status == 200) {
+                    var ct = xhr.getResponseHeader("Content-Type") || "";
+                    if (ct.indexOf("xml") != -1) {
+                        updateUpload(xhr.responseXML);
+                        return;
+                    }
+                    failures = 0;
+                    offset = Number(xhr.responseText);
+                    send(false);
+                }
+                else if (xhr.status >= 500) {
+                    retry();
+                }
+                else {
+                    WebUI.unblockUI();
+                    alert(WebUI._T.buplError + " (" + xhr.status + ")");
+                }
+            };
+            xhr.onerror = retry;
+            xhr.send(resume ? null : file.slice(offset, Math.min(offset + chunkSize, file.size)));
+        }
+        function retry() {
+            if (++failures > 10) {
+                WebUI.unblockUI();
+                alert(WebUI._T.buplError);
+                return;
+            }
+            setTimeout(function () {
+                send(true);
+            }, 1000 * failures);
+        }
+        send(false);
+    }
     function ieUpdateUpload(e) {
         var iframe = document.getElementById('webuiif');
         var xml;
@@ -2795,9 +3039,16 @@ var WebUI;
         }
     }
     WebUI.hideWaiting = hideWaiting;
+    var _lookupTypingBusy = {};
+    var _lookupTypingPending = {};
     function lookupTyping(id) {
         var lookupField = document.getElementById(id);
         if (lookupField) {
+            if (_lookupTypingBusy[id]) {
+                _lookupTypingPending[id] = true;
+                return;
+            }
+            _lookupTypingBusy[id] = true;
             var fields = {};
             WebUI.getInputFields(fields);
             fields["webuia"] = "lookupTyping";
@@ -2830,6 +3081,11 @@ var WebUI;
                     }
                     showLookupTypingPopupIfStillFocusedAndFixZIndex(id);
                     WebUI.doCustomUpdates();
+                    delete _lookupTypingBusy[id];
+                    if (_lookupTypingPending[id]) {
+                        delete _lookupTypingPending[id];
+                        lookupTyping(id);
+                    }
                 },
                 success: WebUI.handleResponse,
                 error: WebUI.handleError
@@ -3760,6 +4016,12 @@ var WebUI;
             window.location.href = window.location.href;
             return;
         }
+        if (typeof xml == 'string' && xml.charAt(0) == '{')
+            xml = JSON.parse(xml);
+        if (xml && xml.delta) {
+            executeJsonDelta(xml.delta);
+            return;
+        }
         if (typeof xml == 'string')
             xml = convert(xml);
         if (!xml || !xml.documentElement) {
@@ -3830,6 +4092,65 @@ var WebUI;
         if (param.postProcess)
             postProcess();
     }
+    function executeJsonDelta(commands) {
+        var postProcessNeeded = false;
+        for (var i = 0; i < commands.length; i++) {
+            var c = commands[i];
+            var cmd = c[0];
+            if (cmd == 'e') {
+                try {
+                    $.globalEval(c[1]);
+                }
+                catch (ex) {
+                    alert('eval failed: ' + ex + ", js=" + c[1]);
+                    throw ex;
+                }
+                continue;
+            }
+            var q = '#' + c[1];
+            var jq = $(q);
+            if (!jq[0]) {
+                log('No matching targets for selector: ', q);
+                continue;
+            }
+            if (cmd == 'r') {
+                jq.remove();
+            }
+            else if (cmd == 'a') {
+                changeTagAttributes(q, c[2]);
+            }
+            else {
+                var els = parseContent(c[2]);
+                if (els.length > 0)
+                    postProcessNeeded = true;
+                if (cmd == 'p')
+                    jq.prepend(els);
+                else if (cmd == 'f')
+                    jq.after(els);
+                else if (cmd == 'c')
+                    jq.replaceContent(els);
+                else
+                    log('Unknown delta command ', cmd);
+            }
+        }
+        if (postProcessNeeded)
+            postProcess();
+    }
+    function parseContent(xhtml) {
+        var els = [];
+        if (!xhtml)
+            return els;
+        var doc = convert('<c>' + xhtml + '</c>');
+        if (!doc)
+            return els;
+        var nodes = doc.documentElement.childNodes;
+        for (var j = 0; j < nodes.length; j++) {
+            var n = createNode(nodes[j], 'div');
+            if (n)
+                els.push(n);
+        }
+        return els;
+    }
     function executeNode(cmdNode, param) {
         var cmd = cmdNode.tagName;
         if (cmd == "parsererror") {
@@ -3908,15 +4229,22 @@ var WebUI;
         return true;
     }
     function executeChangeTagAttributes(cmdNode, queryString) {
+        var pairs = [];
+        for (var ai = 0; ai < cmdNode.attributes.length; ai++) {
+            var a = cmdNode.attributes[ai];
+            pairs.push(a.name, a.value);
+        }
+        changeTagAttributes(queryString, pairs);
+    }
+    function changeTagAttributes(queryString, pairs) {
         try {
             var dest = $(queryString)[0];
             var names = [];
             for (var ai = 0; ai < dest.attributes.length; ai++) {
                 names[ai] = $.trim(dest.attributes[ai].name);
             }
-            var src = cmdNode;
-            for (var ai = 0, attr = ''; ai < src.attributes.length; ai++) {
-                var a = src.attributes[ai], n = $.trim(a.name), v_1 = $.trim(a.value);
+            for (var ai = 0; ai < pairs.length; ai += 2) {
+                var n = $.trim(pairs[ai]), v_1 = $.trim(pairs[ai + 1]);
                 if (n == 'select' || n.substring(0, 2) == 'on')
                     continue;
                 if (n.substring(0, 6) == 'domjs_') {
@@ -447,12 +447,72 @@ namespace WebUI {
 	}
 
 	export function cancelPolling(): void {
+		cancelPushWait();
 		if(!_pollActive)
 			return;
 		clearTimeout(_pollTimer);
 		_pollActive = false;
 	}
 
+	/** *************** Server push ************* */
+	/**
+	 * The outstanding push wait request, if any.
+	 */
+	let _pushRequest: any = null;
+
+	/**
+	 * Set when the server cannot hold wait requests; we then use polling only.
+	 */
+	let _pushDisabled = false;
+
+	/**
+	 * Instead of polling, send a request that the server holds until there are changes
+	 * for this page. When it returns we poll once to get the changes. If the server cannot
+	 * push, or the wait fails, we fall back to normal polling.
+	 */
+	export function startPushWait(interval: number): void {
+		if(_pushDisabled) {
+			startPolling(interval);
+			return;
+		}
+		_pollInterval = interval;
+		if(_pushRequest)
+			return;
+
+		let fields = {};
+		fields["$pt"] = (window as any).DomUIpageTag;
+		fields["$cid"] = (window as any).DomUICID;
+		_pushRequest = $.ajax({
+			url: (window as any).DomUIappURL + "to.etc.domui.parts.PushWaitPart.part",
+			dataType: "text",
+			data: fields,
+			cache: false,
+			global: false,
+			success: function(data) {
+				_pushRequest = null;
+				if(data == "nopush") {
+					_pushDisabled = true;
+					startPolling(_pollInterval);
+				} else {
+					poll();
+				}
+			},
+			error: function(request, status) {
+				_pushRequest = null;
+				if(status !== "abort")
+					startPolling(_pollInterval);
+			}
+		});
+	}
+
+	function cancelPushWait(): void {
+		let rq = _pushRequest;
+		if(!rq)
+			return;
+		_pushRequest = null;
+		rq.abort();
+	}
+
 	export function poll(): void {
 		cancelPolling();
 
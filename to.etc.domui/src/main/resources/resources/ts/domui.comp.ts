@@ -167,6 +167,173 @@ namespace WebUI {
 		console.log("Change event", tbl);
 	}
 
+	/*-------------- DataTable client side sort and filter --------------------*/
+	/** The filter inputs whose input handler is bound, by input id. */
+	let _clientFilterBound = {};
+
+	/**
+	 * Called when a DataTable that sorts in the browser is rendered, and again every time the server
+	 * changed its rows. The first call binds the sortable headers (th.ui-dt-csort) and the filter
+	 * input; later calls reapply the current sort and filter to the new rows.
+	 */
+	export function dataTableClientSort(id: string, compId: string, filterId: string): void {
+		let tbl = $('#' + id);
+		let state = tbl.data('uiCsort');
+		if(state) {
+			if(state.col || state.filter)
+				dataTableClientApply(id);
+			return;
+		}
+		state = { compId: compId, data: null, text: null, col: null, desc: false, filter: '' };
+		tbl.data('uiCsort', state);
+		tbl.on('click', 'th.ui-dt-csort', function() {
+			dataTableClientSortOn(id, this.id);
+		});
+		if(filterId) {
+			let selector = 'input#' + filterId + ', #' + filterId + ' input';
+			state.filter = String($(selector).val() || '').toLowerCase();
+			if(!_clientFilterBound[filterId]) {
+				_clientFilterBound[filterId] = true;
+				$(document).on('input', selector, function(evt) {
+					let st = $('#' + id).data('uiCsort');
+					if(!st)
+						return;
+					st.filter = String($(evt.target).val() || '').toLowerCase();
+					dataTableClientApply(id);
+				});
+			}
+			if(state.filter)
+				dataTableClientApply(id);
+		}
+	}
+
+	/**
+	 * Called when the server sorted the table on a column that does not sort in the browser.
+	 */
+	export function dataTableClientSortReset(id: string): void {
+		let tbl = $('#' + id);
+		let state = tbl.data('uiCsort');
+		if(!state)
+			return;
+		state.col = null;
+		state.desc = false;
+		tbl.find('th.ui-dt-csort .ui-dt-sorticon').removeClass('ui-sort-a ui-sort-d').addClass('ui-sort-n');
+	}
+
+	function dataTableClientSortOn(id: string, thId: string): void {
+		let tbl = $('#' + id);
+		let state = tbl.data('uiCsort');
+		if(!state)
+			return;
+		if(state.col === thId) {
+			state.desc = !state.desc;
+		} else {
+			state.col = thId;
+			state.desc = false;
+		}
+		tbl.find('thead .ui-dt-sorticon').removeClass('ui-sort-a ui-sort-d').addClass('ui-sort-n');
+		$('#' + thId).find('.ui-dt-sorticon').removeClass('ui-sort-n').addClass(state.desc ? 'ui-sort-d' : 'ui-sort-a');
+		dataTableClientApply(id);
+	}
+
+	/**
+	 * Sort and filter the rows. The sort keys are fetched from the server only when the rows
+	 * on screen are not the ones they were fetched for.
+	 */
+	function dataTableClientApply(id: string): void {
+		let state = $('#' + id).data('uiCsort');
+		if(!state)
+			return;
+		if(state.data && dataTableClientValid(state.data)) {
+			dataTableClientRender(state);
+			return;
+		}
+		WebUI.jsoncall(state.compId, {}, function(data) {
+			if($('#' + id).data('uiCsort') !== state)
+				return;
+			state.data = data;
+			state.text = null;
+			dataTableClientRender(state);
+		});
+	}
+
+	function dataTableClientValid(data): boolean {
+		let count = 0;
+		let body = null;
+		for(let i = 0; i < data.rows.length; i++) {
+			let ids = data.rows[i];
+			for(let j = 0; j < ids.length; j++) {
+				let tr = document.getElementById(ids[j]);
+				if(!tr)
+					return false;
+				body = tr.parentNode;
+				count++;
+			}
+		}
+		return body == null || $(body).children('tr').length == count;
+	}
+
+	function dataTableClientRender(state): void {
+		let rows = state.data.rows;
+		if(rows.length == 0)
+			return;
+		let order = [];
+		for(let i = 0; i < rows.length; i++)
+			order.push(i);
+		let keys = state.col ? state.data.cols[state.col] : null;
+		if(keys) {
+			let desc = state.desc;
+			order.sort(function(a, b) {
+				let r = dataTableClientCompare(keys[a], keys[b]);
+				if(r == 0)
+					return a - b;						// Keep the model order for equal keys
+				return desc ? -r : r;
+			});
+		}
+
+		//-- The lowercased text of each row, for filtering
+		if(state.filter && !state.text) {
+			state.text = [];
+			for(let i = 0; i < rows.length; i++) {
+				let s = '';
+				for(let j = 0; j < rows[i].length; j++)
+					s += document.getElementById(rows[i][j]).textContent + ' ';
+				state.text.push(s.toLowerCase());
+			}
+		}
+
+		//-- Move all rows in order into a fragment, then put them back at once.
+		let body = document.getElementById(rows[0][0]).parentNode;
+		let frag = document.createDocumentFragment();
+		let visible = 0;
+		for(let k = 0; k < order.length; k++) {
+			let ix = order[k];
+			let show = !state.filter || state.text[ix].indexOf(state.filter) >= 0;
+			for(let j = 0; j < rows[ix].length; j++) {
+				let tr = document.getElementById(rows[ix][j]);
+				tr.style.display = show ? '' : 'none';
+				if(show)
+					$(tr).toggleClass('ui-even', (visible & 1) == 0).toggleClass('ui-odd', (visible & 1) != 0);
+				frag.appendChild(tr);
+			}
+			if(show)
+				visible++;
+		}
+		body.appendChild(frag);
+	}
+
+	function dataTableClientCompare(a, b): number {
+		if(a === b)
+			return 0;
+		if(a === null || a === undefined)
+			return -1;
+		if(b === null || b === undefined)
+			return 1;
+		if(typeof a === 'string' && typeof b === 'string')
+			return a.localeCompare(b);
+		return a < b ? -1 : a > b ? 1 : 0;
+	}
+
 	// CK editor support, map of key (id of editor) value (pair of [editor instance, assigned resize function])
 	let _ckEditorMap = {};
 
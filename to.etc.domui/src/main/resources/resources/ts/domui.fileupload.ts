@@ -58,6 +58,20 @@ namespace WebUI {
 			}
 		}
 
+		// -- Upload in chunks when the control asks for it and the browser can slice files
+		var chunkSize = Number(tgt.getAttribute('fuchunk'));
+		if(chunkSize > 0 && tgt.files && tgt.files[0] && tgt.files[0].slice) {
+			var chunkForm = tgt.parentNode;
+			var busy = document.createElement('img');
+			busy.border = "0";
+			busy.src = (window as any).DomUIProgressURL;
+			chunkForm.parentNode.insertBefore(busy, chunkForm);
+			chunkForm.style.display = 'none';
+			WebUI.blockUI();
+			fileUploadChunked(tgt.getAttribute('fuchunkurl'), tgt.files[0], chunkSize);
+			return;
+		}
+
 		// -- Step 2: create or locate an iframe to handle the upload;
 		var iframe = document.getElementById('webuiif') as HTMLIFrameElement;
 		if (iframe) {
@@ -100,6 +114,56 @@ namespace WebUI {
 		WebUI.blockUI();									// since 20160226: block UI during upload
 	}
 
+	/**
+	 * Upload a file in chunks to the ChunkedUploadPart. Every reply that is not the page delta is the
+	 * #of bytes the server has received; the next chunk starts there. After a failure the upload asks
+	 * the server for that offset and resumes from it, waiting longer after every failure.
+	 */
+	function fileUploadChunked(url: string, file: any, chunkSize: number): void {
+		var id = new Date().getTime().toString(36) + Math.random().toString(36).substring(2);
+		var offset = 0;
+		var failures = 0;
+
+		function send(resume: boolean): void {
+			var xhr = new XMLHttpRequest();
+			xhr.open("POST", url + "&upid=" + id + "&offset=" + (resume ? -1 : offset) + "&total=" + file.size
+				+ "&name=" + encodeURIComponent(file.name) + "&ctype=" + encodeURIComponent(file.type || ""), true);
+			xhr.setRequestHeader("Content-Type", "application/octet-stream");
+			xhr.onload = function() {
+				if(xhr.status == 200) {
+					var ct = xhr.getResponseHeader("Content-Type") || "";
+					if(ct.indexOf("xml") != -1) {
+						updateUpload(xhr.responseXML);
+						return;
+					}
+					failures = 0;
+					offset = Number(xhr.responseText);
+					send(false);
+				} else if(xhr.status >= 500) {
+					retry();
+				} else {
+					WebUI.unblockUI();
+					alert(WebUI._T.buplError + " (" + xhr.status + ")");
+				}
+			};
+			xhr.onerror = retry;
+			xhr.send(resume ? null : file.slice(offset, Math.min(offset + chunkSize, file.size)));
+		}
+
+		function retry(): void {
+			if(++failures > 10) {
+				WebUI.unblockUI();
+				alert(WebUI._T.buplError);
+				return;
+			}
+			setTimeout(function() {
+				send(true);
+			}, 1000 * failures);
+		}
+
+		send(false);
+	}
+
 	/**
 	 * Called for ie upload garbage only, this tries to decode the utter devastating mess that
 	 * ie makes from xml uploads into an iframe in ie8+. Sigh. The main problem with IE is that
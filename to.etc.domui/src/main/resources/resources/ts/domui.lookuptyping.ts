@@ -317,10 +317,26 @@ namespace WebUI {
 		}
 	}
 
+	/** The ids of the lookup fields that have a lookupTyping request running. */
+	let _lookupTypingBusy = {};
+
+	/** The ids of the lookup fields that were typed in while their request was running. */
+	let _lookupTypingPending = {};
+
+	/**
+	 * Only one lookupTyping request per field runs at the same time. Keystrokes arriving while it
+	 * runs supersede each other: when the request completes a single new one is sent with the
+	 * latest text, so the server never searches for texts that were already typed over.
+	 */
 	export function lookupTyping(id : string) : void {
 		let lookupField = document.getElementById(id);
 		//check for existence, since it is delayed action component can be removed when action is executed.
 		if (lookupField){
+			if(_lookupTypingBusy[id]) {
+				_lookupTypingPending[id] = true;
+				return;
+			}
+			_lookupTypingBusy[id] = true;
 			// FIXME reuse domui-ajax call handler
 
 			// Collect all input, then create input.
@@ -363,6 +379,12 @@ namespace WebUI {
 					//handle received lookupTyping component content
 					showLookupTypingPopupIfStillFocusedAndFixZIndex(id);
 					WebUI.doCustomUpdates();
+
+					delete _lookupTypingBusy[id];
+					if(_lookupTypingPending[id]) {
+						delete _lookupTypingPending[id];
+						lookupTyping(id);
+					}
 				},
 
 				success :WebUI.handleResponse,
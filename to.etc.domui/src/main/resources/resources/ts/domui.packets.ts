@@ -72,6 +72,14 @@
 			return;
 		}
 
+		if(typeof xml == 'string' && xml.charAt(0) == '{')
+			xml = JSON.parse(xml);
+		if(xml && xml.delta) {
+			//-- Compact JSON delta, see JsonDeltaCommandWriter.
+			executeJsonDelta(xml.delta);
+			return;
+		}
+
 		if(typeof xml == 'string')
 			xml = convert(xml);
 		if(!xml || !xml.documentElement) {
@@ -153,6 +161,69 @@
 			postProcess();
 	}
 
+	/**
+	 * Executes a JSON delta: an array of commands, each an array starting with the command code. The HTML
+	 * content of adds and replaces is XHTML which is converted to nodes in the same way as the XML delta does.
+	 */
+	function executeJsonDelta(commands: any[]) : void {
+		let postProcessNeeded = false;
+		for(let i = 0; i < commands.length; i++) {
+			const c = commands[i];
+			const cmd = c[0];
+			if(cmd == 'e') {
+				try {
+					$.globalEval(c[1]);
+				} catch(ex) {
+					alert('eval failed: ' + ex + ", js=" + c[1]);
+					throw ex;
+				}
+				continue;
+			}
+
+			const q = '#' + c[1];
+			const jq = $(q);
+			if(!jq[0]) {
+				log('No matching targets for selector: ', q);
+				continue;
+			}
+			if(cmd == 'r') {
+				jq.remove();
+			} else if(cmd == 'a') {
+				changeTagAttributes(q, c[2]);
+			} else {
+				const els = parseContent(c[2]);
+				if(els.length > 0)
+					postProcessNeeded = true;
+				if(cmd == 'p')
+					jq.prepend(els);
+				else if(cmd == 'f')
+					jq.after(els);
+				else if(cmd == 'c')
+					jq.replaceContent(els);
+				else
+					log('Unknown delta command ', cmd);
+			}
+		}
+		if(postProcessNeeded)
+			postProcess();
+	}
+
+	function parseContent(xhtml: string) : any[] {
+		const els = [];
+		if(!xhtml)
+			return els;
+		const doc = convert('<c>' + xhtml + '</c>');
+		if(!doc)
+			return els;
+		const nodes = doc.documentElement.childNodes;
+		for(let j = 0; j < nodes.length; j++) {
+			const n = createNode(nodes[j], 'div');
+			if(n)
+				els.push(n);
+		}
+		return els;
+	}
+
 	function executeNode(cmdNode: any, param: any) : boolean {
 		let cmd = cmdNode.tagName;
 		if(cmd == "parsererror") { // Chrome
@@ -248,6 +319,18 @@
 	}
 
 	function executeChangeTagAttributes(cmdNode: any, queryString: string) : void {
+		const pairs = [];
+		for(let ai = 0; ai < cmdNode.attributes.length; ai++) {
+			const a = cmdNode.attributes[ai];
+			pairs.push(a.name, a.value);
+		}
+		changeTagAttributes(queryString, pairs);
+	}
+
+	/**
+	 * Changes the attributes of the node, passed as an array of name, value pairs.
+	 */
+	function changeTagAttributes(queryString: string, pairs: any[]) : void {
 		try {
 			// -- Copy attributes on this tag to the target tags
 			const dest = $(queryString)[0]; 							// Should be 1 element
@@ -257,9 +340,8 @@
 				names[ai] = $.trim(dest.attributes[ai].name);
 			}
 
-			const src = cmdNode;
-			for(let ai = 0, attr = ''; ai < src.attributes.length; ai++) {
-				const a = src.attributes[ai], n = $.trim(a.name), v = $.trim(a.value);
+			for(let ai = 0; ai < pairs.length; ai += 2) {
+				const n = $.trim(pairs[ai]), v = $.trim(pairs[ai + 1]);
 				if(n == 'select' || n.substring(0, 2) == 'on')
 					continue;
 				if(n.substring(0, 6) == 'domjs_') {
@@ -0,0 +1,172 @@
+package to.etc.domui.ajax;
+
+import org.eclipse.jdt.annotation.NonNull;
+import to.etc.domui.annotations.AjaxHandler;
+import to.etc.domui.annotations.AjaxMethod;
+import to.etc.domui.annotations.AjaxParam;
+import to.etc.util.StringTool;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the throughput of RPC method calls through the prepared call plan of {@link RpcMethodDefinition},
+ * and compares it with binding the parameters and calling the method by reflection on every call. The
+ * handler does almost nothing, so this measures the cost of the call mechanism itself. It lives in
+ * the test sources so that its handler class is not shipped.
+ *
+ * <pre>
+ * java to.etc.domui.ajax.RpcCallThroughput [-threads 4] [-seconds 5]
+ * </pre>
+ *
+ * Created on 19-10-26.
+ */
+final public class RpcCallThroughput {
+	private int m_threads = Runtime.getRuntime().availableProcessors();
+
+	private int m_seconds = 5;
+
+	@AjaxHandler
+	static public class Handler {
+		@AjaxMethod
+		public int add(@AjaxParam("a") Integer a, @AjaxParam("b") Integer b) {
+			return a.intValue() + b.intValue();
+		}
+
+		@AjaxMethod
+		static public String concat(@AjaxParam("a") Integer a, @AjaxParam("name") String name) {
+			return name + a;
+		}
+	}
+
+	/**
+	 * Returns a fixed value for every parameter name.
+	 */
+	static private final class FixedParameterProvider implements IParameterProvider {
+		static private final Integer ONE = Integer.valueOf(1);
+
+		static private final Integer TWO = Integer.valueOf(2);
+
+		@Override
+		public Object findParameterValue(Class< ? > parameterType, Annotation[] annotations, int paramIndex, AjaxParam apm) throws Exception {
+			switch(apm.value()) {
+				default:
+					return NO_VALUE;
+				case "a":
+					return ONE;
+				case "b":
+					return TWO;
+				case "name":
+					return "name";
+			}
+		}
+	}
+
+	private interface ICall {
+		Object call() throws Exception;
+	}
+
+	private RpcCallThroughput() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		RpcCallThroughput t = new RpcCallThroughput();
+		for(int i = 0; i < args.length; i++) {
+			String a = args[i];
+			if("-threads".equals(a) && i + 1 < args.length) {
+				t.m_threads = Integer.parseInt(args[++i]);
+			} else if("-seconds".equals(a) && i + 1 < args.length) {
+				t.m_seconds = Integer.parseInt(args[++i]);
+			} else {
+				System.err.println("Usage: RpcCallThroughput [-threads count] [-seconds duration]");
+				System.exit(10);
+			}
+		}
+		t.run();
+	}
+
+	private void run() throws Exception {
+		RpcClassDefinition cd = new RpcClassDefinition(Handler.class);
+		cd.initialize();
+		RpcMethodDefinition add = cd.getMethod("add");
+		RpcMethodDefinition concat = cd.getMethod("concat");
+		Handler handler = new Handler();
+		IParameterProvider pv = new FixedParameterProvider();
+
+		for(int threads : new int[]{1, m_threads}) {
+			measure("plan, instance, " + threads + " thread(s)", threads, () -> add.invoke(handler, pv, null));
+			measure("reflection, instance, " + threads + " thread(s)", threads, () -> invokeReflective(add.getMethod(), handler, pv));
+			measure("plan, static, " + threads + " thread(s)", threads, () -> concat.invoke(null, pv, null));
+			measure("reflection, static, " + threads + " thread(s)", threads, () -> invokeReflective(concat.getMethod(), null, pv));
+			if(threads == m_threads)
+				break;
+		}
+	}
+
+	/**
+	 * Binds the parameters by looking at the method's annotations and calls it by reflection, as
+	 * was done on every call before the call plan was prepared.
+	 */
+	static private Object invokeReflective(@NonNull Method m, Object handler, @NonNull IParameterProvider pv) throws Exception {
+		Class< ? >[] formals = m.getParameterTypes();
+		Annotation[][] annar = m.getParameterAnnotations();
+		Object[] args = new Object[formals.length];
+		for(int i = 0; i < formals.length; i++) {
+			AjaxParam apm = RpcCallHandler.findAnnotation(annar[i], AjaxParam.class);
+			Object value = pv.findParameterValue(formals[i], annar[i], 0, apm);
+			if(value == IParameterProvider.NO_VALUE)
+				throw new RpcException("Parameter " + i + " of method " + m + " has no value.");
+			args[i] = value;
+		}
+		return m.invoke(handler, args);
+	}
+
+	private void measure(@NonNull String name, int threads, @NonNull ICall call) throws Exception {
+		//-- Warm up, so that the JIT has compiled the call path.
+		runFor(threads, call, Math.max(1, m_seconds / 2));
+		long ts = System.nanoTime();
+		long count = runFor(threads, call, m_seconds);
+		ts = System.nanoTime() - ts;
+		long perSecond = count * 1000_000_000L / ts;
+		System.out.println(name + ": " + count + " calls in " + StringTool.strNanoTime(ts) + ", " + perSecond + " calls/sec, "
+			+ StringTool.strNanoTime(ts * threads / Math.max(1, count)) + " per call");
+	}
+
+	static private long runFor(int threads, @NonNull ICall call, int seconds) throws Exception {
+		AtomicBoolean stop = new AtomicBoolean();
+		long[] counts = new long[threads];
+		Exception[] errors = new Exception[threads];
+		List<Thread> list = new ArrayList<>();
+		for(int i = 0; i < threads; i++) {
+			int index = i;
+			Thread t = new Thread(() -> {
+				long n = 0;
+				try {
+					while(!stop.get()) {
+						for(int j = 0; j < 1000; j++)
+							call.call();
+						n += 1000;
+					}
+				} catch(Exception x) {
+					errors[index] = x;
+				}
+				counts[index] = n;
+			}, "rpc" + i);
+			list.add(t);
+			t.start();
+		}
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		long total = 0;
+		for(int i = 0; i < threads; i++) {
+			list.get(i).join();
+			if(null != errors[i])
+				throw errors[i];
+			total += counts[i];
+		}
+		return total;
+	}
+}
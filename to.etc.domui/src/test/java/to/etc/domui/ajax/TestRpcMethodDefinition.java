@@ -0,0 +1,136 @@
+package to.etc.domui.ajax;
+
+import org.junit.Assert;
+import org.junit.Test;
+import to.etc.domui.annotations.AjaxHandler;
+import to.etc.domui.annotations.AjaxMethod;
+import to.etc.domui.annotations.AjaxParam;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the call plan of {@link RpcMethodDefinition}, with the parameters coming from a map.
+ *
+ * Created on 19-10-26.
+ */
+public class TestRpcMethodDefinition {
+	@AjaxHandler
+	static public class Handler {
+		@AjaxMethod
+		public int add(@AjaxParam("a") Integer a, @AjaxParam("b") Integer b) {
+			return a.intValue() + b.intValue();
+		}
+
+		@AjaxMethod
+		static public String concat(@AjaxParam("name") String name, @AjaxParam("a") Integer a) {
+			return name + a;
+		}
+
+		@AjaxMethod
+		public void render(Writer w, @AjaxParam("name") String name) throws Exception {
+			w.write("hello " + name);
+		}
+
+		@AjaxMethod
+		public String fail(@AjaxParam("name") String name) {
+			throw new IllegalArgumentException("bad " + name);
+		}
+	}
+
+	/**
+	 * A handler that is not public, so its methods are called by reflection.
+	 */
+	@AjaxHandler
+	static class HiddenHandler {
+		@AjaxMethod
+		public String fail(@AjaxParam("name") String name) {
+			throw new IllegalArgumentException("hidden " + name);
+		}
+	}
+
+	static private final class MapParameterProvider implements IParameterProvider {
+		private final Map<String, Object> m_values = new HashMap<>();
+
+		MapParameterProvider set(String name, Object value) {
+			m_values.put(name, value);
+			return this;
+		}
+
+		@Override
+		public Object findParameterValue(Class< ? > parameterType, Annotation[] annotations, int paramIndex, AjaxParam apm) throws Exception {
+			return m_values.containsKey(apm.value()) ? m_values.get(apm.value()) : NO_VALUE;
+		}
+	}
+
+	static private RpcMethodDefinition method(Class< ? > handlerClass, String name) throws Exception {
+		RpcClassDefinition cd = new RpcClassDefinition(handlerClass);
+		cd.initialize();
+		return cd.getMethod(name);
+	}
+
+	@Test
+	public void testInstanceMethod() throws Exception {
+		RpcMethodDefinition md = method(Handler.class, "add");
+		Assert.assertFalse(md.isStatic());
+		Assert.assertNull(md.getOutputClass());
+		Object res = md.invoke(new Handler(), new MapParameterProvider().set("a", 3).set("b", 4), null);
+		Assert.assertEquals(Integer.valueOf(7), res);
+	}
+
+	@Test
+	public void testStaticMethod() throws Exception {
+		RpcMethodDefinition md = method(Handler.class, "concat");
+		Assert.assertTrue(md.isStatic());
+		Object res = md.invoke(null, new MapParameterProvider().set("a", 12).set("name", "x"), null);
+		Assert.assertEquals("x12", res);
+	}
+
+	@Test
+	public void testOutputParameter() throws Exception {
+		RpcMethodDefinition md = method(Handler.class, "render");
+		Assert.assertEquals(Writer.class, md.getOutputClass());
+		StringWriter sw = new StringWriter();
+		Assert.assertNull(md.invoke(new Handler(), new MapParameterProvider().set("name", "world"), sw));
+		Assert.assertEquals("hello world", sw.toString());
+	}
+
+	@Test
+	public void testMissingValue() throws Exception {
+		RpcMethodDefinition md = method(Handler.class, "add");
+		try {
+			md.invoke(new Handler(), new MapParameterProvider().set("a", 3), null);
+			Assert.fail("A missing parameter must fail the call");
+		} catch(RpcException x) {
+			Assert.assertTrue(x.getMessage(), x.getMessage().startsWith("Parameter 1 of method"));
+			Assert.assertTrue(x.getMessage(), x.getMessage().endsWith("has no value."));
+		}
+	}
+
+	@Test
+	public void testMethodException() throws Exception {
+		RpcMethodDefinition md = method(Handler.class, "fail");
+		try {
+			md.invoke(new Handler(), new MapParameterProvider().set("name", "call"), null);
+			Assert.fail("The exception of the method must be passed on");
+		} catch(RpcException x) {
+			Assert.assertTrue(x.getCause() instanceof IllegalArgumentException);
+			Assert.assertEquals("bad call", x.getMessage());
+		}
+	}
+
+	@Test
+	public void testMethodExceptionByReflection() throws Exception {
+		RpcMethodDefinition md = method(HiddenHandler.class, "fail");
+		try {
+			md.invoke(new HiddenHandler(), new MapParameterProvider().set("name", "call"), null);
+			Assert.fail("The exception of the method must be passed on");
+		} catch(RpcException x) {
+			Assert.assertTrue(x.getCause() instanceof IllegalArgumentException);
+			Assert.assertEquals("hidden call", x.getMessage());
+		}
+	}
+}
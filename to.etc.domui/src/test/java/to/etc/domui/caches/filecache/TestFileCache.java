@@ -0,0 +1,135 @@
+package to.etc.domui.caches.filecache;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import to.etc.util.FileTool;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Created on 19-10-26.
+ */
+public class TestFileCache {
+	private File m_dir;
+
+	private FileCache m_cache;
+
+	@Before
+	public void setUp() throws Exception {
+		m_dir = Files.createTempDirectory("tfc").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		FileCache fc = m_cache;
+		if(null != fc)
+			fc.close();
+		FileTool.deleteDir(m_dir);
+	}
+
+	private FileCache open(long maxSize) throws Exception {
+		FileCache fc = m_cache;
+		if(null != fc)
+			fc.close();
+		fc = m_cache = new FileCache(m_dir, maxSize);
+		fc.initialize();
+		return fc;
+	}
+
+	static private void write(FileCache fc, String key, int size) throws Exception {
+		FileCacheRef ref = fc.getFile(key);
+		try {
+			Files.write(ref.getFile().toPath(), new byte[size]);
+		} finally {
+			ref.close();
+		}
+	}
+
+	@Test
+	public void testReopenRestoresIndex() throws Exception {
+		FileCache fc = open(1024 * 1024);
+		for(int i = 0; i < 5; i++)
+			write(fc, "img/" + i + ".data", 1000 + i);
+		Assert.assertEquals(5, fc.getFileCount());
+		Assert.assertEquals(5010, fc.getCurrentFileSize());
+
+		fc = open(1024 * 1024);
+		Assert.assertEquals(5, fc.getFileCount());
+		Assert.assertEquals(5010, fc.getCurrentFileSize());
+
+		//-- Changes after reopening are journaled too
+		write(fc, "img/0.data", 10);
+		FileCacheRef ref = fc.getFile("img/1.data");
+		ref.getFile().delete();
+		ref.close();
+		fc = open(1024 * 1024);
+		Assert.assertEquals(4, fc.getFileCount());
+		Assert.assertEquals(10 + 1002 + 1003 + 1004, fc.getCurrentFileSize());
+	}
+
+	@Test
+	public void testTruncatedJournalLineIsSkipped() throws Exception {
+		FileCache fc = open(1024 * 1024);
+		write(fc, "a.data", 100);
+		write(fc, "b.data", 200);
+		fc.close();
+		m_cache = null;
+
+		//-- Simulate a line that was only partly written when the server stopped
+		try(OutputStream os = new FileOutputStream(new File(m_dir, "journal.log"), true)) {
+			os.write("A\t5000\t15".getBytes(StandardCharsets.UTF_8));
+		}
+		fc = open(1024 * 1024);
+		Assert.assertEquals(2, fc.getFileCount());
+		Assert.assertEquals(300, fc.getCurrentFileSize());
+	}
+
+	@Test
+	public void testEvictionSkipsFilesInUse() throws Exception {
+		FileCache fc = open(5000);
+		write(fc, "first.data", 1000);
+		FileCacheRef inuse = fc.getFile("first.data");
+		try {
+			for(int i = 0; i < 5; i++)
+				write(fc, "next" + i + ".data", 1000);
+
+			//-- The reaper may already be running in the background; wait for it to finish
+			long end = System.currentTimeMillis() + 10_000;
+			while(fc.getCurrentFileSize() > 5000 && System.currentTimeMillis() < end) {
+				fc.reaper();
+				Thread.sleep(10);
+			}
+			Assert.assertTrue("Cache is at " + fc.getCurrentFileSize(), fc.getCurrentFileSize() <= 4500);
+			Assert.assertTrue("The file in use was evicted", inuse.getFile().exists());
+			Assert.assertFalse(fc.getFile("next0.data").getFile().exists());
+			Assert.assertEquals(2, fc.getEvictionCount());
+		} finally {
+			inuse.close();
+		}
+	}
+
+	@Test
+	public void testImportKeepsUnknownFiles() throws Exception {
+		File legacy = new File(m_dir, "retriever/123-abc.data");
+		legacy.getParentFile().mkdirs();
+		Files.write(legacy.toPath(), new byte[10]);
+		File other = new File(m_dir, "readme.txt");
+		Files.write(other.toPath(), new byte[10]);
+		File otherDir = new File(m_dir, "keep/notes.txt");
+		otherDir.getParentFile().mkdirs();
+		Files.write(otherDir.toPath(), new byte[10]);
+
+		FileCache fc = open(1024 * 1024);
+		Assert.assertFalse(legacy.exists());
+		Assert.assertFalse(legacy.getParentFile().exists());
+		Assert.assertTrue(other.exists());
+		Assert.assertTrue(otherDir.exists());
+		Assert.assertEquals(0, fc.getFileCount());
+	}
+}
@@ -0,0 +1,226 @@
+package to.etc.domui.injector;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.junit.Assert;
+import org.junit.Test;
+import to.etc.domui.component.meta.MetaManager;
+import to.etc.domui.dom.html.UrlPage;
+import to.etc.domui.state.IPageParameters;
+import to.etc.domui.state.PageParameters;
+import to.etc.domui.testsupport.TUtilDomUI;
+import to.etc.util.ClassUtil;
+import to.etc.webapp.query.QDataContext;
+import to.etc.webapp.query.QDataContextFactory;
+import to.etc.webapp.query.QEventListenerSet;
+import to.etc.webapp.query.QNotFoundException;
+import to.etc.webapp.query.QQueryExecutorRegistry;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created on 19-10-26.
+ */
+public class TestPageInjectionList {
+	static public class Item {
+		private Long m_id;
+
+		public Item() {
+		}
+
+		public Item(Long id) {
+			m_id = id;
+		}
+
+		public Long getId() {
+			return m_id;
+		}
+
+		public void setId(Long id) {
+			m_id = id;
+		}
+	}
+
+	/**
+	 * A page with two properties of the same entity type, and two other ones.
+	 */
+	static public class ItemPage extends UrlPage {
+		private Item m_first;
+
+		private Item m_second;
+
+		private String m_before;
+
+		private String m_between;
+
+		/** The items "in the database", by PK. */
+		final Map<Object, Item> m_db = new HashMap<>();
+
+		/** The data context calls, in order. */
+		final List<String> m_calls = new ArrayList<>();
+
+		public Item getFirst() {
+			return m_first;
+		}
+
+		public void setFirst(Item first) {
+			m_first = first;
+		}
+
+		public Item getSecond() {
+			return m_second;
+		}
+
+		public void setSecond(Item second) {
+			m_second = second;
+		}
+
+		public String getBefore() {
+			return m_before;
+		}
+
+		public void setBefore(String before) {
+			m_before = before;
+		}
+
+		public String getBetween() {
+			return m_between;
+		}
+
+		public void setBetween(String between) {
+			m_between = between;
+		}
+
+		@NonNull
+		@Override
+		public QDataContextFactory getSharedContextFactory(@NonNull String key) {
+			QDataContext dc = (QDataContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{QDataContext.class}, (proxy, method, args) -> {
+				m_calls.add(method.getName());
+				switch(method.getName()) {
+					case "find":
+						return m_db.get(args[1]);
+					case "query":
+						return new ArrayList<>(m_db.values());
+				}
+				throw new IllegalStateException("Unexpected call " + method);
+			});
+			return new QDataContextFactory() {
+				@NonNull
+				@Override
+				public QDataContext getDataContext() {
+					return dc;
+				}
+
+				@NonNull
+				@Override
+				public QEventListenerSet getEventListeners() {
+					throw new IllegalStateException();
+				}
+
+				@NonNull
+				@Override
+				public QQueryExecutorRegistry getQueryHandlerList() {
+					throw new IllegalStateException();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Injects nothing, but registers the order in which the injectors run.
+	 */
+	static private final class RecordingInjector extends PropertyInjector {
+		private final List<String> m_order;
+
+		RecordingInjector(String name, List<String> order) {
+			super(ClassUtil.findPropertyInfo(ItemPage.class, name));
+			m_order = order;
+		}
+
+		@Override
+		public void inject(@NonNull UrlPage page, @NonNull IPageParameters papa, Map<String, Object> attributeMap) {
+			m_order.add(getPropertyInfo().getName());
+		}
+	}
+
+	static private UrlFindEntityByPkInjector entity(String property, String parameter, boolean mandatory) {
+		return new UrlFindEntityByPkInjector(ClassUtil.findPropertyInfo(ItemPage.class, property), parameter, mandatory, Item.class, MetaManager.findPropertyMeta(Item.class, "id"));
+	}
+
+	/**
+	 * The entity group must be injected at the place of its first member, not after all others.
+	 */
+	@Test
+	public void testGroupKeepsPosition() throws Exception {
+		List<String> order = new ArrayList<>();
+		PageParameters pp = new PageParameters() {
+			@Override
+			public String getString(String name, String df) {
+				order.add(name);
+				return super.getString(name, df);
+			}
+		};
+		PageInjectionList pil = new PageInjectionList(ItemPage.class, Arrays.asList(
+			new RecordingInjector("before", order),
+			entity("first", "a", false),
+			new RecordingInjector("between", order),
+			entity("second", "b", false)
+		));
+		pil.inject(new ItemPage(), pp, new HashMap<>());
+		Assert.assertEquals(Arrays.asList("before", "a", "b", "between"), order);
+	}
+
+	/**
+	 * Two parameters for the same entity type, where the mandatory one does not exist: this must fail
+	 * like it did when every entity was loaded with its own find().
+	 */
+	@Test
+	public void testMissingMandatoryInGroup() throws Exception {
+		PageInjectionList pil = new PageInjectionList(ItemPage.class, Arrays.asList(
+			entity("first", "a", false),
+			entity("second", "b", true)
+		));
+		ItemPage page = new ItemPage();
+		page.m_db.put(Long.valueOf(1), new Item(Long.valueOf(1)));
+		try {
+			pil.inject(page, new PageParameters("a", "1", "b", "2"), new HashMap<>());
+			Assert.fail("The missing mandatory entity must throw QNotFoundException");
+		} catch(QNotFoundException x) {
+			//-- Expected
+		}
+		Assert.assertEquals("Both entities must be loaded with one query", Arrays.asList("query"), page.m_calls);
+		Assert.assertNull("Nothing may be injected when a mandatory entity is missing", page.getFirst());
+		Assert.assertNull(page.getSecond());
+	}
+
+	/**
+	 * A "NEW" parameter must not create and inject its entity when another mandatory one is missing.
+	 */
+	@Test
+	public void testNewNotInjectedWhenMandatoryMissing() throws Exception {
+		TUtilDomUI.getApplication();						// Injecting checks the value against the application's rules
+		PageInjectionList pil = new PageInjectionList(ItemPage.class, Arrays.asList(
+			entity("first", "a", false),
+			entity("second", "b", true)
+		));
+		ItemPage page = new ItemPage();
+		try {
+			pil.inject(page, new PageParameters("a", "NEW", "b", "2"), new HashMap<>());
+			Assert.fail("The missing mandatory entity must throw QNotFoundException");
+		} catch(QNotFoundException x) {
+			//-- Expected
+		}
+		Assert.assertNull("Nothing may be injected when a mandatory entity is missing", page.getFirst());
+
+		//-- When all are present the new one gets injected too
+		page.m_db.put(Long.valueOf(2), new Item(Long.valueOf(2)));
+		pil.inject(page, new PageParameters("a", "NEW", "b", "2"), new HashMap<>());
+		Assert.assertNotNull(page.getFirst());
+		Assert.assertNull(page.getFirst().getId());
+		Assert.assertEquals(Long.valueOf(2), page.getSecond().getId());
+	}
+}
@@ -0,0 +1,102 @@
+package to.etc.domui.state;
+
+import org.junit.Assert;
+import org.junit.Test;
+import to.etc.domui.dom.html.Div;
+import to.etc.domui.dom.html.Page;
+import to.etc.domui.dom.html.UrlPage;
+import to.etc.domui.server.DomApplication;
+import to.etc.domui.testsupport.TUtilDomUI;
+
+import java.util.List;
+
+/**
+ * Created on 19-10-26.
+ */
+public class TestPagePassivator {
+	static public class FirstPage extends UrlPage {
+		@Override
+		public void createContent() throws Exception {
+			add(new Div("first"));
+			add(new Div("page"));
+		}
+	}
+
+	static public class SecondPage extends UrlPage {
+		@Override
+		public void createContent() throws Exception {
+			add(new Div("second"));
+		}
+	}
+
+	@Test
+	public void testShelveSweepRestore() throws Exception {
+		DomApplication app = TUtilDomUI.getApplication();
+		app.setPagePassivation(60, 0);
+		AppSession ses = app.createSession();
+		app.internalRegisterSession(ses);
+		try {
+			WindowSession ws = ses.createWindowSession();
+			PageParameters pp = new PageParameters("id", "12");
+			Assert.assertTrue(ws.insertShelveEntry(0, FirstPage.class, pp));
+			Assert.assertTrue(ws.insertShelveEntry(0, SecondPage.class, new PageParameters()));
+
+			//-- Sweep: only the first page is passivated, the topmost one stays.
+			PagePassivator passivator = app.getPagePassivator();
+			passivator.sweep(System.currentTimeMillis() + 1000);
+			List<IShelvedEntry> stack = ws.getShelvedPageStack();
+			Assert.assertEquals(2, stack.size());
+			Assert.assertTrue(stack.get(0) instanceof PassivatedDomUIPage);
+			Assert.assertTrue(stack.get(1) instanceof ShelvedDomUIPage);
+			PassivatedDomUIPage passivated = (PassivatedDomUIPage) stack.get(0);
+			Assert.assertEquals(FirstPage.class.getName(), passivated.getClassName());
+			Assert.assertTrue(passivated.getNodeCount() > 0);
+			Assert.assertEquals(1, passivator.getPassivationCount());
+
+			//-- A second sweep has nothing left to do
+			passivator.sweep(System.currentTimeMillis() + 1000);
+			Assert.assertEquals(1, passivator.getPassivationCount());
+
+			//-- Restoring rebuilds the page with the same parameters in place.
+			Page page = ws.internalRestorePage(passivated);
+			Assert.assertTrue(page.getBody() instanceof FirstPage);
+			Assert.assertEquals("12", page.getPageParameters().getString("id"));
+			Assert.assertTrue(page.isShelved());
+			stack = ws.getShelvedPageStack();
+			Assert.assertTrue(stack.get(0) instanceof ShelvedDomUIPage);
+			Assert.assertSame(page, ((ShelvedDomUIPage) stack.get(0)).getPage());
+			Assert.assertEquals(1, passivator.getRestoreCount());
+		} finally {
+			ses.internalDestroy();
+			app.setPagePassivation(0, 0);
+		}
+	}
+
+	@Test
+	public void testSweepSkipsLockedSession() throws Exception {
+		DomApplication app = TUtilDomUI.getApplication();
+		PagePassivator passivator = new PagePassivator(app, 60);
+		AppSession ses = app.createSession();
+		app.internalRegisterSession(ses);
+		try {
+			WindowSession ws = ses.createWindowSession();
+			ws.insertShelveEntry(0, FirstPage.class, new PageParameters());
+			ws.insertShelveEntry(0, SecondPage.class, new PageParameters());
+
+			//-- A session locked by the current request is skipped, and the sweep must not unlock it.
+			ses.internalLockSession();
+			try {
+				Assert.assertFalse(ses.internalTryLockSession());
+				passivator.sweep(System.currentTimeMillis() + 1000);
+				Assert.assertEquals(0, passivator.getPassivationCount());
+				Assert.assertFalse(ses.internalTryLockSession());
+			} finally {
+				ses.internalUnlockSession();
+			}
+			passivator.sweep(System.currentTimeMillis() + 1000);
+			Assert.assertEquals(1, passivator.getPassivationCount());
+		} finally {
+			ses.internalDestroy();
+		}
+	}
+}
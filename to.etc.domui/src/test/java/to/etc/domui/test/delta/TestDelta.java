@@ -125,6 +125,17 @@ public class TestDelta {
 		return sw.getBuffer().toString();
 	}
 
+	public String getJsonDeltaRenderText(Page pg) throws Exception {
+		StringWriter sw = new StringWriter();
+		DeltaBufferOutput ro = new DeltaBufferOutput();
+		IRequestContext ctx = new TestRequestContext();
+		HtmlFullRenderer hr = getFullRenderer(ro);
+		pg.internalDeltaBuild();
+		OptimalDeltaRenderer odr = new OptimalDeltaRenderer(hr, ctx, pg, new JsonDeltaCommandWriter(sw, ro));
+		odr.render();
+		return sw.getBuffer().toString();
+	}
+
 	static private Div getIntDiv(Page p) {
 		return p.getBody();
 	}
@@ -141,6 +152,32 @@ public class TestDelta {
 		//System.out.println("\n\n---- Render after adding node@5 in child list ----\n" + render);
 	}
 
+	@Test
+	public void testJsonDelete() throws Exception {
+		Page p = createRenderedPage();
+		p.getBody().getChild(5).remove();
+
+		String render = getJsonDeltaRenderText(p);
+		p.getBody().visit(new DirtyNodeChecker());
+		assertEquals("{\"delta\":[[\"r\",\"_C\"],[\"e\",\"WebUI.cancelPolling();\"]]}", render);
+	}
+
+	@Test
+	public void testJsonAddAndAttributes() throws Exception {
+		Page p = createRenderedPage();
+		Div d = new Div();
+		d.setText("new <&> \"5\"");
+		getIntDiv(p).add(5, d);
+		getIntDiv(p).getChild(1).setCssClass("changed");
+
+		String render = getJsonDeltaRenderText(p);
+		p.getBody().visit(new DirtyNodeChecker());
+		assertTrue(render, render.startsWith("{\"delta\":["));
+		assertTrue(render, render.contains("[\"a\",\"_4\",[\"class\",\"changed\"]]"));
+		assertTrue(render, render.contains("[\"f\",\"_A\",\"<div"));
+		assertTrue(render, render.contains("new &lt;&amp;&gt; \\\"5\\\"</div>"));
+	}
+
 	/**
 	 * Testcase for Jo's problem with "Hell Freezeth over" exception, pass 1.
 	 */
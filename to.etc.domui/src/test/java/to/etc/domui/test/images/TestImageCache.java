@@ -0,0 +1,169 @@
+package to.etc.domui.test.images;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.junit.Assert;
+import org.junit.Test;
+import to.etc.domui.caches.images.IImageStreamSource;
+import to.etc.domui.caches.images.ImageCache;
+import to.etc.domui.caches.images.ImageKey;
+import to.etc.domui.util.images.IImageReference;
+import to.etc.domui.util.images.IImageRetriever;
+import to.etc.domui.util.images.converters.IImageConversionSpecifier;
+import to.etc.domui.util.images.converters.ImageResize;
+import to.etc.domui.util.images.machines.ImageMagicImageHandler;
+import to.etc.util.FileTool;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created on 19-10-26.
+ */
+public class TestImageCache {
+	/**
+	 * Serves generated PNG images, where the key is the image's size, and counts how often the data is read.
+	 */
+	static private final class TestRetriever implements IImageRetriever {
+		private final AtomicInteger m_loadCount = new AtomicInteger();
+
+		@NonNull
+		@Override
+		public String getRetrieverKey() {
+			return "test";
+		}
+
+		@Override
+		public long getCheckInterval() {
+			return 60 * 1000;
+		}
+
+		@Override
+		public IImageReference loadImage(@NonNull String key) throws Exception {
+			int size = Integer.parseInt(key);
+			BufferedImage bi = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = bi.createGraphics();
+			g.setColor(Color.ORANGE);
+			g.fillRect(0, 0, size, size);
+			g.setColor(Color.BLACK);
+			g.drawLine(0, 0, size, size);
+			g.dispose();
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			ImageIO.write(bi, "png", bos);
+			byte[] data = bos.toByteArray();
+
+			return new IImageReference() {
+				@Override
+				public void close() {
+				}
+
+				@Override
+				public long getVersionLong() {
+					return 1;
+				}
+
+				@NonNull
+				@Override
+				public String getMimeType() {
+					return ImageMagicImageHandler.PNG;
+				}
+
+				@Override
+				public InputStream getInputStream() {
+					m_loadCount.incrementAndGet();
+					return new ByteArrayInputStream(data);
+				}
+			};
+		}
+	}
+
+	private static ImageCache createCache(long maxMemory, File dir, TestRetriever r) throws Exception {
+		ImageCache.initialize(maxMemory, 100L * 1024 * 1024, dir);
+		ImageCache ic = ImageCache.getInstance();
+		ic.addRetriever(r);
+		return ic;
+	}
+
+	private static int read(IImageStreamSource src) throws Exception {
+		try(InputStream is = src.getImageStream()) {
+			return FileTool.readByteArray(is).length;
+		}
+	}
+
+	@Test
+	public void testConcurrentRequestsGenerateOnce() throws Exception {
+		File dir = Files.createTempDirectory("tic").toFile();
+		ExecutorService xs = Executors.newFixedThreadPool(16);
+		try {
+			TestRetriever r = new TestRetriever();
+			ImageCache ic = createCache(32 * 1024 * 1024, dir, r);
+			ImageKey key = ic.createImageKey("test", "1500");
+			List<IImageConversionSpecifier> conv = Collections.singletonList(new ImageResize(100, 100, ImageMagicImageHandler.PNG));
+
+			CyclicBarrier barrier = new CyclicBarrier(16);
+			List<Future<Integer>> list = new ArrayList<>();
+			for(int i = 0; i < 16; i++) {
+				list.add(xs.submit(() -> {
+					barrier.await();
+					return read(ic.getImageData(key, conv));
+				}));
+			}
+			int size = -1;
+			for(Future<Integer> f : list) {
+				int s = f.get().intValue();
+				if(size == -1)
+					size = s;
+				Assert.assertEquals("All requests must get the same image", size, s);
+			}
+			Assert.assertTrue(size > 0);
+			Assert.assertEquals("The thumbnail must be generated exactly once", 1, ic.getGenerationCount());
+			Assert.assertEquals("The original must be read exactly once", 1, r.m_loadCount.get());
+		} finally {
+			xs.shutdownNow();
+			ImageCache.shutdown();
+			FileTool.deleteDir(dir);
+		}
+	}
+
+	@Test
+	public void testEvictionKeepsSizeUnderLimit() throws Exception {
+		File dir = Files.createTempDirectory("tic").toFile();
+		try {
+			long max = 64 * 1024;
+			TestRetriever r = new TestRetriever();
+			ImageCache ic = createCache(max, dir, r);
+			List<IImageConversionSpecifier> conv = Collections.singletonList(new ImageResize(64, 64, ImageMagicImageHandler.PNG));
+
+			for(int i = 0; i < 60; i++) {
+				ImageKey key = ic.createImageKey("test", Integer.toString(200 + i));
+				read(ic.getImageData(key, conv));
+				Assert.assertTrue("Cache uses " + ic.getUsedMemory() + " bytes, over its limit of " + max, ic.getUsedMemory() <= max);
+			}
+			Assert.assertTrue("Nothing was evicted", ic.getEvictionCount() > 0);
+
+			//-- A recently used image must still be in memory
+			long hits = ic.getHitCount();
+			long misses = ic.getMissCount();
+			read(ic.getImageData(ic.createImageKey("test", "259"), conv));
+			Assert.assertTrue("The image was not served from memory", ic.getHitCount() > hits);
+			Assert.assertEquals(misses, ic.getMissCount());
+		} finally {
+			ImageCache.shutdown();
+			FileTool.deleteDir(dir);
+		}
+	}
+}
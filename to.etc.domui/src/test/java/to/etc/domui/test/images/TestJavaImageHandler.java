@@ -0,0 +1,134 @@
+package to.etc.domui.test.images;
+
+import org.junit.Assert;
+import org.junit.Test;
+import to.etc.domui.util.images.converters.ImageConverterHelper;
+import to.etc.domui.util.images.converters.ImageSpec;
+import to.etc.domui.util.images.machines.ImageHandler;
+import to.etc.domui.util.images.machines.ImageInfo;
+import to.etc.domui.util.images.machines.ImageMagicImageHandler;
+import to.etc.domui.util.images.machines.JavaImageHandler;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Created on 19-10-26.
+ */
+public class TestJavaImageHandler {
+	private static File createPng(int width, int height) throws Exception {
+		BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setColor(Color.BLUE);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		File f = File.createTempFile("tjih", ".png");
+		ImageIO.write(bi, "png", f);
+		return f;
+	}
+
+	private static void check(int sw, int sh, int bw, int bh, int ew, int eh, boolean thumbnail) throws Exception {
+		File src = createPng(sw, sh);
+		ImageConverterHelper h = new ImageConverterHelper();
+		try {
+			JavaImageHandler jh = new JavaImageHandler(null, 2);
+			ImageSpec source = new ImageSpec(src, ImageMagicImageHandler.PNG, sw, sh);
+			ImageSpec res = thumbnail
+				? jh.thumbnail(h, source, 0, bw, bh, ImageMagicImageHandler.PNG)
+				: jh.scale(h, source, 0, bw, bh, ImageMagicImageHandler.JPEG);
+			BufferedImage out = ImageIO.read(res.getSource());
+			Assert.assertEquals("width", ew, out.getWidth());
+			Assert.assertEquals("height", eh, out.getHeight());
+		} finally {
+			h.destroy();
+			src.delete();
+		}
+	}
+
+	@Test
+	public void testThumbnailKeepsAspectOfLandscape() throws Exception {
+		check(400, 200, 100, 100, 100, 50, true);
+	}
+
+	@Test
+	public void testThumbnailKeepsAspectOfPortrait() throws Exception {
+		check(300, 900, 120, 120, 40, 120, true);
+	}
+
+	@Test
+	public void testScaleFitsInsideBox() throws Exception {
+		check(640, 480, 200, 300, 200, 150, false);
+	}
+
+	@Test
+	public void testScaleUpKeepsAspect() throws Exception {
+		check(30, 20, 300, 300, 300, 200, false);
+	}
+
+	/**
+	 * Fallback that only records that it was asked to convert.
+	 */
+	static private class RecordingFallback implements ImageHandler {
+		private int m_converts;
+
+		@Override
+		public ImageInfo identify(File input) throws Exception {
+			throw new IllegalStateException("Not expected");
+		}
+
+		@Override
+		public ImageSpec scale(ImageConverterHelper h, ImageSpec source, int page, int width, int height, String targetMime) throws Exception {
+			throw new IllegalStateException("Not expected");
+		}
+
+		@Override
+		public ImageSpec thumbnail(ImageConverterHelper h, ImageSpec source, int page, int width, int height, String targetMime) throws Exception {
+			throw new IllegalStateException("Not expected");
+		}
+
+		@Override
+		public ImageSpec convert(ImageConverterHelper h, ImageSpec source, int page, String targetMime) throws Exception {
+			m_converts++;
+			return source;
+		}
+	}
+
+	@Test
+	public void testOversizedImageGoesToFallback() throws Exception {
+		File src = createPng(200, 100);
+		ImageConverterHelper h = new ImageConverterHelper();
+		try {
+			RecordingFallback fallback = new RecordingFallback();
+			JavaImageHandler jh = new JavaImageHandler(fallback, 2);
+			jh.setMaxPixels(200 * 100 - 1);
+			ImageSpec source = new ImageSpec(src, ImageMagicImageHandler.PNG, 200, 100);
+			Assert.assertSame(source, jh.convert(h, source, 0, ImageMagicImageHandler.JPEG));
+			Assert.assertEquals(1, fallback.m_converts);
+
+			//-- At the limit the image is still decoded in the VM
+			jh.setMaxPixels(200 * 100);
+			Assert.assertNotSame(source, jh.convert(h, source, 0, ImageMagicImageHandler.JPEG));
+			Assert.assertEquals(1, fallback.m_converts);
+		} finally {
+			h.destroy();
+			src.delete();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testOversizedImageWithoutFallback() throws Exception {
+		File src = createPng(200, 100);
+		ImageConverterHelper h = new ImageConverterHelper();
+		try {
+			JavaImageHandler jh = new JavaImageHandler(null, 2);
+			jh.setMaxPixels(1000);
+			jh.convert(h, new ImageSpec(src, ImageMagicImageHandler.PNG, 200, 100), 0, ImageMagicImageHandler.JPEG);
+		} finally {
+			h.destroy();
+			src.delete();
+		}
+	}
+}
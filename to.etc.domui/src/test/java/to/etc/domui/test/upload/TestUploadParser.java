@@ -25,12 +25,14 @@
 package to.etc.domui.test.upload;
 
 import java.io.*;
+import java.security.*;
 import java.util.*;
 
 import org.junit.*;
 
 import to.etc.domui.util.upload.MultipartStream.MalformedStreamException;
 import to.etc.domui.util.upload.*;
+import to.etc.util.*;
 
 public class TestUploadParser {
 	@Test
@@ -62,4 +64,160 @@ public class TestUploadParser {
 			} catch(Exception x) {}
 		}
 	}
+
+	static private final String BOUNDARY = "XyZ-upload-boundary";
+
+	/**
+	 * Sink that records what happens to it.
+	 */
+	static private class RecordingSink implements IUploadSink {
+		private final ByteArrayOutputStream m_data = new ByteArrayOutputStream();
+
+		private UploadItem m_completed;
+
+		private boolean m_discarded;
+
+		@Override
+		public OutputStream getOutputStream() throws Exception {
+			return m_data;
+		}
+
+		@Override
+		public void completed(UploadItem item) throws Exception {
+			m_completed = item;
+		}
+
+		@Override
+		public void discard() throws Exception {
+			m_discarded = true;
+		}
+	}
+
+	/**
+	 * Create a multipart body with a text field and a file field.
+	 */
+	static private byte[] createBody(String fileName, byte[] content) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Writer w = new OutputStreamWriter(bos, "utf-8");
+		w.write("--" + BOUNDARY + "\r\n");
+		w.write("Content-Disposition: form-data; name=\"text\"\r\n\r\n");
+		w.write("hello\r\n");
+		w.write("--" + BOUNDARY + "\r\n");
+		w.write("Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n");
+		w.write("Content-Type: application/octet-stream\r\n\r\n");
+		w.flush();
+		bos.write(content);
+		w.write("\r\n--" + BOUNDARY + "--\r\n");
+		w.flush();
+		return bos.toByteArray();
+	}
+
+	static private byte[] createContent(int size) {
+		byte[] data = new byte[size];
+		Random r = new Random(size);
+		r.nextBytes(data);
+		return data;
+	}
+
+	static private List<UploadItem> parse(UploadParser up, byte[] body) throws Exception {
+		return up.parseRequest(new ByteArrayInputStream(body), "utf-8", "multipart/form-data; boundary=" + BOUNDARY, body.length);
+	}
+
+	static private UploadItem find(List<UploadItem> list, String name) {
+		for(UploadItem it : list) {
+			if(name.equals(it.getName()))
+				return it;
+		}
+		Assert.fail("Item " + name + " not found");
+		return null;
+	}
+
+	static private String sha256(byte[] data) throws Exception {
+		return StringTool.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+	}
+
+	/**
+	 * Count the temp files that the parser would create for a file with the specified extension.
+	 */
+	static private int countTempFiles(String ext) throws Exception {
+		File dir = File.createTempFile("upldtest", ".tmp");
+		dir.delete();
+		File[] list = dir.getParentFile().listFiles();
+		int count = 0;
+		if(null != list) {
+			for(File f : list) {
+				if(f.getName().startsWith("upld") && f.getName().endsWith("." + ext))
+					count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testTempFileDigest() throws Exception {
+		byte[] content = createContent(100_000);
+		UploadParser up = new UploadParser();
+		List<UploadItem> res = parse(up, createBody("data.bin", content));
+		Assert.assertEquals(2, res.size());
+		Assert.assertEquals("hello", find(res, "text").getValue());
+
+		UploadItem file = find(res, "file");
+		try {
+			Assert.assertFalse(file.isStreamed());
+			Assert.assertEquals(content.length, file.getSize());
+			Assert.assertEquals(sha256(content), file.getSha256());
+			Assert.assertArrayEquals(content, FileTool.readFileAsByteArray(file.getFile()));
+		} finally {
+			file.close();
+		}
+	}
+
+	@Test
+	public void testSinkReceivesData() throws Exception {
+		byte[] content = createContent(100_000);
+		RecordingSink sink = new RecordingSink();
+		UploadParser up = new UploadParser();
+		up.setSinkFactory((field, fileName, contentType) -> "file".equals(field) ? sink : null);
+		List<UploadItem> res = parse(up, createBody("data.bin", content));
+		Assert.assertEquals(2, res.size());
+
+		UploadItem file = find(res, "file");
+		Assert.assertTrue(file.isStreamed());
+		Assert.assertSame(sink, file.getSink());
+		Assert.assertSame(file, sink.m_completed);
+		Assert.assertFalse(sink.m_discarded);
+		Assert.assertEquals(content.length, file.getSize());
+		Assert.assertEquals(sha256(content), file.getSha256());
+		Assert.assertArrayEquals(content, sink.m_data.toByteArray());
+	}
+
+	@Test
+	public void testOversizeDiscardsSink() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		UploadParser up = new UploadParser();
+		up.setSizeMax(1000);
+		up.setSinkFactory((field, fileName, contentType) -> sink);
+		try {
+			parse(up, createBody("data.bin", createContent(5000)));
+			Assert.fail("Expected the upload to be too large");
+		} catch(FileUploadSizeExceededException x) {
+			//-- Expected
+		}
+		Assert.assertTrue(sink.m_discarded);
+		Assert.assertNull(sink.m_completed);
+	}
+
+	@Test
+	public void testOversizeDeletesTempFile() throws Exception {
+		String ext = "oversize" + System.nanoTime();
+		UploadParser up = new UploadParser();
+		up.setSizeMax(1000);
+		try {
+			parse(up, createBody("data." + ext, createContent(5000)));
+			Assert.fail("Expected the upload to be too large");
+		} catch(FileUploadSizeExceededException x) {
+			//-- Expected
+		}
+		Assert.assertEquals(0, countTempFiles(ext));
+	}
 }
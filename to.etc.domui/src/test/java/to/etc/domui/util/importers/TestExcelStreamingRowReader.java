@@ -0,0 +1,160 @@
+package to.etc.domui.util.importers;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Assert;
+import org.junit.Test;
+import to.etc.domui.util.exporters.ExcelFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * Reads the same generated workbooks with {@link ExcelStreamingRowReader} and {@link ExcelRowReader}
+ * and checks that both return the same rows.
+ *
+ * Created on 19-10-26.
+ */
+public class TestExcelStreamingRowReader {
+	static private final int COLUMNS = 6;
+
+	static private final Date DATE = new GregorianCalendar(2019, 9, 26, 14, 30, 0).getTime();
+
+	/**
+	 * Fill a sheet with a header and rows holding text, numbers, dates, booleans, empty cells and an empty row.
+	 */
+	static private void fill(Workbook wb) {
+		CreationHelper ch = wb.getCreationHelper();
+		CellStyle dateStyle = wb.createCellStyle();
+		dateStyle.setDataFormat(ch.createDataFormat().getFormat("dd-mm-yyyy hh:mm"));
+
+		Sheet sheet = wb.createSheet("data");
+		Row r = sheet.createRow(0);
+		String[] header = {"name", "count", "amount", "date", "flag", "note"};
+		for(int i = 0; i < header.length; i++)
+			r.createCell(i).setCellValue(header[i]);
+
+		for(int i = 1; i <= 20; i++) {
+			if(i == 7)
+				continue;										// A missing row in the middle
+			r = sheet.createRow(i);
+			r.createCell(0).setCellValue("row " + (i % 5));		// Repeats, so shared strings are reused
+			if(i % 4 != 0)
+				r.createCell(1).setCellValue(i * 3);				// Empty cell every 4th row
+			r.createCell(2).setCellValue(i * 1.25 - 7.5);
+			if(i % 3 != 0) {
+				r.createCell(3).setCellValue(new Date(DATE.getTime() + i * 24L * 60 * 60 * 1000));
+				r.getCell(3).setCellStyle(dateStyle);
+			}
+			r.createCell(4).setCellValue(i % 2 == 0);
+			if(i % 5 == 0)
+				r.createCell(5).setCellValue("");					// An empty string
+			else if(i % 6 == 0)
+				r.createCell(5);									// A blank cell
+		}
+	}
+
+	static private byte[] createXssf() throws Exception {
+		try(XSSFWorkbook wb = new XSSFWorkbook(); ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+			fill(wb);
+			wb.write(bos);
+			return bos.toByteArray();
+		}
+	}
+
+	/**
+	 * Write with SXSSF without a shared strings table, so all strings are inline strings.
+	 */
+	static private byte[] createInlineStrings() throws Exception {
+		SXSSFWorkbook wb = new SXSSFWorkbook(null, 5, false, false);
+		try(ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+			fill(wb);
+			wb.write(bos);
+			return bos.toByteArray();
+		} finally {
+			wb.dispose();
+			wb.close();
+		}
+	}
+
+	static private String describe(IImportColumn col, boolean decimal, boolean date) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(col.getName()).append('=');
+		try {
+			String s = col.getStringValue();
+			sb.append(null == s || s.isEmpty() ? "<empty>" : s);
+		} catch(Exception x) {
+			sb.append("<error>");
+		}
+		if(decimal) {
+			sb.append(" dec=");
+			try {
+				sb.append(col.getDecimal());
+			} catch(Exception x) {
+				sb.append("<error>");
+			}
+		}
+		if(date) {
+			sb.append(" date=");
+			try {
+				sb.append(col.asDate());
+			} catch(Exception x) {
+				sb.append("<error>");
+			}
+		}
+		return sb.toString();
+	}
+
+	static private List<String> readAll(IRowReader reader) throws Exception {
+		List<String> res = new ArrayList<>();
+		reader.setHasHeaderRow(true);
+		IImportRow header = reader.getHeaderRow();
+		StringBuilder sb = new StringBuilder("header:");
+		for(int i = 0; i < COLUMNS; i++)
+			sb.append(' ').append(header.get(i).getStringValue());
+		res.add(sb.toString());
+
+		for(IImportRow row : reader) {
+			sb.setLength(0);
+			for(int i = 0; i < COLUMNS; i++) {
+				if(i > 0)
+					sb.append(", ");
+				sb.append(describe(row.get(i), i != 0, i == 3));
+			}
+			res.add(sb.toString());
+		}
+		return res;
+	}
+
+	static private void compare(byte[] data) throws Exception {
+		List<String> expected;
+		try(ExcelRowReader rr = new ExcelRowReader(new ByteArrayInputStream(data), ExcelFormat.XLSX)) {
+			expected = readAll(rr);
+		}
+		List<String> actual;
+		try(ExcelStreamingRowReader rr = new ExcelStreamingRowReader(new ByteArrayInputStream(data))) {
+			actual = readAll(rr);
+		}
+		Assert.assertEquals(21, expected.size());
+		Assert.assertEquals(String.join("\n", expected), String.join("\n", actual));
+	}
+
+	@Test
+	public void testSharedStrings() throws Exception {
+		compare(createXssf());
+	}
+
+	@Test
+	public void testInlineStrings() throws Exception {
+		compare(createInlineStrings());
+	}
+}
@@ -0,0 +1,55 @@
+package to.etc.webapp.ajax.comet;
+
+import java.util.concurrent.*;
+
+import org.eclipse.jdt.annotation.*;
+
+/**
+ * The single scheduler thread that handles all comet timeouts. Suspended comet requests
+ * do not own a thread; their timeouts are scheduled here, so thousands of waiting
+ * browsers cost one timer thread.
+ *
+ * Created on 19-10-26.
+ */
+final public class CometScheduler {
+	@Nullable
+	static private ScheduledThreadPoolExecutor m_executor;
+
+	private CometScheduler() {
+	}
+
+	@NonNull
+	static private synchronized ScheduledThreadPoolExecutor getExecutor() {
+		ScheduledThreadPoolExecutor executor = m_executor;
+		if(null == executor) {
+			executor = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread t = new Thread(r, "comet-timer");
+				t.setDaemon(true);
+				return t;
+			});
+			executor.setRemoveOnCancelPolicy(true);				// Most timeouts get cancelled; do not let them linger in the queue
+			m_executor = executor;
+		}
+		return executor;
+	}
+
+	/**
+	 * Run the task after the specified #of milliseconds. The task must be short and must not block,
+	 * as all timeouts share the same thread.
+	 */
+	@NonNull
+	static public ScheduledFuture<?> schedule(@NonNull Runnable task, long millis) {
+		return getExecutor().schedule(task, millis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the timer thread, discarding all scheduled timeouts. A later schedule() starts a new one.
+	 */
+	static public synchronized void shutdown() {
+		ScheduledThreadPoolExecutor executor = m_executor;
+		if(null != executor) {
+			m_executor = null;
+			executor.shutdownNow();
+		}
+	}
+}
@@ -24,11 +24,46 @@
  */
 package to.etc.webapp.ajax.comet;
 
+import java.io.*;
+import java.util.concurrent.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.slf4j.*;
+
+/**
+ * The continuation for a single comet request. When the container supports async requests the
+ * request gets suspended using an {@link AsyncContext} after {@link CometContext#begin}, and the
+ * response is rendered on a container thread when {@link #resume()} is called or when the timeout,
+ * which is scheduled on the shared {@link CometScheduler}, expires. No thread is used while waiting.
+ *
+ * <p>When async is not supported the servlet thread waits on this object, as before.</p>
+ */
 class ContinuationImpl implements Continuation {
+	static private final Logger LOG = LoggerFactory.getLogger(ContinuationImpl.class);
+
+	/** The extra time the container gets before it times out the request itself, as a safety net. */
+	static private final long CONTAINER_GRACE = 30 * 1000;
+
+	private final CometContext m_context;
+
 	private boolean m_continued;
 
 	private long m_timeout = -1;
 
+	/** When suspended, the async context of the request. */
+	private AsyncContext m_asyncContext;
+
+	private ScheduledFuture<?> m_timeoutTask;
+
+	/** Set as soon as a response is being rendered, so it happens once only. */
+	private boolean m_responding;
+
+	ContinuationImpl(CometContext context) {
+		m_context = context;
+	}
+
 	@Override
 	public void resume() {
 		synchronized(this) {
@@ -36,7 +71,10 @@ class ContinuationImpl implements Continuation {
 				return;
 			m_continued = true;
 			notifyAll();
+			if(m_asyncContext == null)					// Not suspended: the servlet thread handles the response
+				return;
 		}
+		respondAsync(false);
 	}
 
 	@Override
@@ -51,4 +89,94 @@ class ContinuationImpl implements Continuation {
 	boolean hasCompleted() {
 		return m_continued;
 	}
+
+	/**
+	 * Suspend the request until resume() is called or the timeout expires. If the continuation was
+	 * already resumed during begin() this returns false, and the caller must respond immediately.
+	 */
+	boolean suspend(HttpServletRequest req, HttpServletResponse res, long timeout) {
+		synchronized(this) {
+			if(m_continued)
+				return false;
+
+			AsyncContext ac = req.startAsync(req, res);
+			ac.setTimeout(timeout + CONTAINER_GRACE);
+			ac.addListener(new AsyncListener() {
+				@Override
+				public void onComplete(AsyncEvent event) {
+				}
+
+				@Override
+				public void onTimeout(AsyncEvent event) {
+					//-- The container timed out before we did; we must respond on this thread.
+					if(claim())
+						respond(true);
+					else
+						completeQuietly();
+				}
+
+				@Override
+				public void onError(AsyncEvent event) {
+					claim();
+					completeQuietly();
+				}
+
+				@Override
+				public void onStartAsync(AsyncEvent event) {
+				}
+			});
+			m_asyncContext = ac;
+			m_timeoutTask = CometScheduler.schedule(() -> respondAsync(true), timeout);
+		}
+		return true;
+	}
+
+	/**
+	 * Claim the right to respond. Returns true only once.
+	 */
+	private synchronized boolean claim() {
+		if(m_responding)
+			return false;
+		m_responding = true;
+		ScheduledFuture<?> tt = m_timeoutTask;
+		if(null != tt) {
+			m_timeoutTask = null;
+			tt.cancel(false);
+		}
+		return true;
+	}
+
+	/**
+	 * Render the response on a container thread, so that neither the scheduler thread nor the thread
+	 * that posted the event have to do the I/O.
+	 */
+	private void respondAsync(boolean timeout) {
+		if(!claim())
+			return;
+		try {
+			m_asyncContext.start(() -> respond(timeout));
+		} catch(IllegalStateException x) {
+			//-- Request already completed by the container
+		}
+	}
+
+	private void respond(boolean timeout) {
+		try {
+			m_context.respond((HttpServletResponse) m_asyncContext.getResponse(), timeout);
+		} catch(IOException x) {
+			LOG.debug("Comet response failed: " + x);
+		} catch(Exception x) {
+			LOG.error("Exception in comet response", x);
+		} finally {
+			completeQuietly();
+		}
+	}
+
+	private void completeQuietly() {
+		try {
+			m_asyncContext.complete();
+		} catch(IllegalStateException x) {
+			//-- Already completed
+		}
+	}
 }
@@ -32,11 +32,12 @@ import javax.servlet.http.*;
 /**
  * This is a generic Ajax Comet pattern servlet. It implements the
  * Comet pattern (http://www.ajaxian.com/archives/comet-a-new-approach-to-ajax-applications)
- * using a standard Servlet container. This implementation is unusable
- * for large amounts of clients due to thread and connection exthaustion on
- * the web server. The base interface implemented by this servlet is however
- * well suited to be implemented by different servlet containers that do
- * have asynchronous servlet implementations like Tomcat 6, Bea and Jetty.
+ * using a standard Servlet container. When the servlet is marked as
+ * async-supported the waiting requests are suspended using Servlet 3
+ * async, and a waiting client costs no container thread; all timeouts
+ * run on the shared {@link CometScheduler}. Without async support each
+ * waiting client blocks a container thread, which is unusable for large
+ * amounts of clients.
  *
  * <h3>See also:</h3>
  * http://blogs.webtide.com/gregw/2006/07/25/1153845234453.html<br/>
@@ -94,24 +95,30 @@ public class GenericCometServlet extends HttpServlet {
 	}
 
 	private void handle(final HttpServletRequest req, final HttpServletResponse res) throws ServletException, IOException {
-		ContinuationImpl ci = new ContinuationImpl();
-
 		//-- Step 1: 'begin' processing.
 		CometContext ctx = null;
+		ContinuationImpl ci;
 		try {
 			ctx = m_contextClass.newInstance();
+			ci = new ContinuationImpl(ctx);
 			ctx.begin(this, req, ci);
 		} catch(Exception x) {
 			handleException(x);
 			throw new RuntimeException(x); // NOTREACHED
 		}
 
-		//-- Step 2: wait for the request to complete, or the streams to close.
+		//-- Step 2: suspend the request if possible; the continuation responds when resumed or timed out.
+		long wtimeout = ci.getTimeout();
+		if(wtimeout < 0 || wtimeout > WAIT_TIMEOUT) // Default AND max timeout is 2 minutes
+			wtimeout = WAIT_TIMEOUT;
+		if(req.isAsyncSupported()) {
+			if(ci.suspend(req, res, wtimeout))
+				return;
+		}
+
+		//-- Step 3: no async: wait for the request to complete, or the streams to close.
 		long stime = System.currentTimeMillis();
-		long etime = ci.getTimeout();
-		if(etime < 0 || etime > WAIT_TIMEOUT) // Default AND max timeout is 60 secs
-			etime = WAIT_TIMEOUT;
-		etime += stime;
+		long etime = stime + wtimeout;
 		boolean timeout = true;
 		while(etime > stime) {
 			long wtime = etime - stime; // How much longer to wait?
@@ -172,6 +179,7 @@ public class GenericCometServlet extends HttpServlet {
 	@Override
 	public void destroy() {
 		System.out.println("GenericCometServlet: destroy called");
+		CometScheduler.shutdown();
 		super.destroy();
 	}
 }
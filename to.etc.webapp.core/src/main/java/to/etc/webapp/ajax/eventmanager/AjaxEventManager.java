@@ -25,9 +25,12 @@
 package to.etc.webapp.ajax.eventmanager;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.slf4j.*;
 
+import to.etc.webapp.ajax.comet.*;
+
 /**
  * <p>Singleton AJAX event manager. This allows Java code to post an event to browsers
  * waiting for them. This singleton uses JSON to communicate with the browser; it
@@ -45,6 +48,10 @@ import org.slf4j.*;
  * event number it has seen. The event manager will queue the events from the last
  * few minutes and will sent all of the events queued thus far to the browser.</p>
  *
+ * <p>Waiting browsers do not own a thread: their linger and browser timeouts are scheduled on
+ * the shared {@link CometScheduler}, and a posted event completes all suspended requests that
+ * accept it.</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Oct 25, 2006
  */
@@ -59,8 +66,6 @@ public class AjaxEventManager {
 
 	private boolean m_initialized;
 
-	private Timer m_timer = new Timer(true);
-
 	/** The NEXT message number that will be assigned. This number must be [1..MAX_INT] */
 	private int m_nextMessageNumber = 1;
 
@@ -278,23 +283,13 @@ public class AjaxEventManager {
 	}
 
 	private synchronized void schedule(final EventCometContext ectx, long timeout) {
-		TimerTask tt = ectx.getTimerTask();
+		ScheduledFuture<?> tt = ectx.getTimerTask();
 		if(tt != null) {
-			tt.cancel();
+			tt.cancel(false);
 		}
 		if(timeout <= 0)
 			timeout = 100;
-		tt = new TimerTask() {
-			@Override
-			public void run() {
-				/*
-				 *
-				 */
-				handleTimeout(ectx);
-			}
-		};
-		ectx.setTimerTask(tt);
-		m_timer.schedule(tt, timeout);
+		ectx.setTimerTask(CometScheduler.schedule(() -> handleTimeout(ectx), timeout));
 	}
 
 	/**
@@ -350,9 +345,9 @@ public class AjaxEventManager {
 	 * @param ectx
 	 */
 	synchronized void removeWaiting(final EventCometContext ectx) {
-		TimerTask tt = ectx.getTimerTask();
+		ScheduledFuture<?> tt = ectx.getTimerTask();
 		if(tt != null)
-			tt.cancel();
+			tt.cancel(false);
 
 		// Force this thingy completed if necessary.
 		if(!ectx.hasCompleted()) {
@@ -690,7 +685,7 @@ public class AjaxEventManager {
 					if(ctx.getEventCount() >= m_maxevents || ctx.getLingerTime() < MIN_LINGER) {
 						//-- Send response immediately, if the timer has not finished
 						ctx.setCompletedOK(); // Set "completed" with "OK" status
-						ctx.getTimerTask().cancel(); // Stop any timeout
+						ctx.getTimerTask().cancel(false); // Stop any timeout
 						deregisterChannels(ctx); // Remove from all listeners
 					} else {
 						//-- Do we need to set a linger timeout?
@@ -720,11 +715,14 @@ public class AjaxEventManager {
 	 * Called when the application will die. This releases all requests and cancels the timers.
 	 */
 	public void destroy() {
-		m_timer.cancel();
-		m_timer = null;
 		List<EventCometContext> list = new ArrayList<EventCometContext>();
 		synchronized(this) {
 			for(Set<EventCometContext> ctx : m_channelMap.values()) {
+				for(EventCometContext c : ctx) {
+					ScheduledFuture<?> tt = c.getTimerTask();
+					if(tt != null)
+						tt.cancel(false);
+				}
 				list.addAll(ctx);
 			}
 			m_channelMap = null;
@@ -26,6 +26,7 @@ package to.etc.webapp.ajax.eventmanager;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.servlet.*;
 import javax.servlet.http.*;
@@ -66,7 +67,7 @@ public class EventCometContext implements CometContext {
 
 	private int m_lingerTime = 1000;
 
-	private TimerTask m_timerTask;
+	private ScheduledFuture<?> m_timerTask;
 
 	enum CompletionState {
 		/** This thingy is waiting for an event to occur. */
@@ -376,11 +377,11 @@ public class EventCometContext implements CometContext {
 		return m_lingerTime;
 	}
 
-	TimerTask getTimerTask() {
+	ScheduledFuture<?> getTimerTask() {
 		return m_timerTask;
 	}
 
-	void setTimerTask(final TimerTask timerTask) {
+	void setTimerTask(final ScheduledFuture<?> timerTask) {
 		m_timerTask = timerTask;
 	}
 
@@ -26,6 +26,9 @@ package to.etc.webapp.ajax.renderer;
 
 import to.etc.util.StringTool;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -35,12 +38,22 @@ public class ClassMemberRenderer {
 	/** The method to call on the object to retrieve it's value */
 	private final Method m_method;
 
+	/** The getter as a handle taking and returning Object, or null when the getter is not publicly accessible. */
+	private final MethodHandle m_handle;
+
 	/** The name of the property represented by this value, as obtained from the method name. */
 	private final String m_name;
 
 	ClassMemberRenderer(final Method m, final String name) {
 		m_method = m;
 		m_name = name;
+		MethodHandle mh;
+		try {
+			mh = MethodHandles.publicLookup().unreflect(m).asType(MethodType.methodType(Object.class, Object.class));
+		} catch(IllegalAccessException x) {
+			mh = null;									// Public method in a non-public class: use reflection
+		}
+		m_handle = mh;
 	}
 
 	public Method getMethod() {
@@ -52,6 +65,17 @@ public class ClassMemberRenderer {
 	}
 
 	public Object getMemberValue(final Object val) throws RenderMethodException {
+		MethodHandle mh = m_handle;
+		if(null != mh) {
+			try {
+				return mh.invokeExact(val);
+			} catch(Error x) {
+				throw x;
+			} catch(Throwable x) {
+				throw new RenderMethodException(m_method, "Class member getter call '" + m_method.toString() + "' failed with " + StringTool.getExceptionMessage(x), x);
+			}
+		}
+
 		try {
 			return m_method.invoke(val, (Object[]) null); // Call the getter
 		} catch(InvocationTargetException x) {
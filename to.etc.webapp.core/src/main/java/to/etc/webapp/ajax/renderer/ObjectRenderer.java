@@ -97,6 +97,12 @@ abstract public class ObjectRenderer {
 		//-- If the current object is on the parent stack then we have a cycle.
 		if(LOG.isDebugEnabled() && o != null)
 			LOG.debug("sub: type=" + o.getClass().getCanonicalName() + ": " + o);
+
+		//-- Values that cannot contain other objects cannot cause a cycle: do not track them.
+		if(o == null || o instanceof String || o instanceof Number || o instanceof Boolean) {
+			renderPrimitive(o);
+			return;
+		}
 		if(m_parentSet.contains(o)) {
 			return;
 			//			throw new IllegalStateException("Cycle in object tree.");
@@ -26,17 +26,23 @@ package to.etc.webapp.ajax.renderer;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
  * This is a registry which contains mappings from Class to ClassRenderer.
- * The data gets built dynamically while objects get rendered.
+ * The data gets built dynamically while objects get rendered. Renderers that
+ * were found before are returned without locking, so that a registry can be
+ * shared by all requests.
  *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Apr 6, 2006
  */
 abstract public class RenderRegistry {
-	private final Map<Class< ? >, ItemRenderer> m_map = new HashMap<Class< ? >, ItemRenderer>();
+	private final Map<Class< ? >, ItemRenderer> m_map = new ConcurrentHashMap<Class< ? >, ItemRenderer>();
+
+	/** The renderer for null, which cannot be a key in m_map. */
+	private volatile ItemRenderer m_nullRenderer;
 
 	static private class FixPair {
 		private final Class< ? > m_baseclass;
@@ -68,7 +74,7 @@ abstract public class RenderRegistry {
 	private final Set<String> m_ignoredPackageSet = new HashSet<String>();
 
 	/** Maps primitive types to their array renderer. */
-	private final Map<Class< ? >, ItemRenderer> m_arrayRendererMap = new HashMap<Class< ? >, ItemRenderer>();
+	private final Map<Class< ? >, ItemRenderer> m_arrayRendererMap = new ConcurrentHashMap<Class< ? >, ItemRenderer>();
 
 	/**
 	 * Default renderer for all non-primitive arrays
@@ -135,9 +141,16 @@ abstract public class RenderRegistry {
 			public void render(final ObjectRenderer or, final Object val) throws Exception {
 				Collection< ? > l = (Collection< ? >) val;
 				or.renderArrayStart(l);
-				int ix = 0;
-				for(Object o : l)
-					or.renderArrayElement(o, Object.class, ix++);
+				if(l instanceof List< ? > && l instanceof RandomAccess) {
+					List< ? > list = (List< ? >) l;
+					int size = list.size();
+					for(int ix = 0; ix < size; ix++)
+						or.renderArrayElement(list.get(ix), Object.class, ix);
+				} else {
+					int ix = 0;
+					for(Object o : l)
+						or.renderArrayElement(o, Object.class, ix++);
+				}
 				or.renderArrayEnd(l);
 			}
 		});
@@ -159,12 +172,17 @@ abstract public class RenderRegistry {
 		});
 	}
 
-	public synchronized ItemRenderer findRenderer(final Class< ? > cl) {
+	public ItemRenderer findRenderer(final Class< ? > cl) {
+		if(cl == null)
+			return m_nullRenderer;
 		return m_map.get(cl);
 	}
 
 	public synchronized void register(final Class< ? > cl, final ItemRenderer r) {
-		m_map.put(cl, r);
+		if(cl == null)
+			m_nullRenderer = r;
+		else
+			m_map.put(cl, r);
 	}
 
 	public synchronized void registerBase(final Class< ? > bc, final ItemRenderer r) {
@@ -209,8 +227,8 @@ abstract public class RenderRegistry {
 		return null;
 	}
 
-	public synchronized ItemRenderer makeRenderer(final Class< ? > cl) {
-		ItemRenderer ir = m_map.get(cl);
+	public ItemRenderer makeRenderer(final Class< ? > cl) {
+		ItemRenderer ir = findRenderer(cl);
 		if(ir != null) {
 			//			if(cl != null)
 			//				System.out.println("Re-using existing class renderer "+ir+" to render "+cl.getName());
@@ -222,11 +240,17 @@ abstract public class RenderRegistry {
 			return makePrimitiveArrayRenderer(cl);
 		}
 
-		//-- Try any fixed pair
-		ir = findFixed(cl);
-		if(ir == null)
-			ir = makeClassRenderer(cl);
-		m_map.put(cl, ir);
+		synchronized(this) {
+			ir = m_map.get(cl);
+			if(ir != null)
+				return ir;
+
+			//-- Try any fixed pair
+			ir = findFixed(cl);
+			if(ir == null)
+				ir = makeClassRenderer(cl);
+			m_map.put(cl, ir);
+		}
 		//		System.out.println("Created new class renderer "+ir+" to render "+cl.getName());
 		return ir;
 	}
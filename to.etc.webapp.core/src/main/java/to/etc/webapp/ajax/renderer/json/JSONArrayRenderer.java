@@ -42,11 +42,12 @@ abstract public class JSONArrayRenderer extends JSONItemRenderer {
 		w.inc();
 		int len = Array.getLength(val);
 		int lc = 0;
+		boolean pretty = r.isPretty();
 		for(int i = 0; i < len; i++) {
 			if(i != 0)
 				w.print(",");
 			render(r, val, i);
-			if(lc > m_perLine) {
+			if(pretty && ++lc > m_perLine) {
 				lc = 0;
 				w.println();
 			}
@@ -28,7 +28,6 @@ import to.etc.util.StringTool;
 import to.etc.webapp.ajax.renderer.ItemRenderer;
 import to.etc.webapp.ajax.renderer.RenderRegistry;
 
-import java.lang.reflect.Array;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -49,8 +48,25 @@ public class JSONRegistry extends RenderRegistry {
 		addArrayRenderer(Integer.TYPE, new JSONArrayRenderer(30) {
 			@Override
 			public void render(final JSONRenderer r, final Object val, final int ix) throws Exception {
-				int v = Array.getInt(val, ix);
-				r.printInt(v);
+				r.printInt(((int[]) val)[ix]);
+			}
+		});
+		addArrayRenderer(Long.TYPE, new JSONArrayRenderer(20) {
+			@Override
+			public void render(final JSONRenderer r, final Object val, final int ix) throws Exception {
+				r.getWriter().print(Long.toString(((long[]) val)[ix]));
+			}
+		});
+		addArrayRenderer(Double.TYPE, new JSONArrayRenderer(20) {
+			@Override
+			public void render(final JSONRenderer r, final Object val, final int ix) throws Exception {
+				r.getWriter().print(Double.toString(((double[]) val)[ix]));
+			}
+		});
+		addArrayRenderer(Boolean.TYPE, new JSONArrayRenderer(30) {
+			@Override
+			public void render(final JSONRenderer r, final Object val, final int ix) throws Exception {
+				r.getWriter().print(((boolean[]) val)[ix] ? "true" : "false");
 			}
 		});
 		addArrayRenderer(Byte.TYPE, new JSONItemRenderer() {
@@ -88,7 +104,10 @@ public class JSONRegistry extends RenderRegistry {
 		register(String.class, new JSONItemRenderer() {
 			@Override
 			public void render(final JSONRenderer rd, final Object val) throws Exception {
-				StringTool.strToJavascriptString(rd.getWriter(), (String) val, true);
+				if(rd.isAdvanced())
+					StringTool.strToJavascriptString(rd.getWriter(), (String) val, true);
+				else
+					StringTool.strToJsonString(rd.getWriter(), (String) val);
 			}
 		});
 
@@ -29,22 +29,70 @@ import to.etc.util.StringTool;
 import to.etc.webapp.ajax.renderer.ObjectRenderer;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An utility class which renders a Java object as a JSON
- * datastream.
+ * datastream. By default the output is indented; a compact renderer
+ * writes no whitespace at all, which is what should be used for
+ * responses, with the indented form as a debugging aid.
  *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Apr 6, 2006
  */
 public class JSONRenderer extends ObjectRenderer {
+	/** Member names as quoted Javascript strings; the names come from classes so this does not grow without bounds. */
+	static private final Map<String, String> m_quotedNameMap = new ConcurrentHashMap<String, String>();
+
 	private final boolean m_advanced;
 
+	private final boolean m_pretty;
+
 	public JSONRenderer(final JSONRegistry r, final IndentWriter w, final boolean advanced) {
 		super(r, w);
 		m_advanced = advanced;
+		m_pretty = true;
+	}
+
+	/**
+	 * Create a renderer writing to the writer, indented when pretty is T and without any whitespace otherwise.
+	 */
+	public JSONRenderer(final JSONRegistry r, final Writer w, final boolean advanced, final boolean pretty) {
+		super(r, createWriter(w, pretty));
+		m_advanced = advanced;
+		m_pretty = pretty;
+	}
+
+	static private IndentWriter createWriter(final Writer w, final boolean pretty) {
+		if(pretty && w instanceof IndentWriter)
+			return (IndentWriter) w;
+		IndentWriter iw = new IndentWriter(w, true);
+		iw.setIndentEnabled(pretty);
+		return iw;
+	}
+
+	/**
+	 * When T the output is Javascript (like new Date() for dates); else it is strict JSON.
+	 */
+	public boolean isAdvanced() {
+		return m_advanced;
+	}
+
+	/**
+	 * When T the output is indented over multiple lines.
+	 */
+	public boolean isPretty() {
+		return m_pretty;
+	}
+
+	private void printLine(final String s) throws IOException {
+		if(m_pretty)
+			getWriter().println(s);
+		else
+			getWriter().print(s);
 	}
 
 	@Override
@@ -62,7 +110,7 @@ public class JSONRenderer extends ObjectRenderer {
 		IndentWriter w = getWriter();
 		//		w.forcenl();
 		//		w.print(name);
-		w.println("{");
+		printLine("{");
 		//		w.print(type.getSimpleName());
 		//		w.println("*/");
 		w.inc();
@@ -71,7 +119,8 @@ public class JSONRenderer extends ObjectRenderer {
 	@Override
 	public void renderObjectEnd(final Object o) throws Exception {
 		IndentWriter w = getWriter();
-		w.forceNewline();
+		if(m_pretty)
+			w.forceNewline();
 		w.dec();
 		w.print("}");
 	}
@@ -79,13 +128,13 @@ public class JSONRenderer extends ObjectRenderer {
 	@Override
 	protected void renderObjectBeforeItem(final int count, final Object o, final String name, final Class< ? > declaredType) throws Exception {
 		if(count != 0) {
-			getWriter().println(",");
+			printLine(",");
 		}
 	}
 
 	@Override
 	public void renderArrayStart(final Object ar) throws Exception {
-		getWriter().println("[");
+		printLine("[");
 		getWriter().inc();
 	}
 
@@ -101,14 +150,14 @@ public class JSONRenderer extends ObjectRenderer {
 			getWriter().print(",");
 		}
 		if(isKnownObject(o))
-			getWriter().println("null /*was duplicate object ref*/");
+			printLine(m_pretty ? "null /*was duplicate object ref*/" : "null");
 		else
 			renderSub(o);
 	}
 
 	@Override
 	public void renderMapStart(final Map< ? , ? > l) throws Exception {
-		getWriter().print("{\n");
+		printLine("{");
 		getWriter().inc();
 	}
 
@@ -126,7 +175,7 @@ public class JSONRenderer extends ObjectRenderer {
 				key = "_" + key;
 		}
 		renderSub(key);
-		getWriter().print(": ");
+		getWriter().print(m_pretty ? ": " : ":");
 		renderSub(value);
 		if(itemnr + 1 < maxitemnr)
 			getWriter().print(",");
@@ -148,8 +197,13 @@ public class JSONRenderer extends ObjectRenderer {
 	@Override
 	protected void renderObjectMember(final Object o, String name, final Class< ? > declaredType) throws Exception {
 		IndentWriter w = getWriter();
-		w.print(StringTool.strToJavascriptString(name, true));
-		w.print(": ");
+		String quoted = m_quotedNameMap.get(name);
+		if(null == quoted) {
+			quoted = StringTool.strToJavascriptString(name, true);
+			m_quotedNameMap.put(name, quoted);
+		}
+		w.print(quoted);
+		w.print(m_pretty ? ": " : ":");
 		renderSub(o);
 	}
 
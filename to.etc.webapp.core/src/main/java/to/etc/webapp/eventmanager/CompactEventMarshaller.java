@@ -0,0 +1,109 @@
+package to.etc.webapp.eventmanager;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import to.etc.json.JsonReader;
+import to.etc.json.JsonTypeRegistry;
+import to.etc.json.JsonWriter;
+import to.etc.util.ClassUtil;
+import to.etc.util.PropertyInfo;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The default event marshaller. It stores an event as its class name followed by its
+ * properties in compact JSON, for example:
+ * <pre>
+ *	to.etc.webapp.eventmanager.AppEvent{key:1234,type:'MODIFIED'}
+ * </pre>
+ * The properties of {@link AppEventBase} itself are not stored, as they have their own columns
+ * in the event table. Events must be beans: they need a public no-args constructor, and every
+ * property needs a public getter and setter of a type that maps to a JSON value (strings, numbers,
+ * booleans, enums, dates and collections/arrays of those). Events that do not comply are refused
+ * when posted, so a mistake shows up on the posting server instead of silently on all others.
+ *
+ * Created on 19-10-26.
+ */
+public class CompactEventMarshaller implements IEventMarshaller {
+	/** The JSON mapper, which leaves out the properties of AppEventBase. */
+	@NonNull
+	private final JsonTypeRegistry m_registry = new JsonTypeRegistry() {
+		@Override
+		protected boolean isIgnoredProperty(@NonNull Class<?> clz, @NonNull PropertyInfo pi) {
+			return super.isIgnoredProperty(clz, pi) || pi.getGetter().getDeclaringClass() == AppEventBase.class;
+		}
+	};
+
+	/** Event classes that were checked to be marshallable, by name. */
+	@NonNull
+	private final Map<String, Class<? extends AppEventBase>> m_classMap = new ConcurrentHashMap<>();
+
+	@NonNull
+	@Override
+	public String marshalEvent(@NonNull AppEventBase event) throws Exception {
+		Class<? extends AppEventBase> clz = event.getClass();
+		if(m_classMap.get(clz.getName()) != clz) {
+			checkEventClass(clz);
+			m_classMap.put(clz.getName(), clz);
+		}
+		StringWriter sw = new StringWriter(64);
+		sw.write(clz.getName());
+		new JsonWriter(sw, m_registry).render(event);
+		return sw.toString();
+	}
+
+	@Nullable
+	@Override
+	public <T extends AppEventBase> T unmarshalEvent(@NonNull String varchar) throws Exception {
+		int pos = varchar.indexOf('{');
+		if(pos <= 0)
+			throw new IllegalStateException("Not a compact event: " + varchar);
+		Class<? extends AppEventBase> clz = findEventClass(varchar.substring(0, pos));
+		JsonReader reader = new JsonReader("event", new StringReader(varchar.substring(pos)), m_registry);
+		return (T) reader.parse(clz, null);
+	}
+
+	@NonNull
+	private Class<? extends AppEventBase> findEventClass(@NonNull String name) throws Exception {
+		Class<? extends AppEventBase> clz = m_classMap.get(name);
+		if(null != clz)
+			return clz;
+
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		if(null == loader)
+			loader = getClass().getClassLoader();
+		Class<?> c = Class.forName(name, false, loader);
+		if(!AppEventBase.class.isAssignableFrom(c))
+			throw new IllegalStateException("Class " + name + " is not an event class");		// Never instantiate anything else from the table
+		clz = (Class<? extends AppEventBase>) c;
+		checkEventClass(clz);
+		m_classMap.put(name, clz);
+		return clz;
+	}
+
+	/**
+	 * Make sure that the class can be rendered and parsed back completely.
+	 */
+	private void checkEventClass(@NonNull Class<? extends AppEventBase> clz) {
+		if(!Modifier.isPublic(clz.getModifiers()) || clz.isAnonymousClass() || (clz.isMemberClass() && !Modifier.isStatic(clz.getModifiers())))
+			throw new IllegalStateException("Event class " + clz.getName() + " must be a public top-level or static class");
+		try {
+			clz.getConstructor();
+		} catch(NoSuchMethodException x) {
+			throw new IllegalStateException("Event class " + clz.getName() + " needs a public no-args constructor");
+		}
+
+		for(PropertyInfo pi : ClassUtil.calculateProperties(clz)) {
+			if("class".equals(pi.getName()) || pi.getGetter().getDeclaringClass() == AppEventBase.class)
+				continue;
+			if(pi.getSetter() == null)
+				throw new IllegalStateException("Event class " + clz.getName() + ": property " + pi.getName() + " has no setter");
+			if(m_registry.findFactory(pi.getActualType(), pi.getActualGenericType()) == null)
+				throw new IllegalStateException("Event class " + clz.getName() + ": property " + pi.getName() + " has type " + pi.getActualType().getName() + " which cannot be stored as JSON");
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package to.etc.webapp.eventmanager;
+
+/**
+ * Marker for events where handling one of several identical events has the same effect as
+ * handling all of them, like cache invalidations. When the event manager reads a batch of events
+ * from the database it delivers identical coalescable events (same class and same marshalled data)
+ * only once, as the last of them.
+ *
+ * Created on 19-10-26.
+ */
+public interface ICoalescableEvent {
+}
@@ -35,12 +35,14 @@ import to.etc.webapp.testsupport.TestDataSourceStub;
 import javax.sql.DataSource;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -48,6 +50,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.TimeoutException;
@@ -140,6 +143,11 @@ import java.util.concurrent.TimeoutException;
  * events die op server A gegenereerd worden ook door alle andere servers gezien, zodat alle servers
  * de bijbehorende event listeners aanroepen.</p>
  *
+ * <p>The poll interval adapts to the load: right after events were seen or posted it is short
+ * (250ms), and every empty scan doubles it up to 4 seconds. Events are read in batches of at most
+ * 500. On PostgreSQL {@link #setUseNotify(boolean)} makes posting servers NOTIFY the others, so
+ * that they scan immediately instead of waiting for the next poll.</p>
+ *
  * <p>Het aanroepen van de event listeners is normaliter <b>asynchroon</b>: de event polling thread
  * roept ze pas aan wanneer de events in de database gezien worden. Dit geldt zelfs voor de server
  * die de event genereert. Er bestaat echter wel een call waarmee de postende server synchroon de
@@ -160,7 +168,17 @@ public class VpEventManager implements Runnable {
 
 	static private final long DELETEINTERVAL = 10 * 60 * 1000;
 
-	static private final long POLLINTERVAL = 1 * 1000;
+	/** The default poll interval used right after events were seen or posted. */
+	static private final long MIN_POLLINTERVAL = 250;
+
+	/** The default poll interval when idle; the interval doubles after every empty scan until it reaches this. */
+	static private final long MAX_POLLINTERVAL = 4 * 1000;
+
+	/** The idle poll interval when LISTEN/NOTIFY is used, where polling is only a safety net. */
+	static private final long MAX_NOTIFY_POLLINTERVAL = 60 * 1000;
+
+	/** The max #of events read in one query; when a batch is full the next one is read immediately. */
+	static private final int FETCH_BATCH = 500;
 
 	static private class Item {
 		public Object m_obj;
@@ -222,6 +240,22 @@ public class VpEventManager implements Runnable {
 
 	private long m_lastHandled;
 
+	private long m_minPollInterval = MIN_POLLINTERVAL;
+
+	private long m_maxPollInterval = MAX_POLLINTERVAL;
+
+	/** The current poll interval, between min and max depending on activity. */
+	private long m_pollInterval = MIN_POLLINTERVAL;
+
+	/** Set to make the handler thread scan immediately. */
+	private boolean m_wakeup;
+
+	/** When set (PostgreSQL only) posting servers send a NOTIFY, and all servers LISTEN to scan immediately. */
+	private boolean m_useNotify;
+
+	/** The thread waiting for notifications, if LISTEN/NOTIFY is used. */
+	private Thread m_notifyThread;
+
 	/*--------------------------------------------------------------*/
 	/*	CODING:	Singleton init.                                  	*/
 	/*--------------------------------------------------------------*/
@@ -293,6 +327,13 @@ public class VpEventManager implements Runnable {
 		m_instance = em;
 	}
 
+	/**
+	 * Initialize for production mode, storing events with the {@link CompactEventMarshaller}.
+	 */
+	static public void initialize(final DataSource ds, final String tableName) throws Exception {
+		initialize(ds, tableName, new CompactEventMarshaller());
+	}
+
 	static public synchronized void initializeForTest() {
 		if(m_instance != null)
 			throw new IllegalStateException("The VpEventManager has already been initialized for PRODUCTION mode");
@@ -306,6 +347,13 @@ public class VpEventManager implements Runnable {
 		return m_testInstances != null;
 	}
 
+	/**
+	 * True when initialized for production, so that {@link #getInstance()} can be called.
+	 */
+	static public synchronized boolean isInitialized() {
+		return m_instance != null;
+	}
+
 	private void log(final String s) {
 		LOG.debug(s);
 	}
@@ -437,6 +485,50 @@ public class VpEventManager implements Runnable {
 			m_handlerThread.setName("SystemEventManager");
 			m_handlerThread.setDaemon(true);
 			m_handlerThread.start();
+
+			if(m_useNotify) {
+				m_notifyThread = new Thread(this::listenLoop);
+				m_notifyThread.setName("SystemEventListener");
+				m_notifyThread.setDaemon(true);
+				m_notifyThread.start();
+			}
+		}
+	}
+
+	/**
+	 * Set the range of the poll interval. After events were seen or posted the database is polled
+	 * every min ms; every scan that finds nothing doubles the interval, until it reaches max.
+	 */
+	public synchronized void setPollInterval(long min, long max) {
+		if(min < 10 || max < min)
+			throw new IllegalArgumentException("Invalid poll interval range " + min + ".." + max);
+		m_minPollInterval = min;
+		m_maxPollInterval = max;
+		m_pollInterval = min;
+	}
+
+	/**
+	 * PostgreSQL only: when set, every posted event also sends a NOTIFY on commit, and a separate
+	 * thread LISTENs for them to scan the event table immediately. Polling then only serves as a
+	 * safety net, so the idle poll interval is raised to a minute. All servers in the cluster must use
+	 * the same setting. Must be called before {@link #start()}; ignored for other databases.
+	 */
+	public synchronized void setUseNotify(boolean useNotify) {
+		if(m_handlerThread != null)
+			throw new IllegalStateException("The event manager has already been started");
+		m_useNotify = useNotify && m_dbtype == DbType.POSTGRES;
+		if(m_useNotify && m_maxPollInterval == MAX_POLLINTERVAL)
+			m_maxPollInterval = MAX_NOTIFY_POLLINTERVAL;
+	}
+
+	/**
+	 * Make the handler thread scan for events immediately, and poll fast for a while.
+	 */
+	private synchronized void wakeup(boolean now) {
+		m_pollInterval = m_minPollInterval;
+		if(now) {
+			m_wakeup = true;
+			notifyAll();
 		}
 	}
 
@@ -476,10 +568,10 @@ public class VpEventManager implements Runnable {
 	}
 
 	/**
-	 * Checks for updates on this checker, and handles them if found. To prevent
-	 * multiple threads from handling updates this locks the instance.
+	 * Reads the next batch of new events. Identical {@link ICoalescableEvent}s in the batch are
+	 * delivered only once. Returns the #of rows read, so the caller knows whether more are waiting.
 	 */
-	private void scanNewEvents(final List<AppEventBase> al, final Set<Long> localeventset) throws Exception {
+	private int scanNewEvents(final List<AppEventBase> al, final Set<Long> localeventset) throws Exception {
 		Connection dbc = m_ds.getConnection();
 		ResultSet rs = null;
 		PreparedStatement ps = null;
@@ -491,25 +583,25 @@ public class VpEventManager implements Runnable {
 			String sql = "select upid,evname,utime,server,obj from " + m_tableName + " where upid > ? order by upid";
 			LOG.debug(sql);
 			ps = dbc.prepareStatement(sql);
+			ps.setMaxRows(FETCH_BATCH);
+			ps.setFetchSize(FETCH_BATCH);
 			ps.setLong(1, upid);
 			rs = ps.executeQuery();
+			Map<String, Integer> coalesceMap = new HashMap<>();
+			int rows = 0;
 			while(rs.next()) {
-				readEventObject(rs, al);
+				rows++;
+				readEventObject(rs, al, coalesceMap);
 			}
-			if(al.size() > 0) {
-//				StringBuilder sb = new StringBuilder();
-//				sb.append("EV: read ");
-//				for(AppEventBase ae : al) {
-//					sb.append(ae.getUpid()).append("/");
-//				}
-//				System.out.println(sb.toString());
-
-				//-- Remove all saved "locally generated" events up to the event we've just read,
+			if(coalesceMap.size() > 0)
+				al.removeIf(Objects::isNull);
+			if(rows > 0) {
+				//-- Remove all saved "locally generated" events up to the last event we've just read,
 				synchronized(this) {
 					Iterator<Long> it = m_localEvents.iterator();
 					while(it.hasNext()) {
 						Long v = it.next();
-						if(v.longValue() <= upid) {
+						if(v.longValue() <= m_upid) {
 							it.remove();
 							localeventset.add(v);
 						} else
@@ -518,20 +610,11 @@ public class VpEventManager implements Runnable {
 				}
 			}
 
-			checkPendingDeletes(dbc);
+			if(rows < FETCH_BATCH)
+				checkPendingDeletes(dbc);
+			return rows;
 		} finally {
-			try {
-				if(rs != null)
-					rs.close();
-			} catch(Exception x) {}
-			try {
-				if(ps != null)
-					ps.close();
-			} catch(Exception x) {}
-			try {
-				if(dbc != null)
-					dbc.close();
-			} catch(Exception x) {}
+			FileTool.closeAll(rs, ps, dbc);
 		}
 	}
 
@@ -539,16 +622,19 @@ public class VpEventManager implements Runnable {
 	 * Reads a single row from the event list. Skips serialization errors.
 	 * @param rs
 	 * @param al
+	 * @param coalesceMap	The index in al of every coalescable event read, by its data.
 	 * @throws Exception
 	 */
-	private void readEventObject(final ResultSet rs, final List<AppEventBase> al) throws Exception {
+	private void readEventObject(final ResultSet rs, final List<AppEventBase> al, final Map<String, Integer> coalesceMap) throws Exception {
 		//-- 1. Get fields
 		long upid = rs.getLong(1);
+		boolean local;
 		synchronized(this) {
 			if(upid > m_upid)
 				m_upid = upid;
+			local = m_localEvents.contains(Long.valueOf(upid));
 		}
-		//        String  evname  = rs.getString(2);
+		String evname = rs.getString(2);
 		Timestamp ts = rs.getTimestamp(3);
 		String server = rs.getString(4);
 		String objectString = rs.getString(5);
@@ -567,13 +653,28 @@ public class VpEventManager implements Runnable {
 			e.setServer(server);
 			e.setTimestamp(ts);
 			e.setUpid(upid);
-			al.add(e);
+
+			addEvent(al, coalesceMap, e, local, evname, objectString);
 		} catch(Exception x) {
 			log("Event " + upid + ": serialization got exception " + x);
 			//			x.printStackTrace();
 		}
 	}
 
+	/**
+	 * Add an event to the batch. Of identical coalescable events only the last one is delivered: the
+	 * earlier one is replaced by null. Local ones are handled differently so they do not mix with remote ones.
+	 */
+	static void addEvent(final List<AppEventBase> al, final Map<String, Integer> coalesceMap, final AppEventBase e, final boolean local, final String evname, final String data) {
+		if(e instanceof ICoalescableEvent) {
+			String key = (local ? "L" : "R") + evname + "\u0000" + data;
+			Integer previous = coalesceMap.put(key, Integer.valueOf(al.size()));
+			if(null != previous)
+				al.set(previous.intValue(), null);
+		}
+		al.add(e);
+	}
+
 	private void handleEvents(final List<AppEventBase> list, final Set<Long> localeventset) {
 		for(int i = 0; i < list.size(); i++) {
 			AppEventBase ae = list.get(i);
@@ -587,24 +688,27 @@ public class VpEventManager implements Runnable {
 	}
 
 	/**
-	 * Janitor-called entry which scans for new events and passes them on.
+	 * Scans for new events and passes them on. Returns the #of events read, or -1 on errors.
 	 */
-	private void scanOnce() {
+	private int scanOnce() {
 		try {
 			List<AppEventBase> list = new ArrayList<AppEventBase>();
 			Set<Long> localeventset = new HashSet<Long>();
-			scanNewEvents(list, localeventset);
+			int rows = scanNewEvents(list, localeventset);
 			if(list.size() == 0)
-				return;
+				return rows;
 			log("Forwarding " + list.size() + " events.");
 			handleEvents(list, localeventset);
+			return rows;
 		} catch(Exception x) {
 			x.printStackTrace();
+			return -1;
 		}
 	}
 
 	/**
-	 * Thread entry.
+	 * Thread entry. The database is polled often while events are seen or posted, and less often
+	 * when nothing happens.
 	 *
 	 * @see java.lang.Runnable#run()
 	 */
@@ -613,15 +717,22 @@ public class VpEventManager implements Runnable {
 		try {
 			for(;;) {
 				synchronized(this) {
-					if(m_stop) {
-						log("event manager terminates due to STOP request");
-						return;
+					long ets = System.currentTimeMillis() + m_pollInterval;
+					for(;;) {
+						if(m_stop) {
+							log("event manager terminates due to STOP request");
+							return;
+						}
+						if(m_wakeup)
+							break;
+						long left = ets - System.currentTimeMillis();
+						if(left <= 0)
+							break;
+						wait(left);
 					}
-					wait(POLLINTERVAL);
-					if(m_stop)
-						return;
+					m_wakeup = false;
 				}
-				scanOnce();
+				scanDone(scanOnce());
 			}
 		} catch(Throwable t) {
 			t.printStackTrace();
@@ -637,6 +748,99 @@ public class VpEventManager implements Runnable {
 		}
 	}
 
+	/**
+	 * Determine the next poll interval after a scan that read the specified #of rows (-1 for an error).
+	 */
+	synchronized void scanDone(int rows) {
+		if(rows >= FETCH_BATCH) {
+			m_wakeup = true;						// More waiting: read the next batch immediately
+			m_pollInterval = m_minPollInterval;
+		} else if(rows > 0) {
+			m_pollInterval = m_minPollInterval;
+		} else if(rows < 0) {
+			m_pollInterval = m_maxPollInterval;		// Database trouble: do not hammer it
+		} else {
+			m_pollInterval = Math.min(m_pollInterval * 2, m_maxPollInterval);
+		}
+	}
+
+	synchronized long getPollInterval() {
+		return m_pollInterval;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	PostgreSQL LISTEN/NOTIFY.                           */
+	/*--------------------------------------------------------------*/
+	/**
+	 * The notification channel name, derived from the table name.
+	 */
+	@NonNull
+	private String getNotifyChannel() {
+		return m_tableName.toLowerCase().replaceAll("[^a-z0-9_]", "_") + "_ev";
+	}
+
+	/**
+	 * Notification thread entry: LISTEN on a dedicated connection and wake up the handler thread
+	 * for every notification received. The driver's notification API is called through reflection
+	 * as the PostgreSQL driver is not a dependency; when it is unavailable this thread just ends and
+	 * polling takes over.
+	 */
+	private void listenLoop() {
+		Method getNotifications;
+		Class<?> pgConnectionClass;
+		try {
+			pgConnectionClass = Class.forName("org.postgresql.PGConnection");
+			getNotifications = pgConnectionClass.getMethod("getNotifications", int.class);
+		} catch(Exception x) {
+			LOG.info("PostgreSQL driver does not support waiting for notifications, using polling only: " + x);
+			return;
+		}
+
+		while(!isStopped()) {
+			Connection dbc = null;
+			Statement st = null;
+			try {
+				dbc = m_ds.getConnection();
+				dbc.setAutoCommit(true);
+				st = dbc.createStatement();
+				st.execute("listen " + getNotifyChannel());
+				Object pgc = dbc.unwrap(pgConnectionClass);
+				wakeup(true);									// Catch up with events posted while we were not listening
+
+				while(!isStopped()) {
+					Object[] list = (Object[]) getNotifications.invoke(pgc, Integer.valueOf(10 * 1000));
+					if(list != null && list.length > 0)
+						wakeup(true);
+				}
+			} catch(Exception x) {
+				if(isStopped())
+					return;
+				LOG.warn("Event notification listener failed, retrying in 30 seconds: " + x);
+				synchronized(this) {
+					try {
+						wait(30 * 1000);
+					} catch(InterruptedException ix) {
+						return;
+					}
+				}
+			} finally {
+				FileTool.closeAll(st, dbc);
+			}
+		}
+	}
+
+	private synchronized boolean isStopped() {
+		return m_stop;
+	}
+
+	/**
+	 * Send a notification to all listening servers, delivered when the transaction commits.
+	 */
+	private void sendNotify(@NonNull Connection dbc) throws SQLException {
+		try(Statement st = dbc.createStatement()) {
+			st.execute("notify " + getNotifyChannel());
+		}
+	}
 	/*--------------------------------------------------------------*/
 	/*	CODING:	Event Poster.                                    	*/
 	/*--------------------------------------------------------------*/
@@ -691,6 +895,8 @@ public class VpEventManager implements Runnable {
 
 			rs.close();
 			ps.close();
+			if(m_useNotify)
+				sendNotify(dbc);
 			if(commit) {
 				dbc.commit();
 			}
@@ -856,11 +1062,30 @@ public class VpEventManager implements Runnable {
 	 * @throws Exception
 	 */
 	public void postEvent(@NonNull final Connection dbc, @NonNull final AppEventBase ae) throws Exception {
-		if(!inJUnitTestMode())
+		if(!inJUnitTestMode()) {
 			sendEventMain(dbc, ae, true, true); // First save the thingy everywhere, ORDER IMPORTANT!!
+			wakeup(true);
+		}
 		callListeners(ae, true, true); // Call all listeners that need the event immediately. ORDER IMPORTANT: must be after sendEvent.
 	}
 
+	/**
+	 * Post an event synchronously using a connection of its own, for events that are not tied to
+	 * database changes of the caller. The caller's own changes must have been committed already.
+	 */
+	public void postEvent(@NonNull final AppEventBase ae) throws Exception {
+		if(inJUnitTestMode()) {
+			callListeners(ae, true, true);
+			return;
+		}
+		Connection dbc = m_ds.getConnection();
+		try {
+			postEvent(dbc, ae);
+		} finally {
+			FileTool.closeAll(dbc);
+		}
+	}
+
 	/**
 	 * Post an event asynchronously. The event gets added to the database but not commited, and no local listeners
 	 * get called at this time. When the event gets commited the scanner will see it and call the local handlers. This
@@ -871,9 +1096,10 @@ public class VpEventManager implements Runnable {
 	 * @throws Exception
 	 */
 	public void postDelayedEvent(@NonNull final Connection dbc, @NonNull final AppEventBase ae) throws Exception {
-		if(!inJUnitTestMode())
+		if(!inJUnitTestMode()) {
 			sendEventMain(dbc, ae, false, false); // First save the thingy everywhere, ORDER IMPORTANT!!
-		else
+			wakeup(false);						// Not committed yet, but it will be soon
+		} else
 			callListeners(ae, true, true);
 		/*
 		 * jal 20120911 Just sending the event to the db is not enough. The idea is to delay the events until the time that
@@ -900,6 +1126,8 @@ public class VpEventManager implements Runnable {
 				sendEventMain(dbc, a, false, false);	// First save the thingy everywhere, ORDER IMPORTANT!!
 			}
 		}
+		if(!inJUnitTestMode() && ae.size() > 0)
+			wakeup(false);
 	}
 
 	/**
@@ -919,6 +1147,8 @@ public class VpEventManager implements Runnable {
 			}
 		}
 		dbc.commit();
+		if(!inJUnitTestMode())
+			wakeup(true);
 
 		//-- Call all local handlers immediately.
 		for(AppEventBase ae : aelist) {
@@ -86,6 +86,11 @@ public class BulkMailer {
 				}
 			};
 		}
+
+		@Override
+		public synchronized long getNextPollTime() {
+			return m_tsNext;
+		}
 	}
 
 	private synchronized void init(DataSource ds, SmtpTransport t) throws Exception {
@@ -41,4 +41,14 @@ public interface IPollQueueTaskProvider {
 	 * @throws Exception
 	 */
 	Runnable getRunnableTask() throws Exception;
+
+	/**
+	 * When {@link #getRunnableTask()} returned null: the earliest time (in millis) at which this provider
+	 * expects to have work again, Long.MAX_VALUE if it will signal new work through
+	 * {@link PollingWorkerQueue#checkProvider(IPollQueueTaskProvider)}, or -1 when it does not know; it then
+	 * gets polled at the queue's check interval.
+	 */
+	default long getNextPollTime() {
+		return -1;
+	}
 }
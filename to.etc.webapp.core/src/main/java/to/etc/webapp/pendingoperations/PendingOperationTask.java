@@ -60,6 +60,13 @@ final public class PendingOperationTask implements Runnable, ILogSink {
 		m_list = list;
 	}
 
+	/**
+	 * The operations still to run, in order.
+	 */
+	List<PendingOperation> getOperations() {
+		return m_list;
+	}
+
 	/**
 	 * Loop through all pendingOperations and execute them one by one. Aborts as soon as an operation fails.
 	 * @see java.lang.Runnable#run()
@@ -186,6 +193,12 @@ final public class PendingOperationTask implements Runnable, ILogSink {
 				po.save(dbc);
 			}
 			dbc.commit();
+
+			//-- Make sure the provider scans again when a retry is due
+			for(PendingOperation po : updateset) {
+				if(po.getState() == PendingOperationState.RTRY)
+					m_provider.retryScheduled(po.getNextTryTime());
+			}
 		} finally {
 			try {
 				if(rs != null)
@@ -25,6 +25,7 @@
 package to.etc.webapp.pendingoperations;
 
 import org.eclipse.jdt.annotation.Nullable;
+import to.etc.dbutil.GenericDB;
 import to.etc.util.DeveloperOptions;
 import to.etc.util.FileTool;
 import to.etc.util.StringInputStream;
@@ -36,17 +37,27 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This polled task provider checks for tasks to execute in the sys_pending_operations table. It
- * handles all polling chores and properly handles all order requirements for pending operations. Operations
- * here are checked only every 5 minutes.
+ * handles all polling chores and properly handles all order requirements for pending operations.
+ *
+ * <p>A scan claims up to {@link #setClaimBatchSize(int)} operations in one transaction and hands them to the
+ * threads of the {@link PollingWorkerQueue}. On PostgreSQL and Oracle the scan uses "for update skip locked",
+ * so that several servers can claim work at the same time without waiting for each other's locks; other
+ * databases (like Derby) lock all runnable rows while scanning, and the rows are ordered in memory because
+ * not all of them allow "order by" with "for update". The next scan is done at the earliest
+ * spo_date_next_try of the remaining operations, but at least every {@link #setMaxScanInterval(long)} millis to see work from other servers.</p>
  *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Mar 4, 2009
@@ -63,20 +74,35 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 	/** The single-thread usage baton. */
 	private boolean m_inUse;
 
-	private int m_lastSelectedIndex;
-
 	private long m_tsNextCheck;
 
+	/** The max #of operations (groups) claimed per scan. */
+	private int m_claimBatchSize = 8;
+
+	/** Claimed tasks not yet handed to a worker thread. */
+	private final ArrayDeque<PendingOperationTask> m_claimedQueue = new ArrayDeque<>();
+
+	/** Whether the database can skip locked rows; null while unknown. */
+	@Nullable
+	private Boolean m_skipLocked;
+
+	/** The max time between scans, to see work posted by other servers. */
+	private long m_maxScanInterval = 60 * 1000;
+
 	private long m_tsNextCleanup;
 
 	private List<IPendingOperationListener> m_listeners = Collections.EMPTY_LIST;
 
-	//	private PendingOperationTaskProvider(final DataSource ds, final String serverID) {
-	//		m_ds = ds;
-	//		m_serverID = serverID;
-	//	}
 	private PendingOperationTaskProvider() {}
 
+	/**
+	 * Creates a provider that is not registered with the worker queue, for tests.
+	 */
+	PendingOperationTaskProvider(final DataSource ds, final String serverID) {
+		m_ds = ds;
+		m_serverID = serverID;
+	}
+
 	/**
 	 * Initializes this thing, and adds it to the worker queue handler.
 	 * @param serverID
@@ -112,6 +138,38 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 		return m_listeners;
 	}
 
+	/**
+	 * Set the max #of operations (or operation groups) to claim in a single scan. The actual number is
+	 * also limited by the #of threads the worker queue has available.
+	 */
+	public synchronized void setClaimBatchSize(int claimBatchSize) {
+		if(claimBatchSize < 1)
+			throw new IllegalArgumentException("Batch size must be >= 1");
+		m_claimBatchSize = claimBatchSize;
+	}
+
+	public synchronized int getClaimBatchSize() {
+		return m_claimBatchSize;
+	}
+
+	/**
+	 * Set the max time between two scans of the table, in millis (default 1 minute). Work posted on this server
+	 * and retries are seen without scanning, so this only determines how fast work posted by other servers is
+	 * picked up. Set it higher to prevent idle database polling.
+	 */
+	public synchronized void setMaxScanInterval(long maxScanInterval) {
+		m_maxScanInterval = maxScanInterval;
+	}
+
+	@Override
+	public synchronized long getNextPollTime() {
+		if(m_claimedQueue.size() > 0)
+			return 0;
+		if(m_inUse)
+			return Long.MAX_VALUE;					// The scanning thread signals when it has claimed work
+		return m_tsNextCheck;
+	}
+
 	@Override
 	public void initializeOnRegistration(final PollingWorkerQueue pwq) throws Exception {
 		m_executor = pwq;
@@ -155,8 +213,8 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 	}
 
 	/**
-	 * This checks for a new pending operation to execute. Only one thread can use this
-	 * operation at a time. The first thread that enters this method obtains the baton
+	 * This returns a task claimed by an earlier scan, or checks for new pending operations to execute. Only one
+	 * thread can scan at a time. The first thread that enters this method obtains the baton
 	 * and is allowed to continue. Other threads entering see that the baton is used and
 	 * exit immediately, without a task.
 	 *
@@ -168,6 +226,12 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 		long cts = System.currentTimeMillis();
 		boolean cleanup = false;
 		synchronized(this) {
+			PendingOperationTask claimed = m_claimedQueue.poll();
+			if(null != claimed) {
+				if(m_claimedQueue.size() > 0)
+					m_executor.checkProvider(this);	// Wake another thread for the next one
+				return claimed;
+			}
 			if(m_inUse || cts < m_tsNextCheck) { // Not yet time to check again?
 			//				System.out.println("potp: no need to scan for PendingOperation");
 				return null;
@@ -184,13 +248,16 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 
 		//-- We own this now. Handle the thread;
 		try {
-			//			System.out.println("potp: scanning for next task...");
-			Runnable task = findBestTask();
-			//			System.out.println("potp: got task="+task);
-			if(task != null) {
-				m_executor.checkProvider(this); // Notify, allowing another thread to check for task actions too.
+			List<PendingOperationTask> list = claimTasks(Math.min(getClaimBatchSize(), m_executor.getAvailableThreads()));
+			if(list.size() == 0)
+				return null;
+			synchronized(this) {
+				for(int i = 1; i < list.size(); i++) {
+					m_claimedQueue.add(list.get(i));
+					m_executor.checkProvider(this); // Notify, so that other threads pick up the rest.
+				}
 			}
-			return task;
+			return list.get(0);
 		} finally {
 			synchronized(this) { // Make sure the baton is released all the time
 				m_inUse = false;
@@ -241,74 +308,114 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 	}
 
 	/**
-	 * Opens sys_pending_operations in LOCK mode, then allocates the next-task(set)-to-run from it.
-	 * @return
+	 * Claims up to max runnable operations (or operation groups) in a single transaction. Where the database
+	 * supports it this skips rows locked by other servers; else it locks all runnable rows while scanning.
+	 * This also determines when the next scan must take place.
 	 */
-	private Runnable findBestTask() throws Exception {
+	List<PendingOperationTask> claimTasks(int max) throws Exception {
+		if(max < 1)
+			max = 1;
 		Connection dbc = m_ds.getConnection();
 		PreparedStatement ps = null;
 		ResultSet rs = null;
-		//		long ts	= System.nanoTime();
 		try {
 			Date now = new Date();
 			dbc.setAutoCommit(false); // Make very certain stuff's not commited.
-			ps = dbc.prepareStatement("select " + PendingOperation.FIELDS + " from sys_pending_operations" + " where spo_executing_server is null" // Only if not already executing
+			boolean skipLocked = isSkipLocked(dbc);
+			boolean oracle = skipLocked && GenericDB.getDbType(dbc) == GenericDB.dbtypeORACLE;
+			String where = " where spo_executing_server is null" // Only if not already executing
 				+ " and (spo_must_execute_on_server is null or spo_must_execute_on_server=?)" // Free or for this server
-				+ " and spo_state='RTRY'" // Not failed
-				+ " and (spo_date_next_try is null or spo_date_next_try <= ?)" // Time to try next has been exceeded
-				+ " order by spo_id" + " for update" // FORCE LOCK while scanning/editing
-			);
+				+ " and spo_state='RTRY'"; // Not failed
+
+			/*
+			 * With skip locked we lock only a few rows; we read a few more than we need because some may be
+			 * group members that cannot run yet. Without it we must lock all of them (Derby and friends).
+			 * The limit must be on the rows that get locked, not on the rows returned: PostgreSQL applies
+			 * "fetch first" before locking. Oracle does not allow "fetch first" (nor a rownum limit that
+			 * works) with "for update"; there rows with skip locked are locked while being fetched, so we
+			 * fetch in small chunks and stop reading when we have enough. Without skip locked we read all
+			 * rows anyway, so they are ordered in memory: Derby does not allow "order by" with "for update".
+			 *
+			 * Only the plain "for update" path is covered by a test (TestPendingOperationTaskProvider, on Derby).
+			 * The two skip locked variants have not been run against a real PostgreSQL or Oracle database yet;
+			 * check the claim behaviour there before relying on concurrent claiming by several servers.
+			 */
+			int limit = max * 4;
+			String sql = "select " + PendingOperation.FIELDS + " from sys_pending_operations" + where
+				+ " and (spo_date_next_try is null or spo_date_next_try <= ?)"; // Time to try next has been exceeded
+			if(!skipLocked)
+				sql += " for update";
+			else if(oracle)
+				sql += " order by spo_id for update skip locked";
+			else
+				sql += " order by spo_id fetch first " + limit + " rows only for update skip locked";
+			ps = dbc.prepareStatement(sql);
 			ps.setString(1, m_serverID);
 			ps.setTimestamp(2, new Timestamp(now.getTime()));
+			if(oracle)
+				ps.setFetchSize(limit);
 			rs = ps.executeQuery();
 			List<PendingOperation> ack = new ArrayList<PendingOperation>();
-			while(rs.next()) {
+			while((!skipLocked || ack.size() < limit) && rs.next()) {
 				PendingOperation po = new PendingOperation();
 				po.initFromRS(rs); // Get all fields.
 				ack.add(po);
 			}
 			rs.close();
-			//			System.out.println("potp: pending task scan resulted in "+ack.size()+" pending operations to consider");
+			ps.close();
+			if(!skipLocked)
+				ack.sort(Comparator.comparingLong(PendingOperation::getId));
+
+			//-- Claim runnable operations and groups in order until we have enough.
+			List<PendingOperationTask> result = new ArrayList<>();
+			Set<Long> claimedSet = new HashSet<>();
+			for(PendingOperation po : ack) {
+				if(result.size() >= max)
+					break;
+				if(claimedSet.contains(po.getId()))		// Already claimed as part of a group
+					continue;
 
-			//-- FIXME Integrate the code below with the select instead of reading everything in memory.
-			//-- Find the first BEST task to execute, starting at the "last index",
-			int todo = ack.size();
-			List<PendingOperation> resultlist = null;
-			for(;;) {
-				if(todo-- <= 0) {
-					//-- Could not allocate job- exit and try again in x minutes.
-					synchronized(this) {
-						m_tsNextCheck = System.currentTimeMillis() + 1 * 60 * 1000; // Every 5 minutes if queue is empty
-					}
-					dbc.commit();
-					return null;
-				}
-				m_lastSelectedIndex++;
-				if(m_lastSelectedIndex >= ack.size())
-					m_lastSelectedIndex = 0;
-				PendingOperation po = ack.get(m_lastSelectedIndex);
+				List<PendingOperation> resultlist;
 				if(po.getOrderGroup() == null) { // Not a group-> always claimable
 					resultlist = new ArrayList<PendingOperation>();
 					resultlist.add(po);
-					break;
+				} else {
+					//-- Load all other members in the group, and check if they are runnable/complete
+					resultlist = loadGroup(dbc, po);
+					if(resultlist == null || resultlist.size() == 0)
+						continue;						// Thingy is invalid- continue.
 				}
 
-				//-- Load all other members in the group, and check if they are runnable/complete
-				List<PendingOperation> grouplist = loadGroup(dbc, po);
-				if(grouplist != null && grouplist.size() > 0) {
-					resultlist = grouplist;
-					break;
-				}
-
-				//-- Thingy is invalid- continue.
+				//-- We have a thing to run. Mark it and all other members of the group as EXECUTING
+				markTasksExecuting(dbc, resultlist);
+				for(PendingOperation rpo : resultlist)
+					claimedSet.add(rpo.getId());
+				result.add(new PendingOperationTask(this, resultlist));
 			}
 
-			//-- We have a thing to run. Mark it and all other members of the group as EXECUTING, then return it;
-			markTasksExecuting(dbc, resultlist); // Mark all of these as EXECUTING,
+			//-- If we claimed all we could, scan again soon; else scan when the first retry is due.
+			long next;
+			if(result.size() >= max)
+				next = 0;
+			else {
+				synchronized(this) {
+					next = now.getTime() + m_maxScanInterval;
+				}
+				ps = dbc.prepareStatement("select min(spo_date_next_try) from sys_pending_operations" + where + " and spo_date_next_try > ?");
+				ps.setString(1, m_serverID);
+				ps.setTimestamp(2, new Timestamp(now.getTime()));
+				rs = ps.executeQuery();
+				if(rs.next()) {
+					Timestamp first = rs.getTimestamp(1);
+					if(null != first && first.getTime() < next)
+						next = first.getTime();
+				}
+			}
+			synchronized(this) {
+				m_tsNextCheck = next;
+			}
 			dbc.commit();
-
-			//-- Return a grouplist runnable for this thing.
-			return new PendingOperationTask(this, resultlist);
+			return result;
 		} finally {
 			try {
 				if(ps != null)
@@ -325,11 +432,30 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 				if(dbc != null)
 					dbc.close();
 			} catch(Exception x) {}
-			//			ts	= System.nanoTime() - ts;
-			//			System.out.println("PendingOperationProvider: scan took "+StringTool.strNanoTime(ts));
 		}
 	}
 
+	/**
+	 * T if the database supports "for update skip locked", which is the case for PostgreSQL and Oracle.
+	 */
+	private synchronized boolean isSkipLocked(Connection dbc) {
+		Boolean skipLocked = m_skipLocked;
+		if(null == skipLocked) {
+			skipLocked = GenericDB.getDbType(dbc) == GenericDB.dbtypePOSTGRESQL || GenericDB.getDbType(dbc) == GenericDB.dbtypeORACLE;
+			m_skipLocked = skipLocked;
+		}
+		return skipLocked.booleanValue();
+	}
+
+	/**
+	 * Called when an operation was rescheduled for retry, so that the next scan is done in time.
+	 */
+	synchronized void retryScheduled(@Nullable Date nextTry) {
+		long ts = nextTry == null ? 0 : nextTry.getTime();
+		if(ts < m_tsNextCheck)
+			m_tsNextCheck = ts;
+	}
+
 	/**
 	 * Marks all of the tasks specified as "locked by server", and mark the 1st one as "EXECUTING".
 	 * @param dbc
@@ -352,6 +478,10 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 		}
 	}
 
+	/** The execution order of group members: spo_order_timestamp, then spo_order_sub. */
+	static private final Comparator<PendingOperation> GROUP_ORDER = Comparator.comparing(PendingOperation::getOrderTime, Comparator.nullsLast(Comparator.naturalOrder()))
+		.thenComparingInt(PendingOperation::getOrderIndex);
+
 	/**
 	 * Loads a group, and checks to see if it's executable. This is the case if all members of the group
 	 * can be executed or are retryable, and if the first group member to execute has met it's contained time.
@@ -368,8 +498,7 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 		try {
 			ps = dbc.prepareStatement("select " + PendingOperation.FIELDS + " from sys_pending_operations" + " where spo_order_groupname=?" // defines group
 				+ " and spo_state in ('RTRY','EXEC','FATL','BOOT') " //
-				+ " order by spo_order_timestamp, spo_order_sub" // defines order
-				+ " for update");
+				+ " for update");									// Ordered in memory: Derby does not allow order by with for update
 
 			ps.setString(1, inpo.getOrderGroup());
 			rs = ps.executeQuery();
@@ -379,6 +508,7 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 				po.initFromRS(rs);
 				res.add(po);
 			}
+			res.sort(GROUP_ORDER);
 
 			/*
 			 * Loop through all members, and
@@ -490,8 +620,9 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 
 			synchronized(this) {
 				m_tsNextCheck = 0;
-				notify();
 			}
+			if(null != m_executor)
+				m_executor.checkProvider(this);
 		} finally {
 			try {
 				if(dbc != null)
@@ -518,8 +649,9 @@ public class PendingOperationTaskProvider implements IPollQueueTaskProvider {
 			dbc.commit();
 			synchronized(this) {
 				m_tsNextCheck = 0;
-				notify();
 			}
+			if(null != m_executor)
+				m_executor.checkProvider(this);
 		} finally {
 			try {
 				if(dbc != null)
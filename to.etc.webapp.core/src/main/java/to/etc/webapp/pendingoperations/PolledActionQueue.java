@@ -36,7 +36,7 @@ import java.util.*;
 public class PolledActionQueue implements IPollQueueTaskProvider {
 	private PollingWorkerQueue m_executor;
 
-	private Queue<Runnable> m_queue = new LinkedList<Runnable>();
+	private Queue<QueuedTask> m_queue = new LinkedList<QueuedTask>();
 
 	/**
 	 * Adds a job to the execution queue. If a free thread is available the job gets
@@ -47,7 +47,7 @@ public class PolledActionQueue implements IPollQueueTaskProvider {
 		synchronized(m_executor) {
 			if(m_queue.size() > 1000)
 				throw new IllegalStateException("FATAL: The background execution queue is FULL (more than 1000 waiting jobs)");
-			m_queue.add(run);
+			m_queue.add(new QueuedTask(run));
 			m_executor.checkProvider(this);
 		}
 	}
@@ -59,7 +59,38 @@ public class PolledActionQueue implements IPollQueueTaskProvider {
 
 	@Override
 	public Runnable getRunnableTask() throws Exception {
-		// TODO Auto-generated method stub
-		return null;
+		synchronized(m_executor) {
+			return m_queue.poll();
+		}
+	}
+
+	/**
+	 * Jobs get signalled when scheduled, so this never needs polling.
+	 */
+	@Override
+	public long getNextPollTime() {
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * A scheduled job, remembering when it was scheduled for the wait time metrics.
+	 */
+	static final class QueuedTask implements Runnable {
+		private final Runnable m_run;
+
+		private final long m_queuedAt = System.currentTimeMillis();
+
+		QueuedTask(Runnable run) {
+			m_run = run;
+		}
+
+		long getQueuedAt() {
+			return m_queuedAt;
+		}
+
+		@Override
+		public void run() {
+			m_run.run();
+		}
 	}
 }
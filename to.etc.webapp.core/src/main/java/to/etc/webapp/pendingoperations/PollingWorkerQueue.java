@@ -25,16 +25,36 @@
 package to.etc.webapp.pendingoperations;
 
 import java.util.*;
+import java.util.concurrent.*;
+
+import to.etc.util.*;
 
 /**
  * Generic Executor which polls for jobs to execute. Providers for jobs can be easily registered.
  *
+ * <p>Idle workers park until a provider signals work (see {@link #checkProvider(IPollQueueTaskProvider)}) or
+ * until the earliest time a provider reported in {@link IPollQueueTaskProvider#getNextPollTime()}, so nothing
+ * is polled while there is nothing to do. Threads are added when all of them are busy, up to maxThreads, and
+ * threads above minThreads stop after being idle for a while.</p>
+ *
+ * <p>With {@link #setVirtualExecution(int)} the tasks run on virtual threads (when the JVM has them), with
+ * a cap on the #of tasks running at the same time; the worker threads then only fetch the tasks.</p>
+ *
  * @author <a href="mailto:jal@etc.to">Frits Jalvingh</a>
  * Created on Mar 4, 2009
  */
 public class PollingWorkerQueue {
 	static private PollingWorkerQueue m_instance = new PollingWorkerQueue();
 
+	/** An idle thread above minThreads stops after this long. */
+	static private final long IDLE_THREAD_TIMEOUT = 60 * 1000;
+
+	/** The shortest time an idle worker parks, to prevent spinning on a provider that reports work it does not return. */
+	static private final long MIN_PARK_TIME = 100;
+
+	/** The longest time an idle worker parks. */
+	static private final long MAX_PARK_TIME = 10 * 60 * 1000;
+
 	private boolean m_initialized;
 
 	private boolean m_terminating;
@@ -55,14 +75,49 @@ public class PollingWorkerQueue {
 
 	private long m_tsLastBlock;
 
+	/** The park time used for providers that do not know when they have work next. */
 	private final long m_checkInterval = 10 * 1000;
 
+	/** Incremented for every work signal, so that a worker that is about to park can see it missed one. */
+	private int m_signalCount;
+
 	private final PolledActionQueue m_actionQueue = new PolledActionQueue();
 
+	/** When set, tasks run on virtual threads. */
+	private ExecutorService m_virtualExecutor;
+
+	/** The cap on running tasks in virtual mode. */
+	private int m_maxVirtualTasks;
+
+	private Semaphore m_virtualPermits;
+
+	private final long m_tsStarted = System.currentTimeMillis();
+
+	private long m_executedCount;
+
+	private long m_totalWaitTime;
+
+	private long m_maxWaitTime;
+
+	private long m_totalRunTime;
+
+	private long m_maxRunTime;
+
 	static public void initialize() throws Exception {
 		m_instance.init();
 	}
 
+	/**
+	 * Initialize with the specified minimum and maximum #of worker threads.
+	 */
+	static public void initialize(int minThreads, int maxThreads) throws Exception {
+		synchronized(m_instance) {
+			m_instance.m_minThreads = minThreads;
+			m_instance.m_maxThreads = maxThreads;
+		}
+		m_instance.init();
+	}
+
 	static public PollingWorkerQueue getInstance() {
 		m_instance.checkInit();
 		return m_instance;
@@ -89,6 +144,7 @@ public class PollingWorkerQueue {
 	}
 
 	private void startThread() {
+		m_runningThreads++;									// Count it now, so that we never start too many
 		Thread t = new Thread(new Runnable() {
 			@Override
 			public void run() {
@@ -101,6 +157,37 @@ public class PollingWorkerQueue {
 		t.start();
 	}
 
+	/**
+	 * Run tasks on virtual threads, with at most maxConcurrentTasks running at the same time. This suits
+	 * tasks that mostly block, like database work and sending mail. When the JVM has no virtual threads this
+	 * logs and keeps using the worker threads. Passing 0 switches back to running tasks on the worker threads.
+	 */
+	public void setVirtualExecution(int maxConcurrentTasks) {
+		ExecutorService old;
+		synchronized(this) {
+			old = m_virtualExecutor;
+			m_virtualExecutor = null;
+			m_virtualPermits = null;
+			m_maxVirtualTasks = 0;
+			if(maxConcurrentTasks > 0) {
+				ExecutorService executor = ThreadTool.newVirtualThreadPerTaskExecutor();
+				if(null == executor) {
+					System.out.println("pwq: virtual threads are not available, tasks keep running on the worker threads");
+				} else {
+					m_virtualExecutor = executor;
+					m_virtualPermits = new Semaphore(maxConcurrentTasks);
+					m_maxVirtualTasks = maxConcurrentTasks;
+				}
+			}
+		}
+		if(null != old)
+			old.shutdown();									// Running tasks complete
+	}
+
+	public synchronized boolean isVirtualExecution() {
+		return m_virtualExecutor != null;
+	}
+
 	/**
 	 * Register another provider to get tasks from.
 	 * @param provider
@@ -110,6 +197,7 @@ public class PollingWorkerQueue {
 			if(m_providerList.contains(provider))
 				throw new IllegalStateException("Duplicate registration of provider=" + provider);
 			m_providerList.add(provider);
+			m_signalCount++;
 			notifyAll();
 
 			try {
@@ -121,17 +209,27 @@ public class PollingWorkerQueue {
 		}
 	}
 
+	/**
+	 * Signal that the provider has work available. This wakes up an idle worker.
+	 */
 	public synchronized void checkProvider(final IPollQueueTaskProvider provider) {
 		if(m_runningThreads == 0 || m_terminating)
 			throw new IllegalStateException("The PollingExecutor service is NOT RUNNING");
+		m_signalCount++;
 		notify();
 	}
 
-	public synchronized void terminate() {
-		if(m_initialized && !m_terminating) {
+	public void terminate() {
+		ExecutorService executor;
+		synchronized(this) {
+			if(!m_initialized || m_terminating)
+				return;
 			m_terminating = true;
 			notifyAll();
+			executor = m_virtualExecutor;
 		}
+		if(null != executor)
+			executor.shutdown();
 	}
 
 	public void addWork(final Runnable run) {
@@ -150,29 +248,97 @@ public class PollingWorkerQueue {
 		return m_runningThreads;
 	}
 
+	/**
+	 * The #of threads that can still take a task, including threads that can still be started.
+	 */
+	public synchronized int getAvailableThreads() {
+		if(m_virtualExecutor != null)
+			return Math.max(1, m_maxVirtualTasks - m_threadsExecutingTasks);
+		return Math.max(1, Math.max(m_maxThreads, m_runningThreads) - m_threadsExecutingTasks);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*	CODING:	Metrics.											*/
+	/*--------------------------------------------------------------*/
+
+	public synchronized int getExecutingTaskCount() {
+		return m_threadsExecutingTasks;
+	}
+
+	public synchronized long getExecutedCount() {
+		return m_executedCount;
+	}
+
+	/**
+	 * The average time between a task becoming available and its start, in millis.
+	 */
+	public synchronized long getAverageWaitTime() {
+		return m_executedCount == 0 ? 0 : m_totalWaitTime / m_executedCount;
+	}
+
+	public synchronized long getMaxWaitTime() {
+		return m_maxWaitTime;
+	}
+
+	public synchronized long getAverageRunTime() {
+		return m_executedCount == 0 ? 0 : m_totalRunTime / m_executedCount;
+	}
+
+	public synchronized long getMaxRunTime() {
+		return m_maxRunTime;
+	}
+
+	/**
+	 * The fraction [0..1] of the task capacity (max threads, or max virtual tasks) that was in use since startup.
+	 */
+	public synchronized double getUtilization() {
+		long elapsed = System.currentTimeMillis() - m_tsStarted;
+		int capacity = m_virtualExecutor != null ? m_maxVirtualTasks : m_maxThreads;
+		if(elapsed <= 0 || capacity <= 0)
+			return 0;
+		return Math.min(1.0, (double) m_totalRunTime / ((double) elapsed * capacity));
+	}
+
+	public synchronized String getMetrics() {
+		return "threads=" + m_runningThreads + " (" + m_minThreads + ".." + m_maxThreads + ")"
+			+ ", executing=" + m_threadsExecutingTasks + (m_virtualExecutor != null ? "/" + m_maxVirtualTasks + " virtual" : "")
+			+ ", executed=" + m_executedCount
+			+ ", wait avg/max=" + getAverageWaitTime() + "/" + m_maxWaitTime + "ms"
+			+ ", run avg/max=" + getAverageRunTime() + "/" + m_maxRunTime + "ms"
+			+ ", utilization=" + Math.round(getUtilization() * 100) + "%";
+	}
+
+	private synchronized void taskCompleted(long waitTime, long runTime) {
+		m_threadsExecutingTasks--;
+		m_executedCount++;
+		m_totalWaitTime += waitTime;
+		m_totalRunTime += runTime;
+		if(waitTime > m_maxWaitTime)
+			m_maxWaitTime = waitTime;
+		if(runTime > m_maxRunTime)
+			m_maxRunTime = runTime;
+	}
+
 	/*--------------------------------------------------------------*/
 	/*	CODING:	Worker thread code.									*/
 	/*--------------------------------------------------------------*/
 	/**
 	 * The handler for each worker thread. Each thread is fully equal to each other thread. A worker is
-	 * either obtaining work (by polling each provider or waiting till it's time to poll again), or is
+	 * either obtaining work (by polling each provider or parking till there is work), or is
 	 * executing work obtained earlier.
 	 */
 	void handlerThreadMain() {
-		//-- Notice initialization.
-		synchronized(this) {
-			m_runningThreads++; // One more thread is running,
-		}
-
-		//-- Worker maincode; protected by finally to decrement #running threads.
+		//-- Worker maincode; protected by finally to decrement #running threads (which was incremented by startThread).
 		Throwable error = null;
+		boolean counted = true;
 		try {
-			protectedMain();
+			counted = protectedMain();
 		} catch(Throwable t) {
 			error = t;
 		} finally {
 			synchronized(this) {
-				m_runningThreads--;
+				if(counted)
+					m_runningThreads--;
 				if(m_terminating)
 					error = null;
 			}
@@ -184,29 +350,55 @@ public class PollingWorkerQueue {
 		}
 	}
 
-	private void protectedMain() {
+	/**
+	 * Runs the worker loop. Returns false when a surplus idle thread exits; it has then already removed
+	 * itself from m_runningThreads, in the same lock as its check, so that several idle threads cannot
+	 * all decide to exit and drop the pool below m_minThreads. Returns true when it still counts as running.
+	 */
+	private boolean protectedMain() throws InterruptedException {
 		int ntodo = -1;
+		int seenSignal = 0;
+		long nextPoll = Long.MAX_VALUE;							// The earliest time a provider expects work
+		long idleSince = System.currentTimeMillis();
 		for(;;) {
 			long cts = System.currentTimeMillis();
 
-			//-- Select a provider to query for work, and handle blocking if all of them were queried.
+			//-- Select a provider to query for work, and handle parking if all of them were queried.
 			IPollQueueTaskProvider provider;
 			synchronized(this) {
 				if(m_terminating) // Normal termination -> exit immediately
-					return;
+					return true;
 
 				//-- Am I running/starting in a "scanning all providers" loop?
-				if(ntodo == -1)
-					ntodo = m_providerList.size();
 				if(ntodo == 0) {
-					//-- Completed loop/no work to do. Sleep till it's time to check again,
-					try {
-						m_tsLastBlock = cts;
-						wait(m_checkInterval);
-					} catch(InterruptedException x) {}
-
-					//-- Woke up. Must be time for another scan.
-					cts = System.currentTimeMillis();
+					if(seenSignal == m_signalCount) {			// No work signalled during the scan -> park
+						//-- Surplus threads that have been idle long enough die
+						if(m_runningThreads > m_minThreads && cts - idleSince >= IDLE_THREAD_TIMEOUT) {
+							m_runningThreads--;
+							return false;
+						}
+
+						long park = nextPoll - cts;
+						if(park < MIN_PARK_TIME)
+							park = MIN_PARK_TIME;
+						else if(park > MAX_PARK_TIME)
+							park = MAX_PARK_TIME;
+						if(m_runningThreads > m_minThreads && park > IDLE_THREAD_TIMEOUT)
+							park = IDLE_THREAD_TIMEOUT;
+						try {
+							m_tsLastBlock = cts;
+							wait(park);
+						} catch(InterruptedException x) {}
+
+						//-- Woke up. Must be time for another scan.
+						cts = System.currentTimeMillis();
+					}
+					ntodo = -1;
+				}
+				if(ntodo == -1) {
+					ntodo = m_providerList.size();
+					seenSignal = m_signalCount;
+					nextPoll = Long.MAX_VALUE;
 				}
 
 				//-- We need to check the next provider;
@@ -229,30 +421,85 @@ public class PollingWorkerQueue {
 				x.printStackTrace(); // Just dump && ignore
 			}
 
-			//-- If there's nothing to do - decrement the check count and loop further.
+			//-- If there's nothing to do - note when the provider expects work, decrement the check count and loop further.
 			if(task == null) {
+				long pt;
+				try {
+					pt = provider.getNextPollTime();
+				} catch(Exception x) {
+					pt = -1;
+				}
+				if(pt < 0)
+					pt = cts + m_checkInterval;
+				if(pt < nextPoll)
+					nextPoll = pt;
 				ntodo--;
 				continue;
 			}
 
-			//-- We have one!! Execute it, and leave todo unaltered. If the #of executing tasks is >= the actual #of tasks try to add a new one;
+			//-- We have one!! Execute it, and leave todo unaltered.
+			long availableAt = task instanceof PolledActionQueue.QueuedTask ? ((PolledActionQueue.QueuedTask) task).getQueuedAt() : System.currentTimeMillis();
+			execute(task, availableAt);
+			idleSince = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Run the task on this thread, or on a virtual thread when configured. In the latter case this waits for
+	 * a permit first, so a burst of work does not exceed the cap.
+	 */
+	private void execute(Runnable task, long availableAt) throws InterruptedException {
+		ExecutorService virtualExecutor;
+		Semaphore permits;
+		synchronized(this) {
+			virtualExecutor = m_virtualExecutor;
+			permits = m_virtualPermits;
+		}
+
+		if(null != virtualExecutor && null != permits) {
+			permits.acquire();
 			synchronized(this) {
 				m_threadsExecutingTasks++;
-				if(m_threadsExecutingTasks >= m_runningThreads) { // All thingies are executing stuff?
-					if(m_runningThreads < m_maxThreads) { // We have threads to spare - start another one
-						startThread();
-					}
-				}
 			}
 			try {
-				task.run();
-			} catch(Exception x) {
-				x.printStackTrace(); // On failure just dump;
-			} finally {
+				virtualExecutor.execute(() -> {
+					try {
+						runTask(task, availableAt);
+					} finally {
+						permits.release();
+					}
+				});
+				return;
+			} catch(RejectedExecutionException x) {
+				//-- Virtual execution was switched off in the meantime: run it here.
+				permits.release();
 				synchronized(this) {
 					m_threadsExecutingTasks--;
 				}
 			}
 		}
+
+		//-- If the #of executing tasks is >= the actual #of threads try to add a new one;
+		synchronized(this) {
+			m_threadsExecutingTasks++;
+			if(m_threadsExecutingTasks >= m_runningThreads) { // All thingies are executing stuff?
+				if(m_runningThreads < m_maxThreads) { // We have threads to spare - start another one
+					startThread();
+				}
+			}
+		}
+		runTask(task, availableAt);
+	}
+
+	private void runTask(Runnable task, long availableAt) {
+		long start = System.currentTimeMillis();
+		try {
+			task.run();
+		} catch(Exception x) {
+			x.printStackTrace(); // On failure just dump;
+		} finally {
+			long end = System.currentTimeMillis();
+			taskCompleted(start - availableAt, end - start);
+		}
 	}
 }
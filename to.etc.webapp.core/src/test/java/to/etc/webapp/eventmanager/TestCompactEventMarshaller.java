@@ -0,0 +1,63 @@
+package to.etc.webapp.eventmanager;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created on 19-10-26.
+ */
+public class TestCompactEventMarshaller {
+	static public class InvalidateEvent extends AppEventBase implements ICoalescableEvent {
+		private String m_cacheName;
+
+		private int m_count;
+
+		public String getCacheName() {
+			return m_cacheName;
+		}
+
+		public void setCacheName(String cacheName) {
+			m_cacheName = cacheName;
+		}
+
+		public int getCount() {
+			return m_count;
+		}
+
+		public void setCount(int count) {
+			m_count = count;
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		CompactEventMarshaller m = new CompactEventMarshaller();
+		AppEvent ev = new AppEvent(ChangeType.MODIFIED, 1234);
+		ev.setUpid(99);
+		String data = m.marshalEvent(ev);
+		Assert.assertTrue(data, data.startsWith(AppEvent.class.getName() + "{"));
+		Assert.assertFalse("AppEventBase properties have their own columns", data.contains("upid"));
+
+		AppEvent res = m.unmarshalEvent(data);
+		Assert.assertNotNull(res);
+		Assert.assertEquals(1234, res.getKey());
+		Assert.assertEquals(ChangeType.MODIFIED, res.getType());
+	}
+
+	@Test
+	public void testRoundTripStrings() throws Exception {
+		CompactEventMarshaller m = new CompactEventMarshaller();
+		InvalidateEvent ev = new InvalidateEvent();
+		ev.setCacheName("quote ' and \"double\", é€");
+		ev.setCount(-7);
+		InvalidateEvent res = m.unmarshalEvent(m.marshalEvent(ev));
+		Assert.assertNotNull(res);
+		Assert.assertEquals(ev.getCacheName(), res.getCacheName());
+		Assert.assertEquals(-7, res.getCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRefusesNonEventClass() throws Exception {
+		new CompactEventMarshaller().unmarshalEvent("java.lang.String{}");
+	}
+}
@@ -0,0 +1,80 @@
+package to.etc.webapp.eventmanager;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Created on 19-10-26.
+ */
+public class TestVpEventManager {
+	private static List<AppEventBase> coalesce(AppEventBase[] events, String[] data, boolean[] local) {
+		List<AppEventBase> al = new ArrayList<>();
+		Map<String, Integer> coalesceMap = new HashMap<>();
+		for(int i = 0; i < events.length; i++)
+			VpEventManager.addEvent(al, coalesceMap, events[i], local[i], events[i].getClass().getName(), data[i]);
+		al.removeIf(Objects::isNull);
+		return al;
+	}
+
+	@Test
+	public void testIdenticalEventsAreCoalesced() {
+		TestCompactEventMarshaller.InvalidateEvent a = new TestCompactEventMarshaller.InvalidateEvent();
+		TestCompactEventMarshaller.InvalidateEvent b = new TestCompactEventMarshaller.InvalidateEvent();
+		List<AppEventBase> res = coalesce(new AppEventBase[]{a, b}, new String[]{"{cacheName:'x'}", "{cacheName:'x'}"}, new boolean[]{false, false});
+		Assert.assertEquals(1, res.size());
+		Assert.assertSame("The last one must be delivered", b, res.get(0));
+	}
+
+	@Test
+	public void testDifferentEventsAreNotCoalesced() {
+		TestCompactEventMarshaller.InvalidateEvent a = new TestCompactEventMarshaller.InvalidateEvent();
+		TestCompactEventMarshaller.InvalidateEvent b = new TestCompactEventMarshaller.InvalidateEvent();
+		TestCompactEventMarshaller.InvalidateEvent c = new TestCompactEventMarshaller.InvalidateEvent();
+		List<AppEventBase> res = coalesce(new AppEventBase[]{a, b, c}, new String[]{"{cacheName:'x'}", "{cacheName:'y'}", "{cacheName:'x'}"}, new boolean[]{false, false, true});
+		Assert.assertEquals(3, res.size());
+	}
+
+	@Test
+	public void testNonCoalescableEventsAreKept() {
+		AppEvent a = new AppEvent(ChangeType.ADDED, 1);
+		AppEvent b = new AppEvent(ChangeType.ADDED, 1);
+		List<AppEventBase> res = coalesce(new AppEventBase[]{a, b}, new String[]{"{key:1}", "{key:1}"}, new boolean[]{false, false});
+		Assert.assertEquals(2, res.size());
+	}
+
+	@Test
+	public void testPollIntervalBackoffAndReset() {
+		VpEventManager.initializeForTest();
+		VpEventManager em = VpEventManager.getInstance();
+		em.setPollInterval(100, 1000);
+		Assert.assertEquals(100, em.getPollInterval());
+
+		//-- Empty scans double the interval up to the max
+		em.scanDone(0);
+		Assert.assertEquals(200, em.getPollInterval());
+		em.scanDone(0);
+		Assert.assertEquals(400, em.getPollInterval());
+		em.scanDone(0);
+		Assert.assertEquals(800, em.getPollInterval());
+		em.scanDone(0);
+		Assert.assertEquals(1000, em.getPollInterval());
+		em.scanDone(0);
+		Assert.assertEquals(1000, em.getPollInterval());
+
+		//-- Seeing events resets it to the minimum
+		em.scanDone(3);
+		Assert.assertEquals(100, em.getPollInterval());
+
+		//-- Database trouble goes to the max immediately
+		em.scanDone(-1);
+		Assert.assertEquals(1000, em.getPollInterval());
+		em.scanDone(500);
+		Assert.assertEquals(100, em.getPollInterval());
+	}
+}
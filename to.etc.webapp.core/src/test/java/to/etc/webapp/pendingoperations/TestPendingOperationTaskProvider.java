@@ -0,0 +1,225 @@
+package to.etc.webapp.pendingoperations;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the claiming of pending operations against an in-memory Derby database. Derby
+ * has no "skip locked", so this covers the plain "for update" path.
+ *
+ * Created on 19-10-26.
+ */
+public class TestPendingOperationTaskProvider {
+	static private final String SERVER = "srv1";
+
+	static private int m_dbCount;
+
+	private EmbeddedDataSource m_ds;
+
+	private PendingOperationTaskProvider m_provider;
+
+	@BeforeClass
+	static public void setUpClass() {
+		System.setProperty("derby.stream.error.file", "target/derby.log");
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		EmbeddedDataSource ds = new EmbeddedDataSource();
+		ds.setDatabaseName("memory:spo" + ++m_dbCount);
+		ds.setCreateDatabase("create");
+		m_ds = ds;
+		try(Connection dbc = ds.getConnection(); Statement st = dbc.createStatement()) {
+			st.executeUpdate("create table sys_pending_operations ("
+				+ "spo_id bigint not null primary key"
+				+ ",spo_xident varchar(64)"
+				+ ",spo_issuing_server varchar(64)"
+				+ ",spo_date_created timestamp"
+				+ ",spo_must_execute_on_server varchar(64)"
+				+ ",spo_executing_server varchar(64)"
+				+ ",spo_last_execute_started timestamp"
+				+ ",spo_last_execute_completed timestamp"
+				+ ",spo_state varchar(4) not null"
+				+ ",spo_retries int"
+				+ ",spo_date_next_try timestamp"
+				+ ",spo_order_groupname varchar(64)"
+				+ ",spo_order_timestamp timestamp"
+				+ ",spo_order_sub int"
+				+ ",spo_type varchar(32)"
+				+ ",spo_arg1 varchar(256)"
+				+ ",spo_arg2 varchar(4000)"
+				+ ",spo_lasterror varchar(250)"
+				+ ",spo_errorlog varchar(4000)"
+				+ ",spo_userid varchar(32)"
+				+ ",spo_description varchar(256)"
+				+ ",spo_submitsource varchar(256)"
+				+ ",progress_path varchar(256)"
+				+ ",progress_percentage int"
+				+ ",spo_serialized blob"
+				+ ")");
+		}
+		m_provider = new PendingOperationTaskProvider(ds, SERVER);
+	}
+
+	@After
+	public void tearDown() {
+		EmbeddedDataSource ds = m_ds;
+		ds.setCreateDatabase(null);
+		ds.setConnectionAttributes("drop=true");
+		try {
+			ds.getConnection().close();
+		} catch(SQLException x) {
+			//-- Dropping an in-memory database always ends with an exception
+		}
+	}
+
+	private void insert(long id, String state, String mustExecuteOn, String executingOn, Timestamp nextTry, String group, int sub) throws SQLException {
+		try(Connection dbc = m_ds.getConnection(); PreparedStatement ps = dbc.prepareStatement("insert into sys_pending_operations"
+			+ "(spo_id,spo_issuing_server,spo_date_created,spo_must_execute_on_server,spo_executing_server,spo_state,spo_retries,spo_date_next_try"
+			+ ",spo_order_groupname,spo_order_timestamp,spo_order_sub,spo_type,progress_percentage) values(?,?,?,?,?,?,0,?,?,?,?,'test',0)")) {
+			Timestamp now = new Timestamp(System.currentTimeMillis());
+			int f = 1;
+			ps.setLong(f++, id);
+			ps.setString(f++, SERVER);
+			ps.setTimestamp(f++, now);
+			ps.setString(f++, mustExecuteOn);
+			ps.setString(f++, executingOn);
+			ps.setString(f++, state);
+			ps.setTimestamp(f++, nextTry);
+			ps.setString(f++, group);
+			ps.setTimestamp(f++, group == null ? null : now);
+			ps.setInt(f++, sub);
+			ps.executeUpdate();
+		}
+	}
+
+	private void insert(long id) throws SQLException {
+		insert(id, "RTRY", null, null, null, null, 0);
+	}
+
+	private void insertGroupMember(long id, String group, int sub) throws SQLException {
+		insert(id, "RTRY", null, null, null, group, sub);
+	}
+
+	/**
+	 * Returns the state, executing server and retry count of a row, as "state/server/retries".
+	 */
+	private String rowState(long id) throws SQLException {
+		try(Connection dbc = m_ds.getConnection(); PreparedStatement ps = dbc.prepareStatement("select spo_state,spo_executing_server,spo_retries from sys_pending_operations where spo_id=?")) {
+			ps.setLong(1, id);
+			try(ResultSet rs = ps.executeQuery()) {
+				if(!rs.next())
+					return null;
+				return rs.getString(1) + "/" + rs.getString(2) + "/" + rs.getInt(3);
+			}
+		}
+	}
+
+	static private List<Long> ids(PendingOperationTask task) {
+		List<Long> res = new ArrayList<>();
+		for(PendingOperation po : task.getOperations())
+			res.add(Long.valueOf(po.getId()));
+		return res;
+	}
+
+	static private List<Long> firstIds(List<PendingOperationTask> list) {
+		List<Long> res = new ArrayList<>();
+		for(PendingOperationTask task : list)
+			res.add(Long.valueOf(task.getOperations().get(0).getId()));
+		return res;
+	}
+
+	static private List<Long> list(long... ids) {
+		List<Long> res = new ArrayList<>();
+		for(long id : ids)
+			res.add(Long.valueOf(id));
+		return res;
+	}
+
+	@Test
+	public void testClaimsRunnableOperationsInOrder() throws Exception {
+		insert(1);
+		insert(2);
+		insert(3, "RTRY", null, null, new Timestamp(System.currentTimeMillis() + 60 * 60 * 1000), null, 0);	// Not yet due
+		insert(4, "RTRY", "other", null, null, null, 0);			// Must run on another server
+		insert(5);
+		insert(6, "FATL", null, null, null, null, 0);
+
+		List<PendingOperationTask> claimed = m_provider.claimTasks(2);
+		Assert.assertEquals(list(1, 2), firstIds(claimed));
+		Assert.assertEquals("EXEC/srv1/1", rowState(1));
+		Assert.assertEquals("EXEC/srv1/1", rowState(2));
+		Assert.assertEquals("RTRY/null/0", rowState(5));
+
+		claimed = m_provider.claimTasks(2);
+		Assert.assertEquals(list(5), firstIds(claimed));
+		Assert.assertEquals("EXEC/srv1/1", rowState(5));
+
+		Assert.assertEquals(0, m_provider.claimTasks(2).size());
+		Assert.assertEquals("RTRY/null/0", rowState(3));
+		Assert.assertEquals("RTRY/null/0", rowState(4));
+	}
+
+	@Test
+	public void testGroupIsClaimedAsOneTask() throws Exception {
+		insertGroupMember(10, "g", 0);
+		insertGroupMember(11, "g", 1);
+		insertGroupMember(12, "g", 2);
+		insert(13);
+
+		List<PendingOperationTask> claimed = m_provider.claimTasks(4);
+		Assert.assertEquals(2, claimed.size());
+		Assert.assertEquals(list(10, 11, 12), ids(claimed.get(0)));
+		Assert.assertEquals(list(13), ids(claimed.get(1)));
+
+		//-- All members are owned by this server, but only the first one is started
+		Assert.assertEquals("EXEC/srv1/1", rowState(10));
+		Assert.assertEquals("EXEC/srv1/0", rowState(11));
+		Assert.assertEquals("EXEC/srv1/0", rowState(12));
+
+		Assert.assertEquals(0, m_provider.claimTasks(4).size());
+	}
+
+	@Test
+	public void testGroupWaitsForExecutingMember() throws Exception {
+		insert(20, "EXEC", null, "other", null, "g", 0);
+		insertGroupMember(21, "g", 1);
+		insert(22);
+
+		List<PendingOperationTask> claimed = m_provider.claimTasks(4);
+		Assert.assertEquals(list(22), firstIds(claimed));
+		Assert.assertEquals("EXEC/other/0", rowState(20));
+		Assert.assertEquals("RTRY/null/0", rowState(21));
+	}
+
+	@Test
+	public void testGroupCountsAsOneClaim() throws Exception {
+		insertGroupMember(30, "a", 0);
+		insertGroupMember(31, "a", 1);
+		insertGroupMember(32, "b", 0);
+		insert(33);
+
+		//-- A max of 2 claims two groups, and the second member of group "a" is not claimed separately
+		List<PendingOperationTask> claimed = m_provider.claimTasks(2);
+		Assert.assertEquals(2, claimed.size());
+		Assert.assertEquals(list(30, 31), ids(claimed.get(0)));
+		Assert.assertEquals(list(32), ids(claimed.get(1)));
+		Assert.assertEquals("RTRY/null/0", rowState(33));
+
+		claimed = m_provider.claimTasks(2);
+		Assert.assertEquals(list(33), firstIds(claimed));
+	}
+}